@@ -2,6 +2,7 @@ package java.awt;
 
 import android.R.color;
 import android.R.drawable;
+import android.app.ActivityManager;
 import android.content.Context;
 import android.content.res.Resources;
 import android.view.View;
@@ -70,14 +71,94 @@ public final class SkinJob {
    */
   public static volatile float strikeThroughOffset = 0.5f;
 
-  /*
-   * Size of the array of precomputed character widths in each {@link FontMetrics}. Code points
-   * lower than this value will be stored in the array; the rest will be recalculated on demand.
-   * Using a higher value will require more memory, but will improve performance when rendering
-   * text where a lot of characters have high code-point values (e.g. those in non-Latin alphabets).
-   * Should never exceed 0x10FFFD, since that's the highest Unicode point. OpenJDK AWT uses 256.
+  /**
+   * Size of the array of character widths that {@link FontMetrics#getWidths()} computes for
+   * metrics that don't override it; {@link FontMetrics#charWidth(char)} looks up code points lower
+   * than this in that array. {@link sun.font.FontDesignMetrics}, which backs the metrics SkinJob
+   * hands out, keeps its own table of every measured character and ignores this. Should never
+   * exceed 0x10FFFD, since that's the highest Unicode point. OpenJDK AWT uses 256.
    */
   public static volatile int precomputedCharacterWidthArraySize = 256;
+
+  /**
+   * Number of {@link android.graphics.Paint} objects each {@link SkinJobGraphics} keeps for reuse,
+   * keyed by color, stroke, compositing mode and font. Code that alternates between more distinct
+   * drawing states than this will reconfigure a {@link android.graphics.Paint} on every switch.
+   */
+  public static volatile int paintCacheSize = 8;
+
+  /**
+   * Maximum number of laid-out attributed strings kept by {@link SkinJobTextLayoutCache}. Labels
+   * that are repainted every frame are only laid out again once they fall out of this cache.
+   */
+  public static volatile int textLayoutCacheSize = 256;
+
+  /**
+   * Maximum number of shaped runs of text kept by {@link sun.font.GlyphLayout}, as glyph codes and
+   * positions. Glyph vectors for the same text in the same font reuse them instead of measuring it
+   * again.
+   */
+  public static volatile int glyphLayoutCacheSize = 512;
+
+  /**
+   * Maximum number of bytes of unused bitmaps {@link SkinJobBitmapPool} keeps for reuse by
+   * offscreen images. Bitmaps released beyond this are recycled instead.
+   */
+  public static volatile long bitmapPoolSize = 16 * 1024 * 1024;
+
+  /**
+   * Number of threads {@link SkinJobImageDecoder} decodes images on. Read once, when the first
+   * image is loaded.
+   */
+  public static volatile int imageDecoderThreads
+      = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+  /**
+   * Maximum number of bytes of decoded bitmaps {@link SkinJobImageDecoder} keeps, so that images
+   * loaded again from the same file or URL don't have to be decoded again.
+   */
+  public static volatile long decodedImageCacheSize = 32 * 1024 * 1024;
+
+  /**
+   * Byte budget of the image caches in {@code sun.awt} ({@link sun.awt.image.ImageCache} and the
+   * toolkit's image cache), as a fraction of the app's heap limit from {@link
+   * ActivityManager#getMemoryClass()}. Within the budget, images are held strongly and evicted
+   * least-recently-used first. Zero or less leaves those caches holding soft references, so the GC
+   * decides what they keep. Read when each cache is created.
+   */
+  public static volatile float imageCacheMemoryFraction = 0.125f;
+
+  /**
+   * Image area, in pixels, from which the pure-Java image transform loops in {@code
+   * sun.java2d.loops} and the {@link java.awt.image.ConvolveOp}, {@link
+   * java.awt.image.AffineTransformOp} and {@link java.awt.image.LookupOp} implementations in
+   * {@code sun.awt.image} split their work into bands of rows processed in parallel on the common
+   * {@link java.util.concurrent.ForkJoinPool}. Zero or less disables the split.
+   */
+  public static volatile int parallelTransformMinPixels = 512 * 512;
+
+  /**
+   * Number of edges from which the Pisces antialiasing rasterizer fills a shape in horizontal
+   * bands of tile rows rasterized in parallel on the common {@link
+   * java.util.concurrent.ForkJoinPool}, rather than on the rendering thread alone. Meant for very
+   * large filled paths, such as maps; a few thousand is a reasonable value. Zero or less, the
+   * default, disables it.
+   */
+  public static volatile int parallelRasterizeMinEdges = 0;
+
+  /**
+   * Line width, in device pixels, up to which the Pisces antialiasing renderer strokes paths made
+   * only of straight lines, such as charts, with a simplified stroker that needs no curve math and
+   * draws round joins and caps as polygons. Zero or less disables it.
+   */
+  public static volatile float polylineStrokerMaxWidth = 2.5f;
+
+  /**
+   * Maximum number of bytes of rendered glyph masks kept for drawing text, across all fonts. The
+   * cache is evicted 64 KiB at a time, least recently drawn first.
+   */
+  public static volatile int glyphCacheSize = 4 * 1024 * 1024;
+
   public static volatile int defaultDragThreshold = 5;
   public static volatile int defaultFontSize = 12;
   public static volatile Font defaultFont = new Font(Font.DIALOG, Font.PLAIN, defaultFontSize);
@@ -87,6 +168,7 @@ public final class SkinJob {
     menuDivider = View.inflate(context,
         drawable.divider_horizontal_dim_dark,
         new ListView(context));
+    context.registerComponentCallbacks(new SkinJobMemoryTrimmer());
   }
 
   /**
@@ -117,6 +199,23 @@ public final class SkinJob {
     }
   }
 
+  /**
+   * @return the number of bytes {@link #imageCacheMemoryFraction} currently allows each image
+   * cache, or 0 if the caches should use soft references
+   */
+  public static long getImageCacheBudget() {
+    float fraction = imageCacheMemoryFraction;
+    if (fraction <= 0) {
+      return 0;
+    }
+    ActivityManager activityManager = (ActivityManager)
+        getAndroidApplicationContext().getSystemService(Context.ACTIVITY_SERVICE);
+    long heapLimit = activityManager == null
+        ? Runtime.getRuntime().maxMemory()
+        : activityManager.getMemoryClass() * 1024L * 1024L;
+    return (long) (heapLimit * (double) fraction);
+  }
+
   public static synchronized SkinJobGraphicsEnvironment getGraphicsEnvironment() {
     if (graphicsEnvironment == null) {
       graphicsEnvironment = new SkinJobGraphicsEnvironment(getAndroidApplicationContext());
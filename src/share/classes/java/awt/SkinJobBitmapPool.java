@@ -0,0 +1,172 @@
+package java.awt;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Pool of mutable {@link Bitmap}s for offscreen images, bucketed by allocation size. A pooled
+ * bitmap is handed out again via {@link Bitmap#reconfigure(int, int, Config)}, the same reuse
+ * that {@link android.graphics.BitmapFactory.Options#inBitmap} provides for decoding. Repeatedly
+ * creating and discarding offscreen images of similar sizes then allocates no new pixel memory.
+ * <p>
+ * Bucket {@code k} holds bitmaps whose allocation is at least {@code 2^k} bytes, so any of them
+ * fits any request of up to {@code 2^k} bytes. New bitmaps are allocated with their request
+ * rounded up to the bucket size; this can cost up to twice the memory of an exact allocation.
+ */
+public final class SkinJobBitmapPool {
+  private static final int BUCKETS = 31;
+
+  @SuppressWarnings("unchecked")
+  private static final ArrayDeque<Bitmap>[] buckets = new ArrayDeque[BUCKETS];
+  private static long pooledBytes = 0;
+
+  private static final ReferenceQueue<Object> unreachableOwners = new ReferenceQueue<>();
+  private static final Set<Reclaimer> reclaimers
+      = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+
+  static {
+    for (int i = 0; i < BUCKETS; i++) {
+      buckets[i] = new ArrayDeque<>();
+    }
+  }
+
+  /**
+   * Do not instantiate.
+   */
+  private SkinJobBitmapPool() {
+  }
+
+  /**
+   * Returns a mutable, fully transparent bitmap of the given size, reusing a pooled one if
+   * possible.
+   */
+  public static Bitmap acquire(int width, int height, Config config) {
+    if (width <= 0 || height <= 0) {
+      throw new IllegalArgumentException("Width (" + width + ") and height (" + height
+          + ") must be > 0");
+    }
+    reclaimUnreachable();
+    long rowBytes = (long) width * bytesPerPixel(config);
+    long bytes = rowBytes * height;
+    int bucket = 64 - Long.numberOfLeadingZeros(bytes - 1);
+    if (bucket >= BUCKETS) {
+      return Bitmap.createBitmap(width, height, config);
+    }
+    Bitmap bitmap;
+    synchronized (buckets) {
+      bitmap = buckets[bucket].pollLast();
+      if (bitmap != null) {
+        pooledBytes -= bitmap.getAllocationByteCount();
+      }
+    }
+    if (bitmap != null) {
+      bitmap.reconfigure(width, height, config);
+      bitmap.eraseColor(0);
+      return bitmap;
+    }
+    // Allocate the whole bucket so this bitmap can later serve any request that maps to it.
+    int capacityHeight
+        = (int) Math.min(Integer.MAX_VALUE, ((1L << bucket) + rowBytes - 1) / rowBytes);
+    bitmap = Bitmap.createBitmap(width, capacityHeight, config);
+    if (capacityHeight != height) {
+      bitmap.reconfigure(width, height, config);
+    }
+    return bitmap;
+  }
+
+  /**
+   * Returns a bitmap to the pool, or recycles it if the pool is already holding
+   * {@link SkinJob#bitmapPoolSize} bytes. The caller must not use the bitmap afterward.
+   */
+  public static void release(Bitmap bitmap) {
+    if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) {
+      return;
+    }
+    int allocation = bitmap.getAllocationByteCount();
+    int bucket = 63 - Long.numberOfLeadingZeros(allocation);
+    synchronized (buckets) {
+      if (bucket < BUCKETS && pooledBytes + allocation <= SkinJob.bitmapPoolSize) {
+        buckets[bucket].addLast(bitmap);
+        pooledBytes += allocation;
+        return;
+      }
+    }
+    bitmap.recycle();
+  }
+
+  /**
+   * Acquires a bitmap that will be released back to the pool once {@code owner} becomes
+   * unreachable. The returned {@link Reclaimer} must not be reachable from anything but the owner.
+   */
+  static Reclaimer acquireFor(Object owner, int width, int height, Config config) {
+    Reclaimer reclaimer = new Reclaimer(owner, acquire(width, height, config));
+    reclaimers.add(reclaimer);
+    return reclaimer;
+  }
+
+  private static void reclaimUnreachable() {
+    Reference<?> ref;
+    while ((ref = unreachableOwners.poll()) != null) {
+      Reclaimer reclaimer = (Reclaimer) ref;
+      reclaimers.remove(reclaimer);
+      release(reclaimer.bitmap);
+      reclaimer.bitmap = null;
+    }
+  }
+
+  /**
+   * Recycles every pooled bitmap, e.g. in response to memory pressure.
+   */
+  public static void clear() {
+    synchronized (buckets) {
+      for (ArrayDeque<Bitmap> bucket : buckets) {
+        for (Bitmap bitmap : bucket) {
+          bitmap.recycle();
+        }
+        bucket.clear();
+      }
+      pooledBytes = 0;
+    }
+  }
+
+  /**
+   * @return the number of bytes currently held in the pool
+   */
+  public static long getPooledBytes() {
+    synchronized (buckets) {
+      return pooledBytes;
+    }
+  }
+
+  private static int bytesPerPixel(Config config) {
+    switch (config) {
+      case ALPHA_8:
+        return 1;
+      case RGB_565:
+      case ARGB_4444:
+        return 2;
+      default:
+        return 4;
+    }
+  }
+
+  /**
+   * Holds a pooled bitmap on behalf of an owner object, and releases it when the owner is
+   * collected. The owner may also release or replace the bitmap early.
+   */
+  static final class Reclaimer extends PhantomReference<Object> {
+    volatile Bitmap bitmap;
+
+    Reclaimer(Object owner, Bitmap bitmap) {
+      super(owner, unreachableOwners);
+      this.bitmap = bitmap;
+    }
+  }
+}
@@ -0,0 +1,221 @@
+package java.awt;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.WritableRaster;
+import java.nio.IntBuffer;
+import java.util.Map;
+import java.util.WeakHashMap;
+import sun.awt.image.IntegerComponentRaster;
+import sun.awt.image.SunWritableRaster;
+import sun.java2d.StateTrackable.State;
+import sun.java2d.StateTrackableDelegate;
+import sun.java2d.StateTracker;
+
+/**
+ * Moves pixels between {@link BufferedImage}s and Android {@link Bitmap}s in bulk.
+ * <p>
+ * Android can't wrap a Java {@code int[]} as bitmap storage, so a {@link BufferedImage} being
+ * drawn gets a shadow {@link Bitmap}, and pixels are copied into it. The copy only happens when
+ * the image's {@link sun.java2d.StateTrackable} state says it has changed since the last one, so
+ * an unchanging sprite is uploaded once. Integer rasters go straight from the raster's array to
+ * {@link Bitmap#setPixels} or {@link Bitmap#copyPixelsFromBuffer} without a per-pixel
+ * {@link BufferedImage#getRGB(int, int)} loop. If code has taken the image's
+ * {@link java.awt.image.DataBufferInt#getData()} array, the image can't be tracked any longer.
+ * It is then copied in full on every draw, unless the code reports the regions it changes with
+ * {@link #markDirty(BufferedImage, int, int, int, int)}.
+ */
+public final class SkinJobBufferedImageBridge {
+  private static final Map<BufferedImage, Shadow> shadows = new WeakHashMap<>();
+
+  /**
+   * Do not instantiate.
+   */
+  private SkinJobBufferedImageBridge() {
+  }
+
+  /**
+   * Returns a {@link Bitmap} with the image's current contents. The bitmap is owned by the bridge
+   * and must not be modified or retained.
+   */
+  public static Bitmap getBitmap(BufferedImage image) {
+    Shadow shadow;
+    synchronized (shadows) {
+      shadow = shadows.get(image);
+      if (shadow == null) {
+        shadow = new Shadow(image);
+        shadows.put(image, shadow);
+      }
+    }
+    synchronized (shadow) {
+      shadow.update(image);
+      return shadow.storage.bitmap;
+    }
+  }
+
+  /**
+   * Reports that a region of an image has been changed through an array obtained from its
+   * {@link DataBuffer}. Once this has been called for an image, only the reported regions are
+   * copied the next time it is drawn.
+   */
+  public static void markDirty(BufferedImage image, int x, int y, int width, int height) {
+    Shadow shadow;
+    synchronized (shadows) {
+      shadow = shadows.get(image);
+    }
+    if (shadow != null) {
+      synchronized (shadow) {
+        shadow.explicitTracking = true;
+        shadow.dirty = shadow.dirty == null
+            ? new Rectangle(x, y, width, height)
+            : shadow.dirty.union(new Rectangle(x, y, width, height));
+      }
+    }
+  }
+
+  /**
+   * Copies a bitmap into a new {@link BufferedImage#TYPE_INT_ARGB} image.
+   */
+  public static BufferedImage toBufferedImage(Bitmap bitmap) {
+    int width = bitmap.getWidth();
+    int height = bitmap.getHeight();
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    IntegerComponentRaster raster = (IntegerComponentRaster) image.getRaster();
+    bitmap.getPixels(raster.getDataStorage(), raster.getDataOffset(0),
+        raster.getScanlineStride(), 0, 0, width, height);
+    raster.markDirty();
+    return image;
+  }
+
+  private static final class Shadow {
+    final SkinJobBitmapPool.Reclaimer storage;
+    StateTracker tracker = StateTracker.NEVER_CURRENT;
+    boolean explicitTracking = false;
+    Rectangle dirty = null;
+    int[] scratch;
+
+    Shadow(BufferedImage image) {
+      storage = SkinJobBitmapPool.acquireFor(
+          image, image.getWidth(), image.getHeight(), Config.ARGB_8888);
+      storage.bitmap.setHasAlpha(image.getColorModel().hasAlpha());
+    }
+
+    void update(BufferedImage image) {
+      if (tracker.isCurrent()) {
+        return;
+      }
+      WritableRaster raster = image.getRaster();
+      StateTrackableDelegate trackable = SunWritableRaster.stealTrackable(raster.getDataBuffer());
+      // Take the tracker before copying, so that writes during the copy leave it stale.
+      tracker = trackable.getStateTracker();
+      if (explicitTracking && trackable.getState() == State.UNTRACKABLE) {
+        if (dirty != null) {
+          Rectangle region = dirty.intersection(
+              new Rectangle(0, 0, image.getWidth(), image.getHeight()));
+          dirty = null;
+          if (!region.isEmpty()) {
+            copy(image, region.x, region.y, region.width, region.height);
+          }
+        }
+        return;
+      }
+      dirty = null;
+      copy(image, 0, 0, image.getWidth(), image.getHeight());
+    }
+
+    private void copy(BufferedImage image, int x, int y, int width, int height) {
+      Bitmap bitmap = storage.bitmap;
+      WritableRaster raster = image.getRaster();
+      if (raster instanceof IntegerComponentRaster
+          && ((IntegerComponentRaster) raster).getPixelStride() == 1) {
+        IntegerComponentRaster intRaster = (IntegerComponentRaster) raster;
+        int[] data = intRaster.getDataStorage();
+        int stride = intRaster.getScanlineStride();
+        int offset = intRaster.getDataOffset(0) + y * stride + x;
+        switch (image.getType()) {
+          case BufferedImage.TYPE_INT_ARGB:
+            // Same layout and alpha convention as Android color ints: no conversion needed.
+            bitmap.setPixels(data, offset, stride, x, y, width, height);
+            return;
+          case BufferedImage.TYPE_INT_ARGB_PRE:
+            if (width == bitmap.getWidth() && height == bitmap.getHeight()) {
+              // Premultiplied like the bitmap's own storage, so only the byte order differs.
+              int[] pixels = scratch(width * height);
+              for (int row = 0; row < height; row++) {
+                int src = offset + row * stride;
+                int dst = row * width;
+                for (int col = 0; col < width; col++) {
+                  int argb = data[src + col];
+                  pixels[dst + col] = (argb & 0xFF00FF00) | ((argb >> 16) & 0xFF)
+                      | ((argb & 0xFF) << 16);
+                }
+              }
+              bitmap.copyPixelsFromBuffer(IntBuffer.wrap(pixels, 0, width * height));
+            } else {
+              convertRows(data, offset, stride, width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+              bitmap.setPixels(scratch, 0, width, x, y, width, height);
+            }
+            return;
+          case BufferedImage.TYPE_INT_RGB:
+          case BufferedImage.TYPE_INT_BGR:
+            convertRows(data, offset, stride, width, height, image.getType());
+            bitmap.setPixels(scratch, 0, width, x, y, width, height);
+            return;
+          default:
+            break;
+        }
+      }
+      int[] pixels = scratch(width * height);
+      image.getRGB(x, y, width, height, pixels, 0, width);
+      bitmap.setPixels(pixels, 0, width, x, y, width, height);
+    }
+
+    /**
+     * Converts rows of an integer raster to unpremultiplied ARGB in {@link #scratch}.
+     */
+    private void convertRows(int[] data, int offset, int stride, int width, int height, int type) {
+      int[] pixels = scratch(width * height);
+      for (int row = 0; row < height; row++) {
+        int src = offset + row * stride;
+        int dst = row * width;
+        for (int col = 0; col < width; col++) {
+          int pixel = data[src + col];
+          switch (type) {
+            case BufferedImage.TYPE_INT_RGB:
+              pixel |= 0xFF000000;
+              break;
+            case BufferedImage.TYPE_INT_BGR:
+              pixel = 0xFF000000 | (pixel & 0x00FF00) | ((pixel >> 16) & 0xFF)
+                  | ((pixel & 0xFF) << 16);
+              break;
+            default:
+              pixel = unpremultiply(pixel);
+              break;
+          }
+          pixels[dst + col] = pixel;
+        }
+      }
+    }
+
+    private int[] scratch(int length) {
+      if (scratch == null || scratch.length < length) {
+        scratch = new int[length];
+      }
+      return scratch;
+    }
+  }
+
+  private static int unpremultiply(int argb) {
+    int a = argb >>> 24;
+    if (a == 0xFF || a == 0) {
+      return a == 0 ? 0 : argb;
+    }
+    int half = a >> 1;
+    int r = Math.min(255, (((argb >> 16) & 0xFF) * 255 + half) / a);
+    int g = Math.min(255, (((argb >> 8) & 0xFF) * 255 + half) / a);
+    int b = Math.min(255, ((argb & 0xFF) * 255 + half) / a);
+    return (a << 24) | (r << 16) | (g << 8) | b;
+  }
+}
@@ -1,6 +1,8 @@
 package java.awt;
 
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Rect;
 import java.awt.BufferCapabilities.FlipContents;
 import java.awt.event.PaintEvent;
 import java.awt.image.ColorModel;
@@ -20,6 +22,8 @@ public abstract class SkinJobComponentPeer<T> implements ComponentPeer {
   protected final T androidWidget;
   protected GraphicsConfiguration graphicsConfiguration;
   protected volatile int foregroundColor = SkinJob.defaultForegroundColor;
+  protected volatile int backgroundColor = 0;
+  protected volatile SkinJobFlipChain flipChain;
 
   public SkinJobComponentPeer(T androidWidget, GraphicsConfiguration configuration) {
     this.androidWidget = androidWidget;
@@ -63,7 +67,7 @@ public abstract class SkinJobComponentPeer<T> implements ComponentPeer {
 
   @Override
   public FontMetrics getFontMetrics(Font font) {
-    return new SkinJobFontMetrics(font);
+    return SkinJobFontMetrics.getInstance(font);
   }
 
   @Override
@@ -88,33 +92,27 @@ public abstract class SkinJobComponentPeer<T> implements ComponentPeer {
 
   @Override
   public Image createImage(ImageProducer producer) {
-    // TODO
-    return null;
+    return new SkinJobImage(producer);
   }
 
   @Override
   public Image createImage(int width, int height) {
-    // TODO
-    return null;
+    return new SkinJobImage(width, height);
   }
 
   @Override
   public VolatileImage createVolatileImage(int width, int height) {
-    // TODO
-    return null;
+    return new SkinJobVolatileImage(width, height, graphicsConfiguration);
   }
 
   @Override
   public boolean prepareImage(Image img, int w, int h, ImageObserver o) {
-    // Image loading is synchronous on Android, so report that it's always already finished.
-    return true;
+    return Toolkit.getDefaultToolkit().prepareImage(img, w, h, o);
   }
 
   @Override
   public int checkImage(Image img, int w, int h, ImageObserver o) {
-    // Image loading is synchronous on Android, so report that it's always already finished.
-    return ImageObserver.ALLBITS | ImageObserver.WIDTH | ImageObserver.HEIGHT
-        | ImageObserver.PROPERTIES;
+    return Toolkit.getDefaultToolkit().checkImage(img, w, h, o);
   }
 
   @Override
@@ -124,23 +122,69 @@ public abstract class SkinJobComponentPeer<T> implements ComponentPeer {
 
   @Override
   public void createBuffers(int numBuffers, BufferCapabilities caps) throws AWTException {
-    // TODO
+    if (getGraphics() == null) {
+      throw new AWTException("Page flipping is not supported by " + getClass().getSimpleName());
+    }
+    Dimension size = getBufferSize();
+    if (size.width <= 0 || size.height <= 0) {
+      throw new AWTException("Can't create buffers for a component with no size");
+    }
+    SkinJobFlipChain oldChain = flipChain;
+    flipChain = new SkinJobFlipChain(numBuffers, size.width, size.height, backgroundColor,
+        this::presentBuffer);
+    if (oldChain != null) {
+      oldChain.destroy();
+    }
   }
 
   @Override
   public Image getBackBuffer() {
-    // TODO
-    return null;
+    return getFlipChain().getBackBuffer();
   }
 
   @Override
   public void flip(int x1, int y1, int x2, int y2, FlipContents flipAction) {
-    // TODO
+    getFlipChain().flip(x1, y1, x2, y2, flipAction);
   }
 
   @Override
   public void destroyBuffers() {
-    // TODO
+    SkinJobFlipChain oldChain = flipChain;
+    flipChain = null;
+    if (oldChain != null) {
+      oldChain.destroy();
+    }
+  }
+
+  /**
+   * @return the buffers created by {@link #createBuffers(int, BufferCapabilities)}, whose flip
+   * statistics can be used to monitor dropped frames and presentation latency
+   * @throws IllegalStateException if there are no buffers
+   */
+  public SkinJobFlipChain getFlipChain() {
+    SkinJobFlipChain chain = flipChain;
+    if (chain == null) {
+      throw new IllegalStateException("Buffers have not been created");
+    }
+    return chain;
+  }
+
+  /**
+   * @return the size of the buffers to create for page flipping
+   */
+  protected Dimension getBufferSize() {
+    return getPreferredSize();
+  }
+
+  /**
+   * Copies a flipped back buffer to the screen. The default implementation draws it onto the
+   * canvas of {@link #getGraphics()}.
+   */
+  protected void presentBuffer(Bitmap frame, Rect region) {
+    Canvas canvas = getCanvas(getGraphics());
+    synchronized (canvas) {
+      canvas.drawBitmap(frame, region, region, null);
+    }
   }
 
   @Override
@@ -172,6 +216,8 @@ public abstract class SkinJobComponentPeer<T> implements ComponentPeer {
   protected Canvas getCanvas(Graphics g) {
     if (g instanceof SkinJobGraphics) {
       return ((SkinJobGraphics) g).getCanvas();
+    } else if (g instanceof SkinJobGraphics2D) {
+      return ((SkinJobGraphics2D) g).getCanvas();
     } else {
       throw new UnsupportedOperationException();
     }
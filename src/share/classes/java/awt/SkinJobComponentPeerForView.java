@@ -1,6 +1,14 @@
 package java.awt;
 
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.os.Build.VERSION;
+import android.os.Build.VERSION_CODES;
 import android.util.DisplayMetrics;
+import android.view.Surface;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
 import android.view.View;
 import java.awt.peer.ComponentPeer;
 import sun.awt.CausedFocusEvent.Cause;
@@ -18,7 +26,7 @@ public abstract class SkinJobComponentPeerForView<T extends View> extends SkinJo
 
   public SkinJobComponentPeerForView(T androidComponent, GraphicsConfiguration configuration) {
     super(androidComponent, configuration);
-    graphics = new SkinJobGraphics(androidComponent.getDrawingCache());
+    graphics = new SkinJobGraphics2D(androidComponent.getDrawingCache());
   }
 
   @Override
@@ -80,7 +88,57 @@ public abstract class SkinJobComponentPeerForView<T extends View> extends SkinJo
 
   @Override
   public void setBackground(Color c) {
-    androidWidget.setBackgroundColor(c.getRGB());
+    backgroundColor = c.getRGB();
+    androidWidget.setBackgroundColor(backgroundColor);
+  }
+
+  @Override
+  protected Dimension getBufferSize() {
+    int width = androidWidget.getWidth();
+    int height = androidWidget.getHeight();
+    return (width > 0 && height > 0) ? new Dimension(width, height) : getPreferredSize();
+  }
+
+  /**
+   * Posts flipped frames straight to the surface when the view is a {@link SurfaceView}, using a
+   * hardware canvas where available; otherwise draws into the drawing cache and invalidates.
+   */
+  @Override
+  protected void presentBuffer(Bitmap frame, Rect region) {
+    if (androidWidget instanceof SurfaceView) {
+      SurfaceHolder holder = ((SurfaceView) androidWidget).getHolder();
+      Surface surface = holder.getSurface();
+      if (surface == null || !surface.isValid()) {
+        return; // Surface not created yet or already destroyed
+      }
+      if (VERSION.SDK_INT >= VERSION_CODES.O) {
+        // A hardware canvas has no dirty region, so the whole frame has to be redrawn.
+        Canvas canvas;
+        try {
+          canvas = surface.lockHardwareCanvas();
+        } catch (IllegalStateException | Surface.OutOfResourcesException e) {
+          return; // Surface destroyed since the check, or no buffer available; drop the frame
+        }
+        try {
+          canvas.drawBitmap(frame, 0, 0, null);
+        } finally {
+          surface.unlockCanvasAndPost(canvas);
+        }
+        return;
+      }
+      Canvas canvas = holder.lockCanvas(region);
+      if (canvas == null) {
+        return; // Surface destroyed since the check
+      }
+      try {
+        canvas.drawBitmap(frame, region, region, null);
+      } finally {
+        holder.unlockCanvasAndPost(canvas);
+      }
+      return;
+    }
+    super.presentBuffer(frame, region);
+    androidWidget.postInvalidate(region.left, region.top, region.right, region.bottom);
   }
 
   @Override
@@ -0,0 +1,247 @@
+package java.awt;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import java.awt.BufferCapabilities.FlipContents;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Page-flipping back buffers for {@link SkinJobComponentPeer#createBuffers(int,
+ * BufferCapabilities)}. The buffers are {@link Bitmap}s, and a flip hands the current one to a
+ * {@link Presenter} that copies it to the screen.
+ * <p>
+ * With two buffers the flip is synchronous: the back buffer is presented on the calling thread
+ * and then swapped with the front buffer. With three or more, flipped frames are queued for a
+ * presenter thread. Rendering of the next frame can then overlap presentation, which matters when
+ * the presenter blocks on vsync (e.g. {@link android.view.SurfaceHolder#lockCanvas()}). If every
+ * buffer is still queued when a flip happens, the oldest queued frame is dropped and its buffer
+ * reused. This is counted by {@link #getDroppedFrameCount()}.
+ */
+public class SkinJobFlipChain {
+
+  /**
+   * Copies a flipped frame to wherever the component is displayed.
+   */
+  public interface Presenter {
+    /**
+     * @param frame  the flipped back buffer; must not be retained after returning
+     * @param region the part of the frame to copy, in component coordinates
+     */
+    void present(Bitmap frame, Rect region);
+  }
+
+  private final Bitmap[] buffers;
+  private final SkinJobImage[] images;
+  private final boolean[] busy;
+  private final ArrayDeque<Frame> pending = new ArrayDeque<>();
+  private final Presenter presenter;
+  private final ExecutorService presenterThread;
+  private final int background;
+  private int backIndex = 0;
+  private int lastFlippedIndex = -1;
+  private boolean destroyed = false;
+
+  private long flipCount;
+  private long presentedCount;
+  private long droppedFrameCount;
+  private long lastFlipLatencyNanos;
+  private long totalFlipLatencyNanos;
+
+  /**
+   * @param numBuffers number of buffers including the front buffer; at least 2
+   * @param width      buffer width in pixels
+   * @param height     buffer height in pixels
+   * @param background ARGB color used for {@link FlipContents#BACKGROUND}
+   * @param presenter  copies flipped frames to the screen
+   */
+  public SkinJobFlipChain(
+      int numBuffers, int width, int height, int background, Presenter presenter) {
+    if (numBuffers < 2) {
+      throw new IllegalArgumentException("Number of buffers cannot be less than two");
+    }
+    buffers = new Bitmap[numBuffers];
+    images = new SkinJobImage[numBuffers];
+    busy = new boolean[numBuffers];
+    for (int i = 0; i < numBuffers; i++) {
+      images[i] = new SkinJobImage(width, height);
+      buffers[i] = images[i].androidBitmap;
+      buffers[i].eraseColor(background);
+    }
+    this.background = background;
+    this.presenter = presenter;
+    presenterThread = numBuffers > 2 ? Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "SkinJob buffer presenter");
+      thread.setDaemon(true);
+      return thread;
+    }) : null;
+  }
+
+  /**
+   * @return the buffer that should be drawn into next
+   */
+  public synchronized Image getBackBuffer() {
+    return images[backIndex];
+  }
+
+  /**
+   * Shows the given region of the back buffer and then prepares the next back buffer according to
+   * {@code flipAction}.
+   */
+  public void flip(int x1, int y1, int x2, int y2, FlipContents flipAction) {
+    Frame frame;
+    synchronized (this) {
+      if (destroyed) {
+        throw new IllegalStateException("Buffers have been destroyed");
+      }
+      flipCount++;
+      int flipped = backIndex;
+      int priorFront = lastFlippedIndex;
+      frame = new Frame(flipped, new Rect(x1, y1, x2, y2), System.nanoTime());
+      lastFlippedIndex = flipped;
+      if (presenterThread == null) {
+        // Synchronous: present on this thread, then flip to the other buffer.
+        presentFrame(frame);
+        backIndex = flipAction == FlipContents.COPIED ? flipped : 1 - flipped;
+        if (flipAction == FlipContents.BACKGROUND) {
+          buffers[backIndex].eraseColor(background);
+        }
+        // With two buffers the new back buffer is the prior front buffer, so PRIOR is free.
+        return;
+      }
+      busy[flipped] = true;
+      pending.addLast(frame);
+      int next = nextFreeBuffer(flipped);
+      if (next < 0) {
+        Frame dropped = pending.pollFirst();
+        busy[dropped.index] = false;
+        droppedFrameCount++;
+        next = dropped.index;
+      }
+      prepareBackBuffer(next, flipped, priorFront, flipAction);
+      backIndex = next;
+    }
+    presenterThread.execute(this::presentNext);
+  }
+
+  private int nextFreeBuffer(int flipped) {
+    for (int i = 1; i < buffers.length; i++) {
+      int candidate = (flipped + i) % buffers.length;
+      if (!busy[candidate]) {
+        return candidate;
+      }
+    }
+    return -1;
+  }
+
+  private void prepareBackBuffer(int next, int flipped, int priorFront, FlipContents flipAction) {
+    if (flipAction == FlipContents.BACKGROUND) {
+      buffers[next].eraseColor(background);
+    } else if (flipAction == FlipContents.COPIED) {
+      copy(buffers[flipped], buffers[next]);
+    } else if (flipAction == FlipContents.PRIOR) {
+      if (priorFront < 0) {
+        buffers[next].eraseColor(background);
+      } else if (priorFront != next) {
+        copy(buffers[priorFront], buffers[next]);
+      }
+    }
+  }
+
+  private static void copy(Bitmap from, Bitmap to) {
+    new Canvas(to).drawBitmap(from, 0, 0, null);
+  }
+
+  private void presentNext() {
+    Frame frame;
+    synchronized (this) {
+      frame = pending.pollFirst();
+      if (frame == null || destroyed) {
+        // Dropped in favor of a newer frame.
+        return;
+      }
+    }
+    try {
+      presentFrame(frame);
+    } finally {
+      // Even if presenting failed, the buffer mustn't stay out of use for good.
+      synchronized (this) {
+        busy[frame.index] = false;
+      }
+    }
+  }
+
+  private void presentFrame(Frame frame) {
+    presenter.present(buffers[frame.index], frame.region);
+    long latency = System.nanoTime() - frame.flipTimeNanos;
+    synchronized (this) {
+      presentedCount++;
+      lastFlipLatencyNanos = latency;
+      totalFlipLatencyNanos += latency;
+    }
+  }
+
+  /**
+   * Stops presenting. Frames that are still queued are discarded, and the buffers return to
+   * {@link SkinJobBitmapPool} once no back buffer handed out is still referenced.
+   */
+  public void destroy() {
+    synchronized (this) {
+      destroyed = true;
+      pending.clear();
+    }
+    if (presenterThread != null) {
+      presenterThread.shutdown();
+    }
+  }
+
+  /**
+   * @return the number of times {@link #flip} has been called
+   */
+  public synchronized long getFlipCount() {
+    return flipCount;
+  }
+
+  /**
+   * @return the number of flipped frames that were actually presented
+   */
+  public synchronized long getPresentedCount() {
+    return presentedCount;
+  }
+
+  /**
+   * @return the number of flipped frames discarded because the presenter fell behind
+   */
+  public synchronized long getDroppedFrameCount() {
+    return droppedFrameCount;
+  }
+
+  /**
+   * @return nanoseconds between the most recent presented flip and its presentation completing
+   */
+  public synchronized long getLastFlipLatencyNanos() {
+    return lastFlipLatencyNanos;
+  }
+
+  /**
+   * @return mean nanoseconds between a flip and its presentation completing, over all presented
+   * frames
+   */
+  public synchronized long getAverageFlipLatencyNanos() {
+    return presentedCount == 0 ? 0 : totalFlipLatencyNanos / presentedCount;
+  }
+
+  private static final class Frame {
+    final int index;
+    final Rect region;
+    final long flipTimeNanos;
+
+    Frame(int index, Rect region, long flipTimeNanos) {
+      this.index = index;
+      this.region = region;
+      this.flipTimeNanos = flipTimeNanos;
+    }
+  }
+}
@@ -1,12 +1,119 @@
 package java.awt;
 
+import java.awt.font.FontRenderContext;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import sun.font.FontDesignMetrics;
+
 /**
- * Created by cryoc on 2016-10-10.
+ * SkinJob Android implementation of {@link FontMetrics}. Every measurement comes from the shared
+ * {@link FontDesignMetrics} of the font in the default render context, so text measures and
+ * rounds the same whichever of the two a caller was handed. Instances are shared through {@link
+ * #getInstance(Font)}.
  */
 public class SkinJobFontMetrics extends FontMetrics {
   private static final long serialVersionUID = 4349499587263708713L;
 
+  // Most-recently-used instances, so repeated lookups of the same few fonts don't allocate.
+  private static final int MAX_RECENT = 5;
+  private static final AtomicReferenceArray<SkinJobFontMetrics> recentMetrics =
+      new AtomicReferenceArray<>(MAX_RECENT);
+  private static final AtomicInteger recentIndex = new AtomicInteger();
+
+  private final transient FontDesignMetrics metrics;
+
+  /**
+   * Use {@link #getInstance(Font)} instead, unless a private instance is needed.
+   */
   public SkinJobFontMetrics(Font font) {
     super(font);
+    metrics = FontDesignMetrics.getMetrics(font);
+  }
+
+  /**
+   * Returns the shared metrics for a font, creating them on first use.
+   */
+  public static SkinJobFontMetrics getInstance(Font font) {
+    // The array publishes each instance safely, so its font, which FontMetrics doesn't make
+    // final, is seen set.
+    for (int i = 0; i < MAX_RECENT; i++) {
+      SkinJobFontMetrics metrics = recentMetrics.get(i);
+      if (metrics != null && metrics.font.equals(font)) {
+        return metrics;
+      }
+    }
+    // Cheap: the measurements are cached by FontDesignMetrics.
+    SkinJobFontMetrics metrics = new SkinJobFontMetrics(font);
+    recentMetrics.set(Math.floorMod(recentIndex.getAndIncrement(), MAX_RECENT), metrics);
+    return metrics;
+  }
+
+  @Override
+  public FontRenderContext getFontRenderContext() {
+    return metrics.getFontRenderContext();
+  }
+
+  @Override
+  public int getLeading() {
+    return metrics.getLeading();
+  }
+
+  @Override
+  public int getAscent() {
+    return metrics.getAscent();
+  }
+
+  @Override
+  public int getDescent() {
+    return metrics.getDescent();
+  }
+
+  @Override
+  public int getMaxAscent() {
+    return metrics.getMaxAscent();
+  }
+
+  @Override
+  public int getMaxDescent() {
+    return metrics.getMaxDescent();
+  }
+
+  @Override
+  public int getMaxAdvance() {
+    return metrics.getMaxAdvance();
+  }
+
+  @Override
+  public int charWidth(int codePoint) {
+    return metrics.charWidth(codePoint);
+  }
+
+  @Override
+  public int charWidth(char ch) {
+    return metrics.charWidth(ch);
+  }
+
+  @Override
+  public int stringWidth(String str) {
+    return metrics.stringWidth(str);
+  }
+
+  @Override
+  public int charsWidth(char[] data, int off, int len) {
+    return metrics.charsWidth(data, off, len);
+  }
+
+  @Override
+  public int bytesWidth(byte[] data, int off, int len) {
+    return metrics.bytesWidth(data, off, len);
+  }
+
+  @Override
+  public int[] getWidths() {
+    return metrics.getWidths();
+  }
+
+  private Object readResolve() {
+    return getInstance(font);
   }
 }
@@ -0,0 +1,211 @@
+package java.awt;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.RectF;
+import java.nio.ByteBuffer;
+
+/**
+ * Renders single glyphs of a {@link Font} into coverage masks, for the glyph caches in {@code
+ * sun.font}. Each glyph's outline is taken from Android with {@link Paint#getTextPath}, mapped to
+ * device space and filled into an {@link Config#ALPHA_8} bitmap. Instances aren't thread-safe.
+ * <p>
+ * LCD masks have 3 bytes per pixel, the coverage of its red, green and blue subpixels in that
+ * order, left to right or top to bottom. The glyph is rendered at 3 times the resolution along the
+ * subpixel axis, and each subpixel's coverage is the mean of its own sample and its 2 neighbors',
+ * which keeps color fringes down.
+ */
+public final class SkinJobGlyphRasterizer {
+  /**
+   * Coverage of 0 or 255 only.
+   */
+  public static final int BILEVEL = 0;
+  /**
+   * Antialiased coverage, 1 byte per pixel.
+   */
+  public static final int GRAY = 1;
+  /**
+   * Subpixel coverage for horizontal RGB stripes, 3 bytes per pixel.
+   */
+  public static final int LCD_HORIZONTAL = 2;
+  /**
+   * Subpixel coverage for vertical RGB stripes, 3 bytes per pixel.
+   */
+  public static final int LCD_VERTICAL = 3;
+
+  private final int mode;
+  private final Paint paint;
+  private final Matrix matrix = new Matrix();
+  // The device transform of a 1-point-wide advance.
+  private final float advanceX;
+  private final float advanceY;
+  private final Path path = new Path();
+  private final RectF bounds = new RectF();
+  private final char[] chars = new char[2];
+  private byte[] pixels = new byte[0];
+  private byte[] mask = new byte[0];
+
+  /**
+   * @param glyphTx the transform from glyph space to device space, including the point size, as
+   *                from {@link java.awt.geom.AffineTransform#getMatrix(double[])}
+   * @param mode    {@link #BILEVEL}, {@link #GRAY}, {@link #LCD_HORIZONTAL} or
+   *                {@link #LCD_VERTICAL}
+   */
+  public SkinJobGlyphRasterizer(Font font, double[] glyphTx, int mode) {
+    this.mode = mode;
+    float size = font.getSize2D();
+    paint = new Paint();
+    paint.setTypeface(font.androidTypeface);
+    paint.setTextSize(size);
+    paint.setAntiAlias(mode != BILEVEL);
+    float m00 = (float) (glyphTx[0] / size);
+    float m10 = (float) (glyphTx[1] / size);
+    float m01 = (float) (glyphTx[2] / size);
+    float m11 = (float) (glyphTx[3] / size);
+    advanceX = m00;
+    advanceY = m10;
+    float sx = mode == LCD_HORIZONTAL ? 3 : 1;
+    float sy = mode == LCD_VERTICAL ? 3 : 1;
+    matrix.setValues(new float[] {m00 * sx, m01 * sx, 0, m10 * sy, m11 * sy, 0, 0, 0, 1});
+  }
+
+  /**
+   * Stores the device-space advance of a glyph in {@code advance[0]} and {@code advance[1]}.
+   */
+  public void getAdvance(int codePoint, float[] advance) {
+    float width = paint.measureText(chars, 0, Character.toChars(codePoint, chars, 0));
+    advance[0] = width * advanceX;
+    advance[1] = width * advanceY;
+  }
+
+  /**
+   * Renders a glyph with its origin {@code dx} pixels right of a pixel corner.
+   *
+   * @param metrics receives the mask's left and top, relative to the glyph origin, and its width
+   *                and height in pixels
+   * @return the mask, {@code metrics[2]} bytes per row, or 3 times that for LCD masks; only valid
+   *     until the next call
+   */
+  public byte[] rasterize(int codePoint, float dx, int[] metrics) {
+    paint.getTextPath(chars, 0, Character.toChars(codePoint, chars, 0), 0, 0, path);
+    path.transform(matrix);
+    path.offset(mode == LCD_HORIZONTAL ? dx * 3 : dx, 0);
+    path.computeBounds(bounds, true);
+    if (bounds.isEmpty()) {
+      metrics[0] = metrics[1] = metrics[2] = metrics[3] = 0;
+      return mask;
+    }
+    int left = (int) Math.floor(bounds.left);
+    int top = (int) Math.floor(bounds.top);
+    int right = (int) Math.ceil(bounds.right);
+    int bottom = (int) Math.ceil(bounds.bottom);
+    switch (mode) {
+      case LCD_HORIZONTAL: {
+        // Whole pixels, with room for the filter to spread one subpixel either way.
+        int pixelLeft = (int) Math.floor((left - 1) / 3.0);
+        int pixelRight = (int) Math.ceil((right + 1) / 3.0);
+        int width = pixelRight - pixelLeft;
+        int height = bottom - top;
+        int rowBytes = render(pixelLeft * 3 - 1, top, width * 3 + 2, height);
+        filterHorizontal(width, height, rowBytes);
+        setMetrics(metrics, pixelLeft, top, width, height);
+        break;
+      }
+      case LCD_VERTICAL: {
+        int pixelTop = (int) Math.floor((top - 1) / 3.0);
+        int pixelBottom = (int) Math.ceil((bottom + 1) / 3.0);
+        int width = right - left;
+        int height = pixelBottom - pixelTop;
+        int rowBytes = render(left, pixelTop * 3 - 1, width, height * 3 + 2);
+        filterVertical(width, height, rowBytes);
+        setMetrics(metrics, left, pixelTop, width, height);
+        break;
+      }
+      default: {
+        int width = right - left;
+        int height = bottom - top;
+        int rowBytes = render(left, top, width, height);
+        ensureMask(width * height);
+        for (int y = 0; y < height; y++) {
+          System.arraycopy(pixels, y * rowBytes, mask, y * width, width);
+        }
+        setMetrics(metrics, left, top, width, height);
+        break;
+      }
+    }
+    return mask;
+  }
+
+  private static void setMetrics(int[] metrics, int left, int top, int width, int height) {
+    metrics[0] = left;
+    metrics[1] = top;
+    metrics[2] = width;
+    metrics[3] = height;
+  }
+
+  /**
+   * Fills {@link #path}, less the given origin, into {@link #pixels}.
+   *
+   * @return the number of bytes per row in {@link #pixels}
+   */
+  private int render(int left, int top, int width, int height) {
+    Bitmap bitmap = Bitmap.createBitmap(width, height, Config.ALPHA_8);
+    Canvas canvas = new Canvas(bitmap);
+    canvas.translate(-left, -top);
+    canvas.drawPath(path, paint);
+    int rowBytes = bitmap.getRowBytes();
+    if (pixels.length < rowBytes * height) {
+      pixels = new byte[rowBytes * height];
+    }
+    bitmap.copyPixelsToBuffer(ByteBuffer.wrap(pixels));
+    bitmap.recycle();
+    return rowBytes;
+  }
+
+  /**
+   * Sets each subpixel of {@link #mask} to the mean of its sample in {@link #pixels}, rendered at
+   * 3 times the horizontal resolution with one extra sample at either end, and its neighbors'.
+   */
+  private void filterHorizontal(int width, int height, int rowBytes) {
+    int subpixels = width * 3;
+    ensureMask(subpixels * height);
+    for (int y = 0; y < height; y++) {
+      int src = y * rowBytes;
+      int dst = y * subpixels;
+      for (int i = 0; i < subpixels; i++) {
+        int sum = (pixels[src + i] & 0xFF) + (pixels[src + i + 1] & 0xFF)
+            + (pixels[src + i + 2] & 0xFF);
+        mask[dst + i] = (byte) ((sum + 1) / 3);
+      }
+    }
+  }
+
+  /**
+   * Like {@link #filterHorizontal}, with {@link #pixels} rendered at 3 times the vertical
+   * resolution.
+   */
+  private void filterVertical(int width, int height, int rowBytes) {
+    ensureMask(width * 3 * height);
+    int dst = 0;
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        for (int s = 0; s < 3; s++) {
+          int src = (y * 3 + s) * rowBytes + x;
+          int sum = (pixels[src] & 0xFF) + (pixels[src + rowBytes] & 0xFF)
+              + (pixels[src + 2 * rowBytes] & 0xFF);
+          mask[dst++] = (byte) ((sum + 1) / 3);
+        }
+      }
+    }
+  }
+
+  private void ensureMask(int length) {
+    if (mask.length < length) {
+      mask = new byte[length];
+    }
+  }
+}
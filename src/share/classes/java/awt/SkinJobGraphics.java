@@ -3,15 +3,18 @@ package java.awt;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Paint;
+import android.graphics.Paint.Cap;
+import android.graphics.Paint.Join;
 import android.graphics.Paint.Style;
-import android.text.SpannableStringBuilder;
-import android.widget.TextView;
+import android.graphics.Path;
+import android.graphics.Path.FillType;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.text.StaticLayout;
 import java.awt.image.ImageObserver;
 import java.text.AttributedCharacterIterator;
-import java.text.AttributedCharacterIterator.Attribute;
-import java.text.CharacterIterator;
 import java.util.Collections;
-import java.util.Map;
 import java.util.Set;
 import java.util.WeakHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -23,27 +26,62 @@ public class SkinJobGraphics extends Graphics {
   private static final String TAG = "SkinJobGraphics";
   private final Set<CancelableImageObserver> pendingObservers = Collections.synchronizedSet(
       Collections.newSetFromMap(new WeakHashMap<>()));
+  private final Bitmap androidBitmap;
   private final Canvas canvas;
-  private final android.graphics.Paint pen;
-  private final android.graphics.Paint brush;
-  private final android.graphics.Paint eraser;
+  private final SkinJobPaintCache paints = new SkinJobPaintCache();
   private int color = Color.BLACK.getRGB();
+  private Font font = SkinJob.defaultFont;
+  private float strokeWidth = 0;
+  private Cap strokeCap = Cap.BUTT;
+  private Join strokeJoin = Join.MITER;
+  private float miterLimit = SkinJob.defaultMiterLimit;
+  private PorterDuff.Mode compositeMode = null;
+  private boolean antiAlias = false;
+  private Color xorColor;  // null in paint mode
+  private SkinJobXorMode xorMode;
+  private Path deviceClip;  // null when unclipped; used in XOR mode only
+  private final RectF xorBounds = new RectF();
+
+  // Paints for the current state; null when the state has changed since they were looked up.
+  private Paint pen;
+  private Paint brush;
+
+  // Scratch space for polygons and polylines; reused so that repeated calls don't allocate.
+  private final Path polyPath = new Path();
+  private float[] lineCoords = new float[64];
+
+  // Scratch rectangles for scaled image drawing.
+  private final Rect imageSrcRect = new Rect();
+  private final RectF imageDstRect = new RectF();
 
   public SkinJobGraphics(Bitmap androidBitmap) {
-    pen = new android.graphics.Paint();
-    pen.setStrokeWidth(0);
-    pen.setStyle(Style.STROKE);
-    brush = new android.graphics.Paint();
-    brush.setStyle(Style.FILL);
-    eraser = new android.graphics.Paint();
-    eraser.setStyle(Style.FILL);
-    eraser.setAlpha(0);
+    this.androidBitmap = androidBitmap;
     canvas = new Canvas(androidBitmap);
   }
 
   @Override
   public Graphics create() {
-    return null;
+    SkinJobGraphics copy = new SkinJobGraphics(androidBitmap);
+    copy.canvas.setMatrix(canvas.getMatrix());
+    copy.copyStateFrom(this);
+    return copy;
+  }
+
+  /**
+   * Copies the color, font, stroke, composite and antialiasing state of another instance.
+   */
+  protected void copyStateFrom(SkinJobGraphics other) {
+    color = other.color;
+    font = other.font;
+    strokeWidth = other.strokeWidth;
+    strokeCap = other.strokeCap;
+    strokeJoin = other.strokeJoin;
+    miterLimit = other.miterLimit;
+    compositeMode = other.compositeMode;
+    antiAlias = other.antiAlias;
+    xorColor = other.xorColor;
+    deviceClip = other.deviceClip;
+    invalidatePaints();
   }
 
   @Override
@@ -57,35 +95,222 @@ public class SkinJobGraphics extends Graphics {
   }
 
   @Override
-  public synchronized void setColor(Color c) {
-    color = c.getRGB();
-    pen.setColor(color);
-    brush.setColor(color);
+  public void setColor(Color c) {
+    if (c == null) {
+      return;
+    }
+    int newColor = c.getRGB();
+    if (newColor != color) {
+      color = newColor;
+      invalidatePaints();
+    }
   }
 
   @Override
   public void setPaintMode() {
-    // TODO
+    xorColor = null;
+    setCompositeMode(null);
+    invalidatePaints();
   }
 
+  /**
+   * Draws in XOR mode with {@link SkinJobXorMode}: drawing the same thing twice restores the
+   * original pixels.
+   */
   @Override
   public void setXORMode(Color c1) {
-    // TODO
+    if (c1 == null) {
+      return;
+    }
+    xorColor = c1;
+    invalidatePaints();
   }
 
   @Override
   public Font getFont() {
-    return null;
+    return font;
   }
 
   @Override
   public void setFont(Font font) {
+    if (font != null && font != this.font) {
+      this.font = font;
+      invalidatePaints();
+    }
+  }
+
+  /**
+   * Sets the stroke used by the outline-drawing methods.
+   *
+   * @param width      stroke width in pixels, or 0 for a hairline
+   * @param cap        end-cap decoration
+   * @param join       join decoration
+   * @param miterLimit limit on the length of mitered joins
+   */
+  protected void setStrokeState(float width, Cap cap, Join join, float miterLimit) {
+    if (width != strokeWidth || cap != strokeCap || join != strokeJoin
+        || miterLimit != this.miterLimit) {
+      strokeWidth = width;
+      strokeCap = cap;
+      strokeJoin = join;
+      this.miterLimit = miterLimit;
+      pen = null;
+    }
+  }
+
+  /**
+   * Sets the Porter-Duff mode used to composite subsequent drawing operations.
+   *
+   * @param mode the transfer mode, or null for the default (source-over)
+   */
+  protected void setCompositeMode(PorterDuff.Mode mode) {
+    if (mode != compositeMode) {
+      compositeMode = mode;
+      invalidatePaints();
+    }
+  }
+
+  /**
+   * Sets the clip, in device space, that drawing in XOR mode must honor. Other drawing is clipped
+   * by the canvas.
+   *
+   * @param deviceClip the clip, which mustn't be modified afterward, or null if unclipped
+   */
+  void setDeviceClip(Path deviceClip) {
+    this.deviceClip = deviceClip;
+  }
+
+  /**
+   * Sets whether subsequent drawing operations antialias their edges.
+   */
+  protected void setAntiAlias(boolean antiAlias) {
+    if (antiAlias != this.antiAlias) {
+      this.antiAlias = antiAlias;
+      invalidatePaints();
+    }
+  }
+
+  private void invalidatePaints() {
+    pen = null;
+    brush = null;
+  }
+
+  /**
+   * @return a {@link Paint} that strokes outlines with the current color, stroke, composite and
+   * font. Owned by this object; don't modify it.
+   */
+  protected Paint getPen() {
+    Paint paint = pen;
+    if (paint == null) {
+      paint = paints.get(Style.STROKE, drawColor(color), strokeWidth, strokeCap, strokeJoin,
+          miterLimit, drawMode(compositeMode), font.androidTypeface, font.getSize2D(),
+          drawAntiAlias());
+      if (paint == brush) {
+        // The lookup reconfigured the brush's pool entry.
+        brush = null;
+      }
+      pen = paint;
+    }
+    return paint;
+  }
+
+  /**
+   * @return a {@link Paint} that fills shapes and text with the current color, composite and
+   * font. Owned by this object; don't modify it.
+   */
+  protected Paint getBrush() {
+    Paint paint = brush;
+    if (paint == null) {
+      paint = paints.get(Style.FILL, drawColor(color), strokeWidth, strokeCap, strokeJoin,
+          miterLimit, drawMode(compositeMode), font.androidTypeface, font.getSize2D(),
+          drawAntiAlias());
+      if (paint == pen) {
+        // The lookup reconfigured the pen's pool entry.
+        pen = null;
+      }
+      brush = paint;
+    }
+    return paint;
+  }
+
+  /**
+   * @return a fill {@link Paint} for the given color and mode, used e.g. for image backgrounds.
+   * Owned by this object; don't modify it.
+   */
+  protected Paint getFillPaint(int fillColor, PorterDuff.Mode mode) {
+    Paint paint = paints.get(Style.FILL, drawColor(fillColor), strokeWidth, strokeCap,
+        strokeJoin, miterLimit, drawMode(mode), font.androidTypeface, font.getSize2D(),
+        drawAntiAlias());
+    if (paint == pen) {
+      pen = null;
+    } else if (paint == brush && (fillColor != color || mode != compositeMode)) {
+      brush = null;
+    }
+    return paint;
+  }
 
+  // In XOR mode, operations are drawn opaquely, unblended and aliased into SkinJobXorMode's mask.
+
+  private int drawColor(int argb) {
+    return xorColor == null ? argb : argb | 0xFF000000;
+  }
+
+  private PorterDuff.Mode drawMode(PorterDuff.Mode mode) {
+    return xorColor == null ? mode : null;
+  }
+
+  private boolean drawAntiAlias() {
+    return antiAlias && xorColor == null;
+  }
+
+  /**
+   * Starts a drawing operation that draws within the given bounds, before the canvas matrix.
+   *
+   * @param stroked whether the operation strokes an outline, which may extend past the bounds
+   * @return the canvas to draw on, then call {@link #endDraw}; or null to draw nothing
+   */
+  private Canvas beginDraw(float left, float top, float right, float bottom, boolean stroked) {
+    if (xorColor == null) {
+      return canvas;
+    }
+    // Allow for miters and for rounding.
+    float outset = stroked ? Math.max(strokeWidth, 1) * Math.max(miterLimit, 1) / 2 + 1 : 1;
+    xorBounds.set(left - outset, top - outset, right + outset, bottom + outset);
+    if (xorMode == null) {
+      xorMode = new SkinJobXorMode();
+    }
+    return xorMode.begin(androidBitmap, canvas, xorBounds, deviceClip, xorColor);
+  }
+
+  private void endDraw() {
+    if (xorColor != null) {
+      xorMode.end();
+    }
+  }
+
+  /**
+   * Starts loading an image that loads in the background, at a resolution suitable for drawing it
+   * at the given size.
+   *
+   * @return whether the image is fully loaded
+   */
+  private static boolean requestImage(Image img, int width, int height, ImageObserver observer) {
+    if (img instanceof SkinJobImage) {
+      return ((SkinJobImage) img).prepare(width, height, observer);
+    }
+    return true;
+  }
+
+  /**
+   * @return a paint that draws bitmaps opaquely with the current composite mode
+   */
+  protected Paint getImagePaint() {
+    return getFillPaint(0xFF000000, compositeMode);
   }
 
   @Override
   public FontMetrics getFontMetrics(Font f) {
-    return new SkinJobFontMetrics(f);
+    return SkinJobFontMetrics.getInstance(f);
   }
 
   @Override
@@ -120,102 +345,250 @@ public class SkinJobGraphics extends Graphics {
 
   @Override
   public void drawLine(int x1, int y1, int x2, int y2) {
-    canvas.drawLine(x1, y1, x2, y2, pen);
+    Canvas c = beginDraw(Math.min(x1, x2), Math.min(y1, y2), Math.max(x1, x2), Math.max(y1, y2),
+        true);
+    if (c != null) {
+      c.drawLine(x1, y1, x2, y2, getPen());
+      endDraw();
+    }
   }
 
   @Override
   public void fillRect(int x, int y, int width, int height) {
-    canvas.drawRect(x, y, x + width, y + height, brush);
+    Canvas c = beginDraw(x, y, x + width, y + height, false);
+    if (c != null) {
+      c.drawRect(x, y, x + width, y + height, getBrush());
+      endDraw();
+    }
   }
 
   @Override
   public void clearRect(int x, int y, int width, int height) {
-    canvas.drawRect(x, y, x + width, y + height, eraser);
+    canvas.drawRect(
+        x, y, x + width, y + height, getFillPaint(0, PorterDuff.Mode.CLEAR));
   }
 
   @Override
   public void drawRoundRect(int x, int y, int width, int height, int arcWidth, int arcHeight) {
-    canvas.drawRoundRect(x, y, x + width, y + height, arcWidth, arcHeight, pen);
+    Canvas c = beginDraw(x, y, x + width, y + height, true);
+    if (c != null) {
+      c.drawRoundRect(x, y, x + width, y + height, arcWidth, arcHeight, getPen());
+      endDraw();
+    }
   }
 
   @Override
   public void fillRoundRect(int x, int y, int width, int height, int arcWidth, int arcHeight) {
-    canvas.drawRoundRect(x, y, x + width, y + height, arcWidth, arcHeight, brush);
+    Canvas c = beginDraw(x, y, x + width, y + height, false);
+    if (c != null) {
+      c.drawRoundRect(x, y, x + width, y + height, arcWidth, arcHeight, getBrush());
+      endDraw();
+    }
   }
 
   @Override
   public void drawOval(int x, int y, int width, int height) {
-    canvas.drawOval(x, y, x + width, y + height, pen);
+    Canvas c = beginDraw(x, y, x + width, y + height, true);
+    if (c != null) {
+      c.drawOval(x, y, x + width, y + height, getPen());
+      endDraw();
+    }
   }
 
   @Override
   public void fillOval(int x, int y, int width, int height) {
-    canvas.drawOval(x, y, x + width, y + height, brush);
+    Canvas c = beginDraw(x, y, x + width, y + height, false);
+    if (c != null) {
+      c.drawOval(x, y, x + width, y + height, getBrush());
+      endDraw();
+    }
   }
 
   @Override
   public void drawArc(int x, int y, int width, int height, int startAngle, int arcAngle) {
-    canvas.drawArc(x, y, x + width, y + height, startAngle, arcAngle, false, pen);
+    Canvas c = beginDraw(x, y, x + width, y + height, true);
+    if (c != null) {
+      c.drawArc(x, y, x + width, y + height, startAngle, arcAngle, false, getPen());
+      endDraw();
+    }
   }
 
   @Override
   public void fillArc(int x, int y, int width, int height, int startAngle, int arcAngle) {
-    canvas.drawArc(x, y, x + width, y + height, startAngle, arcAngle, false, brush);
+    Canvas c = beginDraw(x, y, x + width, y + height, false);
+    if (c != null) {
+      c.drawArc(x, y, x + width, y + height, startAngle, arcAngle, false, getBrush());
+      endDraw();
+    }
   }
 
   @Override
   public void drawPolyline(int[] xPoints, int[] yPoints, int nPoints) {
-    for (int i = 1; i < nPoints; i++) {
-      drawLine(xPoints[i - 1], yPoints[i - 1], xPoints[i], yPoints[i]);
-    }
+    drawPoly(xPoints, yPoints, nPoints, false);
   }
 
   @Override
   public void drawPolygon(int[] xPoints, int[] yPoints, int nPoints) {
-    drawPolyline(xPoints, yPoints, nPoints);
-    drawLine(xPoints[nPoints - 1], yPoints[nPoints - 1], xPoints[0], yPoints[0]);
+    drawPoly(xPoints, yPoints, nPoints, true);
   }
 
   @Override
   public void fillPolygon(int[] xPoints, int[] yPoints, int nPoints) {
-    // TODO
+    if (nPoints < 3) {
+      return;
+    }
+    Path path = buildPolyPath(xPoints, yPoints, nPoints, true);
+    path.setFillType(FillType.EVEN_ODD); // AWT polygons always use the even-odd rule
+    Canvas c = beginPolyDraw(xPoints, yPoints, nPoints, false);
+    if (c != null) {
+      c.drawPath(path, getBrush());
+      endDraw();
+    }
+  }
+
+  private void drawPoly(int[] xPoints, int[] yPoints, int nPoints, boolean close) {
+    if (nPoints < 2) {
+      return;
+    }
+    Canvas c = beginPolyDraw(xPoints, yPoints, nPoints, true);
+    if (c == null) {
+      return;
+    }
+    Paint paint = getPen();
+    if (paint.getStrokeWidth() == 0) {
+      // Hairlines have no joins, so the whole outline can go to the canvas as one batch of
+      // independent segments.
+      int segments = close ? nPoints : nPoints - 1;
+      float[] coords = ensureLineCoords(segments * 4);
+      int j = 0;
+      for (int i = 1; i < nPoints; i++) {
+        coords[j++] = xPoints[i - 1];
+        coords[j++] = yPoints[i - 1];
+        coords[j++] = xPoints[i];
+        coords[j++] = yPoints[i];
+      }
+      if (close) {
+        coords[j++] = xPoints[nPoints - 1];
+        coords[j++] = yPoints[nPoints - 1];
+        coords[j++] = xPoints[0];
+        coords[j++] = yPoints[0];
+      }
+      c.drawLines(coords, 0, j, paint);
+    } else {
+      // Wide strokes need a single path so that the segments are joined.
+      c.drawPath(buildPolyPath(xPoints, yPoints, nPoints, close), paint);
+    }
+    endDraw();
+  }
+
+  private Canvas beginPolyDraw(int[] xPoints, int[] yPoints, int nPoints, boolean stroked) {
+    if (xorColor == null) {
+      return canvas;
+    }
+    int minX = Integer.MAX_VALUE;
+    int minY = Integer.MAX_VALUE;
+    int maxX = Integer.MIN_VALUE;
+    int maxY = Integer.MIN_VALUE;
+    for (int i = 0; i < nPoints; i++) {
+      minX = Math.min(minX, xPoints[i]);
+      minY = Math.min(minY, yPoints[i]);
+      maxX = Math.max(maxX, xPoints[i]);
+      maxY = Math.max(maxY, yPoints[i]);
+    }
+    return beginDraw(minX, minY, maxX, maxY, stroked);
+  }
+
+  private Path buildPolyPath(int[] xPoints, int[] yPoints, int nPoints, boolean close) {
+    Path path = polyPath;
+    path.rewind();
+    path.setFillType(FillType.WINDING);
+    path.moveTo(xPoints[0], yPoints[0]);
+    for (int i = 1; i < nPoints; i++) {
+      path.lineTo(xPoints[i], yPoints[i]);
+    }
+    if (close) {
+      path.close();
+    }
+    return path;
+  }
+
+  private float[] ensureLineCoords(int length) {
+    float[] coords = lineCoords;
+    if (coords.length < length) {
+      coords = new float[Math.max(length, coords.length * 2)];
+      lineCoords = coords;
+    }
+    return coords;
   }
 
   @Override
   public void drawString(String str, int x, int y) {
-    canvas.drawText(str, x, y, brush);
+    Paint brush = getBrush();
+    Canvas c = canvas;
+    if (xorColor != null) {
+      Paint.FontMetrics metrics = brush.getFontMetrics();
+      // Allow for italic overhang.
+      float overhang = brush.getTextSize() / 2;
+      c = beginDraw(x - overhang, y + metrics.top, x + brush.measureText(str) + overhang,
+          y + metrics.bottom, false);
+      if (c == null) {
+        return;
+      }
+    }
+    c.drawText(str, x, y, brush);
+    endDraw();
   }
 
   @Override
-  public synchronized void drawString(AttributedCharacterIterator iterator, int x, int y) {
-    SpannableStringBuilder formattedText = new SpannableStringBuilder();
-    int charsWritten = 0;
-    for (char c = iterator.first(); c != CharacterIterator.DONE; c = iterator.next()) {
-      formattedText.append(c);
-      charsWritten++;
-      Map<Attribute, Object> attributes = iterator.getAttributes();
-      if (!attributes.isEmpty()) {
-        new SkinJobTextAttributesDecoder(color)
-            .addAttributes(attributes)
-            .applyTo(formattedText, charsWritten - 1, charsWritten);
-      }
+  public void drawString(AttributedCharacterIterator iterator, int x, int y) {
+    StaticLayout layout = SkinJobTextLayoutCache.get(iterator, getBrush());
+    if (layout.getLineCount() == 0) {
+      return;
+    }
+    // AWT positions text by its baseline; Android lays it out from the top.
+    float top = y - layout.getLineBaseline(0);
+    Canvas c = beginDraw(x, top, x + layout.getWidth(), top + layout.getHeight(), false);
+    if (c == null) {
+      return;
     }
-    TextView formattedTextView = new TextView(SkinJob.getAndroidApplicationContext());
-    formattedTextView.setText(formattedText);
-    formattedTextView.layout(x, y, canvas.getWidth(), canvas.getHeight());
-    formattedTextView.draw(canvas);
+    c.save();
+    c.translate(x, top);
+    layout.draw(c);
+    c.restore();
+    endDraw();
   }
 
   @Override
   public boolean drawImage(Image img, int x, int y, ImageObserver observer) {
-    // TODO
-    return false;
+    img = SkinJobImage.toDrawable(img);
+    if (img == null) {
+      return false;
+    }
+    boolean loaded = requestImage(img, -1, -1, observer);
+    Bitmap bitmap = SkinJobImage.getBitmap(img);
+    if (bitmap == null) {
+      return false;  // still loading; the observer hears when it's done
+    }
+    // If decoded at reduced resolution, this stretches it back to the image's size.
+    imageDstRect.set(x, y, x + img.getWidth(null), y + img.getHeight(null));
+    drawBitmap(bitmap, null, false, false);
+    return loaded;
   }
 
   @Override
   public boolean drawImage(Image img, int x, int y, int width, int height, ImageObserver observer) {
-    // TODO
-    return false;
+    img = SkinJobImage.toDrawable(img);
+    if (img == null) {
+      return false;
+    }
+    boolean loaded = requestImage(img, width, height, observer);
+    Bitmap bitmap = SkinJobImage.getBitmap(img);
+    if (bitmap == null) {
+      return false;  // still loading; the observer hears when it's done
+    }
+    imageDstRect.set(x, y, x + width, y + height);
+    drawBitmap(bitmap, null, false, false);
+    return loaded;
   }
 
   @Override
@@ -232,10 +605,7 @@ public class SkinJobGraphics extends Graphics {
     int width = img.getWidth(wrapperObserver);
     int height = img.getHeight(wrapperObserver);
     if (width >= 0 && height >= 0) {
-      Paint bg = new Paint();
-      bg.setStyle(Style.FILL);
-      bg.setColor(bgcolor.getRGB());
-      canvas.drawRect(x, y, x + width, y + height, bg);
+      fillBackground(bgcolor, x, y, x + width, y + height);
       return drawImage(img, x, y, observer);
     } else {
       return false;
@@ -245,10 +615,7 @@ public class SkinJobGraphics extends Graphics {
   @Override
   public boolean drawImage(
       Image img, int x, int y, int width, int height, Color bgcolor, ImageObserver observer) {
-    Paint bg = new Paint();
-    bg.setStyle(Style.FILL);
-    bg.setColor(bgcolor.getRGB());
-    canvas.drawRect(x, y, x + width, y + height, bg);
+    fillBackground(bgcolor, x, y, x + width, y + height);
     return drawImage(img, x, y, width, height, observer);
   }
 
@@ -256,21 +623,82 @@ public class SkinJobGraphics extends Graphics {
   public boolean drawImage(
       Image img, int dx1, int dy1, int dx2, int dy2, int sx1, int sy1, int sx2, int sy2,
       ImageObserver observer) {
-    // TODO
-    return false;
+    img = SkinJobImage.toDrawable(img);
+    if (img == null) {
+      return false;
+    }
+    int naturalWidth = img.getWidth(null);
+    int naturalHeight = img.getHeight(null);
+    boolean loaded = requestImage(img,
+        naturalWidth < 0 ? -1 : (int) ((long) Math.abs(dx2 - dx1) * naturalWidth
+            / Math.max(1, Math.abs(sx2 - sx1))),
+        naturalHeight < 0 ? -1 : (int) ((long) Math.abs(dy2 - dy1) * naturalHeight
+            / Math.max(1, Math.abs(sy2 - sy1))),
+        observer);
+    Bitmap bitmap = SkinJobImage.getBitmap(img);
+    if (bitmap == null) {
+      return false;  // still loading; the observer hears when it's done
+    }
+    if (naturalWidth > 0 && naturalWidth != bitmap.getWidth()) {
+      // Decoded at reduced resolution; map the source rectangle onto the smaller bitmap.
+      sx1 = (int) ((long) sx1 * bitmap.getWidth() / naturalWidth);
+      sx2 = (int) ((long) sx2 * bitmap.getWidth() / naturalWidth);
+    }
+    if (naturalHeight > 0 && naturalHeight != bitmap.getHeight()) {
+      sy1 = (int) ((long) sy1 * bitmap.getHeight() / naturalHeight);
+      sy2 = (int) ((long) sy2 * bitmap.getHeight() / naturalHeight);
+    }
+    // AWT mirrors the image when exactly one of the rectangles is flipped; Android can't draw
+    // a negative-size rectangle, so normalize both and mirror with the canvas instead.
+    imageSrcRect.set(
+        Math.min(sx1, sx2), Math.min(sy1, sy2), Math.max(sx1, sx2), Math.max(sy1, sy2));
+    imageDstRect.set(
+        Math.min(dx1, dx2), Math.min(dy1, dy2), Math.max(dx1, dx2), Math.max(dy1, dy2));
+    drawBitmap(bitmap, imageSrcRect, (dx2 < dx1) != (sx2 < sx1), (dy2 < dy1) != (sy2 < sy1));
+    return loaded;
   }
 
   @Override
   public boolean drawImage(
       Image img, int dx1, int dy1, int dx2, int dy2, int sx1, int sy1, int sx2, int sy2,
       Color bgcolor, ImageObserver observer) {
-    Paint bg = new Paint();
-    bg.setStyle(Style.FILL);
-    bg.setColor(bgcolor.getRGB());
-    canvas.drawRect(dx1, dy1, dx2, dy2, bg);
+    fillBackground(bgcolor, Math.min(dx1, dx2), Math.min(dy1, dy2), Math.max(dx1, dx2),
+        Math.max(dy1, dy2));
     return drawImage(img, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2, observer);
   }
 
+  /**
+   * Draws {@code src} of a bitmap, or all of it if null, into {@link #imageDstRect}, mirrored as
+   * requested.
+   */
+  private void drawBitmap(Bitmap bitmap, Rect src, boolean flipX, boolean flipY) {
+    RectF dst = imageDstRect;
+    Canvas c = beginDraw(dst.left, dst.top, dst.right, dst.bottom, false);
+    if (c == null) {
+      return;
+    }
+    if (flipX || flipY) {
+      int saveCount = c.save();
+      c.scale(flipX ? -1 : 1, flipY ? -1 : 1, dst.centerX(), dst.centerY());
+      c.drawBitmap(bitmap, src, dst, getImagePaint());
+      c.restoreToCount(saveCount);
+    } else if (src == null && dst.width() == bitmap.getWidth()
+        && dst.height() == bitmap.getHeight()) {
+      c.drawBitmap(bitmap, dst.left, dst.top, getImagePaint());
+    } else {
+      c.drawBitmap(bitmap, src, dst, getImagePaint());
+    }
+    endDraw();
+  }
+
+  private void fillBackground(Color bgcolor, int left, int top, int right, int bottom) {
+    Canvas c = beginDraw(left, top, right, bottom, false);
+    if (c != null) {
+      c.drawRect(left, top, right, bottom, getFillPaint(bgcolor.getRGB(), compositeMode));
+      endDraw();
+    }
+  }
+
   @Override
   public void dispose() {
     for (CancelableImageObserver observer : pendingObservers) {
@@ -282,6 +710,10 @@ public class SkinJobGraphics extends Graphics {
     return canvas;
   }
 
+  public Bitmap getBitmap() {
+    return androidBitmap;
+  }
+
   private abstract static class CancelableImageObserver implements ImageObserver {
     private final AtomicBoolean canceled = new AtomicBoolean(false);
 
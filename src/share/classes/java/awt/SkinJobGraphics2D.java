@@ -0,0 +1,1221 @@
+package java.awt;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint.Cap;
+import android.graphics.Paint.Join;
+import android.graphics.Path;
+import android.graphics.Path.FillType;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import java.awt.RenderingHints.Key;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Arc2D;
+import java.awt.geom.Area;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.geom.RoundRectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.awt.image.ColorModel;
+import java.awt.image.DirectColorModel;
+import java.awt.image.ImageObserver;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.WritableRaster;
+import java.awt.image.renderable.RenderableImage;
+import java.nio.ByteBuffer;
+import java.text.AttributedCharacterIterator;
+import java.util.Map;
+import sun.java2d.pipe.AATileGenerator;
+import sun.java2d.pipe.Region;
+import sun.java2d.pipe.RenderingEngine;
+
+/**
+ * SkinJob Android implementation of {@link Graphics2D}.
+ * <p>
+ * Each drawing call is routed by complexity. Solid colors with {@link BasicStroke} outlines go
+ * straight to the {@link Canvas}: rectangles, ellipses, lines, round rectangles and arcs become
+ * the matching {@link Canvas} primitives, and other shapes become a single {@link Path}. Dashed or
+ * custom strokes, non-{@link Color} paints and custom composites instead have their coverage
+ * computed by the Java2D {@link RenderingEngine} (normally Pisces), and the resulting alpha tiles
+ * are colored and blitted into the {@link Bitmap}.
+ */
+public class SkinJobGraphics2D extends Graphics2D {
+  private static final BasicStroke DEFAULT_STROKE = new BasicStroke();
+  private static final ColorModel TILE_COLOR_MODEL = ColorModel.getRGBdefault();
+
+  protected final SkinJobGraphics graphics;
+  private final Canvas canvas;
+  private final Bitmap androidBitmap;
+  private final RenderingHints hints = new RenderingHints(null);
+  private final Matrix androidMatrix = new Matrix();
+  private final float[] matrixValues = new float[9];
+  private final float[] coords = new float[6];
+  private final Path scratchPath = new Path();
+  private final RectF scratchRectF = new RectF();
+  private final Rect tileSrcRect = new Rect();
+  private final Rect tileDstRect = new Rect();
+  private AffineTransform transform = new AffineTransform();
+  private Paint paint = Color.BLACK;
+  private Stroke stroke = DEFAULT_STROKE;
+  private Composite composite = AlphaComposite.SrcOver;
+  private Color background = Color.WHITE;
+  private Shape deviceClip;  // null when unclipped
+  private Color xorColor;  // null in paint mode
+  private int baseSaveCount;
+  private boolean matrixValid = false;
+  private boolean clipValid = false;
+
+  // Scratch space for the rasterizer route, grown on demand and then reused.
+  private int[] tileBbox = new int[4];
+  private byte[] tileAlpha;
+  private int[] tilePixels;
+  private int[] tileDstPixels;
+  private Bitmap tileBitmap;
+  private WritableRaster tileSrcRaster;
+  private WritableRaster tileDstRaster;
+
+  // Coverage of a non-rectangular clip, in device space, for drawing that bypasses the canvas;
+  // null until needed after each clip change.
+  private byte[] clipCoverage;
+  private final Rectangle clipCoverageBounds = new Rectangle();
+  private int clipCoverageStride;
+
+  // Scratch space for copyArea, grown on demand and then reused.
+  private Bitmap copyBitmap;
+  private Canvas copyCanvas;
+  private android.graphics.Paint copyPaint;
+
+  // Image whose pooled bitmap this draws into; kept reachable so the bitmap isn't reused early.
+  Object bitmapOwner;
+
+  public SkinJobGraphics2D(Bitmap androidBitmap) {
+    this(new SkinJobGraphics(androidBitmap));
+  }
+
+  protected SkinJobGraphics2D(SkinJobGraphics graphics) {
+    this.graphics = graphics;
+    canvas = graphics.getCanvas();
+    androidBitmap = graphics.getBitmap();
+    baseSaveCount = canvas.save();
+    updateStrokeState();
+  }
+
+  @Override
+  public Graphics create() {
+    SkinJobGraphics2D copy = new SkinJobGraphics2D(androidBitmap);
+    copy.graphics.copyStateFrom(graphics);
+    copy.transform = new AffineTransform(transform);
+    copy.paint = paint;
+    copy.stroke = stroke;
+    copy.composite = composite;
+    copy.background = background;
+    copy.deviceClip = deviceClip;
+    copy.xorColor = xorColor;
+    copy.hints.putAll(hints);
+    copy.bitmapOwner = bitmapOwner;
+    if (bitmapOwner instanceof SkinJobVolatileImage) {
+      ((SkinJobVolatileImage) bitmapOwner).graphicsCreated();
+    }
+    return copy;
+  }
+
+  public Canvas getCanvas() {
+    return canvas;
+  }
+
+  public Bitmap getBitmap() {
+    return androidBitmap;
+  }
+
+  // Canvas state
+
+  /**
+   * Brings the {@link Canvas} matrix and clip up to date with {@link #transform} and
+   * {@link #deviceClip}. The clip is kept in device space, so it only has to be reapplied when it
+   * changes; the canvas is restored to {@link #baseSaveCount} first because a canvas clip can only
+   * shrink.
+   */
+  private Canvas validateCanvas() {
+    if (!clipValid) {
+      canvas.restoreToCount(baseSaveCount);
+      baseSaveCount = canvas.save();
+      clipCoverage = null;
+      // The canvas clip doesn't reach drawing that SkinJobXorMode writes into the bitmap.
+      graphics.setDeviceClip(xorColor == null || deviceClip == null
+          ? null : new Path(toAndroidPath(deviceClip, null)));
+      if (deviceClip != null) {
+        canvas.setMatrix(null);
+        if (deviceClip instanceof Rectangle) {
+          Rectangle r = (Rectangle) deviceClip;
+          canvas.clipRect(r.x, r.y, r.x + r.width, r.y + r.height);
+        } else {
+          canvas.clipPath(toAndroidPath(deviceClip, null));
+        }
+      }
+      clipValid = true;
+      matrixValid = false;
+    }
+    if (!matrixValid) {
+      matrixValues[0] = (float) transform.getScaleX();
+      matrixValues[1] = (float) transform.getShearX();
+      matrixValues[2] = (float) transform.getTranslateX();
+      matrixValues[3] = (float) transform.getShearY();
+      matrixValues[4] = (float) transform.getScaleY();
+      matrixValues[5] = (float) transform.getTranslateY();
+      matrixValues[6] = 0;
+      matrixValues[7] = 0;
+      matrixValues[8] = 1;
+      androidMatrix.setValues(matrixValues);
+      canvas.setMatrix(androidMatrix);
+      matrixValid = true;
+      updateStrokeState();  // whether the stroke is a hairline depends on the scale
+    }
+    return canvas;
+  }
+
+  private Path toAndroidPath(Shape s, AffineTransform at) {
+    Path path = scratchPath;
+    path.rewind();
+    PathIterator pi = s.getPathIterator(at);
+    path.setFillType(pi.getWindingRule() == PathIterator.WIND_EVEN_ODD
+        ? FillType.EVEN_ODD : FillType.WINDING);
+    float[] c = coords;
+    for (; !pi.isDone(); pi.next()) {
+      switch (pi.currentSegment(c)) {
+        case PathIterator.SEG_MOVETO:
+          path.moveTo(c[0], c[1]);
+          break;
+        case PathIterator.SEG_LINETO:
+          path.lineTo(c[0], c[1]);
+          break;
+        case PathIterator.SEG_QUADTO:
+          path.quadTo(c[0], c[1], c[2], c[3]);
+          break;
+        case PathIterator.SEG_CUBICTO:
+          path.cubicTo(c[0], c[1], c[2], c[3], c[4], c[5]);
+          break;
+        case PathIterator.SEG_CLOSE:
+          path.close();
+          break;
+      }
+    }
+    return path;
+  }
+
+  // Routing
+
+  /**
+   * @return true if the current paint and composite can be expressed by a pooled
+   * {@link android.graphics.Paint}.
+   */
+  private boolean isSimplePaint() {
+    return paint instanceof Color && composite instanceof AlphaComposite;
+  }
+
+  /**
+   * @return true if shapes can be drawn straight onto the canvas, which can't draw in XOR mode.
+   * {@link SkinJobGraphics} draws its own primitives in XOR mode.
+   */
+  private boolean isCanvasPaint() {
+    return isSimplePaint() && xorColor == null;
+  }
+
+  /**
+   * @return true if the current stroke can be expressed by a pooled
+   * {@link android.graphics.Paint}.
+   */
+  private boolean isSimpleStroke() {
+    return stroke instanceof BasicStroke && ((BasicStroke) stroke).getDashArray() == null;
+  }
+
+  @Override
+  public void draw(Shape s) {
+    if (!isSimpleStroke()) {
+      if (stroke instanceof BasicStroke) {
+        renderTiles(s, (BasicStroke) stroke);
+      } else {
+        fill(stroke.createStrokedShape(s));
+      }
+      return;
+    }
+    if (!isCanvasPaint()) {
+      renderTiles(s, (BasicStroke) stroke);
+      return;
+    }
+    Canvas c = validateCanvas();
+    android.graphics.Paint pen = graphics.getPen();
+    if (s instanceof Line2D) {
+      Line2D l = (Line2D) s;
+      c.drawLine((float) l.getX1(), (float) l.getY1(), (float) l.getX2(), (float) l.getY2(), pen);
+    } else if (!drawPrimitive(c, s, pen)) {
+      c.drawPath(toAndroidPath(s, null), pen);
+    }
+  }
+
+  @Override
+  public void fill(Shape s) {
+    if (!isCanvasPaint()) {
+      renderTiles(s, null);
+      return;
+    }
+    Canvas c = validateCanvas();
+    android.graphics.Paint brush = graphics.getBrush();
+    if (!drawPrimitive(c, s, brush)) {
+      c.drawPath(toAndroidPath(s, null), brush);
+    }
+  }
+
+  /**
+   * Draws the shape with a single {@link Canvas} primitive if there is one for its type.
+   *
+   * @return false if the shape needs the general {@link Path} route
+   */
+  private boolean drawPrimitive(Canvas c, Shape s, android.graphics.Paint p) {
+    if (s instanceof Rectangle2D) {
+      Rectangle2D r = (Rectangle2D) s;
+      c.drawRect((float) r.getMinX(), (float) r.getMinY(), (float) r.getMaxX(),
+          (float) r.getMaxY(), p);
+      return true;
+    }
+    if (s instanceof Ellipse2D) {
+      Ellipse2D e = (Ellipse2D) s;
+      scratchRectF.set((float) e.getMinX(), (float) e.getMinY(), (float) e.getMaxX(),
+          (float) e.getMaxY());
+      c.drawOval(scratchRectF, p);
+      return true;
+    }
+    if (s instanceof RoundRectangle2D) {
+      RoundRectangle2D r = (RoundRectangle2D) s;
+      scratchRectF.set((float) r.getMinX(), (float) r.getMinY(), (float) r.getMaxX(),
+          (float) r.getMaxY());
+      c.drawRoundRect(scratchRectF, (float) r.getArcWidth() / 2, (float) r.getArcHeight() / 2, p);
+      return true;
+    }
+    if (s instanceof Arc2D && ((Arc2D) s).getArcType() != Arc2D.CHORD) {
+      Arc2D a = (Arc2D) s;
+      scratchRectF.set((float) a.getMinX(), (float) a.getMinY(), (float) a.getMaxX(),
+          (float) a.getMaxY());
+      // AWT angles run counterclockwise on screen; Android's run clockwise.
+      c.drawArc(scratchRectF, (float) -a.getAngleStart(), (float) -a.getAngleExtent(),
+          a.getArcType() == Arc2D.PIE, p);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Renders the shape through the {@link RenderingEngine}'s antialiased tile generator, then
+   * colors each coverage tile with the current paint and composites it into the bitmap.
+   *
+   * @param bs the stroke to apply, or null to fill the shape
+   */
+  private void renderTiles(Shape s, BasicStroke bs) {
+    Rectangle clipBounds = deviceClip == null
+        ? new Rectangle(androidBitmap.getWidth(), androidBitmap.getHeight())
+        : deviceClip.getBounds().intersection(
+            new Rectangle(androidBitmap.getWidth(), androidBitmap.getHeight()));
+    if (clipBounds.isEmpty()) {
+      return;
+    }
+    boolean normalize = hints.get(RenderingHints.KEY_STROKE_CONTROL)
+        != RenderingHints.VALUE_STROKE_PURE;
+    AATileGenerator generator = RenderingEngine.getInstance().getAATileGenerator(
+        s, transform, Region.getInstance(clipBounds), bs, false, normalize, tileBbox);
+    if (generator == null) {
+      return;
+    }
+    CompositeContext compositeContext = null;
+    try {
+      int tileWidth = generator.getTileWidth();
+      int tileHeight = generator.getTileHeight();
+      ensureTileBuffers(tileWidth, tileHeight);
+      boolean antialias = hints.get(RenderingHints.KEY_ANTIALIASING)
+          == RenderingHints.VALUE_ANTIALIAS_ON;
+      PaintContext paintContext = paint instanceof Color ? null : paint.createContext(
+          TILE_COLOR_MODEL, clipBounds, s.getBounds2D(), transform, hints);
+      int rgb = paint instanceof Color ? ((Color) paint).getRGB() : 0;
+      if (xorColor != null) {
+        // XOR mode draws opaquely and without antialiasing.
+        rgb |= 0xFF000000;
+        antialias = false;
+      }
+      Canvas c = validateCanvas();
+      c.save();
+      c.setMatrix(null);  // tiles are in device space
+      android.graphics.Paint blitPaint = graphics.getFillPaint(0xFF000000, compositeMode());
+      float extraAlpha = composite instanceof AlphaComposite
+          ? ((AlphaComposite) composite).getAlpha() : 1.0f;
+      if (!(composite instanceof AlphaComposite)) {
+        compositeContext = composite.createContext(TILE_COLOR_MODEL, TILE_COLOR_MODEL, hints);
+      }
+      for (int y = tileBbox[1]; y < tileBbox[3]; y += tileHeight) {
+        int h = Math.min(tileHeight, tileBbox[3] - y);
+        for (int x = tileBbox[0]; x < tileBbox[2]; x += tileWidth) {
+          int w = Math.min(tileWidth, tileBbox[2] - x);
+          int typicalAlpha = generator.getTypicalAlpha();
+          if (typicalAlpha == 0) {
+            generator.nextTile();
+            continue;
+          }
+          generator.getAlpha(tileAlpha, 0, tileWidth);
+          colorTile(paintContext, rgb, extraAlpha, antialias, x, y, w, h, tileWidth);
+          if (xorColor != null || compositeContext != null) {
+            // These routes write the bitmap directly, so the canvas clip doesn't apply.
+            clipTile(x, y, w, h, tileWidth);
+            if (xorColor != null) {
+              xorTile(x, y, w, h, tileWidth);
+            } else {
+              composeTile(compositeContext, x, y, w, h, tileWidth);
+            }
+          } else {
+            tileBitmap.setPixels(tilePixels, 0, tileWidth, 0, 0, w, h);
+            tileSrcRect.set(0, 0, w, h);
+            tileDstRect.set(x, y, x + w, y + h);
+            c.drawBitmap(tileBitmap, tileSrcRect, tileDstRect, blitPaint);
+          }
+        }
+      }
+      c.restore();
+      if (paintContext != null) {
+        paintContext.dispose();
+      }
+    } finally {
+      if (compositeContext != null) {
+        compositeContext.dispose();
+      }
+      generator.dispose();
+    }
+  }
+
+  private void ensureTileBuffers(int tileWidth, int tileHeight) {
+    int size = tileWidth * tileHeight;
+    if (tileAlpha == null || tileAlpha.length < size) {
+      tileAlpha = new byte[size];
+      tilePixels = new int[size];
+      tileDstPixels = new int[size];
+    }
+    if (tileBitmap == null || tileBitmap.getWidth() < tileWidth
+        || tileBitmap.getHeight() < tileHeight) {
+      tileBitmap = Bitmap.createBitmap(tileWidth, tileHeight, Config.ARGB_8888);
+    }
+    if (tileSrcRaster == null || tileSrcRaster.getWidth() < tileWidth
+        || tileSrcRaster.getHeight() < tileHeight) {
+      tileSrcRaster = TILE_COLOR_MODEL.createCompatibleWritableRaster(tileWidth, tileHeight);
+      tileDstRaster = TILE_COLOR_MODEL.createCompatibleWritableRaster(tileWidth, tileHeight);
+    }
+  }
+
+  /**
+   * Fills {@link #tilePixels} with the paint color for each pixel of the tile, scaled by the
+   * coverage in {@link #tileAlpha}.
+   */
+  private void colorTile(
+      PaintContext paintContext, int rgb, float extraAlpha, boolean antialias, int x, int y,
+      int w, int h, int stride) {
+    byte[] alpha = tileAlpha;
+    int[] pixels = tilePixels;
+    Raster raster = null;
+    ColorModel cm = null;
+    boolean packed = false;
+    if (paintContext != null) {
+      raster = paintContext.getRaster(x, y, w, h);
+      cm = paintContext.getColorModel();
+      packed = cm instanceof DirectColorModel && cm.getPixelSize() == 32
+          && cm.equals(TILE_COLOR_MODEL);
+      if (packed) {
+        raster.getDataElements(0, 0, w, h, pixels);
+        // getDataElements packs rows at stride w; spread them out to the tile stride.
+        for (int row = h - 1; row > 0; row--) {
+          System.arraycopy(pixels, row * w, pixels, row * stride, w);
+        }
+      }
+    }
+    Object pixel = null;
+    for (int row = 0; row < h; row++) {
+      int off = row * stride;
+      for (int col = 0; col < w; col++, off++) {
+        int coverage = alpha[off] & 0xFF;
+        if (!antialias) {
+          coverage = coverage >= 0x80 ? 0xFF : 0;
+        }
+        int argb;
+        if (paintContext == null) {
+          argb = rgb;
+        } else if (packed) {
+          argb = pixels[off];
+        } else {
+          pixel = raster.getDataElements(col, row, pixel);
+          argb = cm.getRGB(pixel);
+        }
+        int a = (int) (((argb >>> 24) * coverage * extraAlpha) / 255.0f + 0.5f);
+        pixels[off] = (a << 24) | (argb & 0x00FFFFFF);
+      }
+    }
+  }
+
+  /**
+   * Scales the alpha of each pixel of the tile in {@link #tilePixels} by the coverage of a
+   * non-rectangular clip, for drawing that writes the bitmap directly. Rectangular clips are
+   * already applied by the tile generator.
+   */
+  private void clipTile(int x, int y, int w, int h, int stride) {
+    if (deviceClip == null || deviceClip instanceof Rectangle) {
+      return;
+    }
+    ensureClipCoverage();
+    Rectangle cb = clipCoverageBounds;
+    int[] pixels = tilePixels;
+    for (int row = 0; row < h; row++) {
+      int off = row * stride;
+      int cy = y + row - cb.y;
+      for (int col = 0; col < w; col++, off++) {
+        int cx = x + col - cb.x;
+        int coverage = cy < 0 || cy >= cb.height || cx < 0 || cx >= cb.width
+            ? 0 : clipCoverage[cy * clipCoverageStride + cx] & 0xFF;
+        if (coverage != 0xFF) {
+          int argb = pixels[off];
+          int a = ((argb >>> 24) * coverage + 0x7F) / 0xFF;
+          pixels[off] = (a << 24) | (argb & 0x00FFFFFF);
+        }
+      }
+    }
+  }
+
+  /**
+   * Rasterizes the clip into {@link #clipCoverage} if it hasn't been since it last changed.
+   */
+  private void ensureClipCoverage() {
+    if (clipCoverage != null) {
+      return;
+    }
+    Rectangle cb = deviceClip.getBounds().intersection(
+        new Rectangle(androidBitmap.getWidth(), androidBitmap.getHeight()));
+    if (cb.isEmpty()) {
+      cb.setBounds(0, 0, 0, 0);
+      clipCoverageBounds.setBounds(cb);
+      clipCoverageStride = 0;
+      clipCoverage = new byte[0];
+      return;
+    }
+    Bitmap mask = Bitmap.createBitmap(cb.width, cb.height, Config.ALPHA_8);
+    Canvas maskCanvas = new Canvas(mask);
+    maskCanvas.translate(-cb.x, -cb.y);
+    maskCanvas.drawPath(toAndroidPath(deviceClip, null),
+        new android.graphics.Paint(android.graphics.Paint.ANTI_ALIAS_FLAG));
+    clipCoverageStride = mask.getRowBytes();
+    byte[] coverage = new byte[clipCoverageStride * cb.height];
+    mask.copyPixelsToBuffer(ByteBuffer.wrap(coverage));
+    mask.recycle();
+    clipCoverageBounds.setBounds(cb);
+    clipCoverage = coverage;
+  }
+
+  /**
+   * Exclusive-ors the tile in {@link #tilePixels} into the bitmap, as {@link SkinJobXorMode} does.
+   */
+  private void xorTile(int x, int y, int w, int h, int stride) {
+    int[] dst = tileDstPixels;
+    androidBitmap.getPixels(dst, 0, w, x, y, w, h);
+    int xorRgb = xorColor.getRGB();
+    for (int row = 0; row < h; row++) {
+      SkinJobXorMode.xorRow(dst, row * w, tilePixels, row * stride, w, xorRgb);
+    }
+    androidBitmap.setPixels(dst, 0, w, x, y, w, h);
+  }
+
+  /**
+   * Applies a non-{@link AlphaComposite} {@link Composite} by reading back the destination tile.
+   */
+  private void composeTile(CompositeContext context, int x, int y, int w, int h, int stride) {
+    int[] src = tilePixels;
+    int[] dst = tileDstPixels;
+    // The rasters take rows packed at width w.
+    for (int row = 1; row < h; row++) {
+      System.arraycopy(src, row * stride, src, row * w, w);
+    }
+    androidBitmap.getPixels(dst, 0, w, x, y, w, h);
+    WritableRaster srcRaster = tileSrcRaster;
+    WritableRaster dstRaster = tileDstRaster;
+    if (w < srcRaster.getWidth() || h < srcRaster.getHeight()) {
+      srcRaster = srcRaster.createWritableChild(0, 0, w, h, 0, 0, null);
+      dstRaster = dstRaster.createWritableChild(0, 0, w, h, 0, 0, null);
+    }
+    srcRaster.setDataElements(0, 0, w, h, src);
+    dstRaster.setDataElements(0, 0, w, h, dst);
+    context.compose(srcRaster, dstRaster, dstRaster);
+    dstRaster.getDataElements(0, 0, w, h, dst);
+    androidBitmap.setPixels(dst, 0, w, x, y, w, h);
+  }
+
+  private PorterDuff.Mode compositeMode() {
+    if (!(composite instanceof AlphaComposite)) {
+      return null;
+    }
+    switch (((AlphaComposite) composite).getRule()) {
+      case AlphaComposite.CLEAR:
+        return PorterDuff.Mode.CLEAR;
+      case AlphaComposite.SRC:
+        return PorterDuff.Mode.SRC;
+      case AlphaComposite.DST:
+        return PorterDuff.Mode.DST;
+      case AlphaComposite.DST_OVER:
+        return PorterDuff.Mode.DST_OVER;
+      case AlphaComposite.SRC_IN:
+        return PorterDuff.Mode.SRC_IN;
+      case AlphaComposite.DST_IN:
+        return PorterDuff.Mode.DST_IN;
+      case AlphaComposite.SRC_OUT:
+        return PorterDuff.Mode.SRC_OUT;
+      case AlphaComposite.DST_OUT:
+        return PorterDuff.Mode.DST_OUT;
+      case AlphaComposite.SRC_ATOP:
+        return PorterDuff.Mode.SRC_ATOP;
+      case AlphaComposite.DST_ATOP:
+        return PorterDuff.Mode.DST_ATOP;
+      case AlphaComposite.XOR:
+        return PorterDuff.Mode.XOR;
+      default:
+        return null; // SRC_OVER
+    }
+  }
+
+  /**
+   * Pushes the current color, extra alpha and composite rule into {@link #graphics}.
+   */
+  private void updatePaintState() {
+    if (paint instanceof Color) {
+      Color color = (Color) paint;
+      if (composite instanceof AlphaComposite) {
+        float extraAlpha = ((AlphaComposite) composite).getAlpha();
+        if (extraAlpha < 1.0f) {
+          color = new Color(color.getRed(), color.getGreen(), color.getBlue(),
+              (int) (color.getAlpha() * extraAlpha + 0.5f));
+        }
+      }
+      graphics.setColor(color);
+    }
+    graphics.setCompositeMode(compositeMode());
+  }
+
+  // Graphics2D
+
+  @Override
+  public boolean drawImage(Image img, AffineTransform xform, ImageObserver obs) {
+    AffineTransform saved = transform;
+    transform = new AffineTransform(saved);
+    transform.concatenate(xform);
+    matrixValid = false;
+    try {
+      return drawImage(img, 0, 0, obs);
+    } finally {
+      transform = saved;
+      matrixValid = false;
+    }
+  }
+
+  @Override
+  public void drawImage(BufferedImage img, BufferedImageOp op, int x, int y) {
+    drawImage(op == null ? img : op.filter(img, null), x, y, null);
+  }
+
+  @Override
+  public void drawRenderedImage(RenderedImage img, AffineTransform xform) {
+    BufferedImage image;
+    if (img instanceof BufferedImage) {
+      image = (BufferedImage) img;
+    } else {
+      ColorModel cm = img.getColorModel();
+      WritableRaster raster = cm.createCompatibleWritableRaster(img.getWidth(), img.getHeight());
+      img.copyData(raster);
+      image = new BufferedImage(cm, raster, cm.isAlphaPremultiplied(), null);
+    }
+    drawImage(image, xform, null);
+  }
+
+  @Override
+  public void drawRenderableImage(RenderableImage img, AffineTransform xform) {
+    drawRenderedImage(img.createDefaultRendering(), xform);
+  }
+
+  @Override
+  public void drawString(String str, float x, float y) {
+    if (isCanvasPaint()) {
+      validateCanvas().drawText(str, x, y, graphics.getBrush());
+    } else {
+      fill(getFont().createGlyphVector(getFontRenderContext(), str).getOutline(x, y));
+    }
+  }
+
+  @Override
+  public void drawString(AttributedCharacterIterator iterator, float x, float y) {
+    validateCanvas();
+    canvas.translate(x, y);
+    try {
+      graphics.drawString(iterator, 0, 0);
+    } finally {
+      matrixValid = false;
+    }
+  }
+
+  @Override
+  public void drawGlyphVector(GlyphVector g, float x, float y) {
+    fill(g.getOutline(x, y));
+  }
+
+  @Override
+  public boolean hit(Rectangle rect, Shape s, boolean onStroke) {
+    if (onStroke) {
+      s = stroke.createStrokedShape(s);
+    }
+    s = transform.createTransformedShape(s);
+    if (deviceClip != null && !deviceClip.intersects(rect)) {
+      return false;
+    }
+    return s.intersects(rect);
+  }
+
+  @Override
+  public GraphicsConfiguration getDeviceConfiguration() {
+    return SkinJobGraphicsConfiguration.getDefault();
+  }
+
+  @Override
+  public void setRenderingHint(Key hintKey, Object hintValue) {
+    hints.put(hintKey, hintValue);
+    if (hintKey == RenderingHints.KEY_ANTIALIASING) {
+      graphics.setAntiAlias(hintValue == RenderingHints.VALUE_ANTIALIAS_ON);
+      updateStrokeState();
+    }
+  }
+
+  @Override
+  public Object getRenderingHint(Key hintKey) {
+    return hints.get(hintKey);
+  }
+
+  @Override
+  public void setRenderingHints(Map<?, ?> hints) {
+    this.hints.clear();
+    addRenderingHints(hints);
+  }
+
+  @Override
+  public void addRenderingHints(Map<?, ?> hints) {
+    this.hints.putAll(hints);
+    graphics.setAntiAlias(
+        this.hints.get(RenderingHints.KEY_ANTIALIASING) == RenderingHints.VALUE_ANTIALIAS_ON);
+    updateStrokeState();
+  }
+
+  @Override
+  public RenderingHints getRenderingHints() {
+    return (RenderingHints) hints.clone();
+  }
+
+  // Transform
+
+  @Override
+  public void translate(int x, int y) {
+    translate((double) x, (double) y);
+  }
+
+  @Override
+  public void translate(double tx, double ty) {
+    transform.translate(tx, ty);
+    matrixValid = false;
+  }
+
+  @Override
+  public void rotate(double theta) {
+    transform.rotate(theta);
+    matrixValid = false;
+  }
+
+  @Override
+  public void rotate(double theta, double x, double y) {
+    transform.rotate(theta, x, y);
+    matrixValid = false;
+  }
+
+  @Override
+  public void scale(double sx, double sy) {
+    transform.scale(sx, sy);
+    matrixValid = false;
+  }
+
+  @Override
+  public void shear(double shx, double shy) {
+    transform.shear(shx, shy);
+    matrixValid = false;
+  }
+
+  @Override
+  public void transform(AffineTransform Tx) {
+    transform.concatenate(Tx);
+    matrixValid = false;
+  }
+
+  @Override
+  public AffineTransform getTransform() {
+    return new AffineTransform(transform);
+  }
+
+  @Override
+  public void setTransform(AffineTransform Tx) {
+    transform = new AffineTransform(Tx);
+    matrixValid = false;
+  }
+
+  // Paint, stroke and composite
+
+  @Override
+  public Paint getPaint() {
+    return paint;
+  }
+
+  @Override
+  public void setPaint(Paint paint) {
+    if (paint == null) {
+      return;
+    }
+    this.paint = paint;
+    updatePaintState();
+  }
+
+  @Override
+  public Color getColor() {
+    return paint instanceof Color ? (Color) paint : null;
+  }
+
+  @Override
+  public void setColor(Color c) {
+    setPaint(c);
+  }
+
+  @Override
+  public void setPaintMode() {
+    setComposite(AlphaComposite.SrcOver);
+  }
+
+  @Override
+  public void setXORMode(Color c1) {
+    if (c1 == null) {
+      return;
+    }
+    composite = AlphaComposite.SrcOver;
+    xorColor = c1;
+    graphics.setXORMode(c1);
+    clipValid = false;  // to hand the clip to graphics
+    updatePaintState();
+  }
+
+  @Override
+  public Composite getComposite() {
+    return composite;
+  }
+
+  @Override
+  public void setComposite(Composite comp) {
+    if (comp == null) {
+      throw new IllegalArgumentException("null Composite");
+    }
+    composite = comp;
+    if (xorColor != null) {
+      xorColor = null;
+      graphics.setPaintMode();
+      clipValid = false;
+    }
+    updatePaintState();
+  }
+
+  @Override
+  public Color getBackground() {
+    return background;
+  }
+
+  @Override
+  public void setBackground(Color color) {
+    background = color;
+  }
+
+  @Override
+  public Stroke getStroke() {
+    return stroke;
+  }
+
+  @Override
+  public void setStroke(Stroke s) {
+    if (s == null) {
+      throw new IllegalArgumentException("null Stroke");
+    }
+    stroke = s;
+    updateStrokeState();
+  }
+
+  /**
+   * Pushes the current {@link BasicStroke} into {@link #graphics}. Without antialiasing, a stroke
+   * no wider than a device pixel becomes Android's hairline, which draws it as AWT does: one pixel
+   * wide and without end caps.
+   */
+  private void updateStrokeState() {
+    if (!(stroke instanceof BasicStroke)) {
+      return;
+    }
+    BasicStroke bs = (BasicStroke) stroke;
+    Join join;
+    switch (bs.getLineJoin()) {
+      case BasicStroke.JOIN_BEVEL:
+        join = Join.BEVEL;
+        break;
+      case BasicStroke.JOIN_ROUND:
+        join = Join.ROUND;
+        break;
+      default:
+        join = Join.MITER;
+        break;
+    }
+    float width = bs.getLineWidth();
+    double scale = Math.max(Math.hypot(transform.getScaleX(), transform.getShearY()),
+        Math.hypot(transform.getShearX(), transform.getScaleY()));
+    if (width * scale <= 1
+        && hints.get(RenderingHints.KEY_ANTIALIASING) != RenderingHints.VALUE_ANTIALIAS_ON) {
+      graphics.setStrokeState(0, Cap.BUTT, join, bs.getMiterLimit());
+      return;
+    }
+    Cap cap;
+    switch (bs.getEndCap()) {
+      case BasicStroke.CAP_BUTT:
+        cap = Cap.BUTT;
+        break;
+      case BasicStroke.CAP_ROUND:
+        cap = Cap.ROUND;
+        break;
+      default:
+        cap = Cap.SQUARE;
+        break;
+    }
+    graphics.setStrokeState(width, cap, join, bs.getMiterLimit());
+  }
+
+  @Override
+  public FontRenderContext getFontRenderContext() {
+    return new FontRenderContext(transform,
+        hints.get(RenderingHints.KEY_TEXT_ANTIALIASING),
+        hints.get(RenderingHints.KEY_FRACTIONALMETRICS));
+  }
+
+  @Override
+  public Font getFont() {
+    return graphics.getFont();
+  }
+
+  @Override
+  public void setFont(Font font) {
+    graphics.setFont(font);
+  }
+
+  @Override
+  public FontMetrics getFontMetrics(Font f) {
+    return graphics.getFontMetrics(f);
+  }
+
+  // Clip
+
+  @Override
+  public void clip(Shape s) {
+    if (s == null) {
+      setClip(null);
+      return;
+    }
+    Shape device = transformToDevice(s);
+    if (deviceClip == null) {
+      deviceClip = device;
+    } else if (deviceClip instanceof Rectangle && device instanceof Rectangle) {
+      deviceClip = ((Rectangle) deviceClip).intersection((Rectangle) device);
+    } else {
+      Area area = new Area(deviceClip);
+      area.intersect(new Area(device));
+      deviceClip = area.isRectangular() ? area.getBounds() : area;
+    }
+    clipValid = false;
+  }
+
+  @Override
+  public void clipRect(int x, int y, int width, int height) {
+    clip(new Rectangle(x, y, width, height));
+  }
+
+  @Override
+  public void setClip(int x, int y, int width, int height) {
+    setClip(new Rectangle(x, y, width, height));
+  }
+
+  @Override
+  public void setClip(Shape clip) {
+    deviceClip = clip == null ? null : transformToDevice(clip);
+    clipValid = false;
+  }
+
+  /**
+   * Transforms a user-space clip shape to device space, keeping integer rectangles under
+   * translation-only transforms as {@link Rectangle}s so that they take the fast clip route.
+   */
+  private Shape transformToDevice(Shape s) {
+    int type = transform.getType();
+    if (s instanceof Rectangle
+        && (type == AffineTransform.TYPE_IDENTITY || type == AffineTransform.TYPE_TRANSLATION)) {
+      double tx = transform.getTranslateX();
+      double ty = transform.getTranslateY();
+      if (tx == Math.rint(tx) && ty == Math.rint(ty)) {
+        Rectangle r = new Rectangle((Rectangle) s);
+        r.translate((int) tx, (int) ty);
+        return r;
+      }
+    }
+    return transform.createTransformedShape(s);
+  }
+
+  @Override
+  public Shape getClip() {
+    if (deviceClip == null) {
+      return null;
+    }
+    try {
+      return transform.createInverse().createTransformedShape(deviceClip);
+    } catch (NoninvertibleTransformException e) {
+      return null;
+    }
+  }
+
+  @Override
+  public Rectangle getClipBounds() {
+    Shape clip = getClip();
+    return clip == null ? null : clip.getBounds();
+  }
+
+  // Graphics primitives: delegate to SkinJobGraphics when the state allows it, otherwise build
+  // the equivalent shape.
+
+  private boolean canDelegate() {
+    return isSimplePaint() && isSimpleStroke();
+  }
+
+  @Override
+  public void copyArea(int x, int y, int width, int height, int dx, int dy) {
+    if (width <= 0 || height <= 0) {
+      return;
+    }
+    Rectangle source = transformToDevice(new Rectangle(x, y, width, height)).getBounds();
+    Point2D delta = transform.deltaTransform(new Point2D.Double(dx, dy), null);
+    int deviceDx = (int) Math.round(delta.getX());
+    int deviceDy = (int) Math.round(delta.getY());
+    // Only pixels inside the bitmap can be copied; the destination shrinks with the source.
+    source = source.intersection(
+        new Rectangle(androidBitmap.getWidth(), androidBitmap.getHeight()));
+    if (source.isEmpty()) {
+      return;
+    }
+    int w = source.width;
+    int h = source.height;
+    // A canvas can't draw its own bitmap, so the pixels go through a reused scratch bitmap.
+    if (copyBitmap == null || copyBitmap.getWidth() < w || copyBitmap.getHeight() < h) {
+      int copyWidth = copyBitmap == null ? w : Math.max(w, copyBitmap.getWidth());
+      int copyHeight = copyBitmap == null ? h : Math.max(h, copyBitmap.getHeight());
+      if (copyBitmap != null) {
+        copyBitmap.recycle();
+      }
+      copyBitmap = Bitmap.createBitmap(copyWidth, copyHeight, Config.ARGB_8888);
+      copyCanvas = new Canvas(copyBitmap);
+      copyPaint = new android.graphics.Paint();
+      copyPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
+    }
+    tileSrcRect.set(source.x, source.y, source.x + w, source.y + h);
+    tileDstRect.set(0, 0, w, h);
+    copyCanvas.drawBitmap(androidBitmap, tileSrcRect, tileDstRect, copyPaint);
+    Canvas c = validateCanvas();
+    c.save();
+    c.setMatrix(null);  // the copy is in device space; the clip still applies
+    tileSrcRect.set(0, 0, w, h);
+    tileDstRect.set(source.x + deviceDx, source.y + deviceDy, source.x + deviceDx + w,
+        source.y + deviceDy + h);
+    c.drawBitmap(copyBitmap, tileSrcRect, tileDstRect, copyPaint);
+    c.restore();
+  }
+
+  @Override
+  public void drawLine(int x1, int y1, int x2, int y2) {
+    if (canDelegate()) {
+      validateCanvas();
+      graphics.drawLine(x1, y1, x2, y2);
+    } else {
+      draw(new Line2D.Float(x1, y1, x2, y2));
+    }
+  }
+
+  @Override
+  public void fillRect(int x, int y, int width, int height) {
+    if (isSimplePaint()) {
+      validateCanvas();
+      graphics.fillRect(x, y, width, height);
+    } else {
+      fill(new Rectangle(x, y, width, height));
+    }
+  }
+
+  @Override
+  public void clearRect(int x, int y, int width, int height) {
+    validateCanvas().drawRect(x, y, x + width, y + height,
+        graphics.getFillPaint(background.getRGB(), PorterDuff.Mode.SRC));
+  }
+
+  @Override
+  public void drawRoundRect(int x, int y, int width, int height, int arcWidth, int arcHeight) {
+    draw(new RoundRectangle2D.Float(x, y, width, height, arcWidth, arcHeight));
+  }
+
+  @Override
+  public void fillRoundRect(int x, int y, int width, int height, int arcWidth, int arcHeight) {
+    fill(new RoundRectangle2D.Float(x, y, width, height, arcWidth, arcHeight));
+  }
+
+  @Override
+  public void drawOval(int x, int y, int width, int height) {
+    if (canDelegate()) {
+      validateCanvas();
+      graphics.drawOval(x, y, width, height);
+    } else {
+      draw(new Ellipse2D.Float(x, y, width, height));
+    }
+  }
+
+  @Override
+  public void fillOval(int x, int y, int width, int height) {
+    if (isSimplePaint()) {
+      validateCanvas();
+      graphics.fillOval(x, y, width, height);
+    } else {
+      fill(new Ellipse2D.Float(x, y, width, height));
+    }
+  }
+
+  @Override
+  public void drawArc(int x, int y, int width, int height, int startAngle, int arcAngle) {
+    draw(new Arc2D.Float(x, y, width, height, startAngle, arcAngle, Arc2D.OPEN));
+  }
+
+  @Override
+  public void fillArc(int x, int y, int width, int height, int startAngle, int arcAngle) {
+    fill(new Arc2D.Float(x, y, width, height, startAngle, arcAngle, Arc2D.PIE));
+  }
+
+  @Override
+  public void drawPolyline(int[] xPoints, int[] yPoints, int nPoints) {
+    if (canDelegate()) {
+      validateCanvas();
+      graphics.drawPolyline(xPoints, yPoints, nPoints);
+    } else if (nPoints > 0) {
+      Path2D.Float path = new Path2D.Float();
+      path.moveTo(xPoints[0], yPoints[0]);
+      for (int i = 1; i < nPoints; i++) {
+        path.lineTo(xPoints[i], yPoints[i]);
+      }
+      draw(path);
+    }
+  }
+
+  @Override
+  public void drawPolygon(int[] xPoints, int[] yPoints, int nPoints) {
+    if (canDelegate()) {
+      validateCanvas();
+      graphics.drawPolygon(xPoints, yPoints, nPoints);
+    } else {
+      draw(new Polygon(xPoints, yPoints, nPoints));
+    }
+  }
+
+  @Override
+  public void fillPolygon(int[] xPoints, int[] yPoints, int nPoints) {
+    if (isSimplePaint()) {
+      validateCanvas();
+      graphics.fillPolygon(xPoints, yPoints, nPoints);
+    } else {
+      fill(new Polygon(xPoints, yPoints, nPoints));
+    }
+  }
+
+  @Override
+  public void drawString(String str, int x, int y) {
+    drawString(str, (float) x, (float) y);
+  }
+
+  @Override
+  public void drawString(AttributedCharacterIterator iterator, int x, int y) {
+    drawString(iterator, (float) x, (float) y);
+  }
+
+  // Images
+
+  @Override
+  public boolean drawImage(Image img, int x, int y, ImageObserver observer) {
+    validateCanvas();
+    return graphics.drawImage(img, x, y, observer);
+  }
+
+  @Override
+  public boolean drawImage(Image img, int x, int y, int width, int height, ImageObserver observer) {
+    validateCanvas();
+    return graphics.drawImage(img, x, y, width, height, observer);
+  }
+
+  @Override
+  public boolean drawImage(Image img, int x, int y, Color bgcolor, ImageObserver observer) {
+    validateCanvas();
+    return graphics.drawImage(img, x, y, bgcolor, observer);
+  }
+
+  @Override
+  public boolean drawImage(
+      Image img, int x, int y, int width, int height, Color bgcolor, ImageObserver observer) {
+    validateCanvas();
+    return graphics.drawImage(img, x, y, width, height, bgcolor, observer);
+  }
+
+  @Override
+  public boolean drawImage(
+      Image img, int dx1, int dy1, int dx2, int dy2, int sx1, int sy1, int sx2, int sy2,
+      ImageObserver observer) {
+    validateCanvas();
+    return graphics.drawImage(img, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2, observer);
+  }
+
+  @Override
+  public boolean drawImage(
+      Image img, int dx1, int dy1, int dx2, int dy2, int sx1, int sy1, int sx2, int sy2,
+      Color bgcolor, ImageObserver observer) {
+    validateCanvas();
+    return graphics.drawImage(img, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2, bgcolor, observer);
+  }
+
+  @Override
+  public void dispose() {
+    canvas.restoreToCount(baseSaveCount);
+    graphics.dispose();
+    if (bitmapOwner instanceof SkinJobVolatileImage) {
+      ((SkinJobVolatileImage) bitmapOwner).graphicsDisposed();
+    }
+    bitmapOwner = null;  // so that disposing twice counts once
+  }
+}
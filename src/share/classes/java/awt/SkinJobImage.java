@@ -1,19 +1,84 @@
 package java.awt;
 
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
+import android.graphics.Bitmap.Config;
+import java.awt.image.BufferedImage;
 import java.awt.image.ImageObserver;
 import java.awt.image.ImageProducer;
+import java.awt.image.VolatileImage;
+import java.net.URL;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
 
 /**
  * Created by cryoc on 2016-10-11.
+ * <p>
+ * An image is either ready from the start (offscreen images and wrapped bitmaps) or loaded in the
+ * background by {@link SkinJobImageDecoder}. Loading starts the first time the image's size or
+ * pixels are asked for, and registered {@link ImageObserver}s are told about its progress.
  */
 public class SkinJobImage extends Image {
-  protected final Bitmap androidBitmap;
+  // Everything a loaded image reports to checkImage.
+  private static final int LOADED = ImageObserver.WIDTH | ImageObserver.HEIGHT
+      | ImageObserver.PROPERTIES | ImageObserver.ALLBITS;
+
+  // Images of kinds SkinJob can't draw directly, rebuilt from their producers' pixels.
+  private static final Map<Image, SkinJobImage> producedImages = new WeakHashMap<>();
+
+  protected volatile Bitmap androidBitmap;
   protected final ImageProducer source;
+  // Non-null in offscreen mode; returns the bitmap to the pool once this image is unreachable.
+  private final SkinJobBitmapPool.Reclaimer storage;
+  // Non-null for images that are loaded in the background.
+  private final SkinJobImageDecoder.Source decodeSource;
+  private final CopyOnWriteArrayList<ImageObserver> observers = new CopyOnWriteArrayList<>();
+  private volatile int width = -1;
+  private volatile int height = -1;
+  private volatile int status = 0;
+  private Future<?> pendingLoad;
+  // Identifies the most recent load, so that results of superseded ones are ignored.
+  private int loadGeneration = 0;
+  // Subsampling of the bitmap requested so far: 0 while nothing has been requested, and -1 while
+  // the size is unknown so the decoder chooses.
+  private int requestedSampleSize = 0;
+
+  /**
+   * Creates a blank, mutable offscreen image whose bitmap comes from {@link SkinJobBitmapPool}.
+   */
+  public SkinJobImage(int width, int height) {
+    storage = SkinJobBitmapPool.acquireFor(this, width, height, Config.ARGB_8888);
+    decodeSource = null;
+    source = null;
+    setLoaded(storage.bitmap);
+  }
 
+  /**
+   * Creates an image that will be decoded from a file when first needed.
+   */
   public SkinJobImage(String filename) {
-    this(BitmapFactory.decodeFile(filename));
+    this(SkinJobImageDecoder.forFile(filename), null);
+  }
+
+  /**
+   * Creates an image that will be downloaded and decoded when first needed.
+   */
+  public SkinJobImage(URL url) {
+    this(SkinJobImageDecoder.forUrl(url), null);
+  }
+
+  /**
+   * Creates an image that will be built from a producer's pixels when first needed.
+   */
+  public SkinJobImage(ImageProducer source) {
+    this(SkinJobImageDecoder.forProducer(source), source);
+  }
+
+  SkinJobImage(SkinJobImageDecoder.Source decodeSource, ImageProducer source) {
+    this.decodeSource = decodeSource;
+    this.source = source;
+    storage = null;
   }
 
   public SkinJobImage(Bitmap androidBitmap) {
@@ -21,18 +86,179 @@ public class SkinJobImage extends Image {
   }
 
   public SkinJobImage(ImageProducer source, Bitmap androidBitmap) {
-    this.androidBitmap = androidBitmap;
     this.source = source;
+    storage = null;
+    decodeSource = null;
+    setLoaded(androidBitmap);
+  }
+
+  private void setLoaded(Bitmap bitmap) {
+    androidBitmap = bitmap;
+    width = bitmap.getWidth();
+    height = bitmap.getHeight();
+    status = LOADED;
+  }
+
+  /**
+   * @return the {@link Bitmap} behind an image that SkinJob can draw directly, or null if the
+   * image isn't of a kind SkinJob can draw or hasn't finished loading
+   */
+  static Bitmap getBitmap(Image image) {
+    if (image instanceof SkinJobImage) {
+      return ((SkinJobImage) image).androidBitmap;
+    }
+    if (image instanceof SkinJobVolatileImage) {
+      return ((SkinJobVolatileImage) image).getBitmap();
+    }
+    if (image instanceof BufferedImage) {
+      return SkinJobBufferedImageBridge.getBitmap((BufferedImage) image);
+    }
+    return null;
+  }
+
+  /**
+   * @return an image of a kind {@link #getBitmap(Image)} can draw with the same pixels: the image
+   * itself if possible, a snapshot of another {@link VolatileImage}, or otherwise an image that
+   * loads from the image's producer in the background; null if the image has no producer
+   */
+  static Image toDrawable(Image image) {
+    if (image instanceof SkinJobImage || image instanceof SkinJobVolatileImage
+        || image instanceof BufferedImage) {
+      return image;
+    }
+    if (image instanceof VolatileImage) {
+      return ((VolatileImage) image).getSnapshot();
+    }
+    synchronized (producedImages) {
+      SkinJobImage produced = producedImages.get(image);
+      if (produced == null) {
+        ImageProducer producer = image.getSource();
+        if (producer == null) {
+          return null;
+        }
+        produced = new SkinJobImage(producer);
+        producedImages.put(image, produced);
+      }
+      return produced;
+    }
+  }
+
+  /**
+   * Starts loading the image if necessary, and registers an observer to hear about its progress.
+   *
+   * @param width  the width the image will be drawn at, or -1 for its natural width
+   * @param height the height the image will be drawn at, or -1 for its natural height
+   * @return whether the image is already fully loaded
+   */
+  public boolean prepare(int width, int height, ImageObserver observer) {
+    if (decodeSource == null) {
+      return true;
+    }
+    if (observer != null && (status & (ImageObserver.ALLBITS | ImageObserver.ERROR)) == 0) {
+      observers.addIfAbsent(observer);
+    }
+    synchronized (this) {
+      if ((status & ImageObserver.ERROR) != 0) {
+        return false;
+      }
+      if (requestedSampleSize == 0) {
+        requestedSampleSize = this.width < 0 ? -1 : SkinJobImageDecoder.chooseSampleSize(
+            this.width, this.height, width, height);
+        startLoad(width, height);
+      } else if (requestedSampleSize > 0 && SkinJobImageDecoder.chooseSampleSize(
+          this.width, this.height, width, height) < requestedSampleSize) {
+        // A sharper copy is needed than the one already requested.
+        requestedSampleSize = SkinJobImageDecoder.chooseSampleSize(
+            this.width, this.height, width, height);
+        startLoad(width, height);
+      }
+    }
+    return (status & ImageObserver.ALLBITS) != 0;
+  }
+
+  private void startLoad(int width, int height) {
+    if (pendingLoad != null) {
+      pendingLoad.cancel(true);
+    }
+    loadGeneration++;
+    pendingLoad = SkinJobImageDecoder.load(this, decodeSource, width, height, loadGeneration);
+  }
+
+  /**
+   * @return the {@link ImageObserver} flags for what has been loaded so far, without starting a
+   * load
+   */
+  public int check(ImageObserver observer) {
+    if (observer != null && decodeSource != null
+        && (status & (ImageObserver.ALLBITS | ImageObserver.ERROR)) == 0) {
+      observers.addIfAbsent(observer);
+    }
+    return status;
+  }
+
+  void dimensionsKnown(int width, int height) {
+    if (this.width == width && this.height == height) {
+      return;
+    }
+    this.width = width;
+    this.height = height;
+    status |= ImageObserver.WIDTH | ImageObserver.HEIGHT | ImageObserver.PROPERTIES;
+    notifyObservers(ImageObserver.WIDTH | ImageObserver.HEIGHT | ImageObserver.PROPERTIES);
+  }
+
+  void loadComplete(Bitmap bitmap, int sampleSize, int generation) {
+    synchronized (this) {
+      if (generation != loadGeneration) {
+        // Superseded by a sharper load, but better than nothing until that finishes.
+        if (androidBitmap == null) {
+          androidBitmap = bitmap;
+        }
+        return;
+      }
+      androidBitmap = bitmap;
+      pendingLoad = null;
+      requestedSampleSize = sampleSize;
+      status = LOADED;
+    }
+    notifyObservers(ImageObserver.ALLBITS);
+  }
+
+  void loadFailed(int generation) {
+    synchronized (this) {
+      if (generation != loadGeneration) {
+        return;
+      }
+      pendingLoad = null;
+      status |= ImageObserver.ERROR | ImageObserver.ABORT;
+    }
+    notifyObservers(ImageObserver.ERROR | ImageObserver.ABORT);
+  }
+
+  private void notifyObservers(int flags) {
+    boolean finished = (flags & (ImageObserver.ALLBITS | ImageObserver.ERROR)) != 0;
+    for (ImageObserver observer : observers) {
+      if (!observer.imageUpdate(this, flags, 0, 0, width, height) || finished) {
+        observers.remove(observer);
+      }
+    }
   }
 
   @Override
   public int getWidth(ImageObserver observer) {
-    return androidBitmap.getWidth();
+    int result = width;
+    if (result < 0) {
+      prepare(-1, -1, observer);
+    }
+    return result;
   }
 
   @Override
   public int getHeight(ImageObserver observer) {
-    return androidBitmap.getHeight();
+    int result = height;
+    if (result < 0) {
+      prepare(-1, -1, observer);
+    }
+    return result;
   }
 
   @Override
@@ -42,8 +268,11 @@ public class SkinJobImage extends Image {
 
   @Override
   public Graphics getGraphics() {
-    if (androidBitmap.isMutable()) {
-      return new SkinJobGraphics(androidBitmap);
+    Bitmap bitmap = androidBitmap;
+    if (bitmap != null && bitmap.isMutable()) {
+      SkinJobGraphics2D graphics = new SkinJobGraphics2D(bitmap);
+      graphics.bitmapOwner = this;
+      return graphics;
     }
     return null;
   }
@@ -52,4 +281,31 @@ public class SkinJobImage extends Image {
   public Object getProperty(String name, ImageObserver observer) {
     return null;
   }
+
+  /**
+   * For images loaded in the background, cancels any load under way and discards the pixels,
+   * which are decoded again (or taken from the shared cache) the next time they're needed.
+   */
+  @Override
+  public void flush() {
+    if (decodeSource == null) {
+      return;
+    }
+    synchronized (this) {
+      if (pendingLoad != null) {
+        pendingLoad.cancel(true);
+        pendingLoad = null;
+      }
+      loadGeneration++;
+      requestedSampleSize = 0;
+      androidBitmap = null;
+      status = 0;
+      width = -1;
+      height = -1;
+    }
+    for (ImageObserver observer : observers) {
+      observer.imageUpdate(this, ImageObserver.ABORT, 0, 0, -1, -1);
+    }
+    observers.clear();
+  }
 }
@@ -0,0 +1,449 @@
+package java.awt;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.graphics.BitmapFactory;
+import java.awt.image.ColorModel;
+import java.awt.image.ImageConsumer;
+import java.awt.image.ImageProducer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads {@link SkinJobImage}s in the background, so that {@link Toolkit#getImage(String)} and
+ * friends return immediately and a large image doesn't block the thread that first draws it.
+ * <p>
+ * Decoding runs on at most {@link SkinJob#imageDecoderThreads} threads. Each load first decodes
+ * only the bounds and reports {@link java.awt.image.ImageObserver#WIDTH} and
+ * {@link java.awt.image.ImageObserver#HEIGHT}. When the image was requested at a smaller size
+ * (e.g. through {@link Component#prepareImage(Image, int, int, java.awt.image.ImageObserver)}),
+ * it is then decoded with an {@link BitmapFactory.Options#inSampleSize} that fits the request.
+ * Decoded bitmaps are kept in a cache shared by all images from the same file or URL, bounded by
+ * {@link SkinJob#decodedImageCacheSize} bytes.
+ */
+public final class SkinJobImageDecoder {
+  private static final ExecutorService executor;
+
+  static {
+    int threads = Math.max(1, SkinJob.imageDecoderThreads);
+    ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(), runnable -> {
+          Thread thread = new Thread(runnable, "SkinJob image decoder");
+          thread.setDaemon(true);
+          thread.setPriority(Thread.NORM_PRIORITY - 1);
+          return thread;
+        });
+    pool.allowCoreThreadTimeOut(true);
+    executor = pool;
+  }
+
+  // Access-ordered, so iteration starts at the least recently used entry.
+  private static final LinkedHashMap<String, CachedBitmap> cache
+      = new LinkedHashMap<>(16, 0.75f, true);
+  private static long cachedBytes = 0;
+
+  /**
+   * Do not instantiate.
+   */
+  private SkinJobImageDecoder() {
+  }
+
+  /**
+   * Starts loading an image, replacing any load already under way.
+   *
+   * @param width  the width the image will be drawn at, or -1 for full resolution
+   * @param height the height the image will be drawn at, or -1 for full resolution
+   * @param generation passed back to the image so it can ignore superseded loads
+   */
+  static Future<?> load(
+      SkinJobImage image, Source source, int width, int height, int generation) {
+    WeakReference<SkinJobImage> imageRef = new WeakReference<>(image);
+    return executor.submit(() -> {
+      // Once nothing refers to the image, nobody can be waiting for it.
+      if (imageRef.get() == null || Thread.currentThread().isInterrupted()) {
+        return;
+      }
+      try {
+        run(imageRef, source, width, height, generation);
+      } catch (IOException | RuntimeException | OutOfMemoryError e) {
+        SkinJobImage target = imageRef.get();
+        if (target != null) {
+          target.loadFailed(generation);
+        }
+      }
+    });
+  }
+
+  private static void run(
+      WeakReference<SkinJobImage> imageRef, Source source, int width, int height,
+      int generation) throws IOException {
+    String key = source.getCacheKey();
+    CachedBitmap cached = key == null ? null : getCached(key);
+    int naturalWidth;
+    int naturalHeight;
+    if (cached != null) {
+      naturalWidth = cached.naturalWidth;
+      naturalHeight = cached.naturalHeight;
+    } else {
+      BitmapFactory.Options bounds = new BitmapFactory.Options();
+      bounds.inJustDecodeBounds = true;
+      source.decode(bounds);
+      naturalWidth = bounds.outWidth;
+      naturalHeight = bounds.outHeight;
+    }
+    SkinJobImage image = imageRef.get();
+    if (image == null) {
+      return;
+    }
+    if (naturalWidth > 0 && naturalHeight > 0) {
+      image.dimensionsKnown(naturalWidth, naturalHeight);
+    }
+    int sampleSize = chooseSampleSize(naturalWidth, naturalHeight, width, height);
+    if (cached != null && cached.sampleSize <= sampleSize) {
+      image.loadComplete(cached.bitmap, cached.sampleSize, generation);
+      return;
+    }
+    image = null; // Don't keep the image alive through a long decode.
+    if (Thread.currentThread().isInterrupted()) {
+      return;
+    }
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inSampleSize = sampleSize;
+    options.inPreferredConfig = Config.ARGB_8888;
+    Bitmap bitmap = source.decode(options);
+    if (bitmap == null) {
+      throw new IOException("Can't decode " + source);
+    }
+    if (naturalWidth <= 0 || naturalHeight <= 0) {
+      // Sources without a bounds pass only learn their size now.
+      naturalWidth = bitmap.getWidth();
+      naturalHeight = bitmap.getHeight();
+    }
+    if (key != null) {
+      putCached(key, new CachedBitmap(bitmap, sampleSize, naturalWidth, naturalHeight));
+    }
+    image = imageRef.get();
+    if (image != null) {
+      image.dimensionsKnown(naturalWidth, naturalHeight);
+      image.loadComplete(bitmap, sampleSize, generation);
+    }
+  }
+
+  /**
+   * @return the largest power-of-two subsampling that still covers the requested size
+   */
+  static int chooseSampleSize(int naturalWidth, int naturalHeight, int width, int height) {
+    if (naturalWidth <= 0 || naturalHeight <= 0 || (width <= 0 && height <= 0)) {
+      return 1;
+    }
+    int sampleSize = 1;
+    while ((width <= 0 || naturalWidth / (sampleSize * 2) >= width)
+        && (height <= 0 || naturalHeight / (sampleSize * 2) >= height)) {
+      sampleSize *= 2;
+    }
+    return sampleSize;
+  }
+
+  private static CachedBitmap getCached(String key) {
+    synchronized (cache) {
+      return cache.get(key);
+    }
+  }
+
+  private static void putCached(String key, CachedBitmap entry) {
+    synchronized (cache) {
+      CachedBitmap old = cache.get(key);
+      if (old != null) {
+        if (old.sampleSize <= entry.sampleSize) {
+          return; // Already have at least this resolution.
+        }
+        cachedBytes -= old.bytes;
+      }
+      cache.put(key, entry);
+      cachedBytes += entry.bytes;
+      // Evicted bitmaps may still be shown by images, so they're dropped rather than recycled.
+      Iterator<CachedBitmap> iterator = cache.values().iterator();
+      while (cachedBytes > SkinJob.decodedImageCacheSize && iterator.hasNext()) {
+        CachedBitmap eldest = iterator.next();
+        if (eldest == entry) {
+          break;
+        }
+        cachedBytes -= eldest.bytes;
+        iterator.remove();
+      }
+    }
+  }
+
+  /**
+   * Empties the decoded-bitmap cache, e.g. in response to memory pressure.
+   */
+  public static void clearCache() {
+    synchronized (cache) {
+      cache.clear();
+      cachedBytes = 0;
+    }
+  }
+
+  static Source forFile(String filename) {
+    return new FileSource(filename);
+  }
+
+  static Source forUrl(URL url) {
+    return new UrlSource(url);
+  }
+
+  static Source forBytes(byte[] data, int offset, int length) {
+    byte[] copy = new byte[length];
+    System.arraycopy(data, offset, copy, 0, length);
+    return new ByteSource(copy);
+  }
+
+  static Source forProducer(ImageProducer producer) {
+    return new ProducerSource(producer);
+  }
+
+  /**
+   * Where an image's encoded data comes from.
+   */
+  abstract static class Source {
+    /**
+     * @return a key identifying this source in the shared cache, or null if it can't be shared
+     */
+    abstract String getCacheKey();
+
+    /**
+     * Decodes the image, or only its bounds if {@link BitmapFactory.Options#inJustDecodeBounds}
+     * is set.
+     */
+    abstract Bitmap decode(BitmapFactory.Options options) throws IOException;
+  }
+
+  private static final class FileSource extends Source {
+    private final String filename;
+
+    FileSource(String filename) {
+      this.filename = filename;
+    }
+
+    @Override
+    String getCacheKey() {
+      return "file:" + filename;
+    }
+
+    @Override
+    Bitmap decode(BitmapFactory.Options options) {
+      return BitmapFactory.decodeFile(filename, options);
+    }
+
+    @Override
+    public String toString() {
+      return filename;
+    }
+  }
+
+  private static final class UrlSource extends Source {
+    private final URL url;
+    // Downloaded on the bounds pass and kept for the full decode, so the URL is only read once.
+    private byte[] data;
+
+    UrlSource(URL url) {
+      this.url = url;
+    }
+
+    @Override
+    String getCacheKey() {
+      return url.toExternalForm();
+    }
+
+    @Override
+    synchronized Bitmap decode(BitmapFactory.Options options) throws IOException {
+      byte[] bytes = data;
+      if (bytes == null) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = url.openStream()) {
+          byte[] buffer = new byte[8192];
+          int count;
+          while ((count = in.read(buffer)) > 0) {
+            out.write(buffer, 0, count);
+          }
+        }
+        bytes = out.toByteArray();
+      }
+      // Only hold onto the download between the bounds pass and the full decode.
+      data = options.inJustDecodeBounds ? bytes : null;
+      return BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+    }
+
+    @Override
+    public String toString() {
+      return url.toString();
+    }
+  }
+
+  private static final class ByteSource extends Source {
+    private final byte[] data;
+
+    ByteSource(byte[] data) {
+      this.data = data;
+    }
+
+    @Override
+    String getCacheKey() {
+      return null;
+    }
+
+    @Override
+    Bitmap decode(BitmapFactory.Options options) {
+      return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+    }
+
+    @Override
+    public String toString() {
+      return "image data (" + data.length + " bytes)";
+    }
+  }
+
+  /**
+   * Collects the pixels an {@link ImageProducer} delivers into a bitmap. Subsampling and the
+   * bounds pass don't apply; the size is only known once production finishes.
+   */
+  private static final class ProducerSource extends Source implements ImageConsumer {
+    private final ImageProducer producer;
+    private CountDownLatch done;
+    private int width;
+    private int height;
+    private int[] pixels;
+    private boolean failed;
+
+    ProducerSource(ImageProducer producer) {
+      this.producer = producer;
+    }
+
+    @Override
+    String getCacheKey() {
+      return null;
+    }
+
+    @Override
+    Bitmap decode(BitmapFactory.Options options) throws IOException {
+      if (options.inJustDecodeBounds) {
+        return null;
+      }
+      CountDownLatch latch = new CountDownLatch(1);
+      synchronized (this) {
+        done = latch;
+        pixels = null;
+        failed = false;
+      }
+      producer.startProduction(this);
+      try {
+        latch.await();
+      } catch (InterruptedException e) {
+        producer.removeConsumer(this);
+        Thread.currentThread().interrupt();
+        return null;
+      }
+      synchronized (this) {
+        if (failed || pixels == null) {
+          throw new IOException("Image production failed");
+        }
+        return Bitmap.createBitmap(pixels, width, height, Config.ARGB_8888);
+      }
+    }
+
+    @Override
+    public synchronized void setDimensions(int width, int height) {
+      this.width = width;
+      this.height = height;
+      pixels = new int[width * height];
+    }
+
+    @Override
+    public void setProperties(Hashtable<?, ?> props) {
+      // No-op.
+    }
+
+    @Override
+    public void setColorModel(ColorModel model) {
+      // No-op: each setPixels call supplies its model.
+    }
+
+    @Override
+    public void setHints(int hintflags) {
+      // No-op.
+    }
+
+    @Override
+    public synchronized void setPixels(
+        int x, int y, int w, int h, ColorModel model, byte[] data, int off, int scansize) {
+      for (int row = 0; row < h; row++) {
+        int src = off + row * scansize;
+        int dst = (y + row) * width + x;
+        for (int col = 0; col < w; col++) {
+          pixels[dst + col] = model.getRGB(data[src + col] & 0xFF);
+        }
+      }
+    }
+
+    @Override
+    public synchronized void setPixels(
+        int x, int y, int w, int h, ColorModel model, int[] data, int off, int scansize) {
+      boolean direct = model == ColorModel.getRGBdefault();
+      for (int row = 0; row < h; row++) {
+        int src = off + row * scansize;
+        int dst = (y + row) * width + x;
+        if (direct) {
+          System.arraycopy(data, src, pixels, dst, w);
+        } else {
+          for (int col = 0; col < w; col++) {
+            pixels[dst + col] = model.getRGB(data[src + col]);
+          }
+        }
+      }
+    }
+
+    @Override
+    public void imageComplete(int status) {
+      CountDownLatch latch;
+      synchronized (this) {
+        failed = status == IMAGEERROR || status == IMAGEABORTED;
+        latch = done;
+      }
+      producer.removeConsumer(this);
+      latch.countDown();
+    }
+
+    @Override
+    public String toString() {
+      return producer.toString();
+    }
+  }
+
+  private static final class CachedBitmap {
+    final Bitmap bitmap;
+    final int sampleSize;
+    final int naturalWidth;
+    final int naturalHeight;
+    final int bytes;
+
+    CachedBitmap(Bitmap bitmap, int sampleSize, int naturalWidth, int naturalHeight) {
+      this.bitmap = bitmap;
+      this.sampleSize = sampleSize;
+      this.naturalWidth = naturalWidth;
+      this.naturalHeight = naturalHeight;
+      bytes = bitmap.getAllocationByteCount();
+    }
+  }
+}
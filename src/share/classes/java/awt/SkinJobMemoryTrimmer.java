@@ -0,0 +1,55 @@
+package java.awt;
+
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
+import sun.awt.SoftCache;
+import sun.awt.image.ImageCache;
+import sun.font.GlyphLayout;
+import sun.font.GlyphStrike;
+
+/**
+ * Sheds cached images, bitmaps and glyphs when Android reports memory pressure. Registered with the
+ * application context by {@link SkinJob}.
+ * <p>
+ * Once the UI is hidden, the caches are trimmed to half their budgets, so the app returns to a
+ * warm working set. Under more pressure, or while running with critically low memory, they're
+ * emptied.
+ */
+public class SkinJobMemoryTrimmer implements ComponentCallbacks2 {
+
+  @Override
+  public void onTrimMemory(int level) {
+    if (level >= TRIM_MEMORY_MODERATE || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+      trim(0.0f);
+    } else if (level >= TRIM_MEMORY_UI_HIDDEN || level == TRIM_MEMORY_RUNNING_LOW) {
+      trim(0.5f);
+    }
+  }
+
+  /**
+   * Trims SkinJob's image caches to the given fraction of their budgets; 0 empties them.
+   */
+  public static void trim(float fraction) {
+    ImageCache.trimAll(fraction);
+    SoftCache.trimAll(fraction);
+    GlyphStrike.trimCache(fraction);
+    // The pool only holds bitmaps nothing is using, so it always goes. Decoded images and text
+    // layouts are costlier to recreate, so they're kept unless everything has to go.
+    SkinJobBitmapPool.clear();
+    if (fraction == 0.0f) {
+      SkinJobImageDecoder.clearCache();
+      SkinJobTextLayoutCache.clear();
+      GlyphLayout.clearCache();
+    }
+  }
+
+  @Override
+  public void onLowMemory() {
+    trim(0.0f);
+  }
+
+  @Override
+  public void onConfigurationChanged(Configuration newConfig) {
+    // No-op.
+  }
+}
@@ -0,0 +1,141 @@
+package java.awt;
+
+import android.graphics.Paint;
+import android.graphics.Paint.Cap;
+import android.graphics.Paint.Join;
+import android.graphics.Paint.Style;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.Typeface;
+
+/**
+ * Small pool of {@link Paint} objects, keyed by the drawing state that {@link SkinJobGraphics}
+ * maps onto them. A lookup that matches an existing entry allocates nothing; a miss reconfigures
+ * the least-recently-used entry's {@link Paint} in place, so no {@link Paint} is ever allocated
+ * once the pool is full. Not thread-safe; each {@link SkinJobGraphics} owns its own cache.
+ */
+class SkinJobPaintCache {
+  private static final PorterDuffXfermode[] XFERMODES;
+
+  static {
+    PorterDuff.Mode[] modes = PorterDuff.Mode.values();
+    XFERMODES = new PorterDuffXfermode[modes.length];
+    for (PorterDuff.Mode mode : modes) {
+      XFERMODES[mode.ordinal()] = new PorterDuffXfermode(mode);
+    }
+  }
+
+  private final Entry[] entries;
+  private int size;
+  private long useCounter;
+
+  SkinJobPaintCache() {
+    this(SkinJob.paintCacheSize);
+  }
+
+  SkinJobPaintCache(int capacity) {
+    entries = new Entry[Math.max(capacity, 1)];
+  }
+
+  /**
+   * Returns a {@link Paint} configured with exactly the given state. The returned object remains
+   * owned by this cache and must not be modified by the caller; it's only guaranteed to keep this
+   * configuration until the next call to this method.
+   *
+   * @param style       fill or stroke
+   * @param color       ARGB color
+   * @param strokeWidth stroke width in pixels (0 for hairlines)
+   * @param cap         stroke end-cap decoration
+   * @param join        stroke join decoration
+   * @param miterLimit  stroke miter limit
+   * @param mode        compositing mode, or null for the default (source-over)
+   * @param typeface    typeface for text, or null for the default
+   * @param textSize    text size in pixels
+   * @param antiAlias   whether edges are antialiased
+   */
+  Paint get(
+      Style style, int color, float strokeWidth, Cap cap, Join join, float miterLimit,
+      PorterDuff.Mode mode, Typeface typeface, float textSize, boolean antiAlias) {
+    for (int i = 0; i < size; i++) {
+      Entry entry = entries[i];
+      if (entry.matches(style, color, strokeWidth, cap, join, miterLimit, mode, typeface,
+          textSize, antiAlias)) {
+        entry.lastUse = ++useCounter;
+        return entry.paint;
+      }
+    }
+    Entry victim;
+    if (size < entries.length) {
+      victim = new Entry();
+      entries[size] = victim;
+      size++;
+    } else {
+      victim = entries[0];
+      for (int i = 1; i < size; i++) {
+        if (entries[i].lastUse < victim.lastUse) {
+          victim = entries[i];
+        }
+      }
+    }
+    victim.configure(
+        style, color, strokeWidth, cap, join, miterLimit, mode, typeface, textSize, antiAlias);
+    victim.lastUse = ++useCounter;
+    return victim.paint;
+  }
+
+  private static final class Entry {
+    final Paint paint = new Paint();
+    Style style;
+    int color;
+    float strokeWidth;
+    Cap cap;
+    Join join;
+    float miterLimit;
+    PorterDuff.Mode mode;
+    Typeface typeface;
+    float textSize;
+    boolean antiAlias;
+    long lastUse;
+
+    boolean matches(
+        Style style, int color, float strokeWidth, Cap cap, Join join, float miterLimit,
+        PorterDuff.Mode mode, Typeface typeface, float textSize, boolean antiAlias) {
+      if (this.style != style || this.color != color || this.mode != mode
+          || this.typeface != typeface || this.textSize != textSize
+          || this.antiAlias != antiAlias) {
+        return false;
+      }
+      // Stroke state doesn't affect fills, so don't let it fragment the pool.
+      return style == Style.FILL
+          || (this.strokeWidth == strokeWidth && this.cap == cap && this.join == join
+              && this.miterLimit == miterLimit);
+    }
+
+    void configure(
+        Style style, int color, float strokeWidth, Cap cap, Join join, float miterLimit,
+        PorterDuff.Mode mode, Typeface typeface, float textSize, boolean antiAlias) {
+      if (this.mode != mode) {
+        paint.setXfermode(mode == null ? null : XFERMODES[mode.ordinal()]);
+      }
+      this.style = style;
+      this.color = color;
+      this.strokeWidth = strokeWidth;
+      this.cap = cap;
+      this.join = join;
+      this.miterLimit = miterLimit;
+      this.mode = mode;
+      this.typeface = typeface;
+      this.textSize = textSize;
+      this.antiAlias = antiAlias;
+      paint.setStyle(style);
+      paint.setColor(color);
+      paint.setStrokeWidth(strokeWidth);
+      paint.setStrokeCap(cap);
+      paint.setStrokeJoin(join);
+      paint.setStrokeMiter(miterLimit);
+      paint.setTypeface(typeface);
+      paint.setTextSize(textSize);
+      paint.setAntiAlias(antiAlias);
+    }
+  }
+}
@@ -0,0 +1,154 @@
+package java.awt;
+
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.graphics.Xfermode;
+import android.text.Layout;
+import android.text.Layout.Alignment;
+import android.text.SpannableStringBuilder;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import java.text.AttributedCharacterIterator;
+import java.text.AttributedCharacterIterator.Attribute;
+import java.text.CharacterIterator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * LRU cache of {@link StaticLayout}s for attributed text, keyed by the text, its attribute runs and
+ * the default paint state. Lets {@link SkinJobGraphics#drawString(AttributedCharacterIterator, int,
+ * int)} lay out a label once and then just draw it on every repaint.
+ */
+public final class SkinJobTextLayoutCache {
+  private static final Map<Key, StaticLayout> LAYOUTS
+      = new LinkedHashMap<Key, StaticLayout>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, StaticLayout> eldest) {
+          return size() > SkinJob.textLayoutCacheSize;
+        }
+      };
+
+  /**
+   * Do not instantiate.
+   */
+  private SkinJobTextLayoutCache() {
+  }
+
+  /**
+   * Returns a laid-out, single-paragraph {@link StaticLayout} for the iterator's text, creating it
+   * if it isn't cached.
+   *
+   * @param iterator     the attributed text; only its runs are read, so this costs one
+   *                     {@link AttributedCharacterIterator#getAttributes()} call per run
+   * @param defaultPaint paint supplying the color, typeface and size of unattributed text
+   */
+  public static StaticLayout get(AttributedCharacterIterator iterator, Paint defaultPaint) {
+    Key key = new Key(iterator, defaultPaint);
+    StaticLayout layout;
+    synchronized (LAYOUTS) {
+      layout = LAYOUTS.get(key);
+    }
+    if (layout == null) {
+      layout = key.createLayout(defaultPaint);
+      synchronized (LAYOUTS) {
+        LAYOUTS.put(key, layout);
+      }
+    }
+    return layout;
+  }
+
+  /**
+   * Empties the cache, e.g. in response to memory pressure.
+   */
+  public static void clear() {
+    synchronized (LAYOUTS) {
+      LAYOUTS.clear();
+    }
+  }
+
+  private static final class Key {
+    private final String text;
+    private final int[] runLimits;
+    private final List<Map<Attribute, Object>> runAttributes;
+    private final int color;
+    private final Typeface typeface;
+    private final float textSize;
+    private final Xfermode xfermode;
+    private final boolean antiAlias;
+    private final int hash;
+
+    Key(AttributedCharacterIterator iterator, Paint defaultPaint) {
+      StringBuilder builder = new StringBuilder(iterator.getEndIndex() - iterator.getBeginIndex());
+      ArrayList<Integer> limits = new ArrayList<>();
+      runAttributes = new ArrayList<>();
+      char c = iterator.first();
+      while (c != CharacterIterator.DONE) {
+        int runLimit = iterator.getRunLimit();
+        runAttributes.add(iterator.getAttributes());
+        while (iterator.getIndex() < runLimit) {
+          builder.append(c);
+          c = iterator.next();
+        }
+        limits.add(builder.length());
+      }
+      text = builder.toString();
+      runLimits = new int[limits.size()];
+      for (int i = 0; i < runLimits.length; i++) {
+        runLimits[i] = limits.get(i);
+      }
+      color = defaultPaint.getColor();
+      typeface = defaultPaint.getTypeface();
+      textSize = defaultPaint.getTextSize();
+      xfermode = defaultPaint.getXfermode();
+      antiAlias = defaultPaint.isAntiAlias();
+      int h = text.hashCode();
+      h = 31 * h + Arrays.hashCode(runLimits);
+      h = 31 * h + runAttributes.hashCode();
+      h = 31 * h + color;
+      h = 31 * h + (typeface == null ? 0 : typeface.hashCode());
+      hash = 31 * h + Float.floatToIntBits(textSize);
+    }
+
+    StaticLayout createLayout(Paint defaultPaint) {
+      SpannableStringBuilder formattedText = new SpannableStringBuilder(text);
+      int runStart = 0;
+      for (int i = 0; i < runLimits.length; i++) {
+        Map<Attribute, Object> attributes = runAttributes.get(i);
+        if (!attributes.isEmpty()) {
+          new SkinJobTextAttributesDecoder(color)
+              .addAttributes(attributes)
+              .applyTo(formattedText, runStart, runLimits[i]);
+        }
+        runStart = runLimits[i];
+      }
+      TextPaint paint = new TextPaint(defaultPaint);
+      int width = (int) Math.ceil(Layout.getDesiredWidth(formattedText, paint));
+      return new StaticLayout(formattedText, paint, Math.max(width, 1), Alignment.ALIGN_NORMAL,
+          1.0f, 0.0f, false);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return hash == other.hash && color == other.color && typeface == other.typeface
+          && textSize == other.textSize && xfermode == other.xfermode
+          && antiAlias == other.antiAlias && text.equals(other.text)
+          && Arrays.equals(runLimits, other.runLimits)
+          && runAttributes.equals(other.runAttributes);
+    }
+  }
+}
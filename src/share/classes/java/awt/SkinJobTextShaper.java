@@ -0,0 +1,109 @@
+package java.awt;
+
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.RectF;
+import android.os.Build.VERSION;
+import android.os.Build.VERSION_CODES;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * Measures runs of text in one {@link Font} with Android's text shaper, and gets glyph outlines,
+ * for {@code sun.font.GlyphLayout}, {@code sun.font.StandardGlyphVector} and {@code
+ * sun.font.FontDesignMetrics}. The advances include kerning and contextual forms; a cluster of
+ * characters drawn as one glyph has all of its advance on its first character. Instances aren't
+ * thread-safe.
+ */
+public final class SkinJobTextShaper {
+  // Maximum distance, in points, of an outline's straight segments from the true curve.
+  private static final float OUTLINE_TOLERANCE = 0.02f;
+
+  private final Paint paint;
+  private final Path path = new Path();
+  private final RectF bounds = new RectF();
+  private final char[] chars = new char[2];
+
+  public SkinJobTextShaper(Font font) {
+    paint = new Paint();
+    paint.setTypeface(font.androidTypeface);
+    paint.setTextSize(font.getSize2D());
+    paint.setSubpixelText(true);
+  }
+
+  /**
+   * Stores the advance of each character of {@code text[start, start + count)} in {@code
+   * advances}, in points along the baseline, before any transform of the font.
+   *
+   * @param contextStart the start of the text that may be examined to shape the run
+   * @param contextLimit the end of the text that may be examined to shape the run
+   * @param rtl          whether the run is right-to-left
+   */
+  public void getAdvances(
+      char[] text, int start, int count, int contextStart, int contextLimit, boolean rtl,
+      float[] advances) {
+    paint.getTextRunAdvances(
+        text, start, count, contextStart, contextLimit - contextStart, rtl, advances, 0);
+  }
+
+  /**
+   * Stores the advance of each character of {@code text[start, start + count)}, measured on its
+   * own, in {@code widths}.
+   */
+  public void getWidths(char[] text, int start, int count, float[] widths) {
+    paint.getTextWidths(text, start, count, widths);
+  }
+
+  /**
+   * Stores the font's ascent, descent, leading, maximum ascent and maximum descent, in points, in
+   * {@code metrics[0..4]}.
+   */
+  public void getLineMetrics(float[] metrics) {
+    Paint.FontMetrics fontMetrics = paint.getFontMetrics();
+    metrics[0] = -fontMetrics.ascent;
+    metrics[1] = fontMetrics.descent;
+    metrics[2] = fontMetrics.leading;
+    metrics[3] = -fontMetrics.top;
+    metrics[4] = fontMetrics.bottom;
+  }
+
+  /**
+   * Stores the bounds of a glyph's outline, relative to its origin and before any transform of
+   * the font, in {@code dest}; empty for a glyph that draws nothing.
+   */
+  public void getVisualBounds(int codePoint, Rectangle2D dest) {
+    paint.getTextPath(chars, 0, Character.toChars(codePoint, chars, 0), 0, 0, path);
+    path.computeBounds(bounds, true);
+    dest.setRect(bounds.left, bounds.top, bounds.width(), bounds.height());
+  }
+
+  /**
+   * @return the outline of a glyph, relative to its origin and before any transform of the font,
+   *     with its curves approximated by straight lines; empty before Android O, which can't
+   *     enumerate the segments of a path
+   */
+  public Path2D.Float getOutline(int codePoint) {
+    Path2D.Float outline = new Path2D.Float();
+    if (VERSION.SDK_INT < VERSION_CODES.O) {
+      return outline;
+    }
+    paint.getTextPath(chars, 0, Character.toChars(codePoint, chars, 0), 0, 0, path);
+    // Each point is a fraction of the length, x and y; a point at the same fraction as the one
+    // before starts a new contour.
+    float[] points = path.approximate(OUTLINE_TOLERANCE);
+    for (int i = 0; i < points.length; i += 3) {
+      if (i == 0 || points[i] == points[i - 3]) {
+        if (i > 0) {
+          outline.closePath();
+        }
+        outline.moveTo(points[i + 1], points[i + 2]);
+      } else {
+        outline.lineTo(points[i + 1], points[i + 2]);
+      }
+    }
+    if (points.length > 0) {
+      outline.closePath();
+    }
+    return outline;
+  }
+}
@@ -204,7 +204,7 @@ public class SkinJobToolkit extends Toolkit {
 
   @Override
   public FontMetrics getFontMetrics(Font font) {
-    return new SkinJobFontMetrics(font);
+    return SkinJobFontMetrics.getInstance(font);
   }
 
   @Override
@@ -219,37 +219,45 @@ public class SkinJobToolkit extends Toolkit {
 
   @Override
   public Image getImage(URL url) {
-    return null;
+    return new SkinJobImage(url);
   }
 
   @Override
   public Image createImage(String filename) {
-    return null;
+    return new SkinJobImage(filename);
   }
 
   @Override
   public Image createImage(URL url) {
-    return null;
+    return new SkinJobImage(url);
   }
 
   @Override
   public boolean prepareImage(Image image, int width, int height, ImageObserver observer) {
-    return false;
+    if (image instanceof SkinJobImage) {
+      return ((SkinJobImage) image).prepare(width, height, observer);
+    }
+    return true; // Other image types SkinJob can draw are never loaded asynchronously
   }
 
   @Override
   public int checkImage(Image image, int width, int height, ImageObserver observer) {
-    return 0;
+    if (image instanceof SkinJobImage) {
+      return ((SkinJobImage) image).check(observer);
+    }
+    return ImageObserver.ALLBITS | ImageObserver.WIDTH | ImageObserver.HEIGHT
+        | ImageObserver.PROPERTIES;
   }
 
   @Override
   public Image createImage(ImageProducer producer) {
-    return null;
+    return new SkinJobImage(producer);
   }
 
   @Override
   public Image createImage(byte[] imagedata, int imageoffset, int imagelength) {
-    return null;
+    return new SkinJobImage(
+        SkinJobImageDecoder.forBytes(imagedata, imageoffset, imagelength), null);
   }
 
   @Override
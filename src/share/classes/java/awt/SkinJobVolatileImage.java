@@ -0,0 +1,130 @@
+package java.awt;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import java.awt.image.BufferedImage;
+import java.awt.image.ImageObserver;
+
+/**
+ * SkinJob Android implementation of {@link VolatileImage}, backed by a bitmap from
+ * {@link SkinJobBitmapPool}. The contents are only lost when the image is {@link #flush()}ed,
+ * which returns the bitmap to the pool unless a graphics context still draws into it; the next
+ * {@link #validate(GraphicsConfiguration)} or {@link #createGraphics()} takes a fresh one.
+ */
+public class SkinJobVolatileImage extends VolatileImage {
+  private static final ImageCapabilities CAPABILITIES = new ImageCapabilities(false);
+
+  private final int width;
+  private final int height;
+  private final GraphicsConfiguration graphicsConfiguration;
+  private final SkinJobBitmapPool.Reclaimer storage;
+  private int openGraphics;  // graphics contexts drawing into storage.bitmap, not yet disposed
+
+  public SkinJobVolatileImage(int width, int height, GraphicsConfiguration configuration) {
+    this.width = width;
+    this.height = height;
+    graphicsConfiguration = configuration;
+    storage = SkinJobBitmapPool.acquireFor(this, width, height, Config.ARGB_8888);
+  }
+
+  /**
+   * @return the backing bitmap, acquiring a blank one if the previous one was flushed
+   */
+  synchronized Bitmap getBitmap() {
+    Bitmap bitmap = storage.bitmap;
+    if (bitmap == null) {
+      bitmap = SkinJobBitmapPool.acquire(width, height, Config.ARGB_8888);
+      storage.bitmap = bitmap;
+    }
+    return bitmap;
+  }
+
+  @Override
+  public BufferedImage getSnapshot() {
+    return SkinJobBufferedImageBridge.toBufferedImage(getBitmap());
+  }
+
+  @Override
+  public int getWidth() {
+    return width;
+  }
+
+  @Override
+  public int getHeight() {
+    return height;
+  }
+
+  @Override
+  public int getWidth(ImageObserver observer) {
+    return width;
+  }
+
+  @Override
+  public int getHeight(ImageObserver observer) {
+    return height;
+  }
+
+  @Override
+  public Object getProperty(String name, ImageObserver observer) {
+    return UndefinedProperty;
+  }
+
+  @Override
+  public synchronized Graphics2D createGraphics() {
+    SkinJobGraphics2D graphics = new SkinJobGraphics2D(getBitmap());
+    graphics.bitmapOwner = this;
+    openGraphics++;
+    return graphics;
+  }
+
+  /**
+   * Called when a graphics context from {@link #createGraphics()} is copied.
+   */
+  synchronized void graphicsCreated() {
+    openGraphics++;
+  }
+
+  /**
+   * Called when a graphics context from {@link #createGraphics()} or a copy is disposed.
+   */
+  synchronized void graphicsDisposed() {
+    openGraphics--;
+  }
+
+  @Override
+  public synchronized int validate(GraphicsConfiguration gc) {
+    if (gc != null && gc != graphicsConfiguration
+        && !(gc instanceof SkinJobGraphicsConfiguration)) {
+      return IMAGE_INCOMPATIBLE;
+    }
+    if (storage.bitmap == null) {
+      getBitmap();
+      return IMAGE_RESTORED;
+    }
+    return IMAGE_OK;
+  }
+
+  @Override
+  public boolean contentsLost() {
+    return storage.bitmap == null;
+  }
+
+  @Override
+  public ImageCapabilities getCapabilities() {
+    return CAPABILITIES;
+  }
+
+  /**
+   * Returns the bitmap to {@link SkinJobBitmapPool}. The contents are lost. While a graphics
+   * context hasn't been disposed, it may still draw into the bitmap, so the bitmap is left to the
+   * garbage collector instead of being handed to another image.
+   */
+  @Override
+  public synchronized void flush() {
+    Bitmap bitmap = storage.bitmap;
+    storage.bitmap = null;
+    if (bitmap != null && openGraphics == 0) {
+      SkinJobBitmapPool.release(bitmap);
+    }
+  }
+}
@@ -19,7 +19,7 @@ public class SkinJobWindowPeer extends SkinJobComponentPeer<Window>
   public SkinJobWindowPeer(java.awt.Window target) {
     super(target.androidWindow, SkinJobGraphicsConfiguration.getDefault());
     thisAwtWindow = target;
-    graphics = new SkinJobGraphics(androidWidget.getDecorView().getDrawingCache());
+    graphics = new SkinJobGraphics2D(androidWidget.getDecorView().getDrawingCache());
   }
 
   @Override
@@ -0,0 +1,106 @@
+package java.awt;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Path;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+/**
+ * Draws in AWT's XOR mode, which Android has no transfer mode for. {@link
+ * android.graphics.PorterDuff.Mode#XOR} is an alpha-compositing rule that erases opaque
+ * destination pixels; XOR mode instead exclusive-ors the color bits of each pixel drawn with
+ * those of the source and of the alternate color, so drawing the same thing twice restores what
+ * was there. Alpha bits are left alone, and a pixel is either drawn or not, never blended.
+ * <p>
+ * An instance draws one operation at a time: the operation is drawn opaquely into a scratch
+ * bitmap covering just its device bounds, then the target's pixels there are exclusive-ored with
+ * it. Not thread-safe.
+ */
+final class SkinJobXorMode {
+  private final Matrix matrix = new Matrix();
+  private final RectF deviceBounds = new RectF();
+  private final Rect bounds = new Rect();
+  private Bitmap mask;
+  private Canvas maskCanvas;
+  private int[] src = new int[0];
+  private int[] dst = new int[0];
+  private Bitmap target;
+  private int xorRgb;
+
+  /**
+   * Exclusive-ors {@code dst[dstOff, dstOff + count)} with the colors of the pixels of {@code
+   * src} at least half covered, and with {@code xorRgb}.
+   */
+  static void xorRow(int[] dst, int dstOff, int[] src, int srcOff, int count, int xorRgb) {
+    for (int i = 0; i < count; i++) {
+      int s = src[srcOff + i];
+      if ((s >>> 24) >= 0x80) {
+        dst[dstOff + i] ^= (s ^ xorRgb) & 0x00FFFFFF;
+      }
+    }
+  }
+
+  /**
+   * Starts an operation.
+   *
+   * @param targetCanvas the canvas whose matrix the operation is drawn through
+   * @param localBounds  bounds of what the operation draws, before that matrix
+   * @param deviceClip   the clip in device space, or null if unclipped
+   * @return the canvas to draw the operation on, opaquely and without antialiasing, then call
+   *     {@link #end}; or null if the operation draws no pixels
+   */
+  Canvas begin(
+      Bitmap target, Canvas targetCanvas, RectF localBounds, Path deviceClip, Color xorColor) {
+    targetCanvas.getMatrix(matrix);
+    matrix.mapRect(deviceBounds, localBounds);
+    deviceBounds.roundOut(bounds);
+    if (!bounds.intersect(0, 0, target.getWidth(), target.getHeight())) {
+      return null;
+    }
+    int w = bounds.width();
+    int h = bounds.height();
+    if (mask == null || mask.getWidth() < w || mask.getHeight() < h) {
+      int maskWidth = mask == null ? w : Math.max(w, mask.getWidth());
+      int maskHeight = mask == null ? h : Math.max(h, mask.getHeight());
+      if (mask != null) {
+        mask.recycle();
+      }
+      mask = Bitmap.createBitmap(maskWidth, maskHeight, Config.ARGB_8888);
+      maskCanvas = new Canvas(mask);
+    } else {
+      mask.eraseColor(0);
+    }
+    maskCanvas.restoreToCount(1);
+    maskCanvas.save();
+    maskCanvas.translate(-bounds.left, -bounds.top);
+    if (deviceClip != null) {
+      maskCanvas.clipPath(deviceClip);
+    }
+    matrix.postTranslate(-bounds.left, -bounds.top);
+    maskCanvas.setMatrix(matrix);
+    this.target = target;
+    xorRgb = xorColor.getRGB();
+    return maskCanvas;
+  }
+
+  /**
+   * Exclusive-ors the operation drawn since {@link #begin} into the target.
+   */
+  void end() {
+    int w = bounds.width();
+    int h = bounds.height();
+    int size = w * h;
+    if (src.length < size) {
+      src = new int[size];
+      dst = new int[size];
+    }
+    mask.getPixels(src, 0, w, 0, 0, w, h);
+    target.getPixels(dst, 0, w, bounds.left, bounds.top, w, h);
+    xorRow(dst, 0, src, 0, size, xorRgb);
+    target.setPixels(dst, 0, w, bounds.left, bounds.top, w, h);
+    target = null;
+  }
+}
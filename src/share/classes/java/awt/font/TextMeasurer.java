@@ -50,6 +50,7 @@ import java.util.Hashtable;
 import java.util.Map;
 import sun.font.AttributeValues;
 import sun.font.BidiUtils;
+import sun.font.ExtendedTextSourceLabel;
 import sun.font.TextLabelFactory;
 import sun.font.TextLineComponent;
 
@@ -630,6 +631,7 @@ public final class TextMeasurer implements Cloneable {
     System.arraycopy(fChars, newCharIndex, newChars, newCharIndex + 1, end - insertPos - 1);
     fChars = newChars;
 
+    boolean hadBidi = fBidi != null;
     if (fBidi != null || Bidi.requiresBidi(newChars, newCharIndex, newCharIndex + 1) ||
         newParagraph.getAttribute(TextAttribute.BIDI_EMBEDDING) != null) {
 
@@ -639,8 +641,12 @@ public final class TextMeasurer implements Cloneable {
       }
     }
 
+    StyledParagraph oldParagraph = fParagraph;
     fParagraph = StyledParagraph.insertChar(newParagraph, fChars, insertPos, fParagraph);
-    invalidateComponents();
+    if (hadBidi || fBidi != null || fParagraph != oldParagraph
+        || !insertIntoComponents(newCharIndex, newChar)) {
+      invalidateComponents();
+    }
   }
 
   /**
@@ -680,6 +686,7 @@ public final class TextMeasurer implements Cloneable {
     System.arraycopy(fChars, changedIndex + 1, newChars, changedIndex, end - deletePos);
     fChars = newChars;
 
+    boolean hadBidi = fBidi != null;
     if (fBidi != null) {
       fBidi = new Bidi(newParagraph);
       if (fBidi.isLeftToRight()) {
@@ -687,8 +694,88 @@ public final class TextMeasurer implements Cloneable {
       }
     }
 
+    StyledParagraph oldParagraph = fParagraph;
     fParagraph = StyledParagraph.deleteChar(newParagraph, fChars, deletePos, fParagraph);
-    invalidateComponents();
+    if (hadBidi || fParagraph != oldParagraph || !deleteFromComponents(changedIndex)) {
+      invalidateComponents();
+    }
+  }
+
+  /**
+   * Updates the components for a character inserted at {@code pos} whose styles the paragraph
+   * already had there. Components before and after it are kept, shifted; the one it joins is
+   * edited, which measures only the words around it again.
+   *
+   * @return false if the components must be generated again instead
+   */
+  private boolean insertIntoComponents(int pos, char ch) {
+    if (fComponents == null) {
+      return false;
+    }
+    if (pos < fComponentStart) {
+      fComponentStart++;
+      fComponentLimit++;
+      return true;
+    }
+    if (pos > fComponentLimit) {
+      return true;
+    }
+    // The new character has the styles of the one before it, or of the first one if it's first.
+    int joined = pos == 0 ? 0 : pos - 1;
+    if (joined < fComponentStart) {
+      return false;
+    }
+    int tlcStart = fComponentStart;
+    for (int tlcIndex = 0; tlcIndex < fComponents.length; tlcIndex++) {
+      TextLineComponent tlc = fComponents[tlcIndex];
+      int tlcLimit = tlcStart + tlc.getNumCharacters();
+      if (joined < tlcLimit) {
+        if (!(tlc instanceof ExtendedTextSourceLabel)) {
+          return false;
+        }
+        fComponents[tlcIndex] = ((ExtendedTextSourceLabel) tlc).insertChar(pos - tlcStart, ch);
+        fComponentLimit++;
+        return true;
+      }
+      tlcStart = tlcLimit;
+    }
+    return false;
+  }
+
+  /**
+   * Updates the components for the character at {@code pos} having been deleted, like {@link
+   * #insertIntoComponents}.
+   *
+   * @return false if the components must be generated again instead
+   */
+  private boolean deleteFromComponents(int pos) {
+    if (fComponents == null) {
+      return false;
+    }
+    if (pos < fComponentStart) {
+      fComponentStart--;
+      fComponentLimit--;
+      return true;
+    }
+    if (pos >= fComponentLimit) {
+      return true;
+    }
+    int tlcStart = fComponentStart;
+    for (int tlcIndex = 0; tlcIndex < fComponents.length; tlcIndex++) {
+      TextLineComponent tlc = fComponents[tlcIndex];
+      int tlcLimit = tlcStart + tlc.getNumCharacters();
+      if (pos < tlcLimit) {
+        // A component can't be left empty.
+        if (!(tlc instanceof ExtendedTextSourceLabel) || tlcLimit - tlcStart == 1) {
+          return false;
+        }
+        fComponents[tlcIndex] = ((ExtendedTextSourceLabel) tlc).deleteChar(pos - tlcStart);
+        fComponentLimit--;
+        return true;
+      }
+      tlcStart = tlcLimit;
+    }
+    return false;
   }
 
   /**
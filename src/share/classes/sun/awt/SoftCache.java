@@ -1,28 +1,138 @@
 package sun.awt;
 
+import java.awt.Image;
 import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
 import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
 
 /**
  * {@link ConcurrentHashMap} wrapper that stores its values as {@link SoftReference}s.
+ * <p>
+ * Caches created with {@link #SoftCache(long, ToLongFunction)} instead hold their values strongly
+ * in least-recently-used order, evicting the oldest once the total weight of the values exceeds
+ * a byte budget. Their hit rate doesn't depend on how eagerly the GC clears soft references.
  */
 public class SoftCache<K, V> extends AbstractMap<K, V> {
 
+  // Weight given to images whose size isn't known yet.
+  private static final long UNKNOWN_IMAGE_BYTES = 64 * 1024;
+
+  // Every live bounded cache, so that they can all be trimmed at once. Held in a list of weak
+  // references rather than a weak set, since caches are maps and so compare by their contents.
+  private static final List<WeakReference<SoftCache<?, ?>>> boundedInstances = new ArrayList<>();
+
   private ConcurrentHashMap<K, SoftReference<V>> hashMap = new ConcurrentHashMap<>();
 
+  // Bounded mode only; access-ordered, guarded by itself.
+  private final LinkedHashMap<K, Weighted<V>> lruMap;
+  private final ToLongFunction<? super V> weigher;
+  private final long maxBytes;
+  private long currentBytes;
+
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+  private final AtomicLong evictionCount = new AtomicLong();
+
+  public SoftCache() {
+    lruMap = null;
+    weigher = null;
+    maxBytes = Long.MAX_VALUE;
+  }
+
+  /**
+   * Creates a cache in bounded mode.
+   *
+   * @param maxBytes the budget for the total weight of the values
+   * @param weigher  estimates the number of bytes a value occupies
+   */
+  public SoftCache(long maxBytes, ToLongFunction<? super V> weigher) {
+    hashMap = null;
+    lruMap = new LinkedHashMap<>(16, 0.75f, true);
+    this.weigher = weigher;
+    this.maxBytes = maxBytes;
+    synchronized (boundedInstances) {
+      boundedInstances.removeIf(ref -> ref.get() == null);
+      boundedInstances.add(new WeakReference<>(this));
+    }
+  }
+
+  /**
+   * Weighs an image by its pixel bytes, assuming 32-bit pixels. For use as the weigher of a
+   * bounded cache of images.
+   */
+  public static long estimateImageBytes(Object value) {
+    if (!(value instanceof Image)) {
+      return 0;
+    }
+    Image image = (Image) value;
+    int width = image.getWidth(null);
+    int height = image.getHeight(null);
+    return (width < 0 || height < 0) ? UNKNOWN_IMAGE_BYTES : 4L * width * height;
+  }
+
+  /**
+   * Trims every live bounded cache to the given fraction of its budget, e.g. in response to memory
+   * pressure. A fraction of 0 empties them.
+   */
+  public static void trimAll(float fraction) {
+    List<SoftCache<?, ?>> caches = new ArrayList<>();
+    synchronized (boundedInstances) {
+      for (WeakReference<SoftCache<?, ?>> ref : boundedInstances) {
+        SoftCache<?, ?> cache = ref.get();
+        if (cache != null) {
+          caches.add(cache);
+        }
+      }
+    }
+    for (SoftCache<?, ?> cache : caches) {
+      cache.trimToSize((long) (cache.maxBytes * (double) fraction));
+    }
+  }
+
   public V get(Object key) {
-    SoftReference<V> softValue = hashMap.get(key);
-    if (softValue == null) {
-      return null;
+    V value = peek(key);
+    (value == null ? missCount : hitCount).incrementAndGet();
+    return value;
+  }
+
+  // Looks up a value without counting a hit or miss.
+  private V peek(Object key) {
+    V value;
+    if (lruMap != null) {
+      synchronized (lruMap) {
+        Weighted<V> weighted = lruMap.get(key);
+        value = weighted == null ? null : weighted.value;
+      }
+    } else {
+      SoftReference<V> softValue = hashMap.get(key);
+      value = softValue == null ? null : softValue.get();
     }
-    return softValue.get();
+    return value;
   }
 
   @Override
   public V put(K key, V value) {
+    if (lruMap != null) {
+      Weighted<V> weighted = new Weighted<>(value, weigher.applyAsLong(value));
+      synchronized (lruMap) {
+        Weighted<V> old = lruMap.put(key, weighted);
+        currentBytes += weighted.bytes;
+        if (old != null) {
+          currentBytes -= old.bytes;
+        }
+        evictTo(maxBytes, weighted);
+        return old == null ? null : old.value;
+      }
+    }
     SoftReference<V> softOld = hashMap.put(key, new SoftReference<>(value));
     if (softOld == null) {
       return null;
@@ -30,11 +140,100 @@ public class SoftCache<K, V> extends AbstractMap<K, V> {
     return softOld.get();
   }
 
+  @Override
+  public V remove(Object key) {
+    if (lruMap != null) {
+      synchronized (lruMap) {
+        Weighted<V> old = lruMap.remove(key);
+        if (old == null) {
+          return null;
+        }
+        currentBytes -= old.bytes;
+        return old.value;
+      }
+    }
+    SoftReference<V> softOld = hashMap.remove(key);
+    return softOld == null ? null : softOld.get();
+  }
+
+  @Override
+  public void clear() {
+    if (lruMap != null) {
+      synchronized (lruMap) {
+        lruMap.clear();
+        currentBytes = 0;
+      }
+    } else {
+      hashMap.clear();
+    }
+  }
+
+  /**
+   * In bounded mode, evicts least recently used values until their total weight is at most
+   * {@code bytes}. Does nothing in soft mode.
+   */
+  public void trimToSize(long bytes) {
+    if (lruMap != null) {
+      synchronized (lruMap) {
+        evictTo(bytes, null);
+      }
+    }
+  }
+
+  // Must hold the lruMap lock. Never evicts keep, the value just added.
+  private void evictTo(long bytes, Weighted<V> keep) {
+    Iterator<Weighted<V>> iterator = lruMap.values().iterator();
+    while (currentBytes > bytes && iterator.hasNext()) {
+      Weighted<V> eldest = iterator.next();
+      if (eldest == keep) {
+        break;
+      }
+      iterator.remove();
+      currentBytes -= eldest.bytes;
+      evictionCount.incrementAndGet();
+    }
+  }
+
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  /**
+   * @return the number of values evicted in bounded mode
+   */
+  public long getEvictionCount() {
+    return evictionCount.get();
+  }
+
+  /**
+   * @return the total weight of the values held in bounded mode
+   */
+  public long getCurrentBytes() {
+    if (lruMap == null) {
+      return 0;
+    }
+    synchronized (lruMap) {
+      return currentBytes;
+    }
+  }
+
   @Override
   public Set<Entry<K, V>> entrySet() {
     Set<Entry<K, V>> entrySet = new HashSet<>();
-    for (K key : hashMap.keySet()) {
-      if (get(key) != null) {
+    Iterable<K> keys;
+    if (lruMap != null) {
+      synchronized (lruMap) {
+        keys = new HashSet<>(lruMap.keySet());
+      }
+    } else {
+      keys = hashMap.keySet();
+    }
+    for (K key : keys) {
+      if (peek(key) != null) {
         entrySet.add(new Entry<K, V>() {
           @Override
           public K getKey() {
@@ -43,7 +242,7 @@ public class SoftCache<K, V> extends AbstractMap<K, V> {
 
           @Override
           public V getValue() {
-            return get(key);
+            return peek(key);
           }
 
           @Override
@@ -55,4 +254,14 @@ public class SoftCache<K, V> extends AbstractMap<K, V> {
     }
     return entrySet;
   }
+
+  private static final class Weighted<V> {
+    final V value;
+    final long bytes;
+
+    Weighted(V value, long bytes) {
+      this.value = value;
+      this.bytes = bytes;
+    }
+  }
 }
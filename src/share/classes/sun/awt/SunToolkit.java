@@ -172,7 +172,9 @@ public abstract class SunToolkit extends Toolkit
   public static final int DEFAULT_WAIT_TIME = 10000;
   /* A variable defined for the convenience of JDK code */
   public static final String DESKTOPFONTHINTS = "awt.font.desktophints";
-  static final SoftCache imgCache = new SoftCache<URL, Image>();
+  static final SoftCache imgCache = SkinJob.getImageCacheBudget() > 0
+      ? new SoftCache<Object, Image>(SkinJob.getImageCacheBudget(), SoftCache::estimateImageBytes)
+      : new SoftCache<URL, Image>();
   /* The key to put()/get() the PostEventQueue into/from the AppContext.
    */
   private static final String POST_EVENT_QUEUE_KEY = "PostEventQueue";
@@ -26,26 +26,42 @@
 package sun.awt.image;
 
 import java.awt.Image;
+import java.awt.SkinJob;
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.SoftReference;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map.Entry;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Supplier;
 import sun.awt.AppContext;
 
 /**
  * ImageCache - A fixed pixel count sized cache of Images keyed by arbitrary
- * set of arguments. All images are held with SoftReferences so they will be
- * dropped by the GC if heap memory gets tight. When our size hits max pixel
- * count least recently requested images are removed first.
+ * set of arguments. When our size hits max pixel count least recently
+ * requested images are removed first.
+ * <p>
+ * In the default soft mode, all images are held with SoftReferences so they
+ * will be dropped by the GC if heap memory gets tight. In bounded mode they
+ * are held strongly, so the cache keeps exactly its least recently used
+ * working set within a byte budget instead of whatever the GC leaves behind;
+ * {@link #trimToSize(long)} then lets the application shed memory on demand.
  * <p>
  * The ImageCache must be used from the thread with an AppContext only.
  */
 public final class ImageCache {
 
+  // Bytes per cached pixel, assuming 32-bit ARGB storage.
+  private static final int BYTES_PER_PIXEL = 4;
+
+  // Every live cache, so that they can all be trimmed at once.
+  private static final Set<ImageCache> instances
+      = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
   // Ordered Map keyed by args hash, ordered by most recent accessed entry.
   private final LinkedHashMap<PixelsKey, ImageSoftReference> map = new LinkedHashMap<>(16,
       0.75f,
@@ -53,26 +69,46 @@ public final class ImageCache {
 
   // Maximum number of pixels to cache, this is used if maxCount
   private final int maxPixelCount;
-  // Lock for concurrent access to map
-  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  // Whether images are held strongly and only evicted by the LRU policy
+  private final boolean bounded;
+  // Lock for concurrent access to map; even reads reorder an access-ordered map
+  private final Lock lock = new ReentrantLock();
   // Reference queue for tracking lost softreferences to images in the cache
   private final ReferenceQueue<Image> referenceQueue = new ReferenceQueue<>();
   // The current number of pixels stored in the cache
   private int currentPixelCount;
 
+  private long hitCount;
+  private long missCount;
+  private long evictionCount;
+
   ImageCache(int maxPixelCount) {
+    this(maxPixelCount, false);
+  }
+
+  private ImageCache(int maxPixelCount, boolean bounded) {
     this.maxPixelCount = maxPixelCount;
+    this.bounded = bounded;
+    instances.add(this);
   }
 
   ImageCache() {
     this(8 * 1024 * 1024 / 4); // 8Mb of pixels
   }
 
+  /**
+   * Creates a cache in bounded mode, holding images strongly up to the given number of bytes.
+   */
+  public static ImageCache createBounded(long maxBytes) {
+    return new ImageCache((int) Math.min(Integer.MAX_VALUE, maxBytes / BYTES_PER_PIXEL), true);
+  }
+
   public static ImageCache getInstance() {
     return getSoftReferenceValue(ImageCache.class, new Supplier<ImageCache>() {
       @Override
       public ImageCache get() {
-        return new ImageCache();
+        long budget = SkinJob.getImageCacheBudget();
+        return budget > 0 ? createBounded(budget) : new ImageCache();
       }
     });
   }
@@ -93,24 +129,44 @@ public final class ImageCache {
     return object;
   }
 
+  /**
+   * Trims every live cache to the given fraction of its maximum size, e.g. in response to
+   * memory pressure. A fraction of 0 empties them.
+   */
+  public static void trimAll(float fraction) {
+    ImageCache[] caches;
+    synchronized (instances) {
+      caches = instances.toArray(new ImageCache[0]);
+    }
+    for (ImageCache cache : caches) {
+      cache.trimToSize((long) (cache.getMaxBytes() * (double) fraction));
+    }
+  }
+
   public void flush() {
-    lock.writeLock().lock();
+    lock.lock();
     try {
       map.clear();
+      currentPixelCount = 0;
     } finally {
-      lock.writeLock().unlock();
+      lock.unlock();
     }
   }
 
   public Image getImage(PixelsKey key) {
-    ImageSoftReference ref;
-    lock.readLock().lock();
+    lock.lock();
     try {
-      ref = map.get(key);
+      ImageSoftReference ref = map.get(key);
+      Image image = ref == null ? null : ref.get();
+      if (image == null) {
+        missCount++;
+      } else {
+        hitCount++;
+      }
+      return image;
     } finally {
-      lock.readLock().unlock();
+      lock.unlock();
     }
-    return ref == null ? null : ref.get();
   }
 
   /**
@@ -121,7 +177,7 @@ public final class ImageCache {
    */
   public void setImage(PixelsKey key, Image image) {
 
-    lock.writeLock().lock();
+    lock.lock();
     try {
       ImageSoftReference ref = map.get(key);
 
@@ -142,29 +198,96 @@ public final class ImageCache {
       if (currentPixelCount > maxPixelCount) {
         while ((ref = (ImageSoftReference) referenceQueue.poll()) != null) {
           //reference lost
-          map.remove(ref.key);
-          currentPixelCount -= ref.key.getPixelCount();
+          if (map.remove(ref.key) == ref) {
+            currentPixelCount -= ref.key.getPixelCount();
+          }
         }
       }
 
       // remove old items till there is enough free space
-      if (currentPixelCount > maxPixelCount) {
-        Iterator<Entry<PixelsKey, ImageSoftReference>> mapIter = map.entrySet().iterator();
-        while (currentPixelCount > maxPixelCount && mapIter.hasNext()) {
-          Entry<PixelsKey, ImageSoftReference> entry = mapIter.next();
-          mapIter.remove();
-          Image img = entry.getValue().get();
-          if (img != null) {
-            img.flush();
-          }
-          currentPixelCount -= entry.getValue().key.getPixelCount();
-        }
-      }
+      evictTo(maxPixelCount);
 
       // finally put new in map
-      map.put(key, new ImageSoftReference(key, image, referenceQueue));
+      map.put(key, new ImageSoftReference(key, image, referenceQueue, bounded));
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Evicts least recently used images until at most the given number of bytes remain.
+   */
+  public void trimToSize(long maxBytes) {
+    lock.lock();
+    try {
+      evictTo(maxBytes / BYTES_PER_PIXEL);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // Removes least recently used images until at most targetPixels remain. Must hold the lock.
+  private void evictTo(long targetPixels) {
+    Iterator<Entry<PixelsKey, ImageSoftReference>> mapIter = map.entrySet().iterator();
+    while (currentPixelCount > targetPixels && mapIter.hasNext()) {
+      Entry<PixelsKey, ImageSoftReference> entry = mapIter.next();
+      mapIter.remove();
+      Image img = entry.getValue().get();
+      if (img != null) {
+        img.flush();
+      }
+      currentPixelCount -= entry.getValue().key.getPixelCount();
+      evictionCount++;
+    }
+  }
+
+  /**
+   * @return the maximum number of bytes of pixels this cache holds
+   */
+  public long getMaxBytes() {
+    return (long) maxPixelCount * BYTES_PER_PIXEL;
+  }
+
+  /**
+   * @return the number of bytes of pixels currently cached
+   */
+  public long getCurrentBytes() {
+    lock.lock();
+    try {
+      return (long) currentPixelCount * BYTES_PER_PIXEL;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public long getHitCount() {
+    lock.lock();
+    try {
+      return hitCount;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public long getMissCount() {
+    lock.lock();
+    try {
+      return missCount;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return the number of images removed to make room or by {@link #trimToSize(long)}; images
+   * cleared by the GC in soft mode aren't counted
+   */
+  public long getEvictionCount() {
+    lock.lock();
+    try {
+      return evictionCount;
     } finally {
-      lock.writeLock().unlock();
+      lock.unlock();
     }
   }
 
@@ -176,11 +299,14 @@ public final class ImageCache {
   private static class ImageSoftReference extends SoftReference<Image> {
 
     final PixelsKey key;
+    // Set in bounded mode, so the GC can't clear the soft reference.
+    final Image strongReferent;
 
     ImageSoftReference(
-        PixelsKey key, Image referent, ReferenceQueue<? super Image> q) {
+        PixelsKey key, Image referent, ReferenceQueue<? super Image> q, boolean strong) {
       super(referent, q);
       this.key = key;
+      strongReferent = strong ? referent : null;
     }
   }
 }
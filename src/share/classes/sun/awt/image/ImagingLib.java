@@ -30,19 +30,20 @@ import java.awt.image.AffineTransformOp;
 import java.awt.image.BufferedImage;
 import java.awt.image.BufferedImageOp;
 import java.awt.image.ByteLookupTable;
+import java.awt.image.ColorModel;
 import java.awt.image.ConvolveOp;
+import java.awt.image.IndexColorModel;
 import java.awt.image.Kernel;
 import java.awt.image.LookupOp;
 import java.awt.image.LookupTable;
 import java.awt.image.Raster;
 import java.awt.image.RasterOp;
 import java.awt.image.WritableRaster;
-import java.security.AccessController;
-import java.security.PrivilegedAction;
 
 /**
  * This class provides a hook to access platform-specific
- * imaging code.
+ * imaging code. In SkinJob, the operations are implemented in Java by
+ * {@link JavaImagingLib} rather than by the native medialib library.
  * <p>
  * If the implementing class cannot handle the op, tile format or
  * image format, the method will return null;
@@ -62,25 +63,7 @@ public final class ImagingLib {
   static boolean verbose;
 
   static {
-
-    PrivilegedAction<Boolean> doMlibInitialization = new PrivilegedAction<Boolean>() {
-      @Override
-      public Boolean run() {
-        String arch = System.getProperty("os.arch");
-
-        if (arch == null || !arch.startsWith("sparc")) {
-          try {
-            System.loadLibrary("mlib_image");
-          } catch (UnsatisfiedLinkError e) {
-            return Boolean.FALSE;
-          }
-        }
-        boolean success = init();
-        return success;
-      }
-    };
-
-    useLib = AccessController.doPrivileged(doMlibInitialization);
+    useLib = init();
 
     //
     // Cache the class references of the operations we know about
@@ -115,40 +98,101 @@ public final class ImagingLib {
    * - failed to get all required entry points.
    */
   static boolean init() {
-    // TODO: Native in OpenJDK AWT
+    // Implemented in Java, so there is nothing to load.
     return true;
   }
 
   public static int transformBI(
       BufferedImage src, BufferedImage dst, double[] matrix, int interpType) {
-    // TODO: Native in OpenJDK AWT
-    return 0;
+    src = withColorModelOf(src, dst);
+    return JavaImagingLib.transform(src.getRaster(), dst.getRaster(), matrix, interpType) ? 1 : 0;
   }
 
   public static int transformRaster(Raster src, Raster dst, double[] matrix, int interpType) {
-    // TODO: Native in OpenJDK AWT
-    return 0;
+    return JavaImagingLib.transform(src, (WritableRaster) dst, matrix, interpType) ? 1 : 0;
   }
 
   public static int convolveBI(
       BufferedImage src, BufferedImage dst, Kernel kernel, int edgeHint) {
-    // TODO: Native in OpenJDK AWT
-    return 0;
+    if (src.getColorModel().equals(dst.getColorModel())) {
+      return JavaImagingLib.convolve(src.getRaster(), dst.getRaster(), kernel, edgeHint) ? 1 : 0;
+    }
+    // Convolve in the source's color model, then convert.
+    ColorModel cm = src.getColorModel();
+    BufferedImage tmp = new BufferedImage(cm,
+        cm.createCompatibleWritableRaster(src.getWidth(), src.getHeight()),
+        cm.isAlphaPremultiplied(), null);
+    if (!JavaImagingLib.convolve(src.getRaster(), tmp.getRaster(), kernel, edgeHint)) {
+      return 0;
+    }
+    convert(tmp, dst);
+    return 1;
   }
 
   public static int convolveRaster(Raster src, Raster dst, Kernel kernel, int edgeHint) {
-    // TODO: Native in OpenJDK AWT
-    return 0;
+    return JavaImagingLib.convolve(src, (WritableRaster) dst, kernel, edgeHint) ? 1 : 0;
   }
 
   public static int lookupByteBI(BufferedImage src, BufferedImage dst, byte[][] table) {
-    // TODO: Native in OpenJDK AWT
-    return 0;
+    ColorModel cm = src.getColorModel();
+    if (!cm.equals(dst.getColorModel()) || cm instanceof IndexColorModel) {
+      return 0;
+    }
+    // One table applies to every color component; as many tables as there are color components
+    // leave alpha alone.
+    int numBands = src.getRaster().getNumBands();
+    int numColors = cm.getNumColorComponents();
+    int[] bandTables = new int[numBands];
+    for (int b = 0; b < numBands; b++) {
+      if (table.length == 1) {
+        bandTables[b] = b < numColors ? 0 : -1;
+      } else if (b < table.length) {
+        bandTables[b] = b;
+      } else {
+        bandTables[b] = -1;
+      }
+    }
+    return JavaImagingLib.lookup(src.getRaster(), dst.getRaster(), table, bandTables) ? 1 : 0;
   }
 
   public static int lookupByteRaster(Raster src, Raster dst, byte[][] table) {
-    // TODO: Native in OpenJDK AWT
-    return 0;
+    int[] bandTables = new int[src.getNumBands()];
+    if (table.length != 1 && table.length != bandTables.length) {
+      return 0;
+    }
+    for (int b = 0; b < bandTables.length; b++) {
+      bandTables[b] = table.length == 1 ? 0 : b;
+    }
+    return JavaImagingLib.lookup(src, (WritableRaster) dst, table, bandTables) ? 1 : 0;
+  }
+
+  /**
+   * @return {@code src}, or a copy of it converted to the color model of {@code dst} if that
+   *     differs
+   */
+  private static BufferedImage withColorModelOf(BufferedImage src, BufferedImage dst) {
+    ColorModel cm = dst.getColorModel();
+    if (cm.equals(src.getColorModel())) {
+      return src;
+    }
+    BufferedImage converted = new BufferedImage(cm,
+        cm.createCompatibleWritableRaster(src.getWidth(), src.getHeight()),
+        cm.isAlphaPremultiplied(), null);
+    convert(src, converted);
+    return converted;
+  }
+
+  /**
+   * Copies the overlapping area of {@code src} into {@code dst}, converting the pixels through
+   * their color models.
+   */
+  private static void convert(BufferedImage src, BufferedImage dst) {
+    int w = Math.min(src.getWidth(), dst.getWidth());
+    int[] row = new int[w];
+    for (int y = 0, h = Math.min(src.getHeight(), dst.getHeight()); y < h; y++) {
+      src.getRGB(0, y, w, 1, row, 0, w);
+      dst.setRGB(0, y, w, 1, row, 0, w);
+    }
   }
 
   private static int getNativeOpIndex(Class opClass) {
@@ -0,0 +1,658 @@
+package sun.awt.image;
+
+import java.awt.SkinJob;
+import java.awt.image.AffineTransformOp;
+import java.awt.image.ConvolveOp;
+import java.awt.image.DataBuffer;
+import java.awt.image.Kernel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Pure-Java implementations of the operations {@link ImagingLib} would otherwise hand to the
+ * native medialib library, which SkinJob doesn't have. They work on rasters a row at a time, with
+ * each row unpacked into an array of interleaved int samples. Rasters backed by packed ints or
+ * interleaved bytes are read and written directly; anything else goes through
+ * {@link Raster#getPixels(int, int, int, int, int[])}. Images of at least
+ * {@link SkinJob#parallelTransformMinPixels} pixels are processed in bands of rows on the common
+ * {@link ForkJoinPool}.
+ * <p>
+ * The results match medialib's: convolution rotates the kernel by 180 degrees, as the
+ * mathematical definition requires, and the affine transform only writes destination pixels
+ * whose centers map inside the source, extending the source's edges for interpolation.
+ */
+final class JavaImagingLib {
+
+  // Bands are split no further than this many pixels each.
+  private static final int MIN_BAND_PIXELS = 16 * 1024;
+
+  /**
+   * Do not instantiate.
+   */
+  private JavaImagingLib() {
+  }
+
+  /**
+   * Convolves {@code src} into {@code dst}, which must have the same number of bands.
+   *
+   * @return false if the rasters can't be handled
+   */
+  static boolean convolve(
+      Raster src, WritableRaster dst, Kernel kernel, int edgeHint) {
+    Rows in = Rows.of(src);
+    Rows out = Rows.of(dst);
+    if (in == null || out == null || in.bands != out.bands) {
+      return false;
+    }
+    Convolution convolution = new Convolution(in, out, kernel, edgeHint);
+    forEachBand(Math.min(in.height, out.height), Math.min(in.width, out.width),
+        convolution::run);
+    return true;
+  }
+
+  /**
+   * Transforms {@code src} into {@code dst}, which must have the same number of bands. Only
+   * destination pixels whose centers map into the source are written.
+   *
+   * @param matrix the transform from source to destination, as from
+   *     {@link java.awt.geom.AffineTransform#getMatrix(double[])}
+   * @return false if the rasters or the transform can't be handled
+   */
+  static boolean transform(Raster src, WritableRaster dst, double[] matrix, int interpType) {
+    Rows in = Rows.of(src);
+    Rows out = Rows.of(dst);
+    double det = matrix[0] * matrix[3] - matrix[1] * matrix[2];
+    if (in == null || out == null || in.bands != out.bands || det == 0 || Double.isNaN(det)) {
+      return false;
+    }
+    Transform transform = new Transform(in, out, matrix, det, interpType);
+    forEachBand(out.height, out.width, transform::run);
+    return true;
+  }
+
+  /**
+   * Looks up every sample of {@code src} in a table and stores it in {@code dst}.
+   *
+   * @param bandTables for each band, the index of its table in {@code tables}, or -1 to copy it
+   *     unchanged
+   * @return false if the rasters can't be handled
+   */
+  static boolean lookup(Raster src, WritableRaster dst, byte[][] tables, int[] bandTables) {
+    Rows in = Rows.of(src);
+    Rows out = Rows.of(dst);
+    if (in == null || out == null || in.bands != out.bands) {
+      return false;
+    }
+    for (int b = 0; b < in.bands; b++) {
+      if (in.max[b] > 0xFF || out.max[b] < 0xFF) {
+        return false;
+      }
+    }
+    for (byte[] table : tables) {
+      if (table.length < 256) {
+        return false;
+      }
+    }
+    int width = Math.min(in.width, out.width);
+    forEachBand(Math.min(in.height, out.height), width, (y1, y2) -> {
+      int bands = in.bands;
+      int[] row = new int[width * bands];
+      for (int y = y1; y < y2; y++) {
+        in.get(y, width, row);
+        for (int b = 0; b < bands; b++) {
+          if (bandTables[b] < 0) {
+            continue;
+          }
+          byte[] table = tables[bandTables[b]];
+          for (int i = b; i < row.length; i += bands) {
+            row[i] = table[row[i]] & 0xFF;
+          }
+        }
+        out.set(y, width, row);
+      }
+    });
+    return true;
+  }
+
+  /**
+   * Runs {@code body} over rows {@code [0, height)}, split into bands run in parallel if the area
+   * is large enough.
+   */
+  private static void forEachBand(int height, int width, RowRange body) {
+    long pixels = (long) height * width;
+    int threshold = SkinJob.parallelTransformMinPixels;
+    if (threshold > 0 && pixels >= threshold && pixels >= 2 * MIN_BAND_PIXELS) {
+      ForkJoinPool.commonPool().invoke(new Band(body, width, 0, height));
+    } else if (height > 0 && width > 0) {
+      body.run(0, height);
+    }
+  }
+
+  private interface RowRange {
+    void run(int y1, int y2);
+  }
+
+  private static final class Band extends RecursiveAction {
+    private static final long serialVersionUID = 1665657545961358445L;
+
+    private final RowRange body;
+    private final int width;
+    private final int y1;
+    private final int y2;
+
+    Band(RowRange body, int width, int y1, int y2) {
+      this.body = body;
+      this.width = width;
+      this.y1 = y1;
+      this.y2 = y2;
+    }
+
+    @Override
+    protected void compute() {
+      int rows = y2 - y1;
+      if (rows < 2 || (long) rows * width < 2 * MIN_BAND_PIXELS) {
+        body.run(y1, y2);
+        return;
+      }
+      int mid = y1 + (rows >> 1);
+      invokeAll(new Band(body, width, y1, mid), new Band(body, width, mid, y2));
+    }
+  }
+
+  private static int clampRound(float v, int max) {
+    if (!(v > 0)) {
+      return 0;
+    }
+    return v >= max ? max : (int) (v + 0.5f);
+  }
+
+  /**
+   * Row-at-a-time access to the samples of a raster, in coordinates relative to its corner. Rows
+   * are arrays of {@code width * bands} interleaved samples.
+   */
+  abstract static class Rows {
+    final int width;
+    final int height;
+    final int bands;
+    // Largest value of each band.
+    final int[] max;
+
+    Rows(Raster raster) {
+      width = raster.getWidth();
+      height = raster.getHeight();
+      bands = raster.getNumBands();
+      max = new int[bands];
+      SampleModel sm = raster.getSampleModel();
+      for (int b = 0; b < bands; b++) {
+        int bits = sm.getSampleSize(b);
+        max[b] = bits >= 31 ? Integer.MAX_VALUE : (1 << bits) - 1;
+      }
+    }
+
+    /**
+     * @return direct access to {@code raster} if it is packed ints or interleaved bytes, else
+     *     access through its sample model; null if it holds floating-point samples
+     */
+    static Rows of(Raster raster) {
+      int dataType = raster.getSampleModel().getDataType();
+      if (dataType == DataBuffer.TYPE_FLOAT || dataType == DataBuffer.TYPE_DOUBLE) {
+        return null;
+      }
+      if (raster instanceof IntegerComponentRaster
+          && raster.getSampleModel() instanceof SinglePixelPackedSampleModel) {
+        return new PackedIntRows((IntegerComponentRaster) raster);
+      }
+      if (raster instanceof ByteComponentRaster) {
+        return new ByteRows((ByteComponentRaster) raster);
+      }
+      return new GenericRows(raster);
+    }
+
+    /**
+     * Loads the first {@code w} pixels of row {@code y}.
+     */
+    abstract void get(int y, int w, int[] row);
+
+    /**
+     * Stores the first {@code w} pixels of row {@code y}; samples must be in range.
+     */
+    abstract void set(int y, int w, int[] row);
+
+    abstract int getSample(int x, int y, int band);
+  }
+
+  private static final class PackedIntRows extends Rows {
+    private final IntegerComponentRaster raster;
+    private final int[] data;
+    private final int offset;
+    private final int scan;
+    private final int[] masks;
+    private final int[] shifts;
+
+    PackedIntRows(IntegerComponentRaster raster) {
+      super(raster);
+      this.raster = raster;
+      data = raster.getDataStorage();
+      offset = raster.getDataOffset(0);
+      scan = raster.getScanlineStride();
+      SinglePixelPackedSampleModel sm = (SinglePixelPackedSampleModel) raster.getSampleModel();
+      masks = sm.getBitMasks();
+      shifts = sm.getBitOffsets();
+    }
+
+    @Override
+    void get(int y, int w, int[] row) {
+      int idx = offset + y * scan;
+      for (int x = 0, i = 0; x < w; x++, idx++) {
+        int pixel = data[idx];
+        for (int b = 0; b < bands; b++, i++) {
+          row[i] = (pixel & masks[b]) >>> shifts[b];
+        }
+      }
+    }
+
+    @Override
+    void set(int y, int w, int[] row) {
+      int idx = offset + y * scan;
+      for (int x = 0, i = 0; x < w; x++, idx++) {
+        int pixel = 0;
+        for (int b = 0; b < bands; b++, i++) {
+          pixel |= row[i] << shifts[b];
+        }
+        data[idx] = pixel;
+      }
+    }
+
+    @Override
+    int getSample(int x, int y, int band) {
+      return (data[offset + y * scan + x] & masks[band]) >>> shifts[band];
+    }
+  }
+
+  private static final class ByteRows extends Rows {
+    private final ByteComponentRaster raster;
+    private final byte[] data;
+    private final int[] offsets;
+    private final int scan;
+    private final int pixelStride;
+
+    ByteRows(ByteComponentRaster raster) {
+      super(raster);
+      this.raster = raster;
+      data = raster.getDataStorage();
+      offsets = new int[bands];
+      for (int b = 0; b < bands; b++) {
+        offsets[b] = raster.getDataOffset(b);
+      }
+      scan = raster.getScanlineStride();
+      pixelStride = raster.getPixelStride();
+    }
+
+    @Override
+    void get(int y, int w, int[] row) {
+      for (int b = 0; b < bands; b++) {
+        int idx = offsets[b] + y * scan;
+        for (int i = b; i < w * bands; i += bands, idx += pixelStride) {
+          row[i] = data[idx] & 0xFF;
+        }
+      }
+    }
+
+    @Override
+    void set(int y, int w, int[] row) {
+      for (int b = 0; b < bands; b++) {
+        int idx = offsets[b] + y * scan;
+        for (int i = b; i < w * bands; i += bands, idx += pixelStride) {
+          data[idx] = (byte) row[i];
+        }
+      }
+    }
+
+    @Override
+    int getSample(int x, int y, int band) {
+      return data[offsets[band] + y * scan + x * pixelStride] & 0xFF;
+    }
+  }
+
+  private static final class GenericRows extends Rows {
+    private final Raster raster;
+    private final int minX;
+    private final int minY;
+
+    GenericRows(Raster raster) {
+      super(raster);
+      this.raster = raster;
+      minX = raster.getMinX();
+      minY = raster.getMinY();
+    }
+
+    @Override
+    void get(int y, int w, int[] row) {
+      raster.getPixels(minX, minY + y, w, 1, row);
+    }
+
+    @Override
+    void set(int y, int w, int[] row) {
+      ((WritableRaster) raster).setPixels(minX, minY + y, w, 1, row);
+    }
+
+    @Override
+    int getSample(int x, int y, int band) {
+      return raster.getSample(minX + x, minY + y, band);
+    }
+  }
+
+  /**
+   * A convolution, computed as {@code dst(x, y) = sum of k(i, j) * src(x + xOrigin - i, y +
+   * yOrigin - j)} over the pixels where the kernel fits within the source. A kernel that is the
+   * outer product of a column and a row, as blurs usually are, is applied as a horizontal pass
+   * followed by a vertical one, taking {@code w + h} rather than {@code w * h} multiplications per
+   * sample.
+   */
+  private static final class Convolution {
+    private final Rows src;
+    private final Rows dst;
+    private final int edgeHint;
+    private final int kw;
+    private final int kh;
+    private final int xOrigin;
+    private final int yOrigin;
+    private final int width;
+    private final int height;
+    // Row-major kernel, or null if separable.
+    private final float[] kernel;
+    // Separable factors: k(i, j) = rowFactors[i] * columnFactors[j].
+    private final float[] rowFactors;
+    private final float[] columnFactors;
+    // The destination samples written with the kernel fitting: [x1, x2) * bands.
+    private final int x1;
+    private final int x2;
+
+    Convolution(Rows src, Rows dst, Kernel k, int edgeHint) {
+      this.src = src;
+      this.dst = dst;
+      this.edgeHint = edgeHint;
+      kw = k.getWidth();
+      kh = k.getHeight();
+      xOrigin = k.getXOrigin();
+      yOrigin = k.getYOrigin();
+      width = Math.min(src.width, dst.width);
+      height = Math.min(src.height, dst.height);
+      float[] data = k.getKernelData(null);
+      float[][] factors = factor(data, kw, kh);
+      if (factors == null) {
+        kernel = data;
+        rowFactors = null;
+        columnFactors = null;
+      } else {
+        kernel = null;
+        rowFactors = factors[0];
+        columnFactors = factors[1];
+      }
+      // As in medialib, which only takes odd sizes, an even-sized kernel leaves as wide an edge
+      // as if it were padded to the next odd size.
+      x1 = Math.min(width, kw >> 1) * src.bands;
+      x2 = Math.max(x1, (width - (kw >> 1)) * src.bands);
+    }
+
+    /**
+     * @return {row, column} such that {@code data[j * w + i] == row[i] * column[j]}, or null if
+     *     there are none
+     */
+    private static float[][] factor(float[] data, int w, int h) {
+      if (w == 1 || h == 1) {
+        return null;
+      }
+      int pivot = 0;
+      for (int i = 1; i < data.length; i++) {
+        if (Math.abs(data[i]) > Math.abs(data[pivot])) {
+          pivot = i;
+        }
+      }
+      float largest = Math.abs(data[pivot]);
+      if (largest == 0) {
+        return null;
+      }
+      int pivotRow = pivot / w;
+      int pivotColumn = pivot % w;
+      float[] row = new float[w];
+      float[] column = new float[h];
+      System.arraycopy(data, pivotRow * w, row, 0, w);
+      for (int j = 0; j < h; j++) {
+        column[j] = data[j * w + pivotColumn] / data[pivot];
+      }
+      float tolerance = largest * 1e-6f;
+      for (int j = 0; j < h; j++) {
+        for (int i = 0; i < w; i++) {
+          if (Math.abs(data[j * w + i] - row[i] * column[j]) > tolerance) {
+            return null;
+          }
+        }
+      }
+      return new float[][] {row, column};
+    }
+
+    void run(int y1, int y2) {
+      int bands = src.bands;
+      int rowLength = width * bands;
+      int[] raw = new int[rowLength];
+      int[] out = new int[rowLength];
+      float[] sum = new float[rowLength];
+      float[] samples = rowFactors == null ? null : new float[rowLength];
+      // Source rows (horizontally filtered, if separable), by row mod kh.
+      float[][] cache = new float[kh][rowLength];
+      int[] cachedRows = new int[kh];
+      Arrays.fill(cachedRows, -1);
+      int top = kh >> 1;
+      int bottom = height - (kh >> 1);
+      for (int y = y1; y < y2; y++) {
+        if (edgeHint == ConvolveOp.EDGE_NO_OP) {
+          src.get(y, width, out);
+        } else {
+          Arrays.fill(out, 0);
+        }
+        if (y >= top && y < bottom && x1 < x2) {
+          Arrays.fill(sum, x1, x2, 0);
+          for (int j = 0; j < kh; j++) {
+            int sy = y + yOrigin - j;
+            int slot = sy % kh;
+            float[] row = cache[slot];
+            if (cachedRows[slot] != sy) {
+              loadRow(sy, raw, samples, row);
+              cachedRows[slot] = sy;
+            }
+            if (kernel == null) {
+              accumulate(sum, row, columnFactors[j], 0);
+            } else {
+              for (int i = 0; i < kw; i++) {
+                accumulate(sum, row, kernel[j * kw + i], (xOrigin - i) * bands);
+              }
+            }
+          }
+          store(sum, out);
+        }
+        dst.set(y, width, out);
+      }
+    }
+
+    private void accumulate(float[] sum, float[] row, float weight, int shift) {
+      if (weight == 0) {
+        return;
+      }
+      for (int i = x1; i < x2; i++) {
+        sum[i] += weight * row[i + shift];
+      }
+    }
+
+    /**
+     * Loads a source row, applying the horizontal pass if separable.
+     */
+    private void loadRow(int sy, int[] raw, float[] samples, float[] row) {
+      src.get(sy, width, raw);
+      if (rowFactors == null) {
+        for (int i = 0; i < raw.length; i++) {
+          row[i] = raw[i];
+        }
+        return;
+      }
+      for (int i = 0; i < raw.length; i++) {
+        samples[i] = raw[i];
+      }
+      Arrays.fill(row, x1, x2, 0);
+      for (int i = 0; i < kw; i++) {
+        accumulate(row, samples, rowFactors[i], (xOrigin - i) * src.bands);
+      }
+    }
+
+    private void store(float[] sum, int[] out) {
+      int bands = src.bands;
+      int[] max = dst.max;
+      for (int p = x1; p < x2; p += bands) {
+        for (int b = 0; b < bands; b++) {
+          out[p + b] = clampRound(sum[p + b], max[b]);
+        }
+      }
+    }
+  }
+
+  /**
+   * An affine transform, mapping the center of each destination pixel back into the source.
+   */
+  private static final class Transform {
+    private final Rows src;
+    private final Rows dst;
+    private final int interpType;
+    // Inverse transform, from destination to source.
+    private final double m00;
+    private final double m01;
+    private final double m02;
+    private final double m10;
+    private final double m11;
+    private final double m12;
+    // The same, in 16.16 fixed point: the source position of the center of pixel (0, 0) and its
+    // increments along a row and from row to row.
+    private final long u0;
+    private final long v0;
+    private final long du;
+    private final long dv;
+    private final long duRow;
+    private final long dvRow;
+
+    Transform(Rows src, Rows dst, double[] matrix, double det, int interpType) {
+      this.src = src;
+      this.dst = dst;
+      this.interpType = interpType;
+      m00 = matrix[3] / det;
+      m01 = -matrix[2] / det;
+      m10 = -matrix[1] / det;
+      m11 = matrix[0] / det;
+      m02 = -(m00 * matrix[4] + m01 * matrix[5]);
+      m12 = -(m10 * matrix[4] + m11 * matrix[5]);
+      du = (long) (m00 * 65536);
+      dv = (long) (m10 * 65536);
+      duRow = (long) (m01 * 65536);
+      dvRow = (long) (m11 * 65536);
+      u0 = (long) Math.floor((0.5 * (m00 + m01) + m02) * 65536);
+      v0 = (long) Math.floor((0.5 * (m10 + m11) + m12) * 65536);
+    }
+
+    void run(int y1, int y2) {
+      int bands = src.bands;
+      int width = dst.width;
+      int[] row = new int[width * bands];
+      double[] weightsX = new double[4];
+      double[] weightsY = new double[4];
+      long maxU = (long) src.width << 16;
+      long maxV = (long) src.height << 16;
+      for (int y = y1; y < y2; y++) {
+        boolean touched = false;
+        // Step with truncated increments, as medialib does, so that pixel centers that map
+        // exactly onto a source pixel boundary are resolved the same way.
+        long fu = u0 + y * duRow;
+        long fv = v0 + y * dvRow;
+        for (int x = 0; x < width; x++, fu += du, fv += dv) {
+          if (fu < 0 || fu >= maxU || fv < 0 || fv >= maxV) {
+            continue;
+          }
+          double u = fu / 65536.0;
+          double v = fv / 65536.0;
+          if (!touched) {
+            dst.get(y, width, row);
+            touched = true;
+          }
+          int p = x * bands;
+          switch (interpType) {
+            case AffineTransformOp.TYPE_BILINEAR:
+              bilinear(u - 0.5, v - 0.5, row, p);
+              break;
+            case AffineTransformOp.TYPE_BICUBIC:
+              bicubic(u - 0.5, v - 0.5, row, p, weightsX, weightsY);
+              break;
+            default:
+              for (int b = 0; b < bands; b++) {
+                row[p + b] = src.getSample((int) u, (int) v, b);
+              }
+              break;
+          }
+        }
+        if (touched) {
+          dst.set(y, width, row);
+        }
+      }
+    }
+
+    private void bilinear(double u, double v, int[] row, int p) {
+      int x = (int) Math.floor(u);
+      int y = (int) Math.floor(v);
+      float fx = (float) (u - x);
+      float fy = (float) (v - y);
+      int xa = Math.max(x, 0);
+      int xb = Math.min(x + 1, src.width - 1);
+      int ya = Math.max(y, 0);
+      int yb = Math.min(y + 1, src.height - 1);
+      for (int b = 0; b < src.bands; b++) {
+        float top = src.getSample(xa, ya, b) * (1 - fx) + src.getSample(xb, ya, b) * fx;
+        float bottom = src.getSample(xa, yb, b) * (1 - fx) + src.getSample(xb, yb, b) * fx;
+        row[p + b] = clampRound(top * (1 - fy) + bottom * fy, dst.max[b]);
+      }
+    }
+
+    private void bicubic(double u, double v, int[] row, int p, double[] wx, double[] wy) {
+      int x = (int) Math.floor(u);
+      int y = (int) Math.floor(v);
+      cubicWeights(u - x, wx);
+      cubicWeights(v - y, wy);
+      for (int b = 0; b < src.bands; b++) {
+        double sum = 0;
+        for (int j = 0; j < 4; j++) {
+          int sy = Math.min(Math.max(y - 1 + j, 0), src.height - 1);
+          double rowSum = 0;
+          for (int i = 0; i < 4; i++) {
+            int sx = Math.min(Math.max(x - 1 + i, 0), src.width - 1);
+            rowSum += wx[i] * src.getSample(sx, sy, b);
+          }
+          sum += wy[j] * rowSum;
+        }
+        row[p + b] = clampRound((float) sum, dst.max[b]);
+      }
+    }
+
+    /**
+     * Weights of the 4 taps around fraction {@code t}, for the cubic convolution kernel with
+     * a = -0.5.
+     */
+    private static void cubicWeights(double t, double[] w) {
+      double t2 = t * t;
+      double t3 = t2 * t;
+      w[0] = -0.5 * t3 + t2 - 0.5 * t;
+      w[1] = 1.5 * t3 - 2.5 * t2 + 1;
+      w[2] = -1.5 * t3 + 2 * t2 + 0.5 * t;
+      w[3] = 0.5 * t3 - 0.5 * t2;
+    }
+  }
+}
@@ -1,15 +1,164 @@
 package sun.font;
 
+import java.awt.Graphics2D;
+import java.awt.Paint;
+import java.awt.Shape;
+import java.awt.font.TextAttribute;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
 import java.text.AttributedCharacterIterator;
 import java.util.Map;
+import java.util.Objects;
 
 /**
- * Created by cryoc on 2016-10-15.
+ * What a run of styled text draws besides its glyphs: the {@link TextAttribute#FOREGROUND} and
+ * {@link TextAttribute#BACKGROUND} paints, a {@link TextAttribute#UNDERLINE} and a {@link
+ * TextAttribute#STRIKETHROUGH}. Text line components draw and measure themselves through their
+ * decoration, which calls back to the {@link Label} for the glyphs.
+ * <p>
+ * Runs without any of these share one plain instance, and decorations of the same attributes are
+ * equal, so {@link java.awt.font.StyledParagraph} keeps such runs together.
  */
 public final class Decoration {
+  private static final Decoration PLAIN = new Decoration(null, null, false, false);
+
+  private final Paint foreground;
+  private final Paint background;
+  private final boolean underline;
+  private final boolean strikethrough;
+
+  private Decoration(Paint foreground, Paint background, boolean underline,
+      boolean strikethrough) {
+    this.foreground = foreground;
+    this.background = background;
+    this.underline = underline;
+    this.strikethrough = strikethrough;
+  }
+
+  /**
+   * Text that a decoration draws and measures. The {@code handle} methods deal with the glyphs
+   * alone.
+   */
+  public interface Label {
+    CoreMetrics getCoreMetrics();
+
+    /**
+     * @return the bounds of the advance and the line metrics, relative to the origin
+     */
+    Rectangle2D getLogicalBounds();
+
+    void handleDraw(Graphics2D g2d, float x, float y);
+
+    Rectangle2D handleGetCharVisualBounds(int index);
+
+    Rectangle2D handleGetVisualBounds();
+
+    Shape handleGetOutline(float x, float y);
+  }
+
   public static Decoration getDecoration(
       Map<? extends AttributedCharacterIterator.Attribute, ?> values) {
-    // TODO
-    return new Decoration();
+    if (values == null) {
+      return PLAIN;
+    }
+    Object foreground = values.get(TextAttribute.FOREGROUND);
+    Object background = values.get(TextAttribute.BACKGROUND);
+    boolean underline = TextAttribute.UNDERLINE_ON.equals(values.get(TextAttribute.UNDERLINE));
+    boolean strikethrough =
+        TextAttribute.STRIKETHROUGH_ON.equals(values.get(TextAttribute.STRIKETHROUGH));
+    if (!(foreground instanceof Paint) && !(background instanceof Paint) && !underline
+        && !strikethrough) {
+      return PLAIN;
+    }
+    return new Decoration(foreground instanceof Paint ? (Paint) foreground : null,
+        background instanceof Paint ? (Paint) background : null, underline, strikethrough);
+  }
+
+  public void drawTextAndDecorations(Label label, Graphics2D g2d, float x, float y) {
+    if (this == PLAIN) {
+      label.handleDraw(g2d, x, y);
+      return;
+    }
+    Paint saved = g2d.getPaint();
+    try {
+      if (background != null) {
+        Rectangle2D bounds = label.getLogicalBounds();
+        g2d.setPaint(background);
+        g2d.fill(new Rectangle2D.Double(x + bounds.getX(), y + bounds.getY(), bounds.getWidth(),
+            bounds.getHeight()));
+      }
+      g2d.setPaint(foreground != null ? foreground : saved);
+      label.handleDraw(g2d, x, y);
+      if (underline || strikethrough) {
+        g2d.fill(getLines(label, x, y));
+      }
+    } finally {
+      g2d.setPaint(saved);
+    }
+  }
+
+  public Rectangle2D getVisualBounds(Label label) {
+    Rectangle2D bounds = label.handleGetVisualBounds();
+    if (underline || strikethrough) {
+      bounds = bounds.createUnion(getLines(label, 0, 0).getBounds2D());
+    }
+    return bounds;
+  }
+
+  public Rectangle2D getCharVisualBounds(Label label, int index) {
+    return label.handleGetCharVisualBounds(index);
+  }
+
+  public Shape getOutline(Label label, float x, float y) {
+    Shape outline = label.handleGetOutline(x, y);
+    if (!underline && !strikethrough) {
+      return outline;
+    }
+    Path2D.Float path = new Path2D.Float(outline);
+    path.append(getLines(label, x, y), false);
+    return path;
+  }
+
+  /**
+   * @return the underline and strikethrough of text drawn at (x, y), across its advance
+   */
+  private Path2D getLines(Label label, float x, float y) {
+    CoreMetrics cm = label.getCoreMetrics();
+    Rectangle2D bounds = label.getLogicalBounds();
+    double left = x + bounds.getX();
+    double width = bounds.getWidth();
+    Path2D.Float lines = new Path2D.Float();
+    if (underline) {
+      lines.append(new Rectangle2D.Double(left, y + cm.getUnderlineOffset(), width,
+          Math.max(cm.getUnderlineThickness(), 1)), false);
+    }
+    if (strikethrough) {
+      lines.append(new Rectangle2D.Double(left, y + cm.getStrikethroughOffset(), width,
+          Math.max(cm.getStrikethroughThickness(), 1)), false);
+    }
+    return lines;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof Decoration)) {
+      return false;
+    }
+    Decoration other = (Decoration) obj;
+    return underline == other.underline && strikethrough == other.strikethrough
+        && Objects.equals(foreground, other.foreground)
+        && Objects.equals(background, other.background);
+  }
+
+  @Override
+  public int hashCode() {
+    int h = Objects.hashCode(foreground);
+    h = 31 * h + Objects.hashCode(background);
+    h = 31 * h + (underline ? 1 : 0);
+    h = 31 * h + (strikethrough ? 1 : 0);
+    return h;
   }
 }
@@ -0,0 +1,348 @@
+package sun.font;
+
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.SkinJobTextShaper;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+
+/**
+ * A run of text in one font and direction, as a component of a {@link java.awt.font.TextLine}.
+ * It keeps a copy of its characters and the advance of each, in logical order, measured by
+ * Android's text shaper with the run as context. Without fractional metrics, each advance is
+ * rounded to whole points.
+ * <p>
+ * Labels are immutable. {@link #insertChar} and {@link #deleteChar} make a new label that reuses
+ * the advances of every word the edit doesn't touch, so editing a long run measures only the
+ * words around the edit again. Subsets reuse the advances of their characters. Each label sums
+ * its advances once, when first measured between characters, so caret positions and widths cost
+ * the same on long runs as on short ones.
+ * <p>
+ * Drawing, outlines and visual bounds go through the run's {@link Decoration}, which adds its
+ * background, underline and strikethrough to the glyphs.
+ */
+public final class ExtendedTextSourceLabel extends TextLineComponent implements Decoration.Label {
+  private final Font font;
+  private final FontRenderContext frc;
+  private final CoreMetrics cm;
+  private final Decoration decorator;
+  private final char[] chars;
+  private final float[] advances;
+  private final boolean rtl;
+  private StandardGlyphVector gv;
+  // The advance of chars[0, i) at [i]; null until needed.
+  private float[] advanceSums;
+
+  private ExtendedTextSourceLabel(
+      Font font, FontRenderContext frc, CoreMetrics cm, Decoration decorator, char[] chars,
+      float[] advances, boolean rtl) {
+    this.font = font;
+    this.frc = frc;
+    this.cm = cm;
+    this.decorator = decorator;
+    this.chars = chars;
+    this.advances = advances;
+    this.rtl = rtl;
+  }
+
+  /**
+   * Measures {@code text[start, limit)} as a run.
+   */
+  static ExtendedTextSourceLabel create(
+      Font font, FontRenderContext frc, CoreMetrics cm, Decoration decorator, char[] text,
+      int start, int limit, boolean rtl) {
+    char[] chars = Arrays.copyOfRange(text, start, limit);
+    ExtendedTextSourceLabel label = new ExtendedTextSourceLabel(
+        font, frc, cm, decorator, chars, new float[chars.length], rtl);
+    label.measure(0, chars.length);
+    return label;
+  }
+
+  /**
+   * @return a label with {@code ch} inserted at {@code index}, which may be the end
+   */
+  public ExtendedTextSourceLabel insertChar(int index, char ch) {
+    int count = chars.length;
+    char[] newChars = new char[count + 1];
+    float[] newAdvances = new float[count + 1];
+    System.arraycopy(chars, 0, newChars, 0, index);
+    System.arraycopy(advances, 0, newAdvances, 0, index);
+    newChars[index] = ch;
+    System.arraycopy(chars, index, newChars, index + 1, count - index);
+    System.arraycopy(advances, index, newAdvances, index + 1, count - index);
+    ExtendedTextSourceLabel label =
+        new ExtendedTextSourceLabel(font, frc, cm, decorator, newChars, newAdvances, rtl);
+    label.measureWordsAround(index, index + 1);
+    return label;
+  }
+
+  /**
+   * @return a label without the character at {@code index}
+   */
+  public ExtendedTextSourceLabel deleteChar(int index) {
+    int count = chars.length;
+    char[] newChars = new char[count - 1];
+    float[] newAdvances = new float[count - 1];
+    System.arraycopy(chars, 0, newChars, 0, index);
+    System.arraycopy(advances, 0, newAdvances, 0, index);
+    System.arraycopy(chars, index + 1, newChars, index, count - index - 1);
+    System.arraycopy(advances, index + 1, newAdvances, index, count - index - 1);
+    ExtendedTextSourceLabel label =
+        new ExtendedTextSourceLabel(font, frc, cm, decorator, newChars, newAdvances, rtl);
+    label.measureWordsAround(index, index);
+    return label;
+  }
+
+  /**
+   * Measures {@code chars[start, limit)} again, widened to whole words: kerning and ligatures
+   * don't reach across whitespace, so the advances of other words are still right.
+   */
+  private void measureWordsAround(int start, int limit) {
+    while (start > 0 && !Character.isWhitespace(chars[start - 1])) {
+      start--;
+    }
+    while (limit < chars.length && !Character.isWhitespace(chars[limit])) {
+      limit++;
+    }
+    if (start < limit) {
+      measure(start, limit);
+    }
+  }
+
+  private void measure(int start, int limit) {
+    int count = limit - start;
+    float[] measured = new float[count];
+    GlyphLayout.getEngine(font).getAdvances(chars, start, count, 0, chars.length, rtl, measured);
+    double scale = font.isTransformed() ? font.getTransform().getScaleX() : 1;
+    boolean fractional = frc.usesFractionalMetrics();
+    for (int i = 0; i < count; i++) {
+      float advance = (float) (measured[i] * scale);
+      advances[start + i] = fractional ? advance : Math.round(advance);
+    }
+  }
+
+  /**
+   * @return the glyphs, in visual order, positioned by the measured advances
+   */
+  private StandardGlyphVector getGlyphVector() {
+    if (gv == null) {
+      int count = chars.length;
+      int numGlyphs = Character.codePointCount(chars, 0, count);
+      int[] glyphs = new int[numGlyphs];
+      int[] charIndices = new int[numGlyphs];
+      float[] glyphAdvances = new float[numGlyphs];
+      for (int i = 0, g = 0; i < count; g++) {
+        int cp = Character.codePointAt(chars, i);
+        int n = Character.charCount(cp);
+        // Glyphs are laid out in visual order.
+        int v = rtl ? numGlyphs - 1 - g : g;
+        glyphs[v] = cp;
+        charIndices[v] = i;
+        glyphAdvances[v] = n == 2 ? advances[i] + advances[i + 1] : advances[i];
+        i += n;
+      }
+      float[] positions = new float[2 * numGlyphs + 2];
+      float x = 0;
+      for (int g = 0; g < numGlyphs; g++) {
+        positions[2 * g] = x;
+        x += glyphAdvances[g];
+      }
+      positions[2 * numGlyphs] = x;
+      gv = new StandardGlyphVector(font, frc, glyphs, charIndices, positions,
+          rtl ? GlyphVector.FLAG_RUN_RTL : 0);
+    }
+    return gv;
+  }
+
+  @Override
+  public boolean isSimple() {
+    return true;
+  }
+
+  @Override
+  public CoreMetrics getCoreMetrics() {
+    return cm;
+  }
+
+  @Override
+  public AffineTransform getBaselineTransform() {
+    return null;
+  }
+
+  /**
+   * @return the running sums of the advances, computing them if they haven't been
+   */
+  private float[] getAdvanceSums() {
+    if (advanceSums == null) {
+      int count = advances.length;
+      float[] sums = new float[count + 1];
+      float sum = 0;
+      for (int i = 0; i < count; i++) {
+        sum += advances[i];
+        sums[i + 1] = sum;
+      }
+      advanceSums = sums;
+    }
+    return advanceSums;
+  }
+
+  @Override
+  public float getAdvance() {
+    return getAdvanceSums()[chars.length];
+  }
+
+  @Override
+  public float getAdvanceBetween(int measureStart, int measureLimit) {
+    float[] sums = getAdvanceSums();
+    return sums[measureLimit] - sums[measureStart];
+  }
+
+  @Override
+  public float getCharX(int indexInArray) {
+    float before = getAdvanceBetween(0, indexInArray);
+    if (!rtl) {
+      return before;
+    }
+    float advance = indexInArray < chars.length ? advances[indexInArray] : 0;
+    return getAdvance() - before - advance;
+  }
+
+  @Override
+  public float getCharY(int indexInArray) {
+    return 0;
+  }
+
+  @Override
+  public int getNumCharacters() {
+    return chars.length;
+  }
+
+  @Override
+  public Rectangle getPixelBounds(FontRenderContext renderFrc, float x, float y) {
+    return getGlyphVector().getPixelBounds(renderFrc, x, y);
+  }
+
+  @Override
+  public boolean caretAtOffsetIsValid(int offset) {
+    if (offset <= 0 || offset >= chars.length) {
+      return true;
+    }
+    char ch = chars[offset];
+    switch (Character.getType(ch)) {
+      case Character.NON_SPACING_MARK:
+      case Character.ENCLOSING_MARK:
+      case Character.COMBINING_SPACING_MARK:
+        return false;
+      default:
+        return !Character.isLowSurrogate(ch);
+    }
+  }
+
+  @Override
+  public Rectangle2D getCharVisualBounds(int indexInTlc) {
+    return decorator.getCharVisualBounds(this, indexInTlc);
+  }
+
+  @Override
+  public Rectangle2D handleGetCharVisualBounds(int indexInTlc) {
+    Rectangle2D.Float bounds = new Rectangle2D.Float();
+    char ch = chars[indexInTlc];
+    if (!Character.isLowSurrogate(ch)) {
+      SkinJobTextShaper shaper = GlyphLayout.getEngine(font);
+      shaper.getVisualBounds(Character.codePointAt(chars, indexInTlc), bounds);
+    }
+    bounds.x += getCharX(indexInTlc);
+    return bounds;
+  }
+
+  @Override
+  public void draw(Graphics2D g2, float x, float y) {
+    decorator.drawTextAndDecorations(this, g2, x, y);
+  }
+
+  @Override
+  public void handleDraw(Graphics2D g2, float x, float y) {
+    g2.drawGlyphVector(getGlyphVector(), x, y);
+  }
+
+  @Override
+  public Shape getOutline(float x, float y) {
+    return decorator.getOutline(this, x, y);
+  }
+
+  @Override
+  public Shape handleGetOutline(float x, float y) {
+    return getGlyphVector().getOutline(x, y);
+  }
+
+  @Override
+  public TextLineComponent applyJustificationDeltas(float[] deltas, int i, boolean[] flags) {
+    // Justification isn't supported, so there's nothing to apply.
+    return this;
+  }
+
+  @Override
+  public Rectangle2D getItalicBounds() {
+    float left = 0;
+    float right = getAdvance();
+    float top = -cm.ascent;
+    float bottom = cm.descent;
+    float angle = cm.italicAngle;
+    if (angle > 0) {
+      left -= angle * (bottom - cm.ssOffset);
+      right -= angle * (top - cm.ssOffset);
+    } else if (angle < 0) {
+      left -= angle * (top - cm.ssOffset);
+      right -= angle * (bottom - cm.ssOffset);
+    }
+    return new Rectangle2D.Float(left, top, right - left, bottom - top);
+  }
+
+  @Override
+  public Rectangle2D getLogicalBounds() {
+    return new Rectangle2D.Float(0, -cm.ascent, getAdvance(), cm.ascent + cm.descent + cm.leading);
+  }
+
+  @Override
+  public Rectangle2D getVisualBounds() {
+    return decorator.getVisualBounds(this);
+  }
+
+  @Override
+  public Rectangle2D handleGetVisualBounds() {
+    return getGlyphVector().getVisualBounds();
+  }
+
+  @Override
+  public float getCharAdvance(int indexInArray) {
+    return advances[indexInArray];
+  }
+
+  @Override
+  public int getLineBreakIndex(int start, float width) {
+    while (start < chars.length) {
+      width -= advances[start];
+      if (width < 0) {
+        break;
+      }
+      start++;
+    }
+    return start;
+  }
+
+  @Override
+  public TextLineComponent getSubset(int start, int limit, int subsetFlag) {
+    boolean subsetRtl = subsetFlag == UNCHANGED ? rtl : subsetFlag == RIGHT_TO_LEFT;
+    if (start == 0 && limit == chars.length && subsetRtl == rtl) {
+      return this;
+    }
+    return new ExtendedTextSourceLabel(font, frc, cm, decorator,
+        Arrays.copyOfRange(chars, start, limit), Arrays.copyOfRange(advances, start, limit),
+        subsetRtl);
+  }
+}
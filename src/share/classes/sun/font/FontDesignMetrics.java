@@ -2,19 +2,293 @@ package sun.font;
 
 import java.awt.Font;
 import java.awt.FontMetrics;
+import java.awt.SkinJobTextShaper;
 import java.awt.font.FontRenderContext;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
- * Created by cryoc on 2016-10-17.
+ * {@link FontMetrics} of a font in a {@link FontRenderContext}, measured by Android. Character
+ * advances in the Basic Multilingual Plane are kept in a table of 256-character pages, each filled
+ * with one Android call the first time a character in it is measured, so measuring text seldom
+ * leaves Java. Without fractional metrics, each advance is rounded to whole points, as OpenJDK
+ * rounds them to whole pixels.
+ * <p>
+ * Instances are shared and thread-safe. The cache keeps the most recently used, and the few most
+ * recently returned are checked before it, so repeated lookups of the same fonts neither allocate
+ * a key nor lock.
  */
-public class FontDesignMetrics {
-  public static FontMetrics getMetrics(Font font, FontRenderContext fontRenderContext) {
-    // TODO
-    return null;
+public final class FontDesignMetrics extends FontMetrics {
+  private static final long serialVersionUID = 4480069578560887773L;
+
+  private static final int MAX_CACHED = 128;
+  private static final int MAX_RECENT = 5;
+  private static final int PAGE_BITS = 8;
+  private static final int PAGE_SIZE = 1 << PAGE_BITS;
+  // OpenJDK rounds line metrics up unless they're within this of an integer below.
+  private static final float ROUNDING_UP_VALUE = 0.95f;
+  private static final FontRenderContext DEFAULT_FRC = new FontRenderContext(null, false, false);
+
+  // Guarded by itself.
+  private static final Map<Key, FontDesignMetrics> metricsCache =
+      new LinkedHashMap<Key, FontDesignMetrics>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, FontDesignMetrics> eldest) {
+          return size() > MAX_CACHED;
+        }
+      };
+  private static final AtomicReferenceArray<FontDesignMetrics> recentMetrics =
+      new AtomicReferenceArray<>(MAX_RECENT);
+  private static final AtomicInteger recentIndex = new AtomicInteger();
+
+  private final transient FontRenderContext frc;
+  private final transient boolean fractional;
+  // Used only while holding its lock.
+  private final transient SkinJobTextShaper shaper;
+  private final transient AtomicReferenceArray<float[]> pages =
+      new AtomicReferenceArray<>((Character.MAX_VALUE + 1) >> PAGE_BITS);
+  private final transient float ascent;
+  private final transient float descent;
+  private final transient float leading;
+  private final transient float maxAscent;
+  private final transient float maxDescent;
+  private final transient int maxAdvance;
+
+  private FontDesignMetrics(Font font, FontRenderContext frc) {
+    super(font);
+    this.frc = frc;
+    fractional = frc.usesFractionalMetrics();
+    shaper = new SkinJobTextShaper(font);
+    float[] lineMetrics = new float[5];
+    shaper.getLineMetrics(lineMetrics);
+    ascent = lineMetrics[0];
+    descent = lineMetrics[1];
+    leading = lineMetrics[2];
+    maxAscent = lineMetrics[3];
+    maxDescent = lineMetrics[4];
+    float max = 0;
+    for (float advance : page(0)) {
+      max = Math.max(max, advance);
+    }
+    maxAdvance = (int) Math.ceil(max);
+  }
+
+  public static FontDesignMetrics getMetrics(Font font) {
+    return getMetrics(font, null);
+  }
+
+  /**
+   * @param frc the render context, or null for an untransformed one without antialiasing or
+   *            fractional metrics
+   * @return the shared metrics of {@code font} in {@code frc}
+   */
+  public static FontDesignMetrics getMetrics(Font font, FontRenderContext frc) {
+    if (frc == null) {
+      frc = DEFAULT_FRC;
+    }
+    // The array publishes each instance safely, so its font, which FontMetrics doesn't make
+    // final, is seen set.
+    for (int i = 0; i < MAX_RECENT; i++) {
+      FontDesignMetrics metrics = recentMetrics.get(i);
+      if (metrics != null && metrics.font.equals(font) && metrics.frc.equals(frc)) {
+        return metrics;
+      }
+    }
+    Key key = new Key(font, frc);
+    FontDesignMetrics metrics;
+    synchronized (metricsCache) {
+      metrics = metricsCache.get(key);
+    }
+    if (metrics == null) {
+      // Measured outside the lock; if another thread got there first, its instance is kept.
+      FontDesignMetrics created = new FontDesignMetrics(font, frc);
+      synchronized (metricsCache) {
+        metrics = metricsCache.get(key);
+        if (metrics == null) {
+          metrics = created;
+          metricsCache.put(key, metrics);
+        }
+      }
+    }
+    recentMetrics.set(Math.floorMod(recentIndex.getAndIncrement(), MAX_RECENT), metrics);
+    return metrics;
+  }
+
+  @Override
+  public FontRenderContext getFontRenderContext() {
+    return frc;
+  }
+
+  @Override
+  public int getAscent() {
+    return (int) (ROUNDING_UP_VALUE + ascent);
   }
 
-  public static FontMetrics getMetrics(Font font) {
-    // TODO
-    return null;
+  @Override
+  public int getDescent() {
+    return (int) (ROUNDING_UP_VALUE + descent);
+  }
+
+  @Override
+  public int getMaxAscent() {
+    return (int) (ROUNDING_UP_VALUE + maxAscent);
+  }
+
+  @Override
+  public int getMaxDescent() {
+    return (int) (ROUNDING_UP_VALUE + maxDescent);
+  }
+
+  @Override
+  public int getLeading() {
+    // Rounded so that ascent + descent + leading is the rounded height.
+    return (int) (ROUNDING_UP_VALUE + descent + leading) - (int) (ROUNDING_UP_VALUE + descent);
+  }
+
+  @Override
+  public int getMaxAdvance() {
+    return maxAdvance;
+  }
+
+  @Override
+  public int charWidth(char ch) {
+    return (int) (0.5f + advance(ch));
+  }
+
+  @Override
+  public int charWidth(int codePoint) {
+    if (!Character.isValidCodePoint(codePoint)) {
+      codePoint = UNICODE_NOT_A_CHARACTER;
+    }
+    if (codePoint <= Character.MAX_VALUE) {
+      return charWidth((char) codePoint);
+    }
+    return (int) (0.5f + measure(Character.toChars(codePoint), 0, 2));
+  }
+
+  @Override
+  public int stringWidth(String str) {
+    int length = str.length();
+    float width = 0;
+    for (int i = 0; i < length; i++) {
+      char ch = str.charAt(i);
+      if (ch >= 0x0300 && (Character.isSurrogate(ch) || FontUtilities.isComplexCharCode(ch))) {
+        return (int) (0.5f + measure(str.toCharArray(), 0, length));
+      }
+      width += advance(ch);
+    }
+    return (int) (0.5f + width);
+  }
+
+  @Override
+  public int charsWidth(char[] data, int off, int len) {
+    float width = 0;
+    for (int i = off; i < off + len; i++) {
+      char ch = data[i];
+      if (ch >= 0x0300 && (Character.isSurrogate(ch) || FontUtilities.isComplexCharCode(ch))) {
+        return (int) (0.5f + measure(data, off, len));
+      }
+      width += advance(ch);
+    }
+    return (int) (0.5f + width);
+  }
+
+  @Override
+  public int bytesWidth(byte[] data, int off, int len) {
+    float[] latin1 = page(0);
+    float width = 0;
+    for (int i = off; i < off + len; i++) {
+      width += latin1[data[i] & 0xFF];
+    }
+    return (int) (0.5f + width);
+  }
+
+  @Override
+  public int[] getWidths() {
+    float[] latin1 = page(0);
+    int[] widths = new int[256];
+    for (int i = 0; i < 256; i++) {
+      widths[i] = (int) (0.5f + latin1[i]);
+    }
+    return widths;
+  }
+
+  private float advance(char ch) {
+    return page(ch >> PAGE_BITS)[ch & (PAGE_SIZE - 1)];
+  }
+
+  /**
+   * @return a page of the advance table, measuring it if it hasn't been
+   */
+  private float[] page(int index) {
+    float[] page = pages.get(index);
+    if (page == null) {
+      char[] chars = new char[PAGE_SIZE];
+      for (int i = 0; i < PAGE_SIZE; i++) {
+        char ch = (char) ((index << PAGE_BITS) + i);
+        // Surrogates aren't characters on their own, so measure them as the missing glyph.
+        chars[i] = Character.isSurrogate(ch) ? (char) UNICODE_NOT_A_CHARACTER : ch;
+      }
+      page = new float[PAGE_SIZE];
+      synchronized (shaper) {
+        shaper.getWidths(chars, 0, PAGE_SIZE, page);
+      }
+      if (!fractional) {
+        for (int i = 0; i < PAGE_SIZE; i++) {
+          page[i] = Math.round(page[i]);
+        }
+      }
+      if (!pages.compareAndSet(index, null, page)) {
+        page = pages.get(index);
+      }
+    }
+    return page;
+  }
+
+  /**
+   * Measures text that needs shaping or has supplementary characters.
+   */
+  private float measure(char[] text, int start, int count) {
+    float[] advances = new float[count];
+    synchronized (shaper) {
+      shaper.getAdvances(text, start, count, start, start + count, false, advances);
+    }
+    float width = 0;
+    for (float advance : advances) {
+      width += fractional ? advance : Math.round(advance);
+    }
+    return width;
+  }
+
+  private Object readResolve() {
+    return getMetrics(font);
+  }
+
+  private static final class Key {
+    private final Font font;
+    private final FontRenderContext frc;
+    private final int hash;
+
+    Key(Font font, FontRenderContext frc) {
+      this.font = font;
+      this.frc = frc;
+      hash = 31 * font.hashCode() + frc.hashCode();
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return hash == other.hash && font.equals(other.font) && frc.equals(other.frc);
+    }
   }
 }
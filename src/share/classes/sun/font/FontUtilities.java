@@ -13,4 +13,63 @@ public final class FontUtilities {
   public static Font2D getFont2D(Font font) {
     return null;
   }
+
+  /**
+   * @return whether any of the characters needs shaping, so can't be drawn as one glyph per
+   *     character
+   */
+  public static boolean isComplexText(char[] chars, int start, int limit) {
+    for (int i = start; i < limit; i++) {
+      if (chars[i] >= 0x0300 && isComplexCharCode(chars[i])) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return whether a character is a combining mark, a bidi control, or from a script that needs
+   *     shaping
+   */
+  public static boolean isComplexCharCode(int code) {
+    if (code < 0x0300 || code > 0x206F) {
+      return false;
+    } else if (code <= 0x036F) {
+      // Combining diacritical marks.
+      return true;
+    } else if (code < 0x0590) {
+      return false;
+    } else if (code <= 0x06FF) {
+      // Hebrew and Arabic.
+      return true;
+    } else if (code < 0x0900) {
+      return false;
+    } else if (code <= 0x0E7F) {
+      // Indic scripts and Thai.
+      return true;
+    } else if (code < 0x0F00) {
+      return false;
+    } else if (code <= 0x0FFF) {
+      // Tibetan.
+      return true;
+    } else if (code < 0x1100) {
+      return false;
+    } else if (code < 0x11FF) {
+      // Hangul Jamo.
+      return true;
+    } else if (code < 0x1780) {
+      return false;
+    } else if (code <= 0x17FF) {
+      // Khmer.
+      return true;
+    } else if (code < 0x200C) {
+      return false;
+    } else if (code <= 0x200D) {
+      // Zero-width joiner and non-joiner.
+      return true;
+    } else {
+      // Directional controls.
+      return (code >= 0x202A && code <= 0x202E) || code >= 0x206A;
+    }
+  }
 }
@@ -0,0 +1,66 @@
+package sun.font;
+
+/**
+ * A cached glyph of a {@link GlyphStrike}: its device-space advance, and where its coverage mask
+ * is in the {@link GlyphImageStore}. The advance outlives the mask, which is rendered again if
+ * its slab has been reused since.
+ */
+public final class GlyphImage {
+  final float advanceX;
+  final float advanceY;
+  // The mask's left and top relative to the glyph origin, and its size in pixels.
+  int left;
+  int top;
+  int width;
+  int height;
+  GlyphImageStore.Slab slab;
+  int generation;
+  int offset;
+  // Set instead of slab for a mask too big to store.
+  byte[] bytes;
+
+  GlyphImage(float advanceX, float advanceY) {
+    this.advanceX = advanceX;
+    this.advanceY = advanceY;
+  }
+
+  boolean hasMask() {
+    return bytes != null || (slab != null && slab.generation == generation);
+  }
+
+  public float getAdvanceX() {
+    return advanceX;
+  }
+
+  public float getAdvanceY() {
+    return advanceY;
+  }
+
+  public int getLeft() {
+    return left;
+  }
+
+  public int getTop() {
+    return top;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * @return the array holding the mask, which starts at {@link #getOffset()}; only valid while
+   *     the glyph is pinned
+   */
+  public byte[] getBytes() {
+    return bytes != null ? bytes : slab.bytes;
+  }
+
+  public int getOffset() {
+    return bytes != null ? 0 : offset;
+  }
+}
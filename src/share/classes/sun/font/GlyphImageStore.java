@@ -0,0 +1,129 @@
+package sun.font;
+
+import java.awt.SkinJob;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The bytes of all cached glyph images, packed into fixed-size slabs so that caching thousands of
+ * small masks costs a few large arrays rather than thousands of small ones. Images are allocated
+ * from the current slab until it's full; the slab used least recently is then emptied and reused,
+ * once there are as many as {@link SkinJob#glyphCacheSize} allows. A slab's generation changes
+ * whenever it's emptied, which invalidates the images that were in it.
+ * <p>
+ * All methods must be called holding the lock on {@link #INSTANCE}. A slab holding images that
+ * are being drawn is pinned, and not reused until it's unpinned.
+ */
+final class GlyphImageStore {
+  static final GlyphImageStore INSTANCE = new GlyphImageStore();
+
+  static final int SLAB_SIZE = 64 * 1024;
+
+  static final class Slab {
+    // Null once the slab is dropped by trim().
+    byte[] bytes = new byte[SLAB_SIZE];
+    int used;
+    int generation;
+    long lastUse;
+    int pins;
+  }
+
+  private final List<Slab> slabs = new ArrayList<>();
+  private Slab current;
+  private long clock;
+
+  private GlyphImageStore() {
+  }
+
+  /**
+   * Copies an image into a slab and points {@code image} at it.
+   *
+   * @return false if the image is too big for a slab, in which case it isn't stored
+   */
+  boolean store(GlyphImage image, byte[] bytes, int length) {
+    if (length > SLAB_SIZE) {
+      return false;
+    }
+    if (current == null || current.used + length > SLAB_SIZE) {
+      current = nextSlab();
+    }
+    Slab slab = current;
+    System.arraycopy(bytes, 0, slab.bytes, slab.used, length);
+    image.slab = slab;
+    image.generation = slab.generation;
+    image.offset = slab.used;
+    slab.used += length;
+    slab.lastUse = ++clock;
+    return true;
+  }
+
+  /**
+   * @return a new slab, or the least recently used one, emptied, if there are as many slabs as
+   *     the budget allows
+   */
+  private Slab nextSlab() {
+    int maxSlabs = Math.max(2, SkinJob.glyphCacheSize / SLAB_SIZE);
+    if (slabs.size() < maxSlabs) {
+      Slab slab = new Slab();
+      slabs.add(slab);
+      return slab;
+    }
+    Slab lru = null;
+    for (Slab slab : slabs) {
+      if (slab.pins == 0 && slab != current && (lru == null || slab.lastUse < lru.lastUse)) {
+        lru = slab;
+      }
+    }
+    if (lru == null) {
+      // Everything is being drawn; go over budget until it isn't.
+      lru = new Slab();
+      slabs.add(lru);
+      return lru;
+    }
+    lru.generation++;
+    lru.used = 0;
+    return lru;
+  }
+
+  /**
+   * Marks an image's slab as used now, and keeps it from being reused until {@link #unpin}.
+   */
+  void pin(GlyphImage image) {
+    Slab slab = image.slab;
+    if (slab != null) {
+      slab.pins++;
+      slab.lastUse = ++clock;
+    }
+  }
+
+  void unpin(GlyphImage image) {
+    if (image.slab != null) {
+      image.slab.pins--;
+    }
+  }
+
+  /**
+   * Drops unpinned slabs, least recently used first, until at most the given fraction of the
+   * budget is left.
+   */
+  void trim(float fraction) {
+    int keep = (int) (fraction * SkinJob.glyphCacheSize / SLAB_SIZE);
+    while (slabs.size() > keep) {
+      Slab lru = null;
+      for (Slab slab : slabs) {
+        if (slab.pins == 0 && (lru == null || slab.lastUse < lru.lastUse)) {
+          lru = slab;
+        }
+      }
+      if (lru == null) {
+        return;
+      }
+      slabs.remove(lru);
+      lru.bytes = null;
+      lru.generation++;
+      if (lru == current) {
+        current = null;
+      }
+    }
+  }
+}
@@ -1,23 +1,358 @@
 package sun.font;
 
 import java.awt.Font;
+import java.awt.SkinJob;
+import java.awt.SkinJobTextShaper;
 import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.AffineTransform;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
- * Created by cryoc on 2016-10-14.
+ * Lays out runs of text in a font for {@link Font#layoutGlyphVector}: picks a glyph for each code
+ * point, in visual order, and positions them by the advances from Android's text shaper, so
+ * kerning and contextual forms are honored. As everywhere in SkinJob, glyph codes are code points.
+ * <p>
+ * Shaped runs are cached as packed glyph codes and positions, keyed by font, render context, text
+ * with its context and flags, up to {@link SkinJob#glyphLayoutCacheSize} of them, least recently
+ * used first out. Only {@link #MAX_CONTEXT} characters of context on each side of a run are
+ * shaped with it and kept in its key, and a lookup hashes and compares the caller's characters in
+ * place, so only a miss copies them. Drawing the same label again makes a glyph vector from the cached arrays
+ * without shaping it again.
+ * <p>
+ * Instances hold a shaper per recently used font and a scratch array, and are pooled one per
+ * thread: take one with {@link #get} and give it back with {@link #done}. Glyph vectors get their
+ * outlines and default layout from the same shapers.
  */
-public class GlyphLayout {
-  public static GlyphLayout get(Object o) {
-    return new GlyphLayout();
+public final class GlyphLayout {
+  private static final int MAX_ENGINES = 8;
+  // Shaping joins and kerns a character with its near neighbors only, so this much context on
+  // each side shapes a run as the whole text would.
+  private static final int MAX_CONTEXT = 16;
+
+  private static final ThreadLocal<GlyphLayout> pool = new ThreadLocal<>();
+
+  private static final Map<Key, Run> runs = new LinkedHashMap<Key, Run>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Key, Run> eldest) {
+      return size() > SkinJob.glyphLayoutCacheSize;
+    }
+  };
+
+  private final Map<Font, SkinJobTextShaper> engines =
+      new LinkedHashMap<Font, SkinJobTextShaper>(MAX_ENGINES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Font, SkinJobTextShaper> eldest) {
+          return size() > MAX_ENGINES;
+        }
+      };
+  private float[] advances = new float[64];
+  // Looks up runs without copying the text; never put in the cache itself.
+  private final Key probe = new Key();
+  private boolean inUse;
+
+  private GlyphLayout() {
+  }
+
+  /**
+   * @param factory ignored; custom layout engines aren't supported
+   * @return this thread's instance, or a new one if it's already in use
+   */
+  public static GlyphLayout get(Object factory) {
+    GlyphLayout gl = pool.get();
+    if (gl == null) {
+      gl = new GlyphLayout();
+      pool.set(gl);
+    }
+    if (gl.inUse) {
+      return new GlyphLayout();
+    }
+    gl.inUse = true;
+    return gl;
   }
 
   public static void done(GlyphLayout gl) {
-    // TODO
+    gl.inUse = false;
+  }
+
+  /**
+   * Empties the cache of shaped runs.
+   */
+  public static void clearCache() {
+    synchronized (runs) {
+      runs.clear();
+    }
   }
 
+  /**
+   * Lays out {@code text[offset, offset + count)}.
+   *
+   * @param flags  the {@code Font.LAYOUT_*} flags
+   * @param result ignored; a new glyph vector is always returned
+   */
   public StandardGlyphVector layout(
-      Font font, FontRenderContext frc, char[] text, int start, int i, int flags, Object o) {
-    // TODO
-    return new StandardGlyphVector(font, text, frc);
+      Font font, FontRenderContext frc, char[] text, int offset, int count, int flags,
+      StandardGlyphVector result) {
+    int limit = offset + count;
+    int contextStart = (flags & Font.LAYOUT_NO_START_CONTEXT) != 0
+        ? offset : Math.max(0, offset - MAX_CONTEXT);
+    int contextLimit = (flags & Font.LAYOUT_NO_LIMIT_CONTEXT) != 0
+        ? limit : Math.min(text.length, limit + MAX_CONTEXT);
+    // Don't cut a surrogate pair in two.
+    if (contextStart > 0 && contextStart < offset && Character.isLowSurrogate(text[contextStart])
+        && Character.isHighSurrogate(text[contextStart - 1])) {
+      contextStart--;
+    }
+    if (contextLimit < text.length && contextLimit > limit
+        && Character.isHighSurrogate(text[contextLimit - 1])
+        && Character.isLowSurrogate(text[contextLimit])) {
+      contextLimit++;
+    }
+    Key key = probe;
+    key.set(font, frc, text, contextStart, contextLimit, offset - contextStart, count,
+        flags & Font.LAYOUT_RIGHT_TO_LEFT);
+    Run run;
+    try {
+      synchronized (runs) {
+        run = runs.get(key);
+      }
+      if (run == null) {
+        run = shape(key, text, offset, contextStart, contextLimit);
+        Key copy = key.copy();
+        synchronized (runs) {
+          runs.put(copy, run);
+        }
+      }
+    } finally {
+      key.clear();  // so the probe doesn't keep the caller's text reachable
+    }
+    return new StandardGlyphVector(font, frc, run.glyphs, run.charIndices, run.positions,
+        (flags & Font.LAYOUT_RIGHT_TO_LEFT) != 0 ? GlyphVector.FLAG_RUN_RTL : 0);
+  }
+
+  /**
+   * @return this thread's shaper for a font, for use on this thread only
+   */
+  static SkinJobTextShaper getEngine(Font font) {
+    GlyphLayout gl = pool.get();
+    if (gl == null) {
+      gl = new GlyphLayout();
+      pool.set(gl);
+    }
+    return gl.engine(font);
+  }
+
+  /**
+   * @return the positions of glyphs laid out one after the other, left to right, without
+   *     examining context: each glyph's and the end's, x and y
+   */
+  static float[] defaultPositions(Font font, FontRenderContext frc, int[] glyphs) {
+    int count = 0;
+    for (int glyph : glyphs) {
+      count += Character.charCount(glyph);
+    }
+    char[] text = new char[count];
+    for (int g = 0, i = 0; g < glyphs.length; g++) {
+      i += Character.toChars(glyphs[g], text, i);
+    }
+    float[] advances = new float[count];
+    getEngine(font).getAdvances(text, 0, count, 0, count, false, advances);
+    float[] glyphAdvances = new float[glyphs.length];
+    for (int g = 0, i = 0; g < glyphs.length; g++) {
+      int chars = Character.charCount(glyphs[g]);
+      glyphAdvances[g] = chars == 2 ? advances[i] + advances[i + 1] : advances[i];
+      i += chars;
+    }
+    return toPositions(font, frc, glyphAdvances);
+  }
+
+  private SkinJobTextShaper engine(Font font) {
+    SkinJobTextShaper engine = engines.get(font);
+    if (engine == null) {
+      engine = new SkinJobTextShaper(font);
+      engines.put(font, engine);
+    }
+    return engine;
+  }
+
+  private Run shape(Key key, char[] text, int offset, int contextStart, int contextLimit) {
+    int count = key.count;
+    boolean rtl = key.flags != 0;
+    if (advances.length < count) {
+      advances = new float[count];
+    }
+    engine(key.font).getAdvances(text, offset, count, contextStart, contextLimit, rtl, advances);
+
+    // Gather code points and their advances in logical order, then put them in visual order.
+    int numGlyphs = Character.codePointCount(text, offset, count);
+    int[] glyphs = new int[numGlyphs];
+    int[] charIndices = new int[numGlyphs];
+    float[] glyphAdvances = new float[numGlyphs];
+    for (int i = 0, g = 0; i < count; g++) {
+      int cp = Character.codePointAt(text, offset + i, offset + count);
+      int chars = Character.charCount(cp);
+      glyphs[g] = cp;
+      charIndices[g] = i;
+      glyphAdvances[g] = chars == 2 ? advances[i] + advances[i + 1] : advances[i];
+      i += chars;
+    }
+    if (rtl) {
+      reverse(glyphs, charIndices, glyphAdvances);
+    }
+    return new Run(glyphs, charIndices, toPositions(key.font, key.frc, glyphAdvances));
+  }
+
+  /**
+   * @return the positions of glyphs with the given advances, each glyph's and the end's, x and
+   *     y, with the font's transform applied and, without fractional metrics, rounded
+   */
+  private static float[] toPositions(Font font, FontRenderContext frc, float[] glyphAdvances) {
+    int numGlyphs = glyphAdvances.length;
+    AffineTransform fontTx = font.isTransformed() ? font.getTransform() : null;
+    boolean fractional = frc.usesFractionalMetrics();
+    float[] positions = new float[2 * numGlyphs + 2];
+    float x = 0;
+    float y = 0;
+    for (int g = 0; g < numGlyphs; g++) {
+      positions[2 * g] = x;
+      positions[2 * g + 1] = y;
+      float dx = glyphAdvances[g];
+      float dy = 0;
+      if (fontTx != null) {
+        dy = (float) (dx * fontTx.getShearY());
+        dx = (float) (dx * fontTx.getScaleX());
+      }
+      if (!fractional) {
+        dx = Math.round(dx);
+        dy = Math.round(dy);
+      }
+      x += dx;
+      y += dy;
+    }
+    positions[2 * numGlyphs] = x;
+    positions[2 * numGlyphs + 1] = y;
+    return positions;
+  }
+
+  private static void reverse(int[] glyphs, int[] charIndices, float[] glyphAdvances) {
+    for (int i = 0, j = glyphs.length - 1; i < j; i++, j--) {
+      int glyph = glyphs[i];
+      glyphs[i] = glyphs[j];
+      glyphs[j] = glyph;
+      int charIndex = charIndices[i];
+      charIndices[i] = charIndices[j];
+      charIndices[j] = charIndex;
+      float advance = glyphAdvances[i];
+      glyphAdvances[i] = glyphAdvances[j];
+      glyphAdvances[j] = advance;
+    }
+  }
+
+  /**
+   * A shaped run: glyph codes in visual order, the index in the run of each glyph's first
+   * character, and the position of each glyph and of the end of the run, x and y. Shared by the
+   * cache, so never modified.
+   */
+  private static final class Run {
+    final int[] glyphs;
+    final int[] charIndices;
+    final float[] positions;
+
+    Run(int[] glyphs, int[] charIndices, float[] positions) {
+      this.glyphs = glyphs;
+      this.charIndices = charIndices;
+      this.positions = positions;
+    }
+  }
+
+  /**
+   * The text of a run with its context, and what else shaping it depends on. A key in the cache
+   * holds a copy of just that text; the probe refers to the caller's array.
+   */
+  private static final class Key {
+    Font font;
+    FontRenderContext frc;
+    // The run with its context is text[textStart, textLimit); the run starts start chars in.
+    char[] text;
+    int textStart;
+    int textLimit;
+    int start;
+    int count;
+    int flags;
+    private int hash;
+
+    void set(
+        Font font, FontRenderContext frc, char[] text, int textStart, int textLimit, int start,
+        int count, int flags) {
+      this.font = font;
+      this.frc = frc;
+      this.text = text;
+      this.textStart = textStart;
+      this.textLimit = textLimit;
+      this.start = start;
+      this.count = count;
+      this.flags = flags;
+      int h = font.hashCode();
+      h = 31 * h + frc.hashCode();
+      for (int i = textStart; i < textLimit; i++) {
+        h = 31 * h + text[i];
+      }
+      h = 31 * h + start;
+      h = 31 * h + count;
+      h = 31 * h + flags;
+      hash = h;
+    }
+
+    void clear() {
+      font = null;
+      frc = null;
+      text = null;
+    }
+
+    /**
+     * @return an equal key with its own copy of the text
+     */
+    Key copy() {
+      Key key = new Key();
+      key.font = font;
+      key.frc = frc;
+      key.text = Arrays.copyOfRange(text, textStart, textLimit);
+      key.textStart = 0;
+      key.textLimit = textLimit - textStart;
+      key.start = start;
+      key.count = count;
+      key.flags = flags;
+      key.hash = hash;
+      return key;
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      int length = textLimit - textStart;
+      if (hash != other.hash || start != other.start || count != other.count
+          || flags != other.flags || length != other.textLimit - other.textStart) {
+        return false;
+      }
+      for (int i = 0; i < length; i++) {
+        if (text[textStart + i] != other.text[other.textStart + i]) {
+          return false;
+        }
+      }
+      return font.equals(other.font) && frc.equals(other.frc);
+    }
   }
 }
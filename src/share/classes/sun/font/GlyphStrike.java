@@ -0,0 +1,248 @@
+package sun.font;
+
+import java.awt.Font;
+import java.awt.SkinJobGlyphRasterizer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import sun.awt.SunHints;
+import sun.java2d.loops.FontInfo;
+
+/**
+ * The rendered glyphs of one font at one device transform and antialiasing mode, as {@link
+ * FontInfo} describes it, for the glyph list text pipes. Glyph codes are code points. Strikes are
+ * shared by all threads, and the least recently used ones are dropped once there are more than a
+ * few dozen; their masks are bounded separately, by the {@link GlyphImageStore}.
+ * <p>
+ * With subpixel positioning, each glyph is rendered at {@link #SUBPIXEL_POSITIONS} horizontal
+ * offsets within a pixel, and placed at the one nearest its fractional position. Otherwise
+ * advances are rounded to whole pixels, and glyphs are placed at the nearest pixel.
+ */
+public final class GlyphStrike {
+  public static final int SUBPIXEL_POSITIONS = 4;
+
+  private static final int MAX_STRIKES = 64;
+  private static final int PAGE_BITS = 8;
+  private static final int PAGE_SIZE = 1 << PAGE_BITS;
+  private static final byte[] NO_BYTES = new byte[0];
+
+  private static final Map<Key, GlyphStrike> strikes =
+      new LinkedHashMap<Key, GlyphStrike>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, GlyphStrike> eldest) {
+          return size() > MAX_STRIKES;
+        }
+      };
+
+  private final SkinJobGlyphRasterizer rasterizer;
+  private final boolean lcd;
+  private final int positions;
+  // Glyphs of BMP code points, indexed by code point * positions + position, in lazily created
+  // pages.
+  private final GlyphImage[][] pages;
+  private final Map<Integer, GlyphImage> supplementaryGlyphs = new HashMap<>();
+  private final float[] advance = new float[2];
+  private final int[] metrics = new int[4];
+
+  private GlyphStrike(Key key) {
+    int mode;
+    switch (key.aaHint) {
+      case SunHints.INTVAL_TEXT_ANTIALIAS_OFF:
+        mode = SkinJobGlyphRasterizer.BILEVEL;
+        break;
+      case SunHints.INTVAL_TEXT_ANTIALIAS_LCD_HRGB:
+        mode = SkinJobGlyphRasterizer.LCD_HORIZONTAL;
+        break;
+      case SunHints.INTVAL_TEXT_ANTIALIAS_LCD_VRGB:
+        mode = SkinJobGlyphRasterizer.LCD_VERTICAL;
+        break;
+      default:
+        mode = SkinJobGlyphRasterizer.GRAY;
+        break;
+    }
+    rasterizer = new SkinJobGlyphRasterizer(key.font, key.glyphTx, mode);
+    lcd = mode == SkinJobGlyphRasterizer.LCD_HORIZONTAL
+        || mode == SkinJobGlyphRasterizer.LCD_VERTICAL;
+    positions = key.subPixPos ? SUBPIXEL_POSITIONS : 1;
+    pages = new GlyphImage[(Character.MAX_VALUE + 1) * positions >> PAGE_BITS][];
+  }
+
+  /**
+   * @return the strike for a font, device transform and text antialiasing mode
+   */
+  public static GlyphStrike get(FontInfo info) {
+    Key key = new Key(info);
+    synchronized (strikes) {
+      GlyphStrike strike = strikes.get(key);
+      if (strike == null) {
+        strike = new GlyphStrike(key);
+        strikes.put(key, strike);
+      }
+      return strike;
+    }
+  }
+
+  /**
+   * Empties the glyph cache down to the given fraction of {@link java.awt.SkinJob#glyphCacheSize};
+   * 0 empties it.
+   */
+  public static void trimCache(float fraction) {
+    synchronized (GlyphImageStore.INSTANCE) {
+      GlyphImageStore.INSTANCE.trim(fraction);
+    }
+  }
+
+  /**
+   * @return whether masks have 3 bytes per pixel, one per subpixel
+   */
+  public boolean isLCD() {
+    return lcd;
+  }
+
+  /**
+   * Looks up the glyphs of a run of text, rendering any that aren't cached, and lays them out one
+   * after the other. The glyphs are pinned until {@link #release}.
+   *
+   * @param glyphs    receives the glyphs
+   * @param positions receives each glyph's device-space position, x and y
+   * @param origins   receives the pixel each glyph's origin is placed at, x and y
+   */
+  public void layout(
+      int[] codePoints, int count, float x, float y, GlyphImage[] glyphs, float[] positions,
+      int[] origins) {
+    synchronized (GlyphImageStore.INSTANCE) {
+      for (int i = 0; i < count; i++) {
+        positions[2 * i] = x;
+        positions[2 * i + 1] = y;
+        GlyphImage glyph = place(codePoints[i], x, y, origins, i);
+        glyphs[i] = glyph;
+        x += glyph.advanceX;
+        y += glyph.advanceY;
+      }
+    }
+  }
+
+  /**
+   * Like {@link #layout}, but for glyphs whose positions are already known.
+   */
+  public void getGlyphs(
+      int[] codePoints, int count, float[] positions, GlyphImage[] glyphs, int[] origins) {
+    synchronized (GlyphImageStore.INSTANCE) {
+      for (int i = 0; i < count; i++) {
+        glyphs[i] = place(codePoints[i], positions[2 * i], positions[2 * i + 1], origins, i);
+      }
+    }
+  }
+
+  /**
+   * Unpins glyphs returned by {@link #layout} or {@link #getGlyphs}, so their masks may be
+   * evicted.
+   */
+  public static void release(GlyphImage[] glyphs, int count) {
+    synchronized (GlyphImageStore.INSTANCE) {
+      for (int i = 0; i < count; i++) {
+        GlyphImageStore.INSTANCE.unpin(glyphs[i]);
+        glyphs[i] = null;
+      }
+    }
+  }
+
+  private GlyphImage place(int codePoint, float x, float y, int[] origins, int i) {
+    int position = 0;
+    int originX;
+    if (positions > 1) {
+      originX = (int) Math.floor(x);
+      position = Math.round((x - originX) * positions);
+      if (position == positions) {
+        originX++;
+        position = 0;
+      }
+    } else {
+      originX = (int) Math.floor(x + 0.5f);
+    }
+    origins[2 * i] = originX;
+    origins[2 * i + 1] = (int) Math.floor(y + 0.5f);
+    GlyphImage glyph = getGlyph(codePoint, position);
+    GlyphImageStore.INSTANCE.pin(glyph);
+    return glyph;
+  }
+
+  private GlyphImage getGlyph(int codePoint, int position) {
+    GlyphImage glyph;
+    GlyphImage[] page = null;
+    int index = codePoint * positions + position;
+    if (codePoint <= Character.MAX_VALUE) {
+      page = pages[index >> PAGE_BITS];
+      if (page == null) {
+        page = new GlyphImage[PAGE_SIZE];
+        pages[index >> PAGE_BITS] = page;
+      }
+      glyph = page[index & (PAGE_SIZE - 1)];
+    } else {
+      glyph = supplementaryGlyphs.get(index);
+    }
+    if (glyph == null) {
+      rasterizer.getAdvance(codePoint, advance);
+      glyph = positions > 1 ? new GlyphImage(advance[0], advance[1])
+          : new GlyphImage(Math.round(advance[0]), Math.round(advance[1]));
+      if (page != null) {
+        page[index & (PAGE_SIZE - 1)] = glyph;
+      } else {
+        supplementaryGlyphs.put(index, glyph);
+      }
+    }
+    if (!glyph.hasMask()) {
+      render(glyph, codePoint, position);
+    }
+    return glyph;
+  }
+
+  private void render(GlyphImage glyph, int codePoint, int position) {
+    byte[] mask = rasterizer.rasterize(codePoint, (float) position / positions, metrics);
+    glyph.left = metrics[0];
+    glyph.top = metrics[1];
+    glyph.width = metrics[2];
+    glyph.height = metrics[3];
+    glyph.slab = null;
+    glyph.bytes = null;
+    int length = metrics[2] * metrics[3] * (lcd ? 3 : 1);
+    if (length == 0) {
+      glyph.bytes = NO_BYTES;
+    } else if (!GlyphImageStore.INSTANCE.store(glyph, mask, length)) {
+      glyph.bytes = Arrays.copyOf(mask, length);
+    }
+  }
+
+  private static final class Key {
+    final Font font;
+    final double[] glyphTx;
+    final int aaHint;
+    final boolean subPixPos;
+    private final int hash;
+
+    Key(FontInfo info) {
+      font = info.font;
+      glyphTx = info.glyphTx.clone();
+      aaHint = info.aaHint;
+      subPixPos = info.lcdSubPixPos;
+      hash = ((font.hashCode() * 31 + Arrays.hashCode(glyphTx)) * 31 + aaHint) * 2
+          + (subPixPos ? 1 : 0);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key that = (Key) o;
+      return aaHint == that.aaHint && subPixPos == that.subPixPos
+          && Arrays.equals(glyphTx, that.glyphTx) && font.equals(that.font);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+}
@@ -1,98 +1,130 @@
 package sun.font;
 
-import android.text.SpannableStringBuilder;
-import android.widget.TextView;
 import java.awt.Font;
 import java.awt.Shape;
-import java.awt.SkinJob;
-import java.awt.SkinJobTextAttributesDecoder;
+import java.awt.SkinJobTextShaper;
 import java.awt.font.FontRenderContext;
 import java.awt.font.GlyphJustificationInfo;
 import java.awt.font.GlyphMetrics;
 import java.awt.font.GlyphVector;
-import java.awt.font.TextAttribute;
 import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
-import java.text.AttributedCharacterIterator;
-import java.text.AttributedCharacterIterator.Attribute;
 import java.text.CharacterIterator;
-import java.util.ArrayList;
-import java.util.Map;
+import java.util.Arrays;
 
 /**
- * Created by cryoc on 2016-10-14.
+ * A {@link GlyphVector} held as packed arrays: glyph codes, which are code points, and a position
+ * per glyph plus one for the end, x and y. Positions are laid out on first use, and outlines,
+ * bounds and line metrics are computed when asked for and cached until the layout changes; these
+ * are the only operations that call into Android, through this thread's {@link
+ * SkinJobTextShaper} for the font.
  */
 public class StandardGlyphVector extends GlyphVector {
-  private final TextView parentView;
-  private final ArrayList<TextView> childViews;
-  private final ArrayList<Point2D> glyphPositions;
-  private final SpannableStringBuilder spannableString;
   private final Font font;
-  private final FontRenderContext fontRenderContext;
-  private final int color;
-
-  public StandardGlyphVector(Font font, FontRenderContext fontRenderContext) {
-    this.font = font;
-    this.fontRenderContext = fontRenderContext;
-    Integer color = (Integer) font.getAttributes().get(TextAttribute.FOREGROUND);
-    this.color = color == null ? 0x000000FF : color;
-    spannableString = new SpannableStringBuilder();
-    parentView = new TextView(SkinJob.getAndroidApplicationContext());
-    childViews = new ArrayList<>();
-    glyphPositions = new ArrayList<>();
-  }
+  private final FontRenderContext frc;
+  private final int[] glyphs;
+  // The index of each glyph's first character, or null if every glyph is one character.
+  private final int[] charIndices;
+  private final int runFlags;
+  // Each glyph's position and the end's, x and y; null until laid out.
+  private float[] positions;
+  private boolean positionsAdjusted;
+  // Per-glyph transforms, or null if there are none.
+  private AffineTransform[] transforms;
+
+  // Computed on demand, and dropped whenever the layout changes.
+  private Rectangle2D logicalBounds;
+  private Rectangle2D visualBounds;
+  private Shape outline;
+  // Ascent, descent and leading of the font.
+  private float[] lineMetrics;
 
   public StandardGlyphVector(Font font, CharSequence str, FontRenderContext frc) {
-    this(font, frc);
-    append(str);
+    this(font, frc, str);
   }
 
   public StandardGlyphVector(Font font, char[] chars, FontRenderContext frc) {
-    this(font, frc);
-    append(new String(chars));
+    this(font, frc, new String(chars));
   }
 
   public StandardGlyphVector(Font font, CharacterIterator ci, FontRenderContext frc) {
-    this(font, frc);
-    int charsWritten = 0;
-    for (char c = ci.first(); c != CharacterIterator.DONE; c = ci.next()) {
-      append(c);
-      if (ci instanceof AttributedCharacterIterator) {
-        charsWritten++;
-        Map<Attribute, Object> attributes = ((AttributedCharacterIterator) ci).getAttributes();
-        if (!attributes.isEmpty()) {
-          new SkinJobTextAttributesDecoder(color)
-              .addAttributes(attributes)
-              .applyTo(spannableString, charsWritten - 1, charsWritten);
-        }
-      }
-    }
+    this(font, frc, textOf(ci));
   }
 
   public StandardGlyphVector(Font font, int[] glyphCodes, FontRenderContext frc) {
-    this(font, frc);
-    for (int glyphCode : glyphCodes) {
-      append(Character.toChars(glyphCode));
+    this(font, frc, glyphCodes.clone(), null, null, 0);
+  }
+
+  /**
+   * Wraps the result of a layout. The arrays are used as they are; only the positions may be
+   * modified later, and they're copied.
+   *
+   * @param charIndices the index of each glyph's first character, or null if every glyph is one
+   *                    character
+   * @param positions   each glyph's position and the end's, x and y, or null to lay them out on
+   *                    first use
+   * @param runFlags    {@link #FLAG_RUN_RTL} if the glyphs are a right-to-left run, else 0
+   */
+  public StandardGlyphVector(
+      Font font, FontRenderContext frc, int[] glyphs, int[] charIndices, float[] positions,
+      int runFlags) {
+    this.font = font;
+    this.frc = frc;
+    this.glyphs = glyphs;
+    this.charIndices = isIdentity(charIndices) ? null : charIndices;
+    this.positions = positions == null ? null : positions.clone();
+    this.runFlags = runFlags;
+  }
+
+  private StandardGlyphVector(Font font, FontRenderContext frc, CharSequence text) {
+    this(font, frc, codePointsOf(text), charIndicesOf(text), null, 0);
+  }
+
+  private static boolean isIdentity(int[] charIndices) {
+    if (charIndices == null) {
+      return true;
+    }
+    for (int i = 0; i < charIndices.length; i++) {
+      if (charIndices[i] != i) {
+        return false;
+      }
     }
+    return true;
   }
 
-  private void append(char[] chars) {
-    for (char c : chars) {
-      append(c);
+  private static String textOf(CharacterIterator ci) {
+    StringBuilder text = new StringBuilder(ci.getEndIndex() - ci.getBeginIndex());
+    for (char c = ci.first(); c != CharacterIterator.DONE; c = ci.next()) {
+      text.append(c);
     }
+    return text.toString();
   }
 
-  private void append(char c) {
-    spannableString.append(c);
-    Point2D newCharPosition = null;
-    // TODO
-    glyphPositions.add(newCharPosition);
+  private static int[] codePointsOf(CharSequence text) {
+    int length = text.length();
+    int[] codePoints = new int[Character.codePointCount(text, 0, length)];
+    for (int i = 0, g = 0; i < length; g++) {
+      int cp = Character.codePointAt(text, i);
+      codePoints[g] = cp;
+      i += Character.charCount(cp);
+    }
+    return codePoints;
   }
 
-  protected void append(CharSequence str) {
-    spannableString.append(str);
-    // TODO
+  private static int[] charIndicesOf(CharSequence text) {
+    int length = text.length();
+    int count = Character.codePointCount(text, 0, length);
+    if (count == length) {
+      return null;
+    }
+    int[] charIndices = new int[count];
+    for (int i = 0, g = 0; i < length; g++) {
+      charIndices[g] = i;
+      i += Character.charCount(Character.codePointAt(text, i));
+    }
+    return charIndices;
   }
 
   @Override
@@ -102,111 +134,220 @@ public class StandardGlyphVector extends GlyphVector {
 
   @Override
   public FontRenderContext getFontRenderContext() {
-    return fontRenderContext;
+    return frc;
   }
 
   @Override
   public void performDefaultLayout() {
-    // TODO
+    positions = null;
+    positionsAdjusted = false;
+    transforms = null;
+    invalidate();
   }
 
   @Override
-  public synchronized int getNumGlyphs() {
-    return spannableString.length();
+  public int getNumGlyphs() {
+    return glyphs.length;
   }
 
   @Override
-  public synchronized int getGlyphCode(int glyphIndex) {
-    return spannableString.charAt(glyphIndex);
+  public int getGlyphCode(int glyphIndex) {
+    return glyphs[glyphIndex];
   }
 
   @Override
-  public synchronized int[] getGlyphCodes(int beginGlyphIndex, int numEntries, int[] codeReturn) {
-    int numGlyphs = getNumGlyphs();
-    int[] glyphCodes = new int[numGlyphs];
-    System.arraycopy(spannableString.toString().toCharArray(), 0, glyphCodes, 0, numGlyphs);
-    return glyphCodes;
+  public int[] getGlyphCodes(int beginGlyphIndex, int numEntries, int[] codeReturn) {
+    if (numEntries < 0) {
+      throw new IllegalArgumentException("numEntries = " + numEntries);
+    }
+    if (codeReturn == null || codeReturn.length < numEntries) {
+      codeReturn = new int[numEntries];
+    }
+    System.arraycopy(glyphs, beginGlyphIndex, codeReturn, 0, numEntries);
+    return codeReturn;
+  }
+
+  @Override
+  public int getGlyphCharIndex(int glyphIndex) {
+    if (glyphIndex < 0 || glyphIndex >= glyphs.length) {
+      throw new IndexOutOfBoundsException("glyphIndex = " + glyphIndex);
+    }
+    return charIndices == null ? glyphIndex : charIndices[glyphIndex];
+  }
+
+  @Override
+  public int[] getGlyphCharIndices(int beginGlyphIndex, int numEntries, int[] codeReturn) {
+    if (codeReturn == null || codeReturn.length < numEntries) {
+      codeReturn = new int[numEntries];
+    }
+    for (int i = 0; i < numEntries; i++) {
+      codeReturn[i] = getGlyphCharIndex(beginGlyphIndex + i);
+    }
+    return codeReturn;
+  }
+
+  @Override
+  public int getLayoutFlags() {
+    int flags = runFlags;
+    if (transforms != null) {
+      flags |= FLAG_HAS_TRANSFORMS;
+    }
+    if (positionsAdjusted) {
+      flags |= FLAG_HAS_POSITION_ADJUSTMENTS;
+    }
+    if (charIndices != null) {
+      flags |= FLAG_COMPLEX_GLYPHS;
+    }
+    return flags;
   }
 
   @Override
   public Rectangle2D getLogicalBounds() {
-    // TODO
-    return null;
+    if (logicalBounds == null) {
+      Rectangle2D bounds = new Rectangle2D.Float();
+      for (int i = 0; i < glyphs.length; i++) {
+        Rectangle2D glyphBounds = glyphLogicalBounds(i);
+        if (i == 0) {
+          bounds.setRect(glyphBounds);
+        } else {
+          bounds.add(glyphBounds);
+        }
+      }
+      logicalBounds = bounds;
+    }
+    return (Rectangle2D) logicalBounds.clone();
   }
 
   @Override
   public Rectangle2D getVisualBounds() {
-    // TODO
-    return null;
+    if (visualBounds == null) {
+      Rectangle2D bounds = null;
+      for (int i = 0; i < glyphs.length; i++) {
+        Rectangle2D glyphBounds = getGlyphVisualBounds(i).getBounds2D();
+        if (glyphBounds.isEmpty()) {
+          continue;
+        }
+        if (bounds == null) {
+          bounds = glyphBounds;
+        } else {
+          bounds.add(glyphBounds);
+        }
+      }
+      visualBounds = bounds == null ? new Rectangle2D.Float() : bounds;
+    }
+    return (Rectangle2D) visualBounds.clone();
   }
 
   @Override
   public Shape getOutline() {
-    // TODO
-    return null;
+    if (outline == null) {
+      Path2D.Float path = new Path2D.Float();
+      for (int i = 0; i < glyphs.length; i++) {
+        path.append(getGlyphOutline(i), false);
+      }
+      outline = path;
+    }
+    return new Path2D.Float(outline);
   }
 
   @Override
   public Shape getOutline(float x, float y) {
-    // TODO
-    return null;
+    Shape shape = getOutline();
+    if (x == 0 && y == 0) {
+      return shape;
+    }
+    return AffineTransform.getTranslateInstance(x, y).createTransformedShape(shape);
   }
 
   @Override
   public Shape getGlyphOutline(int glyphIndex) {
-    // TODO
-    return null;
+    Path2D.Float glyphOutline = GlyphLayout.getEngine(font).getOutline(glyphs[glyphIndex]);
+    glyphOutline.transform(glyphToUser(glyphIndex));
+    return glyphOutline;
   }
 
   @Override
   public Point2D getGlyphPosition(int glyphIndex) {
-    return glyphPositions.get(glyphIndex);
+    float[] positions = positions();
+    return new Point2D.Float(positions[2 * glyphIndex], positions[2 * glyphIndex + 1]);
   }
 
   @Override
   public void setGlyphPosition(int glyphIndex, Point2D newPos) {
-    glyphPositions.set(glyphIndex, newPos);
+    float[] positions = positions();
+    positions[2 * glyphIndex] = (float) newPos.getX();
+    positions[2 * glyphIndex + 1] = (float) newPos.getY();
+    positionsAdjusted = true;
+    invalidate();
   }
 
   @Override
   public AffineTransform getGlyphTransform(int glyphIndex) {
-    // TODO
-    return null;
+    if (glyphIndex < 0 || glyphIndex >= glyphs.length) {
+      throw new IndexOutOfBoundsException("glyphIndex = " + glyphIndex);
+    }
+    if (transforms == null || transforms[glyphIndex] == null) {
+      return null;
+    }
+    return new AffineTransform(transforms[glyphIndex]);
   }
 
   @Override
   public void setGlyphTransform(int glyphIndex, AffineTransform newTX) {
-    // TODO
+    if (glyphIndex < 0 || glyphIndex >= glyphs.length) {
+      throw new IndexOutOfBoundsException("glyphIndex = " + glyphIndex);
+    }
+    if (newTX == null || newTX.isIdentity()) {
+      if (transforms == null) {
+        return;
+      }
+      transforms[glyphIndex] = null;
+    } else {
+      if (transforms == null) {
+        transforms = new AffineTransform[glyphs.length];
+      }
+      transforms[glyphIndex] = new AffineTransform(newTX);
+    }
+    invalidate();
   }
 
   @Override
   public float[] getGlyphPositions(int beginGlyphIndex, int numEntries, float[] positionReturn) {
-    int positionIndex = 0;
-    for (int i = beginGlyphIndex; i < beginGlyphIndex + numEntries; i++) {
-      positionReturn[positionIndex] = (float) getGlyphPosition(i).getX();
-      positionIndex++;
-      positionReturn[positionIndex] = (float) getGlyphPosition(i).getY();
-      positionIndex++;
+    if (numEntries < 0) {
+      throw new IllegalArgumentException("numEntries = " + numEntries);
+    }
+    if (positionReturn == null) {
+      positionReturn = new float[2 * numEntries];
     }
+    System.arraycopy(positions(), 2 * beginGlyphIndex, positionReturn, 0, 2 * numEntries);
     return positionReturn;
   }
 
   @Override
   public Shape getGlyphLogicalBounds(int glyphIndex) {
-    // TODO
-    return null;
+    return glyphLogicalBounds(glyphIndex);
   }
 
   @Override
   public Shape getGlyphVisualBounds(int glyphIndex) {
-    // TODO
-    return null;
+    Rectangle2D bounds = new Rectangle2D.Float();
+    GlyphLayout.getEngine(font).getVisualBounds(glyphs[glyphIndex], bounds);
+    if (bounds.isEmpty()) {
+      Point2D position = getGlyphPosition(glyphIndex);
+      return new Rectangle2D.Float((float) position.getX(), (float) position.getY(), 0, 0);
+    }
+    return glyphToUser(glyphIndex).createTransformedShape(bounds);
   }
 
   @Override
   public GlyphMetrics getGlyphMetrics(int glyphIndex) {
-    // TODO
-    return null;
+    float[] positions = positions();
+    float advanceX = positions[2 * glyphIndex + 2] - positions[2 * glyphIndex];
+    float advanceY = positions[2 * glyphIndex + 3] - positions[2 * glyphIndex + 1];
+    Rectangle2D bounds = new Rectangle2D.Float();
+    GlyphLayout.getEngine(font).getVisualBounds(glyphs[glyphIndex], bounds);
+    byte type = bounds.isEmpty() ? GlyphMetrics.WHITESPACE : GlyphMetrics.STANDARD;
+    return new GlyphMetrics(true, advanceX, advanceY, bounds, type);
   }
 
   @Override
@@ -215,45 +356,68 @@ public class StandardGlyphVector extends GlyphVector {
     return null;
   }
 
-  @Override
-  public boolean equals(Object o) {
-    if (this == o) {
-      return true;
-    }
-    if (!(o instanceof StandardGlyphVector)) {
-      return false;
+  /**
+   * @return the positions, laying the glyphs out first if they aren't yet
+   */
+  private float[] positions() {
+    if (positions == null) {
+      positions = GlyphLayout.defaultPositions(font, frc, glyphs);
     }
+    return positions;
+  }
 
-    StandardGlyphVector that = (StandardGlyphVector) o;
+  private void invalidate() {
+    logicalBounds = null;
+    visualBounds = null;
+    outline = null;
+  }
 
-    if (color != that.color) {
-      return false;
+  /**
+   * @return the transform from a glyph's own space, in points relative to its origin, to the
+   *     vector's
+   */
+  private AffineTransform glyphToUser(int glyphIndex) {
+    float[] positions = positions();
+    AffineTransform tx = AffineTransform.getTranslateInstance(
+        positions[2 * glyphIndex], positions[2 * glyphIndex + 1]);
+    if (transforms != null && transforms[glyphIndex] != null) {
+      tx.concatenate(transforms[glyphIndex]);
     }
-    if (!parentView.equals(that.parentView)) {
-      return false;
+    if (font.isTransformed()) {
+      tx.concatenate(font.getTransform());
     }
-    if (!childViews.equals(that.childViews)) {
-      return false;
+    return tx;
+  }
+
+  private Rectangle2D glyphLogicalBounds(int glyphIndex) {
+    if (lineMetrics == null) {
+      float[] metrics = new float[5];
+      GlyphLayout.getEngine(font).getLineMetrics(metrics);
+      lineMetrics = metrics;
     }
-    if (!spannableString.equals(that.spannableString)) {
-      return false;
+    float[] positions = positions();
+    float x = positions[2 * glyphIndex];
+    float advance = positions[2 * glyphIndex + 2] - x;
+    return new Rectangle2D.Float(x, positions[2 * glyphIndex + 1] - lineMetrics[0], advance,
+        lineMetrics[0] + lineMetrics[1] + lineMetrics[2]);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
     }
-    if (getFont() != null ? !getFont().equals(that.getFont()) : that.getFont() != null) {
+    if (!(o instanceof StandardGlyphVector)) {
       return false;
     }
-    return getFontRenderContext() != null
-        ? getFontRenderContext().equals(that.getFontRenderContext())
-        : that.getFontRenderContext() == null;
+    StandardGlyphVector that = (StandardGlyphVector) o;
+    return font.equals(that.font) && frc.equals(that.frc) && Arrays.equals(glyphs, that.glyphs)
+        && Arrays.equals(positions(), that.positions())
+        && Arrays.equals(transforms, that.transforms);
   }
 
   @Override
   public int hashCode() {
-    int result = parentView.hashCode();
-    result = 31 * result + childViews.hashCode();
-    result = 31 * result + spannableString.hashCode();
-    result = 31 * result + (getFont() != null ? getFont().hashCode() : 0);
-    result = 31 * result + (getFontRenderContext() != null ? getFontRenderContext().hashCode() : 0);
-    result = 31 * result + color;
-    return result;
+    return font.hashCode() ^ Arrays.hashCode(glyphs);
   }
 }
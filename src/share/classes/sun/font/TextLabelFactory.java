@@ -5,32 +5,55 @@ import java.awt.font.FontRenderContext;
 import java.text.Bidi;
 
 /**
- * Created by cryoc on 2016-10-15.
+ * Makes the {@link TextLineComponent}s of a paragraph's text, each a run of one font and bidi
+ * level, measured when it's made.
  */
 public class TextLabelFactory {
   protected final FontRenderContext fontRenderContext;
   protected final Bidi bidi;
+  private final char[] text;
+  private Bidi lineBidi;
+  private int lineStart;
+  private int lineLimit;
 
   public TextLabelFactory(FontRenderContext frc, char[] chars, Bidi bidi, int layoutFlags) {
     fontRenderContext = frc;
     this.bidi = bidi;
+    text = chars;
+    lineBidi = bidi;
+    lineLimit = chars.length;
   }
 
+  /**
+   * @return a component on {@code text[start, limit)}, which must be in the line and have one
+   *     bidi level
+   */
   public TextLineComponent createExtended(
-      Font font, CoreMetrics cm, Decoration decorator, int startPos, int i) {
-    // TODO
-    return null;
+      Font font, CoreMetrics cm, Decoration decorator, int start, int limit) {
+    if (start >= limit || start < lineStart || limit > lineLimit) {
+      throw new IllegalArgumentException("bad start: " + start + " or limit: " + limit);
+    }
+    boolean rtl = lineBidi != null && (lineBidi.getLevelAt(start - lineStart) & 1) != 0;
+    return ExtendedTextSourceLabel.create(
+        font, fontRenderContext, cm, decorator, text, start, limit, rtl);
   }
 
   public FontRenderContext getFontRenderContext() {
     return fontRenderContext;
   }
 
-  public void setLineContext(int i, int length) {
-    // TODO
+  /**
+   * Limits the components made next to the line {@code text[lineStart, lineLimit)}.
+   */
+  public void setLineContext(int lineStart, int lineLimit) {
+    this.lineStart = lineStart;
+    this.lineLimit = lineLimit;
+    if (bidi != null) {
+      lineBidi = bidi.createLineBidi(lineStart, lineLimit);
+    }
   }
 
   public Bidi getLineBidi() {
-    return bidi;
+    return lineBidi;
   }
 }
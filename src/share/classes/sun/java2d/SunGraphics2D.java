@@ -1442,6 +1442,8 @@ public final class SunGraphics2D extends Graphics2D
     if (info == null) {
       info = new FontInfo();
     }
+    info.font = font;
+    info.glyphStrike = null;
 
     float ptSize = font.getSize2D();
     int txFontType;
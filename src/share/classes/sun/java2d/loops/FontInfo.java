@@ -27,6 +27,7 @@ package sun.java2d.loops;
 
 import java.awt.Font;
 import sun.font.Font2D;
+import sun.font.GlyphStrike;
 
 /*
  * A FontInfo object holds all calculated or derived data needed
@@ -51,6 +52,8 @@ public class FontInfo implements Cloneable {
   /* lcdSubPixPos is used if FM is ON for HRGB/HBGR LCD text mode */
   public boolean lcdSubPixPos;
   public Font2D font2D;
+  /* the strike matching the fields above, looked up on first use */
+  public GlyphStrike glyphStrike;
 
   public String mtx(double[] matrix) {
     return "[" +
@@ -65,6 +65,11 @@ public final class GraphicsPrimitiveMgr {
   static {
     CustomComponent.register();
     GeneralRenderer.register();
+    JavaBlitLoops.register();
+    JavaSolidLoops.register();
+    JavaMaskLoops.register();
+    JavaGlyphLoops.register();
+    JavaTransformLoops.register();
   }
 
   /**
@@ -0,0 +1,215 @@
+package sun.java2d.loops;
+
+import java.awt.Composite;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import sun.java2d.SurfaceData;
+import sun.java2d.pipe.Region;
+import sun.java2d.pipe.SpanIterator;
+
+/**
+ * Pure-Java {@link Blit} and {@link BlitBg} loops between every pair of the formats in
+ * {@link PixelAccess}, for the {@link CompositeType#SrcNoEa}, {@link CompositeType#Src} and
+ * {@link CompositeType#SrcOver} composites. They take the place of the native loops OpenJDK
+ * registers for these formats, which SkinJob doesn't have; without them, such blits fall back
+ * to {@link CustomComponent}'s per-pixel {@link java.awt.image.ColorModel} conversions or to the
+ * general loops that go through an intermediate IntArgb buffer.
+ * <p>
+ * Each span is processed a row at a time. A row of the same format is copied with
+ * {@link System#arraycopy}; otherwise it is loaded into a per-thread scratch row as
+ * premultiplied ARGB, then stored or blended into the destination with the same arithmetic as
+ * {@link JavaMaskLoops}, which the general loops would use.
+ */
+public final class JavaBlitLoops {
+  private static final int SPANS_START = 1;
+
+  private static final ThreadLocal<int[]> scratchSpans = new ThreadLocal<>();
+
+  /**
+   * Do not instantiate.
+   */
+  private JavaBlitLoops() {
+  }
+
+  public static void register() {
+    List<GraphicsPrimitive> primitives = new ArrayList<>();
+    for (int src = 0; src < PixelAccess.TYPES.length; src++) {
+      for (int dst = 0; dst < PixelAccess.TYPES.length; dst++) {
+        primitives.add(new JavaBlit(src, CompositeType.SrcNoEa, dst));
+        primitives.add(new JavaBlit(src, CompositeType.Src, dst));
+        primitives.add(new JavaBlit(src, CompositeType.SrcOver, dst));
+        primitives.add(new JavaBlitBg(src, CompositeType.SrcNoEa, dst));
+        primitives.add(new JavaBlitBg(src, CompositeType.Src, dst));
+        primitives.add(new JavaBlitBg(src, CompositeType.SrcOver, dst));
+      }
+    }
+    GraphicsPrimitiveMgr.register(primitives.toArray(new GraphicsPrimitive[0]));
+  }
+
+  /**
+   * Shared body of both loops. {@code bgColor} is an ARGB color to composite the source over
+   * first, or {@code null} for a plain blit.
+   */
+  static void blit(
+      int srcFormat, int dstFormat, boolean srcOver, SurfaceData src, SurfaceData dst,
+      Composite comp, Region clip, Integer bgColor, int srcx, int srcy, int dstx, int dsty,
+      int width, int height) {
+    Region roi = CustomComponent.getRegionOfInterest(
+        src, dst, clip, srcx, srcy, dstx, dsty, width, height);
+    if (roi.isEmpty()) {
+      return;
+    }
+    PixelAccess srcPix = PixelAccess.get(src, srcFormat, srcx, srcy, width, height);
+    PixelAccess dstPix = PixelAccess.get(dst, dstFormat, dstx, dsty, width, height);
+    int extraAlpha = PixelAccess.extraAlpha(comp);
+    boolean copy = bgColor == null && !srcOver && extraAlpha == 0xFF
+        && dstPix.isIsomorphic(srcPix);
+    // When copying within one surface, go through the rows, and the spans of each row, in the
+    // direction that reads every pixel before it's overwritten. The span iterator yields bands of
+    // spans over the same rows from top to bottom, and each band's spans from left to right.
+    boolean overlaps = srcPix.sharesStorage(dstPix);
+    boolean bottomUp = overlaps && dsty > srcy;
+    boolean rightToLeft = overlaps && dsty == srcy && dstx > srcx;
+    int bgPre = bgColor == null ? 0 : PixelAccess.premultiply(bgColor);
+    int dx = srcx - dstx;
+    int dy = srcy - dsty;
+    int[] spans = collectSpans(roi.getSpanIterator());
+    int end = spans[0];
+    int band = bottomUp ? end : SPANS_START;
+    while (band != (bottomUp ? SPANS_START : end)) {
+      int from;
+      int to;
+      if (bottomUp) {
+        to = band;
+        from = to - 4;
+        while (from > SPANS_START && spans[from - 3] == spans[from + 1]) {
+          from -= 4;
+        }
+        band = from;
+      } else {
+        from = band;
+        to = from + 4;
+        while (to < end && spans[to + 1] == spans[from + 1]) {
+          to += 4;
+        }
+        band = to;
+      }
+      int y1 = spans[from + 1];
+      int y2 = spans[from + 3];
+      for (int i = y1; i < y2; i++) {
+        int y = bottomUp ? y2 - 1 - (i - y1) : i;
+        for (int j = from; j < to; j += 4) {
+          int k = rightToLeft ? to - 4 - (j - from) : j;
+          int x = spans[k];
+          int w = spans[k + 2] - x;
+          int srcIdx = srcPix.index(x + dx, y + dy);
+          int dstIdx = dstPix.index(x, y);
+          if (copy) {
+            dstPix.copyRow(srcPix, srcIdx, dstIdx, w);
+            continue;
+          }
+          // Porter-Duff in premultiplied form, as the general loops do it: SrcOver blends, Src
+          // stores the source scaled by the extra alpha.
+          int[] row = PixelAccess.scratch(0, w);
+          srcPix.loadArgbPre(srcIdx, row, 0, w);
+          if (bgColor != null) {
+            overBackground(row, w, bgPre);
+          }
+          PixelAccess.scalePre(row, 0, w, extraAlpha);
+          if (srcOver) {
+            dstPix.blendSrcOver(dstIdx, row, 0, w);
+          } else {
+            dstPix.storeArgbPre(dstIdx, row, 0, w);
+          }
+        }
+      }
+    }
+    dstPix.markDirty();
+  }
+
+  /**
+   * Reads every span of a region into a per-thread array. Element 0 is the index past the last
+   * span; from {@link #SPANS_START} on, each span is four elements, as
+   * {@link SpanIterator#nextSpan} fills them.
+   */
+  private static int[] collectSpans(SpanIterator si) {
+    int[] spans = scratchSpans.get();
+    if (spans == null) {
+      spans = new int[64];
+      scratchSpans.set(spans);
+    }
+    int end = SPANS_START;
+    int[] span = PixelAccess.scratch(1, 4);
+    while (si.nextSpan(span)) {
+      if (end + 4 > spans.length) {
+        spans = Arrays.copyOf(spans, spans.length * 2);
+        scratchSpans.set(spans);
+      }
+      System.arraycopy(span, 0, spans, end, 4);
+      end += 4;
+    }
+    spans[0] = end;
+    return spans;
+  }
+
+  /**
+   * Composites premultiplied pixels over a premultiplied background color.
+   */
+  private static void overBackground(int[] row, int w, int bgPre) {
+    for (int j = 0; j < w; j++) {
+      int p = row[j];
+      int srcA = p >>> 24;
+      if (srcA == 0xFF) {
+        continue;
+      }
+      int hi = (0xFF - srcA) << 8;
+      row[j] = ((srcA + (PixelAccess.MUL8[hi | (bgPre >>> 24)] & 0xFF)) << 24)
+          | ((((p >> 16) & 0xFF) + (PixelAccess.MUL8[hi | ((bgPre >> 16) & 0xFF)] & 0xFF)) << 16)
+          | ((((p >> 8) & 0xFF) + (PixelAccess.MUL8[hi | ((bgPre >> 8) & 0xFF)] & 0xFF)) << 8)
+          | ((p & 0xFF) + (PixelAccess.MUL8[hi | (bgPre & 0xFF)] & 0xFF));
+    }
+  }
+
+  static final class JavaBlit extends Blit {
+    private final int srcFormat;
+    private final int dstFormat;
+    private final boolean srcOver;
+
+    JavaBlit(int srcFormat, CompositeType comptype, int dstFormat) {
+      super(PixelAccess.TYPES[srcFormat], comptype, PixelAccess.TYPES[dstFormat]);
+      this.srcFormat = srcFormat;
+      this.dstFormat = dstFormat;
+      srcOver = comptype == CompositeType.SrcOver;
+    }
+
+    @Override
+    public void Blit(
+        SurfaceData src, SurfaceData dst, Composite comp, Region clip, int srcx, int srcy,
+        int dstx, int dsty, int width, int height) {
+      blit(srcFormat, dstFormat, srcOver, src, dst, comp, clip, null, srcx, srcy, dstx, dsty,
+          width, height);
+    }
+  }
+
+  static final class JavaBlitBg extends BlitBg {
+    private final int srcFormat;
+    private final int dstFormat;
+    private final boolean srcOver;
+
+    JavaBlitBg(int srcFormat, CompositeType comptype, int dstFormat) {
+      super(PixelAccess.TYPES[srcFormat], comptype, PixelAccess.TYPES[dstFormat]);
+      this.srcFormat = srcFormat;
+      this.dstFormat = dstFormat;
+      srcOver = comptype == CompositeType.SrcOver;
+    }
+
+    @Override
+    public void BlitBg(
+        SurfaceData src, SurfaceData dst, Composite comp, Region clip, int bgColor, int srcx,
+        int srcy, int dstx, int dsty, int width, int height) {
+      blit(srcFormat, dstFormat, srcOver, src, dst, comp, clip, bgColor, srcx, srcy, dstx, dsty,
+          width, height);
+    }
+  }
+}
@@ -0,0 +1,250 @@
+package sun.java2d.loops;
+
+import java.util.ArrayList;
+import java.util.List;
+import sun.java2d.SunGraphics2D;
+import sun.java2d.SurfaceData;
+import sun.java2d.pipe.GlyphList;
+import sun.java2d.pipe.Region;
+import sun.java2d.pipe.SpanIterator;
+
+/**
+ * Pure-Java {@link DrawGlyphList}, {@link DrawGlyphListAA} and {@link DrawGlyphListLCD} loops,
+ * which draw a solid color through the cached glyph masks of a {@link GlyphList}. Unlike the
+ * general loops, which copy each mask and hand it to a {@link MaskFill}, they read the masks in
+ * place and blend into the destination array once per string.
+ * <p>
+ * The bilevel and grayscale loops are registered for every format in {@link PixelAccess}, for
+ * {@link CompositeType#SrcNoEa} and {@link CompositeType#SrcOverNoEa}; they map each coverage
+ * value to the color scaled by it, then blend with {@link PixelAccess#blendSrcOver}. The LCD
+ * loops are registered for the opaque RGB formats only, as {@link SurfaceData#canRenderLCDText}
+ * requires, and blend each subpixel separately by its own coverage, without gamma correction.
+ */
+public final class JavaGlyphLoops {
+  private static final int[] LCD_FORMATS = {PixelAccess.INT_RGB, PixelAccess.THREE_BYTE_BGR};
+
+  private static final CompositeType[] COMPOSITES = {
+      CompositeType.SrcNoEa, CompositeType.SrcOverNoEa,
+  };
+
+  /**
+   * Do not instantiate.
+   */
+  private JavaGlyphLoops() {
+  }
+
+  public static void register() {
+    List<GraphicsPrimitive> primitives = new ArrayList<>();
+    for (CompositeType comp : COMPOSITES) {
+      for (int dst = 0; dst < PixelAccess.TYPES.length; dst++) {
+        primitives.add(new JavaDrawGlyphList(comp, dst));
+        primitives.add(new JavaDrawGlyphListAA(comp, dst));
+      }
+      for (int dst : LCD_FORMATS) {
+        primitives.add(new JavaDrawGlyphListLCD(comp, dst));
+      }
+    }
+    GraphicsPrimitiveMgr.register(primitives.toArray(new GraphicsPrimitive[0]));
+  }
+
+  /**
+   * @return the part of the clip the glyphs cover, or null if none
+   */
+  private static Region clipToGlyphs(SunGraphics2D sg2d, GlyphList gl) {
+    int[] bounds = gl.getBounds();
+    Region clip = sg2d.getCompClip().getIntersectionXYXY(
+        bounds[0], bounds[1], bounds[2], bounds[3]);
+    return clip.isEmpty() ? null : clip;
+  }
+
+  /**
+   * Draws every glyph, one span of its mask that's inside the clip at a time.
+   */
+  private static void drawGlyphs(GlyphList gl, Region clip, PixelAccess dst, SpanBlender blender) {
+    int[] span = new int[4];
+    int num = gl.getNumGlyphs();
+    for (int i = 0; i < num; i++) {
+      gl.setGlyphIndex(i);
+      int[] metrics = gl.getMetrics();
+      int gx = metrics[0];
+      int gy = metrics[1];
+      if (metrics[2] == 0) {
+        continue;
+      }
+      byte[] mask = gl.getImageBytes();
+      int maskOff = gl.getImageOffset();
+      int maskScan = gl.getImageRowBytes();
+      int gx2 = gx + metrics[2];
+      int gy2 = gy + metrics[3];
+      if (clip.isRectangular()) {
+        int x1 = Math.max(gx, clip.getLoX());
+        int y1 = Math.max(gy, clip.getLoY());
+        int x2 = Math.min(gx2, clip.getHiX());
+        int y2 = Math.min(gy2, clip.getHiY());
+        for (int y = y1; y < y2; y++) {
+          blender.blend(dst, x1, y, x2 - x1, mask, maskOff + (y - gy) * maskScan, x1 - gx);
+        }
+        continue;
+      }
+      SpanIterator si = clip.getIntersectionXYXY(gx, gy, gx2, gy2).getSpanIterator();
+      while (si.nextSpan(span)) {
+        for (int y = span[1]; y < span[3]; y++) {
+          blender.blend(dst, span[0], y, span[2] - span[0], mask,
+              maskOff + (y - gy) * maskScan, span[0] - gx);
+        }
+      }
+    }
+  }
+
+  private static void drawGray(
+      SunGraphics2D sg2d, SurfaceData sData, int dstFormat, GlyphList gl) {
+    Region clip = clipToGlyphs(sg2d, gl);
+    if (clip == null) {
+      return;
+    }
+    PixelAccess dst = PixelAccess.get(sData, dstFormat, clip.getLoX(), clip.getLoY(),
+        clip.getHiX() - clip.getLoX(), clip.getHiY() - clip.getLoY());
+    drawGlyphs(gl, clip, dst, new GrayBlender(PixelAccess.premultiply(sg2d.eargb)));
+    dst.markDirty();
+  }
+
+  /**
+   * Blends one row of a glyph's mask into the destination.
+   */
+  private interface SpanBlender {
+    /**
+     * @param maskRow the index of the mask row's first pixel
+     * @param maskX   the pixel of the mask row to start at
+     */
+    void blend(PixelAccess dst, int x, int y, int w, byte[] mask, int maskRow, int maskX);
+  }
+
+  private static final class GrayBlender implements SpanBlender {
+    // The color scaled by each coverage value, premultiplied.
+    private final int[] shades = new int[256];
+
+    GrayBlender(int color) {
+      for (int m = 0; m < 256; m++) {
+        int hi = m << 8;
+        shades[m] = ((PixelAccess.MUL8[hi | (color >>> 24)] & 0xFF) << 24)
+            | ((PixelAccess.MUL8[hi | ((color >> 16) & 0xFF)] & 0xFF) << 16)
+            | ((PixelAccess.MUL8[hi | ((color >> 8) & 0xFF)] & 0xFF) << 8)
+            | (PixelAccess.MUL8[hi | (color & 0xFF)] & 0xFF);
+      }
+    }
+
+    @Override
+    public void blend(PixelAccess dst, int x, int y, int w, byte[] mask, int maskRow, int maskX) {
+      int[] row = PixelAccess.scratch(0, w);
+      int m = maskRow + maskX;
+      for (int i = 0; i < w; i++) {
+        row[i] = shades[mask[m + i] & 0xFF];
+      }
+      dst.blendSrcOver(dst.index(x, y), row, 0, w);
+    }
+  }
+
+  private static final class LCDBlender implements SpanBlender {
+    private final int srcA;
+    private final int srcR;
+    private final int srcG;
+    private final int srcB;
+    // The mask byte offsets of the red and blue subpixels.
+    private final int redSub;
+    private final int blueSub;
+
+    LCDBlender(int argb, boolean rgbOrder) {
+      srcA = argb >>> 24;
+      srcR = (argb >> 16) & 0xFF;
+      srcG = (argb >> 8) & 0xFF;
+      srcB = argb & 0xFF;
+      redSub = rgbOrder ? 0 : 2;
+      blueSub = 2 - redSub;
+    }
+
+    @Override
+    public void blend(PixelAccess dst, int x, int y, int w, byte[] mask, int maskRow, int maskX) {
+      int[] row = PixelAccess.scratch(0, w);
+      int idx = dst.index(x, y);
+      dst.loadArgb(idx, row, 0, w);
+      int m = maskRow + maskX * 3;
+      for (int i = 0; i < w; i++, m += 3) {
+        int mr = mask[m + redSub] & 0xFF;
+        int mg = mask[m + 1] & 0xFF;
+        int mb = mask[m + blueSub] & 0xFF;
+        if ((mr | mg | mb) == 0) {
+          continue;
+        }
+        if (srcA < 0xFF) {
+          mr = PixelAccess.mul8(srcA, mr);
+          mg = PixelAccess.mul8(srcA, mg);
+          mb = PixelAccess.mul8(srcA, mb);
+        }
+        int p = row[i];
+        row[i] = 0xFF000000
+            | lerp((p >> 16) & 0xFF, srcR, mr) << 16
+            | lerp((p >> 8) & 0xFF, srcG, mg) << 8
+            | lerp(p & 0xFF, srcB, mb);
+      }
+      dst.storeArgb(idx, row, 0, w);
+    }
+
+    private static int lerp(int dst, int src, int coverage) {
+      return dst + PixelAccess.mul8(coverage, src) - PixelAccess.mul8(coverage, dst);
+    }
+  }
+
+  static final class JavaDrawGlyphList extends DrawGlyphList {
+    private final int dstFormat;
+
+    JavaDrawGlyphList(CompositeType comptype, int dstFormat) {
+      super(SurfaceType.AnyColor, comptype, PixelAccess.TYPES[dstFormat]);
+      this.dstFormat = dstFormat;
+    }
+
+    @Override
+    public void DrawGlyphList(SunGraphics2D sg2d, SurfaceData dest, GlyphList gl) {
+      // Bilevel masks are 0 or 255, so the grayscale blend stores the color as is.
+      drawGray(sg2d, dest, dstFormat, gl);
+    }
+  }
+
+  static final class JavaDrawGlyphListAA extends DrawGlyphListAA {
+    private final int dstFormat;
+
+    JavaDrawGlyphListAA(CompositeType comptype, int dstFormat) {
+      super(SurfaceType.AnyColor, comptype, PixelAccess.TYPES[dstFormat]);
+      this.dstFormat = dstFormat;
+    }
+
+    @Override
+    public void DrawGlyphListAA(SunGraphics2D sg2d, SurfaceData dest, GlyphList gl) {
+      drawGray(sg2d, dest, dstFormat, gl);
+    }
+  }
+
+  static final class JavaDrawGlyphListLCD extends DrawGlyphListLCD {
+    private final int dstFormat;
+
+    JavaDrawGlyphListLCD(CompositeType comptype, int dstFormat) {
+      super(SurfaceType.AnyColor, comptype, PixelAccess.TYPES[dstFormat]);
+      this.dstFormat = dstFormat;
+    }
+
+    @Override
+    public void DrawGlyphListLCD(SunGraphics2D sg2d, SurfaceData dest, GlyphList gl) {
+      if (!gl.isLCD()) {
+        drawGray(sg2d, dest, dstFormat, gl);
+        return;
+      }
+      Region clip = clipToGlyphs(sg2d, gl);
+      if (clip == null) {
+        return;
+      }
+      PixelAccess dst = PixelAccess.get(dest, dstFormat, clip.getLoX(), clip.getLoY(),
+          clip.getHiX() - clip.getLoX(), clip.getHiY() - clip.getLoY());
+      drawGlyphs(gl, clip, dst, new LCDBlender(sg2d.eargb, gl.isRGBOrder()));
+      dst.markDirty();
+    }
+  }
+}
@@ -0,0 +1,433 @@
+package sun.java2d.loops;
+
+import java.awt.AlphaComposite;
+import java.awt.Composite;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import sun.java2d.SunGraphics2D;
+import sun.java2d.SurfaceData;
+import sun.java2d.pipe.Region;
+import sun.java2d.pipe.SpanIterator;
+
+/**
+ * Pure-Java {@link MaskFill} and {@link MaskBlit} loops, which composite a color or a source
+ * surface into a destination through an 8-bit coverage mask, for every pair of the formats in
+ * {@link PixelAccess}. Without them, antialiased rendering through
+ * {@link sun.java2d.pipe.AAShapePipe} draws nothing. The loops registered for
+ * {@link CompositeType#SrcOver} blend with {@link PixelAccess#blendSrcOver}; the ones registered
+ * for {@link CompositeType#AnyAlpha} apply any of the Porter-Duff rules of
+ * {@link AlphaComposite}.
+ * <p>
+ * The {@link MaskFill} loops also rasterize antialiased parallelograms directly, so that
+ * antialiased lines and rectangles go through {@link sun.java2d.pipe.AlphaColorPipe} instead of
+ * being tessellated by Pisces. A pixel's coverage is the exact area of its intersection with the
+ * parallelogram.
+ */
+public final class JavaMaskLoops {
+  // Porter-Duff factors: multiply by 0, by 1, by the other pixel's alpha, or by its inverse.
+  private static final int F_ZERO = 0;
+  private static final int F_ONE = 1;
+  private static final int F_ALPHA = 2;
+  private static final int F_INV_ALPHA = 3;
+
+  // Indexed by AlphaComposite rule.
+  private static final int[] SRC_FACTORS = {
+      F_ZERO, F_ZERO, F_ONE, F_ONE, F_INV_ALPHA, F_ALPHA, F_ZERO, F_INV_ALPHA, F_ZERO, F_ZERO,
+      F_ALPHA, F_INV_ALPHA, F_INV_ALPHA,
+  };
+  private static final int[] DST_FACTORS = {
+      F_ONE, F_ZERO, F_ZERO, F_INV_ALPHA, F_ONE, F_ZERO, F_ALPHA, F_ZERO, F_INV_ALPHA, F_ONE,
+      F_INV_ALPHA, F_ALPHA, F_INV_ALPHA,
+  };
+
+  private static final ThreadLocal<byte[]> scratchMasks = new ThreadLocal<>();
+
+  /**
+   * Do not instantiate.
+   */
+  private JavaMaskLoops() {
+  }
+
+  public static void register() {
+    List<GraphicsPrimitive> primitives = new ArrayList<>();
+    for (int dst = 0; dst < PixelAccess.TYPES.length; dst++) {
+      primitives.add(new JavaMaskFill(CompositeType.SrcOver, dst));
+      primitives.add(new JavaMaskFill(CompositeType.AnyAlpha, dst));
+      for (int src = 0; src < PixelAccess.TYPES.length; src++) {
+        primitives.add(new JavaMaskBlit(src, CompositeType.SrcOver, dst));
+        primitives.add(new JavaMaskBlit(src, CompositeType.AnyAlpha, dst));
+      }
+    }
+    GraphicsPrimitiveMgr.register(primitives.toArray(new GraphicsPrimitive[0]));
+  }
+
+  /**
+   * @return the {@link AlphaComposite} rule of a composite, treating anything else as
+   *     {@link AlphaComposite#SRC_OVER}
+   */
+  static int ruleOf(Composite comp) {
+    return comp instanceof AlphaComposite ? ((AlphaComposite) comp).getRule()
+        : AlphaComposite.SRC_OVER;
+  }
+
+  /**
+   * Composites a row of premultiplied source pixels into the destination through a coverage
+   * mask. The source row is modified.
+   *
+   * @param mask the coverage of each pixel, or {@code null} for full coverage
+   */
+  static void compositeRow(
+      int rule, PixelAccess dst, int dstIdx, int[] src, int w, byte[] mask, int maskIdx) {
+    if (rule == AlphaComposite.SRC_OVER) {
+      if (mask != null) {
+        for (int i = 0; i < w; i++) {
+          int m = mask[maskIdx + i] & 0xFF;
+          if (m < 0xFF) {
+            src[i] = m == 0 ? 0 : scalePre(src[i], m);
+          }
+        }
+      }
+      dst.blendSrcOver(dstIdx, src, 0, w);
+      return;
+    }
+    int srcOp = SRC_FACTORS[rule];
+    int dstOp = DST_FACTORS[rule];
+    int[] dstRow = PixelAccess.scratch(1, w);
+    dst.loadArgbPre(dstIdx, dstRow, 0, w);
+    for (int i = 0; i < w; i++, dstIdx += dst.pixelStride) {
+      int m = mask == null ? 0xFF : mask[maskIdx + i] & 0xFF;
+      if (m == 0) {
+        continue;
+      }
+      int s = src[i];
+      int d = dstRow[i];
+      int srcF = factor(srcOp, d >>> 24);
+      int dstF = factor(dstOp, s >>> 24);
+      if (m < 0xFF) {
+        srcF = PixelAccess.mul8(m, srcF);
+        dstF = 0xFF - m + PixelAccess.mul8(m, dstF);
+      }
+      int res = 0;
+      for (int shift = 0; shift < 32; shift += 8) {
+        int c = PixelAccess.mul8(srcF, (s >>> shift) & 0xFF)
+            + PixelAccess.mul8(dstF, (d >>> shift) & 0xFF);
+        res |= Math.min(c, 0xFF) << shift;
+      }
+      if (dst.format == PixelAccess.INT_ARGB_PRE) {
+        dst.ints[dstIdx] = res;
+      } else {
+        dst.storePixel(dstIdx, PixelAccess.unpremultiply(res));
+      }
+    }
+  }
+
+  private static int factor(int op, int alpha) {
+    switch (op) {
+      case F_ONE:
+        return 0xFF;
+      case F_ALPHA:
+        return alpha;
+      case F_INV_ALPHA:
+        return 0xFF - alpha;
+      default:
+        return 0;
+    }
+  }
+
+  private static int scalePre(int argb, int alpha) {
+    int hi = alpha << 8;
+    return ((PixelAccess.MUL8[hi | (argb >>> 24)] & 0xFF) << 24)
+        | ((PixelAccess.MUL8[hi | ((argb >> 16) & 0xFF)] & 0xFF) << 16)
+        | ((PixelAccess.MUL8[hi | ((argb >> 8) & 0xFF)] & 0xFF) << 8)
+        | (PixelAccess.MUL8[hi | (argb & 0xFF)] & 0xFF);
+  }
+
+  static byte[] scratchMask(int length) {
+    byte[] mask = scratchMasks.get();
+    if (mask == null || mask.length < length) {
+      mask = new byte[Math.max(length, 256)];
+      scratchMasks.set(mask);
+    }
+    return mask;
+  }
+
+  /**
+   * Inverse mapping of a parallelogram {@code origin + u * d1 + v * d2}, used to compute the
+   * coverage of pixels by the parallelogram {@code 0 <= u, v <= 1}. Pixels whose extent is
+   * entirely inside or outside it along either axis are classified from the pixel center alone;
+   * only edge pixels have the area of their intersection with the parallelogram computed.
+   */
+  static final class Pgram {
+    private final double x;
+    private final double y;
+    // Partial derivatives of u and v.
+    final double dudx;
+    final double dudy;
+    final double dvdx;
+    final double dvdy;
+    // Half the extent of a pixel along each axis.
+    private final double halfU;
+    private final double halfV;
+    final boolean empty;
+    // Scratch polygons for clipping a pixel square.
+    private double[] poly = new double[32];
+    private double[] clipped = new double[32];
+
+    Pgram(double x, double y, double dx1, double dy1, double dx2, double dy2) {
+      this.x = x;
+      this.y = y;
+      double det = dx1 * dy2 - dx2 * dy1;
+      empty = Math.abs(det) < 1e-9;
+      dudx = empty ? 0 : dy2 / det;
+      dudy = empty ? 0 : -dx2 / det;
+      dvdx = empty ? 0 : -dy1 / det;
+      dvdy = empty ? 0 : dx1 / det;
+      halfU = (Math.abs(dudx) + Math.abs(dudy)) / 2;
+      halfV = (Math.abs(dvdx) + Math.abs(dvdy)) / 2;
+    }
+
+    double u(double px, double py) {
+      return (px - x) * dudx + (py - y) * dudy;
+    }
+
+    double v(double px, double py) {
+      return (px - x) * dvdx + (py - y) * dvdy;
+    }
+
+    /**
+     * @return the coverage, from 0 to 1, of pixel ({@code px}, {@code py}), whose center maps to
+     *     ({@code u}, {@code v})
+     */
+    double coverage(double u, double v, int px, int py) {
+      if (empty || u + halfU <= 0 || u - halfU >= 1 || v + halfV <= 0 || v - halfV >= 1) {
+        return 0;
+      }
+      if (u - halfU >= 0 && u + halfU <= 1 && v - halfV >= 0 && v + halfV <= 1) {
+        return 1;
+      }
+      poly[0] = px;
+      poly[1] = py;
+      poly[2] = px + 1;
+      poly[3] = py;
+      poly[4] = px + 1;
+      poly[5] = py + 1;
+      poly[6] = px;
+      poly[7] = py + 1;
+      int n = 4;
+      n = clip(n, dudx, dudy, -u(0, 0));
+      n = clip(n, -dudx, -dudy, u(0, 0) - 1);
+      n = clip(n, dvdx, dvdy, -v(0, 0));
+      n = clip(n, -dvdx, -dvdy, v(0, 0) - 1);
+      double area = 0;
+      for (int i = 0, j = n - 1; i < n; j = i++) {
+        area += poly[2 * j] * poly[2 * i + 1] - poly[2 * i] * poly[2 * j + 1];
+      }
+      return Math.min(1, Math.abs(area) / 2);
+    }
+
+    /**
+     * Clips the {@code n}-vertex polygon in {@link #poly} to the half-plane
+     * {@code a * x + b * y >= c}, with Sutherland-Hodgman.
+     *
+     * @return the new number of vertices
+     */
+    private int clip(int n, double a, double b, double c) {
+      int m = 0;
+      for (int i = 0; i < n; i++) {
+        int j = (i + 1) % n;
+        double x0 = poly[2 * i];
+        double y0 = poly[2 * i + 1];
+        double x1 = poly[2 * j];
+        double y1 = poly[2 * j + 1];
+        double d0 = a * x0 + b * y0 - c;
+        double d1 = a * x1 + b * y1 - c;
+        if (d0 >= 0) {
+          clipped[m++] = x0;
+          clipped[m++] = y0;
+        }
+        if ((d0 >= 0) != (d1 >= 0)) {
+          double t = d0 / (d0 - d1);
+          clipped[m++] = x0 + t * (x1 - x0);
+          clipped[m++] = y0 + t * (y1 - y0);
+        }
+      }
+      double[] swap = poly;
+      poly = clipped;
+      clipped = swap;
+      return m / 2;
+    }
+  }
+
+  static final class JavaMaskFill extends MaskFill {
+    private final int dstFormat;
+
+    JavaMaskFill(CompositeType comptype, int dstFormat) {
+      super(SurfaceType.AnyColor, comptype, PixelAccess.TYPES[dstFormat]);
+      this.dstFormat = dstFormat;
+    }
+
+    @Override
+    public void MaskFill(
+        SunGraphics2D sg2d, SurfaceData sData, Composite comp, int x, int y, int w, int h,
+        byte[] mask, int maskoff, int maskscan) {
+      Rectangle bounds = sData.getBounds();
+      int x1 = Math.max(x, bounds.x);
+      int y1 = Math.max(y, bounds.y);
+      int x2 = Math.min(x + w, bounds.x + bounds.width);
+      int y2 = Math.min(y + h, bounds.y + bounds.height);
+      if (x2 <= x1 || y2 <= y1) {
+        return;
+      }
+      maskoff += (y1 - y) * maskscan + (x1 - x);
+      int rule = ruleOf(comp);
+      int color = PixelAccess.premultiply(sg2d.eargb);
+      PixelAccess dst = PixelAccess.get(sData, dstFormat, x1, y1, x2 - x1, y2 - y1);
+      for (int row = y1; row < y2; row++, maskoff += maskscan) {
+        fillRow(dst, rule, color, x1, row, x2 - x1, mask, maskoff);
+      }
+      dst.markDirty();
+    }
+
+    private static void fillRow(
+        PixelAccess dst, int rule, int color, int x, int y, int w, byte[] mask, int maskoff) {
+      int[] row = PixelAccess.scratch(0, w);
+      Arrays.fill(row, 0, w, color);
+      compositeRow(rule, dst, dst.index(x, y), row, w, mask, maskoff);
+    }
+
+    @Override
+    public void FillAAPgram(
+        SunGraphics2D sg2d, SurfaceData sData, Composite comp, double x, double y, double dx1,
+        double dy1, double dx2, double dy2) {
+      Pgram outer = new Pgram(x, y, dx1, dy1, dx2, dy2);
+      if (!outer.empty) {
+        fillPgram(sg2d, sData, comp, outer, null, x, y, dx1, dy1, dx2, dy2);
+      }
+    }
+
+    @Override
+    public void DrawAAPgram(
+        SunGraphics2D sg2d, SurfaceData sData, Composite comp, double x, double y, double dx1,
+        double dy1, double dx2, double dy2, double lw1, double lw2) {
+      // Outset the parallelogram by half the line widths, and inset it by the same amount.
+      double ldx1 = dx1 * lw1;
+      double ldy1 = dy1 * lw1;
+      double ldx2 = dx2 * lw2;
+      double ldy2 = dy2 * lw2;
+      double ox = x - (ldx1 + ldx2) / 2;
+      double oy = y - (ldy1 + ldy2) / 2;
+      double odx1 = dx1 + ldx1;
+      double ody1 = dy1 + ldy1;
+      double odx2 = dx2 + ldx2;
+      double ody2 = dy2 + ldy2;
+      Pgram outer = new Pgram(ox, oy, odx1, ody1, odx2, ody2);
+      if (outer.empty) {
+        return;
+      }
+      Pgram inner = lw1 >= 1 || lw2 >= 1 ? null
+          : new Pgram(x + (ldx1 + ldx2) / 2, y + (ldy1 + ldy2) / 2,
+              dx1 - ldx1, dy1 - ldy1, dx2 - ldx2, dy2 - ldy2);
+      fillPgram(sg2d, sData, comp, outer, inner, ox, oy, odx1, ody1, odx2, ody2);
+    }
+
+    /**
+     * Fills the coverage of {@code outer} minus that of {@code inner}, if any. The remaining
+     * arguments are the corners of {@code outer}, for its bounding box.
+     */
+    private void fillPgram(
+        SunGraphics2D sg2d, SurfaceData sData, Composite comp, Pgram outer, Pgram inner,
+        double x, double y, double dx1, double dy1, double dx2, double dy2) {
+      Region clip = sg2d.getCompClip();
+      int x1 = Math.max(clip.getLoX(),
+          (int) Math.floor(Math.min(Math.min(x, x + dx1), Math.min(x + dx2, x + dx1 + dx2))));
+      int y1 = Math.max(clip.getLoY(),
+          (int) Math.floor(Math.min(Math.min(y, y + dy1), Math.min(y + dy2, y + dy1 + dy2))));
+      int x2 = Math.min(clip.getHiX(),
+          (int) Math.ceil(Math.max(Math.max(x, x + dx1), Math.max(x + dx2, x + dx1 + dx2))));
+      int y2 = Math.min(clip.getHiY(),
+          (int) Math.ceil(Math.max(Math.max(y, y + dy1), Math.max(y + dy2, y + dy1 + dy2))));
+      if (x2 <= x1 || y2 <= y1) {
+        return;
+      }
+      int width = x2 - x1;
+      byte[] mask = scratchMask(width);
+      int rule = ruleOf(comp);
+      int color = PixelAccess.premultiply(sg2d.eargb);
+      PixelAccess dst = PixelAccess.get(sData, dstFormat, x1, y1, width, y2 - y1);
+      for (int py = y1; py < y2; py++) {
+        double cx = x1 + 0.5;
+        double cy = py + 0.5;
+        double ou = outer.u(cx, cy);
+        double ov = outer.v(cx, cy);
+        double iu = inner == null ? 0 : inner.u(cx, cy);
+        double iv = inner == null ? 0 : inner.v(cx, cy);
+        boolean any = false;
+        for (int i = 0; i < width; i++) {
+          double coverage = outer.coverage(ou, ov, x1 + i, py);
+          if (inner != null && coverage > 0) {
+            coverage = Math.max(0, coverage - inner.coverage(iu, iv, x1 + i, py));
+          }
+          int m = (int) (coverage * 255 + 0.5);
+          mask[i] = (byte) m;
+          any |= m != 0;
+          ou += outer.dudx;
+          ov += outer.dvdx;
+          if (inner != null) {
+            iu += inner.dudx;
+            iv += inner.dvdx;
+          }
+        }
+        if (any) {
+          fillRow(dst, rule, color, x1, py, width, mask, 0);
+        }
+      }
+      dst.markDirty();
+    }
+
+    @Override
+    public boolean canDoParallelograms() {
+      return true;
+    }
+  }
+
+  static final class JavaMaskBlit extends MaskBlit {
+    private final int srcFormat;
+    final int dstFormat;
+
+    JavaMaskBlit(int srcFormat, CompositeType comptype, int dstFormat) {
+      super(PixelAccess.TYPES[srcFormat], comptype, PixelAccess.TYPES[dstFormat]);
+      this.srcFormat = srcFormat;
+      this.dstFormat = dstFormat;
+    }
+
+    @Override
+    public void MaskBlit(
+        SurfaceData src, SurfaceData dst, Composite comp, Region clip, int srcx, int srcy,
+        int dstx, int dsty, int width, int height, byte[] mask, int maskoff, int maskscan) {
+      Region roi = CustomComponent.getRegionOfInterest(
+          src, dst, clip, srcx, srcy, dstx, dsty, width, height);
+      if (roi.isEmpty()) {
+        return;
+      }
+      PixelAccess srcPix = PixelAccess.get(src, srcFormat, srcx, srcy, width, height);
+      PixelAccess dstPix = PixelAccess.get(dst, dstFormat, dstx, dsty, width, height);
+      int rule = ruleOf(comp);
+      int extraAlpha = PixelAccess.extraAlpha(comp);
+      SpanIterator si = roi.getSpanIterator();
+      int[] span = new int[4];
+      while (si.nextSpan(span)) {
+        int w = span[2] - span[0];
+        int[] row = PixelAccess.scratch(0, w);
+        for (int y = span[1]; y < span[3]; y++) {
+          srcPix.loadArgbPre(srcPix.index(span[0] - dstx + srcx, y - dsty + srcy), row, 0, w);
+          PixelAccess.scalePre(row, 0, w, extraAlpha);
+          compositeRow(rule, dstPix, dstPix.index(span[0], y), row, w, mask,
+              maskoff + (y - dsty) * maskscan + (span[0] - dstx));
+        }
+      }
+      dstPix.markDirty();
+    }
+  }
+}
@@ -0,0 +1,480 @@
+package sun.java2d.loops;
+
+import java.awt.Rectangle;
+import java.awt.geom.Path2D;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import sun.awt.image.ByteComponentRaster;
+import sun.awt.image.IntegerComponentRaster;
+import sun.awt.image.ShortComponentRaster;
+import sun.awt.image.SunWritableRaster;
+import sun.java2d.SunGraphics2D;
+import sun.java2d.SurfaceData;
+import sun.java2d.loops.ProcessPath.DrawHandler;
+import sun.java2d.pipe.Region;
+import sun.java2d.pipe.SpanIterator;
+
+/**
+ * Pure-Java solid-color {@link FillRect}, {@link FillSpans}, {@link DrawLine},
+ * {@link DrawRect}, {@link DrawPolygons}, {@link DrawPath} and {@link FillPath} loops for the
+ * {@link CompositeType#SrcNoEa} composite. They take the place of the native loops OpenJDK
+ * registers for these surfaces; without them, {@link sun.java2d.pipe.LoopPipe} renders nothing.
+ * <p>
+ * The loops are registered for the packed {@link SurfaceType#AnyInt}, {@link SurfaceType#AnyShort}
+ * and {@link SurfaceType#AnyByte} surfaces and the interleaved {@link SurfaceType#Any3Byte} and
+ * {@link SurfaceType#Any4Byte} ones. All of them store {@link SunGraphics2D#pixel}, which is
+ * already in the surface's pixel format, straight into the raster's array: rows of a packed
+ * surface are filled with {@link Arrays#fill}, and rows of an interleaved one by doubling
+ * {@link System#arraycopy}s. Lines are drawn with Bresenham's algorithm after clipping to each
+ * rectangle of the clip {@link Region}, so no pixel is tested against the clip individually.
+ */
+public final class JavaSolidLoops {
+  private static final SurfaceType[] DEST_TYPES = {
+      SurfaceType.AnyInt,
+      SurfaceType.AnyShort,
+      SurfaceType.AnyByte,
+      SurfaceType.Any3Byte,
+      SurfaceType.Any4Byte,
+  };
+
+  /**
+   * Do not instantiate.
+   */
+  private JavaSolidLoops() {
+  }
+
+  public static void register() {
+    GraphicsPrimitive[] primitives = new GraphicsPrimitive[DEST_TYPES.length * 7];
+    int i = 0;
+    for (SurfaceType dst : DEST_TYPES) {
+      primitives[i++] = new SetFillRect(dst);
+      primitives[i++] = new SetFillSpans(dst);
+      primitives[i++] = new SetDrawLine(dst);
+      primitives[i++] = new SetDrawRect(dst);
+      primitives[i++] = new SetDrawPolygons(dst);
+      primitives[i++] = new SetDrawPath(dst);
+      primitives[i++] = new SetFillPath(dst);
+    }
+    GraphicsPrimitiveMgr.register(primitives);
+  }
+
+  /**
+   * Fills the intersection of a rectangle with the clip.
+   */
+  static void fillRect(PixelStore store, Region clip, int x1, int y1, int x2, int y2) {
+    if (clip.isRectangular()) {
+      x1 = Math.max(x1, clip.getLoX());
+      y1 = Math.max(y1, clip.getLoY());
+      x2 = Math.min(x2, clip.getHiX());
+      y2 = Math.min(y2, clip.getHiY());
+      if (x2 > x1) {
+        for (int y = y1; y < y2; y++) {
+          store.fillRow(x1, y, x2 - x1);
+        }
+      }
+      return;
+    }
+    fillSpans(store, clip.getIntersectionXYXY(x1, y1, x2, y2).getSpanIterator());
+  }
+
+  static void fillSpans(PixelStore store, SpanIterator si) {
+    int[] span = store.span;
+    while (si.nextSpan(span)) {
+      int w = span[2] - span[0];
+      if (w > 0) {
+        for (int y = span[1]; y < span[3]; y++) {
+          store.fillRow(span[0], y, w);
+        }
+      }
+    }
+  }
+
+  /**
+   * Draws a line, including both endpoints, against every rectangle of the clip.
+   */
+  static void drawLine(PixelStore store, Region clip, int x1, int y1, int x2, int y2) {
+    if (clip.isRectangular()) {
+      drawLine(store, clip.getLoX(), clip.getLoY(), clip.getHiX(), clip.getHiY(),
+          x1, y1, x2, y2);
+      return;
+    }
+    Region part = clip.getIntersectionXYXY(Math.min(x1, x2), Math.min(y1, y2),
+        Region.dimAdd(Math.max(x1, x2), 1), Region.dimAdd(Math.max(y1, y2), 1));
+    SpanIterator si = part.getSpanIterator();
+    int[] rect = new int[4];
+    while (si.nextSpan(rect)) {
+      drawLine(store, rect[0], rect[1], rect[2], rect[3], x1, y1, x2, y2);
+    }
+  }
+
+  /**
+   * Draws the part of a line inside one clip rectangle. The Bresenham error term is advanced to
+   * the clipped start point, so the pixels match those of the unclipped line.
+   */
+  private static void drawLine(
+      PixelStore store, int cx1, int cy1, int cx2, int cy2, int origx1, int origy1, int origx2,
+      int origy2) {
+    int[] pts = store.boundPts;
+    pts[0] = origx1;
+    pts[1] = origy1;
+    pts[2] = origx2;
+    pts[3] = origy2;
+    if (!GeneralRenderer.adjustLine(pts, cx1, cy1, cx2, cy2)) {
+      return;
+    }
+    int x1 = pts[0];
+    int y1 = pts[1];
+    int x2 = pts[2];
+    int y2 = pts[3];
+    if (y1 == y2) {
+      store.fillRow(Math.min(x1, x2), y1, Math.abs(x2 - x1) + 1);
+      return;
+    }
+    if (x1 == x2) {
+      for (int y = Math.min(y1, y2), end = Math.max(y1, y2); y <= end; y++) {
+        store.setPixel(x1, y);
+      }
+      return;
+    }
+    int dx = pts[4];
+    int dy = pts[5];
+    int ax = pts[6];
+    int ay = pts[7];
+    boolean xmajor = ax >= ay;
+    int errmajor;
+    int errminor;
+    int steps;
+    if (xmajor) {
+      errmajor = ay << 1;
+      errminor = ax << 1;
+      ax = -ax;
+      steps = Math.abs(x2 - x1);
+    } else {
+      errmajor = ax << 1;
+      errminor = ay << 1;
+      ay = -ay;
+      steps = Math.abs(y2 - y1);
+    }
+    int error = -(errminor / 2);
+    if (y1 != origy1) {
+      error += Math.abs(y1 - origy1) * ax * 2;
+    }
+    if (x1 != origx1) {
+      error += Math.abs(x1 - origx1) * ay * 2;
+    }
+    int bumpx = dx < 0 ? -1 : 1;
+    int bumpy = dy < 0 ? -1 : 1;
+    // Step through array indices rather than coordinates.
+    int idx = store.index(x1, y1);
+    int bumpmajor = xmajor ? bumpx * store.pixelStride : bumpy * store.scan;
+    int bumpminor = xmajor ? bumpy * store.scan : bumpx * store.pixelStride;
+    for (; steps >= 0; steps--) {
+      store.setPixelAt(idx);
+      idx += bumpmajor;
+      error += errmajor;
+      if (error >= 0) {
+        idx += bumpminor;
+        error -= errminor;
+      }
+    }
+  }
+
+  static void drawRect(PixelStore store, Region clip, int x, int y, int w, int h) {
+    if (w < 0 || h < 0) {
+      return;
+    }
+    int x2 = Region.dimAdd(Region.dimAdd(x, w), 1);
+    int y2 = Region.dimAdd(Region.dimAdd(y, h), 1);
+    if (w < 2 || h < 2) {
+      fillRect(store, clip, x, y, x2, y2);
+      return;
+    }
+    fillRect(store, clip, x, y, x2, y + 1);
+    fillRect(store, clip, x, y + 1, x + 1, y2 - 1);
+    fillRect(store, clip, x2 - 1, y + 1, x2, y2 - 1);
+    fillRect(store, clip, x, y2 - 1, x2, y2);
+  }
+
+  /**
+   * Writes a solid pixel value into a surface's raster, directly into its array where the
+   * raster's layout is known.
+   */
+  static final class PixelStore {
+    final int[] span = new int[4];
+    final int[] boundPts = new int[8];
+    private final Raster raster;
+    private final int pixel;
+    private int[] ints;
+    private short[] shorts;
+    private byte[] bytes;
+    // Bytes per pixel of an interleaved byte raster, or 1.
+    private int byteStride = 1;
+    // Array index of pixel (0, 0) in surface coordinates.
+    private int origin;
+    int scan;
+    int pixelStride = 1;
+    // Fallback for rasters of any other layout.
+    private Object dataElements;
+    // Scratch pixel for filling interleaved rows.
+    private byte[] pattern;
+
+    PixelStore(SunGraphics2D sg2d, SurfaceData sData) {
+      pixel = sg2d.pixel;
+      Rectangle bounds = sData.getBounds();
+      Raster r = sData.getRaster(bounds.x, bounds.y, bounds.width, bounds.height);
+      raster = r;
+      int base = 0;
+      if (r instanceof IntegerComponentRaster
+          && ((IntegerComponentRaster) r).getPixelStride() == 1) {
+        IntegerComponentRaster icr = (IntegerComponentRaster) r;
+        ints = icr.getDataStorage();
+        base = icr.getDataOffset(0);
+        scan = icr.getScanlineStride();
+      } else if (r instanceof ShortComponentRaster
+          && ((ShortComponentRaster) r).getPixelStride() == 1) {
+        ShortComponentRaster scr = (ShortComponentRaster) r;
+        shorts = scr.getDataStorage();
+        base = scr.getDataOffset(0);
+        scan = scr.getScanlineStride();
+      } else if (r instanceof ByteComponentRaster
+          && ((ByteComponentRaster) r).getPixelStride() == r.getNumDataElements()) {
+        ByteComponentRaster bcr = (ByteComponentRaster) r;
+        bytes = bcr.getDataStorage();
+        base = Integer.MAX_VALUE;
+        for (int band = 0; band < r.getNumDataElements(); band++) {
+          base = Math.min(base, bcr.getDataOffset(band));
+        }
+        scan = bcr.getScanlineStride();
+        byteStride = bcr.getPixelStride();
+        pixelStride = byteStride;
+        // The pixel's bytes are stored in little-endian order, as the native loops do.
+        pattern = new byte[byteStride];
+        for (int i = 0; i < byteStride; i++) {
+          pattern[i] = (byte) (pixel >> (i << 3));
+        }
+      } else {
+        dataElements = sData.getColorModel().getDataElements(sg2d.eargb, null);
+        // Indices are only used to walk lines; they are decoded in setPixelAt.
+        scan = r.getWidth();
+      }
+      origin = base - r.getMinY() * scan - r.getMinX() * pixelStride;
+    }
+
+    int index(int x, int y) {
+      return origin + y * scan + x * pixelStride;
+    }
+
+    void fillRow(int x, int y, int w) {
+      int idx = index(x, y);
+      if (ints != null) {
+        Arrays.fill(ints, idx, idx + w, pixel);
+      } else if (shorts != null) {
+        Arrays.fill(shorts, idx, idx + w, (short) pixel);
+      } else if (bytes != null) {
+        if (byteStride == 1) {
+          Arrays.fill(bytes, idx, idx + w, (byte) pixel);
+        } else {
+          int len = w * byteStride;
+          System.arraycopy(pattern, 0, bytes, idx, byteStride);
+          for (int filled = byteStride; filled < len; filled <<= 1) {
+            System.arraycopy(bytes, idx, bytes, idx + filled, Math.min(filled, len - filled));
+          }
+        }
+      } else {
+        for (int i = 0; i < w; i++) {
+          ((WritableRaster) raster).setDataElements(x + i, y, dataElements);
+        }
+      }
+    }
+
+    void setPixel(int x, int y) {
+      if (dataElements != null) {
+        ((WritableRaster) raster).setDataElements(x, y, dataElements);
+      } else {
+        setPixelAt(index(x, y));
+      }
+    }
+
+    /**
+     * Sets the pixel at an array index, as returned by {@link #index(int, int)}.
+     */
+    void setPixelAt(int idx) {
+      if (ints != null) {
+        ints[idx] = pixel;
+      } else if (shorts != null) {
+        shorts[idx] = (short) pixel;
+      } else if (bytes != null) {
+        for (int i = 0; i < byteStride; i++) {
+          bytes[idx + i] = pattern[i];
+        }
+      } else {
+        int rel = idx - index(raster.getMinX(), raster.getMinY());
+        ((WritableRaster) raster).setDataElements(raster.getMinX() + rel % scan,
+            raster.getMinY() + rel / scan, dataElements);
+      }
+    }
+
+    void markDirty() {
+      if (raster instanceof WritableRaster) {
+        SunWritableRaster.markDirty((WritableRaster) raster);
+      }
+    }
+  }
+
+  /**
+   * Routes {@link ProcessPath}'s lines, pixels and scanlines to a {@link PixelStore}.
+   */
+  static final class StoreDrawHandler extends DrawHandler {
+    private final PixelStore store;
+    private final Region clip;
+
+    StoreDrawHandler(PixelStore store, Region clip, int strokeHint) {
+      super(clip.getLoX(), clip.getLoY(), clip.getHiX(), clip.getHiY(), strokeHint);
+      this.store = store;
+      this.clip = clip;
+    }
+
+    @Override
+    public void drawLine(int x0, int y0, int x1, int y1) {
+      JavaSolidLoops.drawLine(store, clip, x0, y0, x1, y1);
+    }
+
+    @Override
+    public void drawPixel(int x0, int y0) {
+      if (clip.contains(x0, y0)) {
+        store.setPixel(x0, y0);
+      }
+    }
+
+    @Override
+    public void drawScanline(int x0, int x1, int y0) {
+      fillRect(store, clip, x0, y0, x1 + 1, y0 + 1);
+    }
+  }
+
+  static final class SetFillRect extends FillRect {
+    SetFillRect(SurfaceType dst) {
+      super(SurfaceType.AnyColor, CompositeType.SrcNoEa, dst);
+    }
+
+    @Override
+    public void FillRect(SunGraphics2D sg2d, SurfaceData dest, int x, int y, int w, int h) {
+      Region clip = sg2d.getCompClip();
+      Region r = clip.getBoundsIntersectionXYWH(x, y, w, h);
+      if (r.isEmpty()) {
+        return;
+      }
+      PixelStore store = new PixelStore(sg2d, dest);
+      fillRect(store, clip, r.getLoX(), r.getLoY(), r.getHiX(), r.getHiY());
+      store.markDirty();
+    }
+  }
+
+  static final class SetFillSpans extends FillSpans {
+    SetFillSpans(SurfaceType dst) {
+      super(SurfaceType.AnyColor, CompositeType.SrcNoEa, dst);
+    }
+
+    @Override
+    public void FillSpans(SunGraphics2D sg2d, SurfaceData dest, SpanIterator si) {
+      PixelStore store = new PixelStore(sg2d, dest);
+      fillSpans(store, si);
+      store.markDirty();
+    }
+  }
+
+  static final class SetDrawLine extends DrawLine {
+    SetDrawLine(SurfaceType dst) {
+      super(SurfaceType.AnyColor, CompositeType.SrcNoEa, dst);
+    }
+
+    @Override
+    public void DrawLine(SunGraphics2D sg2d, SurfaceData dest, int x1, int y1, int x2, int y2) {
+      PixelStore store = new PixelStore(sg2d, dest);
+      drawLine(store, sg2d.getCompClip(), x1, y1, x2, y2);
+      store.markDirty();
+    }
+  }
+
+  static final class SetDrawRect extends DrawRect {
+    SetDrawRect(SurfaceType dst) {
+      super(SurfaceType.AnyColor, CompositeType.SrcNoEa, dst);
+    }
+
+    @Override
+    public void DrawRect(SunGraphics2D sg2d, SurfaceData dest, int x, int y, int w, int h) {
+      PixelStore store = new PixelStore(sg2d, dest);
+      drawRect(store, sg2d.getCompClip(), x, y, w, h);
+      store.markDirty();
+    }
+  }
+
+  static final class SetDrawPolygons extends DrawPolygons {
+    SetDrawPolygons(SurfaceType dst) {
+      super(SurfaceType.AnyColor, CompositeType.SrcNoEa, dst);
+    }
+
+    @Override
+    public void DrawPolygons(
+        SunGraphics2D sg2d, SurfaceData sData, int[] xPoints, int[] yPoints, int[] nPoints,
+        int numPolys, int transX, int transY, boolean close) {
+      PixelStore store = new PixelStore(sg2d, sData);
+      Region clip = sg2d.getCompClip();
+      int off = 0;
+      for (int i = 0; i < numPolys; i++) {
+        int n = nPoints[i];
+        if (n > 0) {
+          int mx = xPoints[off] + transX;
+          int my = yPoints[off] + transY;
+          int x1 = mx;
+          int y1 = my;
+          for (int j = 1; j < n; j++) {
+            int x2 = xPoints[off + j] + transX;
+            int y2 = yPoints[off + j] + transY;
+            drawLine(store, clip, x1, y1, x2, y2);
+            x1 = x2;
+            y1 = y2;
+          }
+          if (close && (x1 != mx || y1 != my)) {
+            drawLine(store, clip, x1, y1, mx, my);
+          } else if (n == 1) {
+            drawLine(store, clip, mx, my, mx, my);
+          }
+        }
+        off += n;
+      }
+      store.markDirty();
+    }
+  }
+
+  static final class SetDrawPath extends DrawPath {
+    SetDrawPath(SurfaceType dst) {
+      super(SurfaceType.AnyColor, CompositeType.SrcNoEa, dst);
+    }
+
+    @Override
+    public void DrawPath(
+        SunGraphics2D sg2d, SurfaceData sData, int transX, int transY, Path2D.Float p2df) {
+      PixelStore store = new PixelStore(sg2d, sData);
+      ProcessPath.drawPath(new StoreDrawHandler(store, sg2d.getCompClip(), sg2d.strokeHint),
+          p2df, transX, transY);
+      store.markDirty();
+    }
+  }
+
+  static final class SetFillPath extends FillPath {
+    SetFillPath(SurfaceType dst) {
+      super(SurfaceType.AnyColor, CompositeType.SrcNoEa, dst);
+    }
+
+    @Override
+    public void FillPath(
+        SunGraphics2D sg2d, SurfaceData sData, int transX, int transY, Path2D.Float p2df) {
+      PixelStore store = new PixelStore(sg2d, sData);
+      ProcessPath.fillPath(new StoreDrawHandler(store, sg2d.getCompClip(), sg2d.strokeHint),
+          p2df, transX, transY);
+      store.markDirty();
+    }
+  }
+}
@@ -0,0 +1,555 @@
+package sun.java2d.loops;
+
+import java.awt.Composite;
+import java.awt.SkinJob;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.image.AffineTransformOp;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import sun.java2d.SurfaceData;
+import sun.java2d.pipe.Region;
+import sun.java2d.pipe.SpanIterator;
+
+/**
+ * Pure-Java {@link ScaledBlit}, {@link TransformBlit} and {@link TransformHelper} loops for the
+ * formats in {@link PixelAccess}. Without them, SkinJob has no loops for scaled or transformed
+ * images at all, since OpenJDK implements them natively.
+ * <p>
+ * All three map each destination pixel center back into the source. Each row is first trimmed to
+ * the pixels whose centers land inside the source rectangle, then walked with the source
+ * coordinates stepped in 32.32 fixed point, with a separate inner loop for each of nearest
+ * neighbor, bilinear and bicubic interpolation. Interpolation is done on premultiplied colors.
+ * Destinations of at least {@link SkinJob#parallelTransformMinPixels} pixels are split into bands
+ * of rows rendered on the common {@link ForkJoinPool}.
+ */
+public final class JavaTransformLoops {
+
+  private static final double FIXED_ONE = 4294967296.0;
+  private static final long FIXED_HALF = 1L << 31;
+
+  // Rows are split no further than this many pixels per band.
+  private static final int MIN_BAND_PIXELS = 16 * 1024;
+
+  /**
+   * Weights of the 4 bicubic taps for each 1/256 of a pixel of subpixel position, in 1/256ths.
+   */
+  private static final int[] CUBIC_WEIGHTS = new int[256 * 4];
+
+  static {
+    for (int f = 0; f < 256; f++) {
+      double t = f / 256.0;
+      int w0 = (int) Math.round(cubic(1 + t) * 256);
+      int w2 = (int) Math.round(cubic(1 - t) * 256);
+      int w3 = (int) Math.round(cubic(2 - t) * 256);
+      CUBIC_WEIGHTS[f * 4] = w0;
+      CUBIC_WEIGHTS[f * 4 + 1] = 256 - w0 - w2 - w3;
+      CUBIC_WEIGHTS[f * 4 + 2] = w2;
+      CUBIC_WEIGHTS[f * 4 + 3] = w3;
+    }
+  }
+
+  /**
+   * Do not instantiate.
+   */
+  private JavaTransformLoops() {
+  }
+
+  public static void register() {
+    List<GraphicsPrimitive> primitives = new ArrayList<>();
+    for (int src = 0; src < PixelAccess.TYPES.length; src++) {
+      primitives.add(new JavaTransformHelper(src));
+      for (int dst = 0; dst < PixelAccess.TYPES.length; dst++) {
+        primitives.add(new JavaScaledBlit(src, CompositeType.SrcNoEa, dst));
+        primitives.add(new JavaScaledBlit(src, CompositeType.AnyAlpha, dst));
+        primitives.add(new JavaTransformBlit(src, CompositeType.AnyAlpha, dst));
+      }
+    }
+    GraphicsPrimitiveMgr.register(primitives.toArray(new GraphicsPrimitive[0]));
+  }
+
+  /**
+   * The cubic convolution kernel with a = -0.5, as used by OpenJDK's native loops, at distance
+   * {@code d} from 0 to 2.
+   */
+  private static double cubic(double d) {
+    if (d <= 1) {
+      return (1.5 * d - 2.5) * d * d + 1;
+    }
+    return ((-0.5 * d + 2.5) * d - 4) * d + 2;
+  }
+
+  /**
+   * @return the least integer {@code x} at which {@code lo <= u0 + x * du < hi}
+   */
+  private static double lowerBound(double u0, double du, double lo, double hi) {
+    if (du > 0) {
+      return Math.ceil((lo - u0) / du);
+    }
+    if (du < 0) {
+      return Math.floor((hi - u0) / du) + 1;
+    }
+    return lo <= u0 && u0 < hi ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+  }
+
+  /**
+   * @return the least integer {@code x} above {@link #lowerBound} at which
+   *     {@code lo <= u0 + x * du < hi} no longer holds
+   */
+  private static double upperBound(double u0, double du, double lo, double hi) {
+    if (du > 0) {
+      return Math.ceil((hi - u0) / du);
+    }
+    if (du < 0) {
+      return Math.floor((lo - u0) / du) + 1;
+    }
+    return lo <= u0 && u0 < hi ? Integer.MAX_VALUE : Integer.MIN_VALUE;
+  }
+
+  private static int clamp(int v, int lo, int hi) {
+    return v < lo ? lo : (v > hi ? hi : v);
+  }
+
+  /**
+   * @return the {@link AffineTransformOp} interpolation type {@code hint}, or nearest neighbor if
+   *     it isn't one
+   */
+  private static int interpolationOf(int hint) {
+    switch (hint) {
+      case AffineTransformOp.TYPE_BILINEAR:
+      case AffineTransformOp.TYPE_BICUBIC:
+        return hint;
+      default:
+        return AffineTransformOp.TYPE_NEAREST_NEIGHBOR;
+    }
+  }
+
+  /**
+   * One transformed drawing: where the destination pixels come from in the source, and where the
+   * resulting rows go.
+   */
+  private static final class Job {
+    final PixelAccess src;
+    final int sx1;
+    final int sy1;
+    final int sx2;
+    final int sy2;
+    final int interpolation;
+    // Maps the center of destination pixel (x, y) to (m00 * x + m01 * y + m02, m10 * x + m11 * y
+    // + m12) in the source.
+    final double m00;
+    final double m01;
+    final double m02;
+    final double m10;
+    final double m11;
+    final double m12;
+    final int dx1;
+    final int dy1;
+    final int dx2;
+    final int dy2;
+    final Region clip;
+    // The same mapping in 32.32 fixed point, relative to (dx1, dy1). Coefficients are truncated
+    // like those of the native loops, so that pixels exactly on a source pixel boundary land the
+    // same way.
+    final long fixed00;
+    final long fixed01;
+    final long fixed10;
+    final long fixed11;
+    final long fixedU;
+    final long fixedV;
+
+    // Output, in order of preference: store non-premultiplied pixels, composite premultiplied
+    // pixels directly, or hand rows to another MaskBlit through a temporary image.
+    PixelAccess dst;
+    boolean store;
+    int rule;
+    int extraAlpha;
+    MaskBlit output;
+    SurfaceData outputDst;
+    Composite comp;
+    int[] outputRow;
+    SurfaceData outputRowData;
+
+    // Per-row [left, right) written here if not null, as TransformHelper's contract requires.
+    int[] edges;
+
+    Job(
+        PixelAccess src, int sx1, int sy1, int sx2, int sy2, int interpolation,
+        AffineTransform itx, double xoff, double yoff, int dx1, int dy1, int dx2, int dy2,
+        Region clip) {
+      this.src = src;
+      this.sx1 = sx1;
+      this.sy1 = sy1;
+      this.sx2 = sx2;
+      this.sy2 = sy2;
+      this.interpolation = interpolation;
+      m00 = itx.getScaleX();
+      m01 = itx.getShearX();
+      m10 = itx.getShearY();
+      m11 = itx.getScaleY();
+      double cx = xoff + 0.5;
+      double cy = yoff + 0.5;
+      m02 = m00 * cx + m01 * cy + itx.getTranslateX();
+      m12 = m10 * cx + m11 * cy + itx.getTranslateY();
+      this.dx1 = dx1;
+      this.dy1 = dy1;
+      this.dx2 = dx2;
+      this.dy2 = dy2;
+      this.clip = clip;
+      fixed00 = (long) (m00 * FIXED_ONE);
+      fixed01 = (long) (m01 * FIXED_ONE);
+      fixed10 = (long) (m10 * FIXED_ONE);
+      fixed11 = (long) (m11 * FIXED_ONE);
+      fixedU = (long) ((m00 * dx1 + m01 * dy1 + m02) * FIXED_ONE);
+      fixedV = (long) ((m10 * dx1 + m11 * dy1 + m12) * FIXED_ONE);
+    }
+
+    void run() {
+      int rows = dy2 - dy1;
+      int w = dx2 - dx1;
+      int threshold = SkinJob.parallelTransformMinPixels;
+      if (edges != null) {
+        edges[0] = dy1;
+        edges[1] = dy2;
+      }
+      if (output == null && threshold > 0 && (long) rows * w >= threshold
+          && (long) rows * w >= 2 * MIN_BAND_PIXELS) {
+        ForkJoinPool.commonPool().invoke(new Band(this, dy1, dy2));
+      } else {
+        renderRows(dy1, dy2);
+      }
+      if (dst != null) {
+        dst.markDirty();
+      }
+    }
+
+    void renderRows(int y1, int y2) {
+      int[] span = new int[4];
+      for (int y = y1; y < y2; y++) {
+        double u0 = m01 * y + m02;
+        double v0 = m11 * y + m12;
+        double lx = Math.max(dx1, Math.max(lowerBound(u0, m00, sx1, sx2),
+            lowerBound(v0, m10, sy1, sy2)));
+        double rx = Math.min(dx2, Math.min(upperBound(u0, m00, sx1, sx2),
+            upperBound(v0, m10, sy1, sy2)));
+        int x1 = (int) lx;
+        int x2 = Math.max(x1, (int) rx);
+        if (edges != null) {
+          edges[2 + 2 * (y - dy1)] = x1;
+          edges[3 + 2 * (y - dy1)] = x2;
+        }
+        if (x1 >= x2) {
+          continue;
+        }
+        if (clip == null) {
+          renderSpan(x1, x2, y);
+        } else if (clip.isRectangular()) {
+          if (y >= clip.getLoY() && y < clip.getHiY()) {
+            x1 = Math.max(x1, clip.getLoX());
+            x2 = Math.min(x2, clip.getHiX());
+            if (x1 < x2) {
+              renderSpan(x1, x2, y);
+            }
+          }
+        } else {
+          SpanIterator si = clip.getIntersectionXYXY(x1, y, x2, y + 1).getSpanIterator();
+          while (si.nextSpan(span)) {
+            renderSpan(span[0], span[2], y);
+          }
+        }
+      }
+    }
+
+    private void renderSpan(int x1, int x2, int y) {
+      int w = x2 - x1;
+      int[] row = PixelAccess.scratch(0, w);
+      long fu = fixedU + (x1 - dx1) * fixed00 + (y - dy1) * fixed01;
+      long fv = fixedV + (x1 - dx1) * fixed10 + (y - dy1) * fixed11;
+      long dfu = fixed00;
+      long dfv = fixed10;
+      switch (interpolation) {
+        case AffineTransformOp.TYPE_BILINEAR:
+          sampleBilinear(row, w, fu - FIXED_HALF, fv - FIXED_HALF, dfu, dfv);
+          break;
+        case AffineTransformOp.TYPE_BICUBIC:
+          sampleBicubic(row, w, fu - FIXED_HALF, fv - FIXED_HALF, dfu, dfv);
+          break;
+        default:
+          sampleNearest(row, w, fu, fv, dfu, dfv);
+          break;
+      }
+      if (store) {
+        dst.storeArgb(dst.index(x1, y), row, 0, w);
+      } else if (dst != null) {
+        PixelAccess.scalePre(row, 0, w, extraAlpha);
+        JavaMaskLoops.compositeRow(rule, dst, dst.index(x1, y), row, w, null, 0);
+      } else {
+        System.arraycopy(row, 0, outputRow, 0, w);
+        output.MaskBlit(outputRowData, outputDst, comp, null, 0, 0, x1, y, w, 1, null, 0, 0);
+      }
+    }
+
+    private void sampleNearest(int[] row, int w, long fu, long fv, long dfu, long dfv) {
+      int xmax = sx2 - 1;
+      int ymax = sy2 - 1;
+      if (dfv == 0) {
+        int y = clamp((int) (fv >> 32), sy1, ymax);
+        for (int i = 0; i < w; i++, fu += dfu) {
+          int idx = src.index(clamp((int) (fu >> 32), sx1, xmax), y);
+          row[i] = store ? src.getArgb(idx) : src.getArgbPre(idx);
+        }
+        return;
+      }
+      for (int i = 0; i < w; i++, fu += dfu, fv += dfv) {
+        int idx = src.index(clamp((int) (fu >> 32), sx1, xmax), clamp((int) (fv >> 32), sy1, ymax));
+        row[i] = store ? src.getArgb(idx) : src.getArgbPre(idx);
+      }
+    }
+
+    private void sampleBilinear(int[] row, int w, long fu, long fv, long dfu, long dfv) {
+      int xmax = sx2 - 1;
+      int ymax = sy2 - 1;
+      for (int i = 0; i < w; i++, fu += dfu, fv += dfv) {
+        int x = (int) (fu >> 32);
+        int y = (int) (fv >> 32);
+        int fx = (int) (fu >>> 24) & 0xFF;
+        int fy = (int) (fv >>> 24) & 0xFF;
+        int x0 = clamp(x, sx1, xmax);
+        int x1 = clamp(x + 1, sx1, xmax);
+        int y0 = clamp(y, sy1, ymax);
+        int y1 = clamp(y + 1, sy1, ymax);
+        int p00 = src.getArgbPre(src.index(x0, y0));
+        int p01 = src.getArgbPre(src.index(x1, y0));
+        int p10 = src.getArgbPre(src.index(x0, y1));
+        int p11 = src.getArgbPre(src.index(x1, y1));
+        int argb = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+          int top = ((p00 >>> shift) & 0xFF) * (256 - fx) + ((p01 >>> shift) & 0xFF) * fx;
+          int bottom = ((p10 >>> shift) & 0xFF) * (256 - fx) + ((p11 >>> shift) & 0xFF) * fx;
+          argb |= ((top * (256 - fy) + bottom * fy + 0x8000) >> 16) << shift;
+        }
+        row[i] = argb;
+      }
+    }
+
+    private void sampleBicubic(int[] row, int w, long fu, long fv, long dfu, long dfv) {
+      int xmax = sx2 - 1;
+      int ymax = sy2 - 1;
+      int[] xs = new int[4];
+      for (int i = 0; i < w; i++, fu += dfu, fv += dfv) {
+        int x = (int) (fu >> 32);
+        int y = (int) (fv >> 32);
+        int wx = ((int) (fu >>> 24) & 0xFF) * 4;
+        int wy = ((int) (fv >>> 24) & 0xFF) * 4;
+        for (int k = 0; k < 4; k++) {
+          xs[k] = clamp(x - 1 + k, sx1, xmax);
+        }
+        int a = 0;
+        int r = 0;
+        int g = 0;
+        int b = 0;
+        for (int j = 0; j < 4; j++) {
+          int yj = clamp(y - 1 + j, sy1, ymax);
+          int ha = 0;
+          int hr = 0;
+          int hg = 0;
+          int hb = 0;
+          for (int k = 0; k < 4; k++) {
+            int p = src.getArgbPre(src.index(xs[k], yj));
+            int weight = CUBIC_WEIGHTS[wx + k];
+            ha += (p >>> 24) * weight;
+            hr += ((p >> 16) & 0xFF) * weight;
+            hg += ((p >> 8) & 0xFF) * weight;
+            hb += (p & 0xFF) * weight;
+          }
+          int weight = CUBIC_WEIGHTS[wy + j];
+          a += ha * weight;
+          r += hr * weight;
+          g += hg * weight;
+          b += hb * weight;
+        }
+        // The kernel overshoots; keep the result a valid premultiplied color.
+        a = clamp((a + 0x8000) >> 16, 0, 0xFF);
+        r = clamp((r + 0x8000) >> 16, 0, a);
+        g = clamp((g + 0x8000) >> 16, 0, a);
+        b = clamp((b + 0x8000) >> 16, 0, a);
+        row[i] = (a << 24) | (r << 16) | (g << 8) | b;
+      }
+    }
+  }
+
+  /**
+   * Renders a band of rows, splitting it in half while both halves would still be large.
+   */
+  private static final class Band extends RecursiveAction {
+    private static final long serialVersionUID = -5746093042240592766L;
+
+    private final Job job;
+    private final int y1;
+    private final int y2;
+
+    Band(Job job, int y1, int y2) {
+      this.job = job;
+      this.y1 = y1;
+      this.y2 = y2;
+    }
+
+    @Override
+    protected void compute() {
+      int rows = y2 - y1;
+      if (rows < 2 || (long) rows * (job.dx2 - job.dx1) < 2 * MIN_BAND_PIXELS) {
+        job.renderRows(y1, y2);
+        return;
+      }
+      int mid = y1 + (rows >> 1);
+      invokeAll(new Band(job, y1, mid), new Band(job, mid, y2));
+    }
+  }
+
+  static final class JavaTransformHelper extends TransformHelper {
+    private final int srcFormat;
+
+    JavaTransformHelper(int srcFormat) {
+      super(PixelAccess.TYPES[srcFormat]);
+      this.srcFormat = srcFormat;
+    }
+
+    @Override
+    public void Transform(
+        MaskBlit output, SurfaceData src, SurfaceData dst, Composite comp, Region clip,
+        AffineTransform itx, int txtype, int sx1, int sy1, int sx2, int sy2, int dx1, int dy1,
+        int dx2, int dy2, int[] edges, int dxoff, int dyoff) {
+      if (edges != null) {
+        edges[0] = edges[1] = dy1;
+      }
+      if (sx2 <= sx1 || sy2 <= sy1 || dx2 <= dx1 || dy2 <= dy1) {
+        return;
+      }
+      if (clip != null) {
+        clip = clip.getIntersection(dst.getBounds());
+      }
+      Job job = new Job(PixelAccess.get(src, srcFormat, sx1, sy1, sx2 - sx1, sy2 - sy1),
+          sx1, sy1, sx2, sy2, interpolationOf(txtype), itx, dxoff, dyoff, dx1, dy1, dx2, dy2,
+          clip);
+      job.edges = edges;
+      if (output instanceof JavaMaskLoops.JavaMaskBlit) {
+        job.dst = PixelAccess.get(dst, ((JavaMaskLoops.JavaMaskBlit) output).dstFormat,
+            dx1, dy1, dx2 - dx1, dy2 - dy1);
+        job.rule = JavaMaskLoops.ruleOf(comp);
+        job.extraAlpha = PixelAccess.extraAlpha(comp);
+      } else {
+        BufferedImage rowImage
+            = new BufferedImage(dx2 - dx1, 1, BufferedImage.TYPE_INT_ARGB_PRE);
+        job.output = output;
+        job.outputDst = dst;
+        job.comp = comp;
+        job.outputRow = ((DataBufferInt) rowImage.getRaster().getDataBuffer()).getData();
+        job.outputRowData = SurfaceData.getPrimarySurfaceData(rowImage);
+      }
+      job.run();
+    }
+  }
+
+  static final class JavaScaledBlit extends ScaledBlit {
+    private final int srcFormat;
+    private final int dstFormat;
+    private final boolean store;
+
+    JavaScaledBlit(int srcFormat, CompositeType comptype, int dstFormat) {
+      super(PixelAccess.TYPES[srcFormat], comptype, PixelAccess.TYPES[dstFormat]);
+      this.srcFormat = srcFormat;
+      this.dstFormat = dstFormat;
+      store = comptype == CompositeType.SrcNoEa;
+    }
+
+    @Override
+    public void Scale(
+        SurfaceData src, SurfaceData dst, Composite comp, Region clip, int sx1, int sy1, int sx2,
+        int sy2, double dx1, double dy1, double dx2, double dy2) {
+      if (sx2 <= sx1 || sy2 <= sy1 || dx2 <= dx1 || dy2 <= dy1) {
+        return;
+      }
+      clip = clip.getIntersection(dst.getBounds());
+      // Destination pixels whose centers fall within the destination rectangle.
+      int x1 = Math.max((int) Math.ceil(dx1 - 0.5), clip.getLoX());
+      int y1 = Math.max((int) Math.ceil(dy1 - 0.5), clip.getLoY());
+      int x2 = Math.min((int) Math.ceil(dx2 - 0.5), clip.getHiX());
+      int y2 = Math.min((int) Math.ceil(dy2 - 0.5), clip.getHiY());
+      if (x2 <= x1 || y2 <= y1) {
+        return;
+      }
+      double scaleX = (sx2 - sx1) / (dx2 - dx1);
+      double scaleY = (sy2 - sy1) / (dy2 - dy1);
+      AffineTransform itx = new AffineTransform(scaleX, 0, 0, scaleY,
+          sx1 - dx1 * scaleX, sy1 - dy1 * scaleY);
+      Job job = new Job(PixelAccess.get(src, srcFormat, sx1, sy1, sx2 - sx1, sy2 - sy1),
+          sx1, sy1, sx2, sy2, AffineTransformOp.TYPE_NEAREST_NEIGHBOR, itx, 0, 0, x1, y1, x2, y2,
+          clip);
+      job.dst = PixelAccess.get(dst, dstFormat, x1, y1, x2 - x1, y2 - y1);
+      job.store = store;
+      job.rule = JavaMaskLoops.ruleOf(comp);
+      job.extraAlpha = PixelAccess.extraAlpha(comp);
+      job.run();
+    }
+  }
+
+  static final class JavaTransformBlit extends TransformBlit {
+    private final int srcFormat;
+    private final int dstFormat;
+
+    JavaTransformBlit(int srcFormat, CompositeType comptype, int dstFormat) {
+      super(PixelAccess.TYPES[srcFormat], comptype, PixelAccess.TYPES[dstFormat]);
+      this.srcFormat = srcFormat;
+      this.dstFormat = dstFormat;
+    }
+
+    @Override
+    public void Transform(
+        SurfaceData src, SurfaceData dst, Composite comp, Region clip, AffineTransform at,
+        int hint, int srcx, int srcy, int dstx, int dsty, int width, int height) {
+      if (width <= 0 || height <= 0) {
+        return;
+      }
+      clip = clip.getIntersection(dst.getBounds());
+      AffineTransform tx = new AffineTransform(at);
+      tx.translate(dstx - srcx, dsty - srcy);
+      AffineTransform itx;
+      try {
+        itx = tx.createInverse();
+      } catch (NoninvertibleTransformException e) {
+        return;
+      }
+      double[] corners = {srcx, srcy, srcx + width, srcy, srcx, srcy + height,
+          srcx + width, srcy + height};
+      tx.transform(corners, 0, corners, 0, 4);
+      double minX = Double.POSITIVE_INFINITY;
+      double minY = Double.POSITIVE_INFINITY;
+      double maxX = Double.NEGATIVE_INFINITY;
+      double maxY = Double.NEGATIVE_INFINITY;
+      for (int i = 0; i < 8; i += 2) {
+        minX = Math.min(minX, corners[i]);
+        maxX = Math.max(maxX, corners[i]);
+        minY = Math.min(minY, corners[i + 1]);
+        maxY = Math.max(maxY, corners[i + 1]);
+      }
+      int x1 = (int) Math.max(Math.ceil(minX - 0.5), clip.getLoX());
+      int y1 = (int) Math.max(Math.ceil(minY - 0.5), clip.getLoY());
+      int x2 = (int) Math.min(Math.ceil(maxX - 0.5), clip.getHiX());
+      int y2 = (int) Math.min(Math.ceil(maxY - 0.5), clip.getHiY());
+      if (x2 <= x1 || y2 <= y1) {
+        return;
+      }
+      Job job = new Job(PixelAccess.get(src, srcFormat, srcx, srcy, width, height),
+          srcx, srcy, srcx + width, srcy + height, interpolationOf(hint), itx, 0, 0,
+          x1, y1, x2, y2, clip);
+      job.dst = PixelAccess.get(dst, dstFormat, x1, y1, x2 - x1, y2 - y1);
+      job.rule = JavaMaskLoops.ruleOf(comp);
+      job.extraAlpha = PixelAccess.extraAlpha(comp);
+      job.run();
+    }
+  }
+}
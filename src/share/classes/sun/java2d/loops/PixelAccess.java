@@ -0,0 +1,583 @@
+package sun.java2d.loops;
+
+import java.awt.AlphaComposite;
+import java.awt.Composite;
+import java.awt.image.ColorModel;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.util.Arrays;
+import sun.awt.image.ByteComponentRaster;
+import sun.awt.image.IntegerComponentRaster;
+import sun.java2d.SurfaceData;
+
+/**
+ * Direct access to the pixel array behind a {@link SurfaceData} of one of the formats that the
+ * pure-Java loops handle, with row conversions to and from 32-bit ARGB. The loops work a row at a
+ * time: load a row of source pixels as ARGB into a scratch array, operate on it, then store or
+ * blend it into the destination. Each format is one {@code switch} per row rather than a virtual
+ * call per pixel.
+ */
+final class PixelAccess {
+  static final int INT_ARGB = 0;
+  static final int INT_ARGB_PRE = 1;
+  static final int INT_RGB = 2;
+  static final int THREE_BYTE_BGR = 3;
+  static final int BYTE_GRAY = 4;
+  static final int INDEX8_GRAY = 5;
+
+  /**
+   * The surface types handled, indexed by format code.
+   */
+  static final SurfaceType[] TYPES = {
+      SurfaceType.IntArgb,
+      SurfaceType.IntArgbPre,
+      SurfaceType.IntRgb,
+      SurfaceType.ThreeByteBgr,
+      SurfaceType.ByteGray,
+      SurfaceType.Index8Gray,
+  };
+
+  /**
+   * {@code MUL8[(a << 8) | b]} is {@code a * b / 255}, rounded.
+   */
+  static final byte[] MUL8 = new byte[256 * 256];
+
+  /**
+   * {@code DIV8[(a << 8) | b]} is {@code b * 255 / a}, rounded and clamped to 255.
+   */
+  static final byte[] DIV8 = new byte[256 * 256];
+
+  private static final ThreadLocal<int[][]> scratchRows = new ThreadLocal<>();
+
+  // Inverse gray lookup for the most recently used Index8Gray color model.
+  private static IndexColorModel lastGrayModel;
+  private static int[] lastGrayLut;
+  private static byte[] lastInverseGray;
+
+  static {
+    for (int a = 0; a < 256; a++) {
+      for (int b = 0; b < 256; b++) {
+        MUL8[(a << 8) | b] = (byte) ((a * b + 127) / 255);
+        DIV8[(a << 8) | b] = (byte) (a == 0 ? 0 : Math.min(255, (b * 255 + (a >> 1)) / a));
+      }
+    }
+  }
+
+  final int format;
+  final int[] ints;
+  final byte[] bytes;
+  final int scan;
+  final int pixelStride;
+  // Array index of pixel (0, 0) in surface coordinates.
+  private final int origin;
+  private final Raster raster;
+  // Index8Gray only.
+  final int[] lut;
+  final byte[] inverseGray;
+
+  private PixelAccess(
+      int format, Raster raster, int[] ints, byte[] bytes, int base, int scan, int pixelStride,
+      int[] lut, byte[] inverseGray) {
+    this.format = format;
+    this.raster = raster;
+    this.ints = ints;
+    this.bytes = bytes;
+    this.scan = scan;
+    this.pixelStride = pixelStride;
+    origin = base - raster.getMinY() * scan - raster.getMinX() * pixelStride;
+    this.lut = lut;
+    this.inverseGray = inverseGray;
+  }
+
+  /**
+   * @return the format code of a surface type, or -1 if it isn't handled
+   */
+  static int formatOf(SurfaceType type) {
+    for (int i = 0; i < TYPES.length; i++) {
+      if (TYPES[i] == type) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Wraps the raster of {@code sd} covering the given area.
+   *
+   * @throws InternalError if the raster isn't laid out as {@code format} requires
+   */
+  static PixelAccess get(SurfaceData sd, int format, int x, int y, int w, int h) {
+    Raster raster = sd.getRaster(x, y, w, h);
+    switch (format) {
+      case INT_ARGB:
+      case INT_ARGB_PRE:
+      case INT_RGB:
+        if (raster instanceof IntegerComponentRaster) {
+          IntegerComponentRaster icr = (IntegerComponentRaster) raster;
+          if (icr.getPixelStride() == 1) {
+            return new PixelAccess(format, raster, icr.getDataStorage(), null,
+                icr.getDataOffset(0), icr.getScanlineStride(), 1, null, null);
+          }
+        }
+        break;
+      case THREE_BYTE_BGR:
+        if (raster instanceof ByteComponentRaster) {
+          ByteComponentRaster bcr = (ByteComponentRaster) raster;
+          if (bcr.getPixelStride() == 3 && bcr.getNumDataElements() == 3) {
+            // Bands are R, G, B; in memory the order is B, G, R.
+            int base = Math.min(bcr.getDataOffset(0),
+                Math.min(bcr.getDataOffset(1), bcr.getDataOffset(2)));
+            if (bcr.getDataOffset(2) == base && bcr.getDataOffset(0) == base + 2) {
+              return new PixelAccess(format, raster, null, bcr.getDataStorage(), base,
+                  bcr.getScanlineStride(), 3, null, null);
+            }
+          }
+        }
+        break;
+      case BYTE_GRAY:
+      case INDEX8_GRAY:
+        if (raster instanceof ByteComponentRaster) {
+          ByteComponentRaster bcr = (ByteComponentRaster) raster;
+          if (bcr.getPixelStride() == 1) {
+            int[] lut = null;
+            byte[] inverse = null;
+            if (format == INDEX8_GRAY) {
+              ColorModel cm = sd.getColorModel();
+              synchronized (PixelAccess.class) {
+                if (cm != lastGrayModel) {
+                  lastGrayLut = getLut((IndexColorModel) cm);
+                  lastInverseGray = invertGrayLut(lastGrayLut);
+                  lastGrayModel = (IndexColorModel) cm;
+                }
+                lut = lastGrayLut;
+                inverse = lastInverseGray;
+              }
+            }
+            return new PixelAccess(format, raster, null, bcr.getDataStorage(),
+                bcr.getDataOffset(0), bcr.getScanlineStride(), 1, lut, inverse);
+          }
+        }
+        break;
+      default:
+        break;
+    }
+    throw new InternalError("Unexpected raster for " + TYPES[format] + ": " + raster);
+  }
+
+  private static int[] getLut(IndexColorModel cm) {
+    int[] lut = new int[256];
+    cm.getRGBs(lut);
+    for (int i = cm.getMapSize(); i < 256; i++) {
+      lut[i] = lut[0];
+    }
+    return lut;
+  }
+
+  private static byte[] invertGrayLut(int[] lut) {
+    byte[] inverse = new byte[256];
+    for (int gray = 0; gray < 256; gray++) {
+      int best = 0;
+      int bestError = Integer.MAX_VALUE;
+      for (int i = 0; i < lut.length && bestError > 0; i++) {
+        int error = Math.abs((lut[i] & 0xFF) - gray);
+        if (error < bestError) {
+          best = i;
+          bestError = error;
+        }
+      }
+      inverse[gray] = (byte) best;
+    }
+    return inverse;
+  }
+
+  /**
+   * @return the extra alpha of a composite, from 0 to 255
+   */
+  static int extraAlpha(Composite comp) {
+    if (comp instanceof AlphaComposite) {
+      return Math.round(((AlphaComposite) comp).getAlpha() * 255);
+    }
+    return 255;
+  }
+
+  /**
+   * Returns a per-thread scratch row of at least {@code length} ints. Two independent rows are
+   * available, numbered 0 and 1.
+   */
+  static int[] scratch(int which, int length) {
+    int[][] rows = scratchRows.get();
+    if (rows == null) {
+      rows = new int[2][];
+      scratchRows.set(rows);
+    }
+    int[] row = rows[which];
+    if (row == null || row.length < length) {
+      row = new int[Math.max(length, 256)];
+      rows[which] = row;
+    }
+    return row;
+  }
+
+  static int mul8(int a, int b) {
+    return MUL8[(a << 8) | b] & 0xFF;
+  }
+
+  static int div8(int a, int b) {
+    return DIV8[(a << 8) | b] & 0xFF;
+  }
+
+  static int gray(int r, int g, int b) {
+    return (77 * r + 150 * g + 29 * b + 128) >> 8;
+  }
+
+  static int premultiply(int argb) {
+    int a = argb >>> 24;
+    if (a == 0xFF) {
+      return argb;
+    }
+    if (a == 0) {
+      return 0;
+    }
+    int hi = a << 8;
+    return (a << 24) | ((MUL8[hi | ((argb >> 16) & 0xFF)] & 0xFF) << 16)
+        | ((MUL8[hi | ((argb >> 8) & 0xFF)] & 0xFF) << 8) | (MUL8[hi | (argb & 0xFF)] & 0xFF);
+  }
+
+  static int unpremultiply(int argb) {
+    int a = argb >>> 24;
+    if (a == 0xFF || a == 0) {
+      return a == 0 ? 0 : argb;
+    }
+    int hi = a << 8;
+    return (a << 24) | ((DIV8[hi | ((argb >> 16) & 0xFF)] & 0xFF) << 16)
+        | ((DIV8[hi | ((argb >> 8) & 0xFF)] & 0xFF) << 8) | (DIV8[hi | (argb & 0xFF)] & 0xFF);
+  }
+
+  /**
+   * Multiplies every component of premultiplied pixels by {@code alpha}.
+   */
+  static void scalePre(int[] row, int off, int w, int alpha) {
+    if (alpha == 0xFF) {
+      return;
+    }
+    int hi = alpha << 8;
+    for (int i = off; i < off + w; i++) {
+      int p = row[i];
+      row[i] = ((MUL8[hi | (p >>> 24)] & 0xFF) << 24)
+          | ((MUL8[hi | ((p >> 16) & 0xFF)] & 0xFF) << 16)
+          | ((MUL8[hi | ((p >> 8) & 0xFF)] & 0xFF) << 8) | (MUL8[hi | (p & 0xFF)] & 0xFF);
+    }
+  }
+
+  /**
+   * Multiplies only the alpha of non-premultiplied pixels by {@code alpha}.
+   */
+  static void scaleAlpha(int[] row, int off, int w, int alpha) {
+    if (alpha == 0xFF) {
+      return;
+    }
+    int hi = alpha << 8;
+    for (int i = off; i < off + w; i++) {
+      int p = row[i];
+      row[i] = ((MUL8[hi | (p >>> 24)] & 0xFF) << 24) | (p & 0xFFFFFF);
+    }
+  }
+
+  /**
+   * @return the array index of pixel ({@code x}, {@code y}) in surface coordinates
+   */
+  int index(int x, int y) {
+    return origin + y * scan + x * pixelStride;
+  }
+
+  /**
+   * @return whether the two share a pixel array, so a copy between them may overlap
+   */
+  boolean sharesStorage(PixelAccess other) {
+    return (ints != null && ints == other.ints) || (bytes != null && bytes == other.bytes);
+  }
+
+  /**
+   * Whether a pixel copied verbatim from {@code src} means the same color here.
+   */
+  boolean isIsomorphic(PixelAccess src) {
+    return format == src.format && (format != INDEX8_GRAY || Arrays.equals(lut, src.lut));
+  }
+
+  /**
+   * Tells the raster its pixels were modified directly.
+   */
+  void markDirty() {
+    if (raster instanceof IntegerComponentRaster) {
+      ((IntegerComponentRaster) raster).markDirty();
+    } else if (raster instanceof ByteComponentRaster) {
+      ((ByteComponentRaster) raster).markDirty();
+    }
+  }
+
+  /**
+   * Copies {@code w} pixels verbatim from {@code src}, which must be isomorphic.
+   */
+  void copyRow(PixelAccess src, int srcIdx, int dstIdx, int w) {
+    if (ints != null) {
+      System.arraycopy(src.ints, srcIdx, ints, dstIdx, w);
+    } else {
+      System.arraycopy(src.bytes, srcIdx, bytes, dstIdx, w * pixelStride);
+    }
+  }
+
+  /**
+   * @return the pixel at array index {@code idx} as non-premultiplied ARGB
+   */
+  int getArgb(int idx) {
+    switch (format) {
+      case INT_ARGB:
+        return ints[idx];
+      case INT_ARGB_PRE:
+        return unpremultiply(ints[idx]);
+      case INT_RGB:
+        return 0xFF000000 | ints[idx];
+      case THREE_BYTE_BGR:
+        return 0xFF000000 | (bytes[idx] & 0xFF) | ((bytes[idx + 1] & 0xFF) << 8)
+            | ((bytes[idx + 2] & 0xFF) << 16);
+      case BYTE_GRAY:
+        return 0xFF000000 | ((bytes[idx] & 0xFF) * 0x010101);
+      case INDEX8_GRAY:
+        return 0xFF000000 | lut[bytes[idx] & 0xFF];
+      default:
+        throw new InternalError();
+    }
+  }
+
+  /**
+   * @return the pixel at array index {@code idx} as premultiplied ARGB
+   */
+  int getArgbPre(int idx) {
+    switch (format) {
+      case INT_ARGB:
+        return premultiply(ints[idx]);
+      case INT_ARGB_PRE:
+        return ints[idx];
+      default:
+        return getArgb(idx);
+    }
+  }
+
+  /**
+   * Loads {@code w} pixels starting at array index {@code idx} as non-premultiplied ARGB.
+   */
+  void loadArgb(int idx, int[] row, int off, int w) {
+    switch (format) {
+      case INT_ARGB:
+        System.arraycopy(ints, idx, row, off, w);
+        break;
+      case INT_ARGB_PRE:
+        for (int i = 0; i < w; i++) {
+          row[off + i] = unpremultiply(ints[idx + i]);
+        }
+        break;
+      case INT_RGB:
+        for (int i = 0; i < w; i++) {
+          row[off + i] = 0xFF000000 | ints[idx + i];
+        }
+        break;
+      case THREE_BYTE_BGR:
+        for (int i = 0; i < w; i++, idx += 3) {
+          row[off + i] = 0xFF000000 | (bytes[idx] & 0xFF) | ((bytes[idx + 1] & 0xFF) << 8)
+              | ((bytes[idx + 2] & 0xFF) << 16);
+        }
+        break;
+      case BYTE_GRAY:
+        for (int i = 0; i < w; i++) {
+          row[off + i] = 0xFF000000 | ((bytes[idx + i] & 0xFF) * 0x010101);
+        }
+        break;
+      case INDEX8_GRAY:
+        for (int i = 0; i < w; i++) {
+          row[off + i] = 0xFF000000 | lut[bytes[idx + i] & 0xFF];
+        }
+        break;
+      default:
+        throw new InternalError();
+    }
+  }
+
+  /**
+   * Loads {@code w} pixels starting at array index {@code idx} as premultiplied ARGB.
+   */
+  void loadArgbPre(int idx, int[] row, int off, int w) {
+    switch (format) {
+      case INT_ARGB:
+        for (int i = 0; i < w; i++) {
+          row[off + i] = premultiply(ints[idx + i]);
+        }
+        break;
+      case INT_ARGB_PRE:
+        System.arraycopy(ints, idx, row, off, w);
+        break;
+      default:
+        // Opaque formats: premultiplied and non-premultiplied are the same.
+        loadArgb(idx, row, off, w);
+        break;
+    }
+  }
+
+  /**
+   * Stores {@code w} non-premultiplied ARGB pixels starting at array index {@code idx}.
+   */
+  void storeArgb(int idx, int[] row, int off, int w) {
+    switch (format) {
+      case INT_ARGB:
+        System.arraycopy(row, off, ints, idx, w);
+        break;
+      case INT_ARGB_PRE:
+        for (int i = 0; i < w; i++) {
+          ints[idx + i] = premultiply(row[off + i]);
+        }
+        break;
+      case INT_RGB:
+        for (int i = 0; i < w; i++) {
+          ints[idx + i] = row[off + i] & 0xFFFFFF;
+        }
+        break;
+      case THREE_BYTE_BGR:
+        for (int i = 0; i < w; i++, idx += 3) {
+          int p = row[off + i];
+          bytes[idx] = (byte) p;
+          bytes[idx + 1] = (byte) (p >> 8);
+          bytes[idx + 2] = (byte) (p >> 16);
+        }
+        break;
+      case BYTE_GRAY:
+        for (int i = 0; i < w; i++) {
+          int p = row[off + i];
+          bytes[idx + i] = (byte) gray((p >> 16) & 0xFF, (p >> 8) & 0xFF, p & 0xFF);
+        }
+        break;
+      case INDEX8_GRAY:
+        for (int i = 0; i < w; i++) {
+          int p = row[off + i];
+          bytes[idx + i] = inverseGray[gray((p >> 16) & 0xFF, (p >> 8) & 0xFF, p & 0xFF)];
+        }
+        break;
+      default:
+        throw new InternalError();
+    }
+  }
+
+  /**
+   * Stores {@code w} premultiplied ARGB pixels starting at array index {@code idx}. Formats without
+   * premultiplied alpha get the pixels unpremultiplied, in place in {@code row}, so a transparent
+   * pixel stores black in an opaque format.
+   */
+  void storeArgbPre(int idx, int[] row, int off, int w) {
+    if (format == INT_ARGB_PRE) {
+      System.arraycopy(row, off, ints, idx, w);
+      return;
+    }
+    for (int i = off; i < off + w; i++) {
+      row[i] = unpremultiply(row[i]);
+    }
+    storeArgb(idx, row, off, w);
+  }
+
+  /**
+   * Composites {@code w} premultiplied ARGB pixels over the pixels starting at array index
+   * {@code idx}, per {@link AlphaComposite#SRC_OVER}.
+   */
+  void blendSrcOver(int idx, int[] row, int off, int w) {
+    for (int i = 0; i < w; i++, idx += pixelStride) {
+      int src = row[off + i];
+      int srcA = src >>> 24;
+      if (srcA == 0) {
+        continue;
+      }
+      int srcR = (src >> 16) & 0xFF;
+      int srcG = (src >> 8) & 0xFF;
+      int srcB = src & 0xFF;
+      if (srcA == 0xFF) {
+        storePixel(idx, src);
+        continue;
+      }
+      int dstF = (0xFF - srcA) << 8;
+      switch (format) {
+        case INT_ARGB: {
+          int dst = ints[idx];
+          int dstFA = MUL8[dstF | (dst >>> 24)] & 0xFF;
+          int resA = srcA + dstFA;
+          int resR = srcR + mul8(dstFA, (dst >> 16) & 0xFF);
+          int resG = srcG + mul8(dstFA, (dst >> 8) & 0xFF);
+          int resB = srcB + mul8(dstFA, dst & 0xFF);
+          if (resA < 0xFF) {
+            int hi = resA << 8;
+            resR = DIV8[hi | resR] & 0xFF;
+            resG = DIV8[hi | resG] & 0xFF;
+            resB = DIV8[hi | resB] & 0xFF;
+          }
+          ints[idx] = (resA << 24) | (resR << 16) | (resG << 8) | resB;
+          break;
+        }
+        case INT_ARGB_PRE: {
+          int dst = ints[idx];
+          ints[idx] = ((srcA + (MUL8[dstF | (dst >>> 24)] & 0xFF)) << 24)
+              | ((srcR + (MUL8[dstF | ((dst >> 16) & 0xFF)] & 0xFF)) << 16)
+              | ((srcG + (MUL8[dstF | ((dst >> 8) & 0xFF)] & 0xFF)) << 8)
+              | (srcB + (MUL8[dstF | (dst & 0xFF)] & 0xFF));
+          break;
+        }
+        case INT_RGB: {
+          int dst = ints[idx];
+          ints[idx] = ((srcR + (MUL8[dstF | ((dst >> 16) & 0xFF)] & 0xFF)) << 16)
+              | ((srcG + (MUL8[dstF | ((dst >> 8) & 0xFF)] & 0xFF)) << 8)
+              | (srcB + (MUL8[dstF | (dst & 0xFF)] & 0xFF));
+          break;
+        }
+        case THREE_BYTE_BGR:
+          bytes[idx] = (byte) (srcB + (MUL8[dstF | (bytes[idx] & 0xFF)] & 0xFF));
+          bytes[idx + 1] = (byte) (srcG + (MUL8[dstF | (bytes[idx + 1] & 0xFF)] & 0xFF));
+          bytes[idx + 2] = (byte) (srcR + (MUL8[dstF | (bytes[idx + 2] & 0xFF)] & 0xFF));
+          break;
+        case BYTE_GRAY:
+          bytes[idx] = (byte) (gray(srcR, srcG, srcB)
+              + (MUL8[dstF | (bytes[idx] & 0xFF)] & 0xFF));
+          break;
+        case INDEX8_GRAY: {
+          int dstGray = lut[bytes[idx] & 0xFF] & 0xFF;
+          int resGray = Math.min(0xFF, gray(srcR, srcG, srcB) + (MUL8[dstF | dstGray] & 0xFF));
+          bytes[idx] = inverseGray[resGray];
+          break;
+        }
+        default:
+          throw new InternalError();
+      }
+    }
+  }
+
+  /**
+   * Stores one opaque ARGB pixel at array index {@code idx}.
+   */
+  void storePixel(int idx, int argb) {
+    switch (format) {
+      case INT_ARGB:
+      case INT_ARGB_PRE:
+        ints[idx] = argb;
+        break;
+      case INT_RGB:
+        ints[idx] = argb & 0xFFFFFF;
+        break;
+      case THREE_BYTE_BGR:
+        bytes[idx] = (byte) argb;
+        bytes[idx + 1] = (byte) (argb >> 8);
+        bytes[idx + 2] = (byte) (argb >> 16);
+        break;
+      case BYTE_GRAY:
+        bytes[idx] = (byte) gray((argb >> 16) & 0xFF, (argb >> 8) & 0xFF, argb & 0xFF);
+        break;
+      case INDEX8_GRAY:
+        bytes[idx] = inverseGray[gray((argb >> 16) & 0xFF, (argb >> 8) & 0xFF, argb & 0xFF)];
+        break;
+      default:
+        throw new InternalError();
+    }
+  }
+}
@@ -521,10 +521,10 @@ public class DrawImage implements DrawImagePipe {
             /* NOTE: We can only use the native TransformHelper
              * func to go directly to the dest if both the helper
              * and the MaskBlit are native.
-             * All helpers are native at this point, but some MaskBlit
-             * objects are implemented in Java, so we need to check.
+             * The Java helpers can go directly to the dest through
+             * any MaskBlit.
              */
-      if (maskblit.getNativePrim() != 0) {
+      if (helper.getNativePrim() == 0 || maskblit.getNativePrim() != 0) {
         // We can render directly.
         helper.Transform(maskblit,
             srcData,
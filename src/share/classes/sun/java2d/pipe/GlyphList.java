@@ -1,28 +1,49 @@
 package sun.java2d.pipe;
 
 import java.awt.font.GlyphVector;
+import java.util.concurrent.atomic.AtomicBoolean;
+import sun.font.FontUtilities;
+import sun.font.GlyphImage;
+import sun.font.GlyphStrike;
 import sun.java2d.loops.FontInfo;
 
 /**
- * Created by cryoc on 2016-10-16.
+ * The glyphs of a string or glyph vector being drawn, with their masks from the {@link
+ * GlyphStrike} for its {@link FontInfo} and the pixels they go at, for the glyph list text pipes
+ * and loops. The masks stay pinned in the glyph cache until the list is disposed.
+ * <p>
+ * The loops step through the glyphs with {@link #setGlyphIndex(int)}, then read the glyph's
+ * device bounds from {@link #getMetrics()} and its mask either as a copy from {@link
+ * #getGrayBits()}, or in place from {@link #getImageBytes()}.
  */
 public class GlyphList {
+  private static final GlyphList reusableGL = new GlyphList();
+  private static final AtomicBoolean inUse = new AtomicBoolean();
+
   private boolean usePositions;
   private boolean subPixPos;
   private boolean rgbOrder;
+  private boolean lcd;
   private int numGlyphs;
-  private long[] images;
   private float x;
   private float y;
-  private Object strike;
-  private float[] positions;
-  private int glyphIndex;
-  private int[] metrics;
-  private byte[] grayBits;
-  private static GlyphList instance = new GlyphList();
+  private GlyphStrike strike;
+  private int[] codePoints = new int[64];
+  private GlyphImage[] glyphs = new GlyphImage[64];
+  private float[] positions = new float[128];
+  private int[] origins = new int[128];
+  private GlyphImage glyph;
+  private final int[] metrics = new int[4];
+  private byte[] grayBits = new byte[0];
 
+  /**
+   * @return the shared list, or a new one if another thread is using it
+   */
   public static GlyphList getInstance() {
-    return instance;
+    if (inUse.compareAndSet(false, true)) {
+      return reusableGL;
+    }
+    return new GlyphList();
   }
 
   public boolean usePositions() {
@@ -37,12 +58,22 @@ public class GlyphList {
     return rgbOrder;
   }
 
+  /**
+   * @return whether the masks have 3 bytes per pixel, one per subpixel
+   */
+  public boolean isLCD() {
+    return lcd;
+  }
+
   public int getNumGlyphs() {
     return numGlyphs;
   }
 
+  /**
+   * @return null; glyph images are never in native memory
+   */
   public long[] getImages() {
-    return images;
+    return null;
   }
 
   public float getX() {
@@ -57,43 +88,198 @@ public class GlyphList {
     return strike;
   }
 
+  /**
+   * @return the device-space position of each glyph, x and y
+   */
   public float[] getPositions() {
     return positions;
   }
 
+  /**
+   * @return a new array holding the union of the glyphs' device bounds, as x1, y1, x2, y2
+   */
   public int[] getBounds() {
-    // TODO
-    return new int[0];
+    int x1 = Integer.MAX_VALUE;
+    int y1 = Integer.MAX_VALUE;
+    int x2 = Integer.MIN_VALUE;
+    int y2 = Integer.MIN_VALUE;
+    for (int i = 0; i < numGlyphs; i++) {
+      GlyphImage g = glyphs[i];
+      if (g.getWidth() == 0) {
+        continue;
+      }
+      int gx = origins[2 * i] + g.getLeft();
+      int gy = origins[2 * i + 1] + g.getTop();
+      x1 = Math.min(x1, gx);
+      y1 = Math.min(y1, gy);
+      x2 = Math.max(x2, gx + g.getWidth());
+      y2 = Math.max(y2, gy + g.getHeight());
+    }
+    if (x1 > x2) {
+      return new int[4];
+    }
+    return new int[] {x1, y1, x2, y2};
   }
 
   public void setGlyphIndex(int glyphIndex) {
-    this.glyphIndex = glyphIndex;
+    glyph = glyphs[glyphIndex];
+    metrics[0] = origins[2 * glyphIndex] + glyph.getLeft();
+    metrics[1] = origins[2 * glyphIndex + 1] + glyph.getTop();
+    metrics[2] = glyph.getWidth();
+    metrics[3] = glyph.getHeight();
   }
 
+  /**
+   * @return the current glyph's device x, y, width and height in pixels
+   */
   public int[] getMetrics() {
     return metrics;
   }
 
+  /**
+   * @return a copy of the current glyph's mask, from index 0 with a row per {@code getMetrics()[2]}
+   *     bytes; for grayscale masks only
+   */
   public byte[] getGrayBits() {
+    int length = glyph.getWidth() * glyph.getHeight();
+    if (grayBits.length < length) {
+      grayBits = new byte[length];
+    }
+    System.arraycopy(glyph.getBytes(), glyph.getOffset(), grayBits, 0, length);
     return grayBits;
   }
 
-  public boolean setFromString(FontInfo info, String s, float devx, float devy) {
-    // TODO
-    return false;
+  /**
+   * @return the array holding the current glyph's mask, which starts at {@link #getImageOffset()}
+   *     and has {@link #getImageRowBytes()} bytes per row
+   */
+  public byte[] getImageBytes() {
+    return glyph.getBytes();
   }
 
-  public void dispose() {
-    // TODO
+  public int getImageOffset() {
+    return glyph.getOffset();
   }
 
-  public void setFromGlyphVector(FontInfo info, GlyphVector gv, float x, float y) {
-    // TODO
+  public int getImageRowBytes() {
+    return lcd ? glyph.getWidth() * 3 : glyph.getWidth();
   }
 
+  /**
+   * @return false, leaving the list empty, if the string needs shaping
+   */
+  public boolean setFromString(FontInfo info, String s, float devx, float devy) {
+    int len = s.length();
+    ensureCapacity(len);
+    int count = 0;
+    for (int i = 0; i < len; i++) {
+      char c = s.charAt(i);
+      if (c >= 0x0300 && FontUtilities.isComplexCharCode(c)) {
+        return false;
+      }
+      if (Character.isHighSurrogate(c) && i + 1 < len
+          && Character.isLowSurrogate(s.charAt(i + 1))) {
+        codePoints[count++] = Character.toCodePoint(c, s.charAt(++i));
+      } else {
+        codePoints[count++] = c;
+      }
+    }
+    layout(info, count, devx, devy);
+    return true;
+  }
+
+  /**
+   * @return false, leaving the list empty, if the characters need shaping
+   */
   public boolean setFromChars(
       FontInfo info, char[] data, int offset, int length, float x, float y) {
-    // TODO
-    return false;
+    if (FontUtilities.isComplexText(data, offset, offset + length)) {
+      return false;
+    }
+    ensureCapacity(length);
+    int count = 0;
+    int limit = offset + length;
+    for (int i = offset; i < limit; i++) {
+      char c = data[i];
+      if (Character.isHighSurrogate(c) && i + 1 < limit && Character.isLowSurrogate(data[i + 1])) {
+        codePoints[count++] = Character.toCodePoint(c, data[++i]);
+      } else {
+        codePoints[count++] = c;
+      }
+    }
+    layout(info, count, x, y);
+    return true;
+  }
+
+  /**
+   * Takes the glyphs and their positions from a glyph vector drawn at device position (x, y).
+   */
+  public void setFromGlyphVector(FontInfo info, GlyphVector gv, float x, float y) {
+    int count = gv.getNumGlyphs();
+    ensureCapacity(count);
+    int[] codes = gv.getGlyphCodes(0, count, codePoints);
+    // Transformed in place: each position is read before it's overwritten.
+    float[] userPositions = gv.getGlyphPositions(0, count, positions);
+    double[] tx = info.devTx;
+    for (int i = 0; i < count; i++) {
+      int code = codes[i];
+      // Invisible glyphs, such as 0xFFFF, have no outline.
+      codePoints[i] =
+          code < 0 || code > Character.MAX_CODE_POINT || code == 0xFFFE || code == 0xFFFF
+              ? ' ' : code;
+      float px = userPositions[2 * i];
+      float py = userPositions[2 * i + 1];
+      positions[2 * i] = (float) (x + tx[0] * px + tx[2] * py);
+      positions[2 * i + 1] = (float) (y + tx[1] * px + tx[3] * py);
+    }
+    init(info, x, y);
+    usePositions = true;
+    strike.getGlyphs(codePoints, count, positions, glyphs, origins);
+    numGlyphs = count;
+  }
+
+  /**
+   * Unpins the glyphs and, if this is the shared list, makes it available again.
+   */
+  public void dispose() {
+    if (numGlyphs > 0) {
+      GlyphStrike.release(glyphs, numGlyphs);
+      numGlyphs = 0;
+    }
+    glyph = null;
+    strike = null;
+    if (this == reusableGL) {
+      inUse.set(false);
+    }
+  }
+
+  private void layout(FontInfo info, int count, float x, float y) {
+    init(info, x, y);
+    usePositions = false;
+    strike.layout(codePoints, count, x, y, glyphs, positions, origins);
+    numGlyphs = count;
+  }
+
+  private void init(FontInfo info, float x, float y) {
+    this.x = x;
+    this.y = y;
+    GlyphStrike strike = info.glyphStrike;
+    if (strike == null) {
+      strike = GlyphStrike.get(info);
+      info.glyphStrike = strike;
+    }
+    this.strike = strike;
+    lcd = strike.isLCD();
+    subPixPos = info.lcdSubPixPos;
+    rgbOrder = info.lcdRGBOrder;
+  }
+
+  private void ensureCapacity(int count) {
+    if (codePoints.length < count) {
+      codePoints = new int[count];
+      glyphs = new GlyphImage[count];
+      positions = new float[2 * count];
+      origins = new int[2 * count];
+    }
   }
 }
@@ -61,11 +61,16 @@ public abstract class GlyphListPipe implements TextPipe {
          * overhead in this approach over the approach in previous releases.
          */
     GlyphList gl = GlyphList.getInstance();
-    if (gl.setFromString(info, s, devx, devy)) {
-      drawGlyphList(sg2d, gl);
-      gl.dispose();
-    } else {
-      gl.dispose(); // release this asap.
+    boolean drawn;
+    try {
+      drawn = gl.setFromString(info, s, devx, devy);
+      if (drawn) {
+        drawGlyphList(sg2d, gl);
+      }
+    } finally {
+      gl.dispose(); // unpin the glyphs and release the list even if drawing failed
+    }
+    if (!drawn) {
       TextLayout tl = new TextLayout(s, sg2d.getFont(), sg2d.getFontRenderContext());
       tl.draw(sg2d, (float) x, (float) y);
     }
@@ -90,9 +95,12 @@ public abstract class GlyphListPipe implements TextPipe {
     }
 
     GlyphList gl = GlyphList.getInstance();
-    gl.setFromGlyphVector(info, gv, x, y);
-    drawGlyphList(sg2d, gl, info.aaHint);
-    gl.dispose();
+    try {
+      gl.setFromGlyphVector(info, gv, x, y);
+      drawGlyphList(sg2d, gl, info.aaHint);
+    } finally {
+      gl.dispose();
+    }
   }
 
   @Override
@@ -113,11 +121,16 @@ public abstract class GlyphListPipe implements TextPipe {
       y = iy + info.originY + sg2d.transY;
     }
     GlyphList gl = GlyphList.getInstance();
-    if (gl.setFromChars(info, data, offset, length, x, y)) {
-      drawGlyphList(sg2d, gl);
+    boolean drawn;
+    try {
+      drawn = gl.setFromChars(info, data, offset, length, x, y);
+      if (drawn) {
+        drawGlyphList(sg2d, gl);
+      }
+    } finally {
       gl.dispose();
-    } else {
-      gl.dispose(); // release this asap.
+    }
+    if (!drawn) {
       TextLayout tl = new TextLayout(new String(data, offset, length),
           sg2d.getFont(),
           sg2d.getFontRenderContext());
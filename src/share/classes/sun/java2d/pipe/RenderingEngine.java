@@ -101,8 +101,10 @@ public abstract class RenderingEngine {
    * sun.dc.DuctusRenderingEngine class using Class.forName as a fastpath;
    * if not found, use the ServiceLoader.
    * If no specific {@code RenderingEngine} is specified on the command
-   * line then the last one returned by enumerating all subclasses of
-   * {@code RenderingEngine} known to the ServiceLoader is used.
+   * line then sun.java2d.pisces.PiscesRenderingEngine is used if the
+   * ServiceLoader knows it, whatever order the modules list their engines
+   * in, and otherwise the last one returned by enumerating all subclasses
+   * of {@code RenderingEngine} known to the ServiceLoader.
    * <p>
    * Runtime tracing of the actions of the {@code RenderingEngine}
    * can be enabled by specifying the runtime flag:
@@ -135,15 +137,21 @@ public abstract class RenderingEngine {
         ServiceLoader<RenderingEngine> reLoader
             = ServiceLoader.loadInstalled(RenderingEngine.class);
 
+        String piscesREClass = "sun.java2d.pisces.PiscesRenderingEngine";
         RenderingEngine service = null;
+        RenderingEngine pisces = null;
 
         for (RenderingEngine re : reLoader) {
-          service = re;
-          if (re.getClass().getName().equals(reClass)) {
-            break;
+          String name = re.getClass().getName();
+          if (name.equals(reClass)) {
+            return re;
+          }
+          if (name.equals(piscesREClass)) {
+            pisces = re;
           }
+          service = re;
         }
-        return service;
+        return pisces != null ? pisces : service;
       }
     });
 
@@ -0,0 +1,76 @@
+package sun.java2d.pisces;
+
+import java.awt.BasicStroke;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+import sun.java2d.pipe.AATileGenerator;
+import sun.java2d.pipe.Region;
+
+/**
+ * A {@link PiscesRenderingEngine} that antialiases with {@link AnalyticTileGenerator}, which
+ * computes each pixel's exact covered area, instead of with the supersampling {@link Renderer}.
+ * It is faster on large fills and keeps slivers narrower than a subpixel, at the cost of
+ * slightly different edges. Stroking, dashing and normalization are the same as Pisces's. Select
+ * it with {@code -Dsun.java2d.renderer=sun.java2d.pisces.AnalyticRenderingEngine}.
+ * <p>
+ * Even-odd fills, and parallelogram outlines, which are filled even-odd, are left to Pisces:
+ * summed areas can't tell a pixel half covered twice from one fully covered once, so the parts of
+ * such a shape that cover each other come out filled where their edges are.
+ */
+public class AnalyticRenderingEngine extends PiscesRenderingEngine {
+
+  @Override
+  public AATileGenerator getAATileGenerator(
+      Shape s, AffineTransform at, Region clip, BasicStroke bs, boolean thin, boolean normalize,
+      int[] bbox) {
+    PathIterator pi = null;
+    if (bs == null) {
+      pi = s.getPathIterator(at);
+      if (pi.getWindingRule() == PathIterator.WIND_EVEN_ODD) {
+        return super.getAATileGenerator(s, at, clip, bs, thin, normalize, bbox);
+      }
+    }
+    NormMode norm = normalize ? NormMode.ON_WITH_AA : NormMode.OFF;
+    // Only stroking and normalization need a context's stages.
+    RendererContext context = bs != null || normalize ? RendererContext.acquire() : null;
+    AnalyticTileGenerator atg;
+    if (bs == null) {
+      if (normalize) {
+        pi = context.normalizer(pi, norm);
+      }
+      atg = new AnalyticTileGenerator(clip, PathIterator.WIND_NON_ZERO, context);
+      pathTo(pi, atg);
+    } else {
+      atg = new AnalyticTileGenerator(clip, PathIterator.WIND_NON_ZERO, context);
+      strokeTo(s, at, bs, thin, norm, true, atg, context);
+    }
+    return finish(atg, bbox);
+  }
+
+  @Override
+  public AATileGenerator getAATileGenerator(
+      double x, double y, double dx1, double dy1, double dx2, double dy2, double lw1, double lw2,
+      Region clip, int[] bbox) {
+    if (lw1 > 0 && lw2 > 0 && !(lw1 > 1 && lw2 > 1)) {
+      // An outline: the inner parallelogram is a second subpath in the same direction.
+      return super.getAATileGenerator(x, y, dx1, dy1, dx2, dy2, lw1, lw2, clip, bbox);
+    }
+    // A single subpath, whose fill is the same by either rule.
+    AnalyticTileGenerator atg =
+        new AnalyticTileGenerator(clip, PathIterator.WIND_NON_ZERO, null);
+    parallelogramTo(x, y, dx1, dy1, dx2, dy2, lw1, lw2, atg);
+    return finish(atg, bbox);
+  }
+
+  /**
+   * @return the tile generator, or null after disposing of it if it has nothing to render
+   */
+  private static AATileGenerator finish(AnalyticTileGenerator atg, int[] bbox) {
+    AnalyticTileGenerator result = atg.endRendering(bbox);
+    if (result == null) {
+      atg.dispose();
+    }
+    return result;
+  }
+}
@@ -0,0 +1,496 @@
+package sun.java2d.pisces;
+
+import java.awt.geom.PathIterator;
+import java.util.Arrays;
+import sun.awt.geom.PathConsumer2D;
+import sun.java2d.pipe.AATileGenerator;
+import sun.java2d.pipe.Region;
+
+/**
+ * A rasterizer that computes the exact area of each pixel that a path covers, rather than counting
+ * covered subpixel samples as {@link Renderer} does. Each line segment adds, to each pixel row it
+ * crosses, the signed area it sweeps in each pixel and the signed height it spans to every pixel
+ * to its right; a running sum along the row then gives the winding-weighted coverage of each
+ * pixel, to which the fill rule is applied as FreeType's rasterizer does. The cost per pixel row
+ * is one pass per segment, instead of one per subpixel scanline, and slivers thinner than a
+ * subpixel aren't lost.
+ * <p>
+ * The sum is exact only where the winding changes by one across each edge in a pixel. Where it
+ * changes by more, the fill rule is applied to the pixel's average winding rather than to each
+ * part of it: with the non-zero rule, a pixel where opposite windings overlap, or where the
+ * coinciding edges of two subpaths in the same direction pass, comes out approximate. With the
+ * even-odd rule it is wrong along every edge where subpaths cover each other: a pixel half
+ * covered twice sums to one, which the rule takes as inside, so where two subpaths coincide the
+ * pixels along their edges come out 255 instead of 0. {@link AnalyticRenderingEngine} therefore
+ * gives even-odd fills to Pisces.
+ * <p>
+ * Curves are flattened to segments as they arrive. Rows are rasterized a tile row at a time, as
+ * tiles are asked for, so only one tile row's accumulation buffer is held at once.
+ */
+final class AnalyticTileGenerator implements PathConsumer2D, AATileGenerator {
+
+  private static final int TILE_SIZE = PiscesCache.TILE_SIZE;
+  private static final int TILE_SIZE_LG = PiscesCache.TILE_SIZE_LG;
+  // Largest distance, in pixels, between a curve and the segments it is flattened to.
+  private static final float FLATNESS = 0.05f;
+  // Fields of a segment in the segments array.
+  private static final int X0 = 0;
+  private static final int Y0 = 1;
+  private static final int X1 = 2;
+  private static final int Y1 = 3;
+  private static final int SIZEOF_SEGMENT = 4;
+
+  private final int clipX0;
+  private final int clipY0;
+  private final int clipX1;
+  private final int clipY1;
+  private final int windingRule;
+  // The context the stroking stages came from, released on dispose(), or null.
+  private RendererContext context;
+
+  private float[] segments = new float[32 * SIZEOF_SEGMENT];
+  private int numSegments;
+  private float minX = Float.POSITIVE_INFINITY;
+  private float minY = Float.POSITIVE_INFINITY;
+  private float maxX = Float.NEGATIVE_INFINITY;
+  private float maxY = Float.NEGATIVE_INFINITY;
+  // Current point and start of the current subpath.
+  private float curX, curY, moveX, moveY;
+
+  private int bboxX0, bboxY0, bboxX1, bboxY1;
+  // Segments whose top is in each tile row, as linked lists of segment indices.
+  private int[] tileRowHeads;
+  private int[] nextSegment;
+  // Segments that reach the tile row being rendered.
+  private int[] active;
+  private int numActive;
+
+  // The current tile.
+  private int x, y;
+  // Top of the tile row in rowAlpha, or MIN_VALUE if none.
+  private int renderedY = Integer.MIN_VALUE;
+  // Coverage deltas of the tile row's pixel rows, each width + 2 long.
+  private float[] deltas;
+  // Alpha of the tile row's pixel rows, each width long.
+  private byte[] rowAlpha;
+  // getTypicalAlpha() of each tile in the row.
+  private int[] typicalAlpha;
+
+  /**
+   * @param windingRule {@link PathIterator#WIND_EVEN_ODD} or {@link PathIterator#WIND_NON_ZERO}
+   * @param context the context to release on {@link #dispose()}, or null
+   */
+  AnalyticTileGenerator(Region clip, int windingRule, RendererContext context) {
+    this.context = context;
+    clipX0 = clip.getLoX();
+    clipY0 = clip.getLoY();
+    clipX1 = clip.getHiX();
+    clipY1 = clip.getHiY();
+    this.windingRule = windingRule;
+  }
+
+  @Override
+  public void moveTo(float x0, float y0) {
+    closePath();
+    curX = moveX = x0;
+    curY = moveY = y0;
+  }
+
+  @Override
+  public void lineTo(float x1, float y1) {
+    addSegment(curX, curY, x1, y1);
+    curX = x1;
+    curY = y1;
+  }
+
+  @Override
+  public void quadTo(float x1, float y1, float x2, float y2) {
+    float ddx = curX - 2 * x1 + x2;
+    float ddy = curY - 2 * y1 + y2;
+    int n = segmentsFor(Math.max(Math.abs(ddx), Math.abs(ddy)) / 4);
+    float x0 = curX;
+    float y0 = curY;
+    for (int i = 1; i < n; i++) {
+      float t = (float) i / n;
+      float u = 1 - t;
+      lineTo(u * u * x0 + 2 * u * t * x1 + t * t * x2, u * u * y0 + 2 * u * t * y1 + t * t * y2);
+    }
+    lineTo(x2, y2);
+  }
+
+  @Override
+  public void curveTo(float x1, float y1, float x2, float y2, float x3, float y3) {
+    float dd = Math.max(
+        Math.max(Math.abs(curX - 2 * x1 + x2), Math.abs(curY - 2 * y1 + y2)),
+        Math.max(Math.abs(x1 - 2 * x2 + x3), Math.abs(y1 - 2 * y2 + y3)));
+    int n = segmentsFor(dd * 3 / 4);
+    float x0 = curX;
+    float y0 = curY;
+    for (int i = 1; i < n; i++) {
+      float t = (float) i / n;
+      float u = 1 - t;
+      float a = u * u * u;
+      float b = 3 * u * u * t;
+      float c = 3 * u * t * t;
+      float d = t * t * t;
+      lineTo(a * x0 + b * x1 + c * x2 + d * x3, a * y0 + b * y1 + c * y2 + d * y3);
+    }
+    lineTo(x3, y3);
+  }
+
+  /**
+   * @param deviation a bound on the second derivative of a curve, scaled by its degree, such
+   *     that n segments stay within deviation / n^2 of it
+   * @return the number of segments to flatten the curve to
+   */
+  private static int segmentsFor(float deviation) {
+    float n = (float) Math.ceil(Math.sqrt(deviation / FLATNESS));
+    return n < 1 ? 1 : n > 100 ? 100 : (int) n;
+  }
+
+  @Override
+  public void closePath() {
+    lineTo(moveX, moveY);
+  }
+
+  @Override
+  public void pathDone() {
+    closePath();
+  }
+
+  @Override
+  public long getNativeConsumer() {
+    throw new InternalError("AnalyticTileGenerator does not use a native consumer.");
+  }
+
+  private void addSegment(float x0, float y0, float x1, float y1) {
+    if (y0 == y1 || !(Math.abs(x0 - x1) + Math.abs(y0 - y1) < Float.POSITIVE_INFINITY)) {
+      // Horizontal segments cover nothing; skip NaNs and infinities too.
+      return;
+    }
+    float top = Math.min(y0, y1);
+    float bottom = Math.max(y0, y1);
+    if (bottom <= clipY0 || top >= clipY1) {
+      return;
+    }
+    int ptr = numSegments * SIZEOF_SEGMENT;
+    segments = Helpers.widenArray(segments, ptr, SIZEOF_SEGMENT);
+    segments[ptr + X0] = x0;
+    segments[ptr + Y0] = y0;
+    segments[ptr + X1] = x1;
+    segments[ptr + Y1] = y1;
+    numSegments++;
+    minX = Math.min(minX, Math.min(x0, x1));
+    maxX = Math.max(maxX, Math.max(x0, x1));
+    minY = Math.min(minY, top);
+    maxY = Math.max(maxY, bottom);
+  }
+
+  /**
+   * Finishes the path and computes the bounds of the tiles to iterate.
+   *
+   * @return this, or null if nothing is to be rendered
+   */
+  AnalyticTileGenerator endRendering(int[] bbox) {
+    if (numSegments == 0) {
+      return null;
+    }
+    bboxX0 = (int) Math.max(clipX0, Math.floor(minX));
+    bboxY0 = (int) Math.max(clipY0, Math.floor(minY));
+    bboxX1 = (int) Math.min(clipX1, Math.ceil(maxX));
+    bboxY1 = (int) Math.min(clipY1, Math.ceil(maxY));
+    if (bboxX0 >= bboxX1 || bboxY0 >= bboxY1) {
+      return null;
+    }
+    int tileRows = bboxY1 - bboxY0 + TILE_SIZE - 1 >> TILE_SIZE_LG;
+    tileRowHeads = new int[tileRows];
+    Arrays.fill(tileRowHeads, -1);
+    nextSegment = new int[numSegments];
+    for (int i = numSegments - 1; i >= 0; i--) {
+      int ptr = i * SIZEOF_SEGMENT;
+      float top = Math.min(segments[ptr + Y0], segments[ptr + Y1]);
+      int row = top <= bboxY0 ? 0 : (int) top - bboxY0 >> TILE_SIZE_LG;
+      nextSegment[i] = tileRowHeads[row];
+      tileRowHeads[row] = i;
+    }
+    active = new int[16];
+    int width = bboxX1 - bboxX0;
+    deltas = new float[TILE_SIZE * (width + 2)];
+    rowAlpha = new byte[TILE_SIZE * width];
+    typicalAlpha = new int[width + TILE_SIZE - 1 >> TILE_SIZE_LG];
+    x = bboxX0;
+    y = bboxY0;
+    bbox[0] = bboxX0;
+    bbox[1] = bboxY0;
+    bbox[2] = bboxX1;
+    bbox[3] = bboxY1;
+    return this;
+  }
+
+  /**
+   * Rasterizes the tile row starting at pixel row {@code top} into {@link #rowAlpha}.
+   */
+  private void renderTileRow(int top) {
+    int width = bboxX1 - bboxX0;
+    int height = Math.min(TILE_SIZE, bboxY1 - top);
+    int stride = width + 2;
+    Arrays.fill(deltas, 0, height * stride, 0f);
+
+    // Keep the segments that reach down into this tile row, and add those that start in it.
+    int count = 0;
+    for (int i = 0; i < numActive; i++) {
+      int seg = active[i];
+      int ptr = seg * SIZEOF_SEGMENT;
+      if (Math.max(segments[ptr + Y0], segments[ptr + Y1]) > top) {
+        active[count] = seg;
+        count++;
+      }
+    }
+    for (int seg = tileRowHeads[top - bboxY0 >> TILE_SIZE_LG]; seg >= 0;
+        seg = nextSegment[seg]) {
+      active = Helpers.widenArray(active, count, 1);
+      active[count] = seg;
+      count++;
+    }
+    numActive = count;
+
+    for (int i = 0; i < count; i++) {
+      int ptr = active[i] * SIZEOF_SEGMENT;
+      accumulate(segments[ptr + X0] - bboxX0, segments[ptr + Y0] - top,
+          segments[ptr + X1] - bboxX0, segments[ptr + Y1] - top, width, height, stride);
+    }
+
+    Arrays.fill(typicalAlpha, -1);
+    boolean evenOdd = windingRule == PathIterator.WIND_EVEN_ODD;
+    for (int row = 0; row < height; row++) {
+      float sum = 0;
+      int alpha = 0;
+      int d = row * stride;
+      int a = row * width;
+      int px = 0;
+      while (px < width) {
+        if (deltas[d + px] == 0) {
+          // No segment touches these pixels, so they all have the alpha of the last one.
+          int end = px + 1;
+          while (end < width && deltas[d + end] == 0) {
+            end++;
+          }
+          Arrays.fill(rowAlpha, a + px, a + end, (byte) alpha);
+          for (int tile = px >> TILE_SIZE_LG; tile <= end - 1 >> TILE_SIZE_LG; tile++) {
+            addTypicalAlpha(tile, alpha);
+          }
+          px = end;
+          continue;
+        }
+        sum += deltas[d + px];
+        float coverage = Math.abs(sum);
+        if (evenOdd) {
+          coverage %= 2;
+          if (coverage > 1) {
+            coverage = 2 - coverage;
+          }
+        } else if (coverage > 1) {
+          coverage = 1;
+        }
+        alpha = (int) (coverage * 255 + 0.5f);
+        rowAlpha[a + px] = (byte) alpha;
+        addTypicalAlpha(px >> TILE_SIZE_LG, alpha);
+        px++;
+      }
+    }
+    renderedY = top;
+  }
+
+  /**
+   * Records that a pixel of the tile has the given alpha: a tile stays 0x00 or 0xff only while
+   * all its pixels are, and is otherwise 0x80.
+   */
+  private void addTypicalAlpha(int tile, int alpha) {
+    int typical = typicalAlpha[tile];
+    if (typical != alpha && typical != 0x80) {
+      typicalAlpha[tile] = typical < 0 && (alpha == 0 || alpha == 0xff) ? alpha : 0x80;
+    }
+  }
+
+  /**
+   * Adds the segment, in coordinates relative to the tile row's top left corner, clipped to
+   * rows {@code [0, height)}.
+   */
+  private void accumulate(
+      float x0, float y0, float x1, float y1, int width, int height, int stride) {
+    float dxdy = (x1 - x0) / (y1 - y0);
+    if (y0 < 0) {
+      x0 -= y0 * dxdy;
+      y0 = 0;
+    } else if (y1 < 0) {
+      x1 -= y1 * dxdy;
+      y1 = 0;
+    }
+    if (y0 > height) {
+      x0 += (height - y0) * dxdy;
+      y0 = height;
+    } else if (y1 > height) {
+      x1 += (height - y1) * dxdy;
+      y1 = height;
+    }
+    if (y0 != y1) {
+      clipX(x0, y0, x1, y1, width, stride);
+    }
+  }
+
+  /**
+   * Splits the segment where it crosses the left and right edges. Parts to the right are
+   * dropped, since they add nothing to the pixels to their left, and parts to the left are
+   * moved onto the left edge, where they cover the same pixels.
+   */
+  private void clipX(float x0, float y0, float x1, float y1, int width, int stride) {
+    if (x0 < 0 || x1 < 0) {
+      if (x0 < 0 && x1 < 0) {
+        addLine(0, y0, 0, y1, width, stride);
+        return;
+      }
+      float y = clampY(y0 - x0 * (y1 - y0) / (x1 - x0), y0, y1);
+      if (x0 < 0) {
+        addLine(0, y0, 0, y, width, stride);
+        x0 = 0;
+        y0 = y;
+      } else {
+        addLine(0, y, 0, y1, width, stride);
+        x1 = 0;
+        y1 = y;
+      }
+    }
+    if (x0 > width || x1 > width) {
+      if (x0 >= width && x1 >= width) {
+        return;
+      }
+      float y = clampY(y0 + (width - x0) * (y1 - y0) / (x1 - x0), y0, y1);
+      if (x0 > width) {
+        x0 = width;
+        y0 = y;
+      } else {
+        x1 = width;
+        y1 = y;
+      }
+    }
+    addLine(x0, y0, x1, y1, width, stride);
+  }
+
+  /**
+   * @return y, kept between y0 and y1 despite rounding
+   */
+  private static float clampY(float y, float y0, float y1) {
+    return Math.max(Math.min(y0, y1), Math.min(Math.max(y0, y1), y));
+  }
+
+  /**
+   * Adds the coverage deltas of a segment within the tile row and within {@code [0, width]}
+   * horizontally.
+   */
+  private void addLine(float x0, float y0, float x1, float y1, int width, int stride) {
+    if (y0 == y1) {
+      return;
+    }
+    float dir = 1;
+    if (y0 > y1) {
+      dir = -1;
+      float t = x0;
+      x0 = x1;
+      x1 = t;
+      t = y0;
+      y0 = y1;
+      y1 = t;
+    }
+    float dxdy = (x1 - x0) / (y1 - y0);
+    float x = x0;
+    float[] deltas = this.deltas;
+    for (int row = (int) y0, end = (int) Math.ceil(y1); row < end; row++) {
+      int base = row * stride;
+      float dy = Math.min(row + 1, y1) - Math.max(row, y0);
+      float xnext = Math.max(0, Math.min(width, x + dxdy * dy));
+      float d = dy * dir;
+      float xa = Math.min(x, xnext);
+      float xb = Math.max(x, xnext);
+      float xaFloor = (float) Math.floor(xa);
+      int xai = (int) xaFloor;
+      int xbi = (int) Math.ceil(xb);
+      if (xbi <= xai + 1) {
+        // Within one pixel: it covers the part of it to its right.
+        float xm = 0.5f * (x + xnext) - xaFloor;
+        deltas[base + xai] += d - d * xm;
+        deltas[base + xai + 1] += d * xm;
+      } else {
+        // Across several pixels: a triangle in the first, trapezoids in between and the
+        // complement of a triangle in the last.
+        float s = 1 / (xb - xa);
+        float xaFrac = xa - xaFloor;
+        float a0 = 0.5f * s * (1 - xaFrac) * (1 - xaFrac);
+        float xbFrac = xb - xbi + 1;
+        float am = 0.5f * s * xbFrac * xbFrac;
+        deltas[base + xai] += d * a0;
+        if (xbi == xai + 2) {
+          deltas[base + xai + 1] += d * (1 - a0 - am);
+        } else {
+          float a1 = s * (1.5f - xaFrac);
+          deltas[base + xai + 1] += d * (a1 - a0);
+          float ds = d * s;
+          for (int xi = xai + 2; xi < xbi - 1; xi++) {
+            deltas[base + xi] += ds;
+          }
+          float a2 = a1 + (xbi - xai - 3) * s;
+          deltas[base + xbi - 1] += d * (1 - a2 - am);
+        }
+        deltas[base + xbi] += d * am;
+      }
+      x = xnext;
+    }
+  }
+
+  @Override
+  public int getTileWidth() {
+    return TILE_SIZE;
+  }
+
+  @Override
+  public int getTileHeight() {
+    return TILE_SIZE;
+  }
+
+  @Override
+  public int getTypicalAlpha() {
+    if (renderedY != y) {
+      renderTileRow(y);
+    }
+    return typicalAlpha[x - bboxX0 >> TILE_SIZE_LG];
+  }
+
+  @Override
+  public void nextTile() {
+    if ((x += TILE_SIZE) >= bboxX1) {
+      x = bboxX0;
+      y += TILE_SIZE;
+    }
+  }
+
+  @Override
+  public void getAlpha(byte[] tile, int offset, int rowstride) {
+    if (renderedY != y) {
+      renderTileRow(y);
+    }
+    int width = bboxX1 - bboxX0;
+    int w = Math.min(TILE_SIZE, bboxX1 - x);
+    int h = Math.min(TILE_SIZE, bboxY1 - y);
+    for (int row = 0; row < h; row++) {
+      System.arraycopy(rowAlpha, row * width + x - bboxX0, tile, offset + row * rowstride, w);
+    }
+    nextTile();
+  }
+
+  @Override
+  public void dispose() {
+    if (context != null) {
+      context.release();
+      context = null;
+    }
+  }
+}
@@ -39,13 +39,15 @@ import sun.awt.geom.PathConsumer2D;
  */
 final class Dasher implements PathConsumer2D {
 
-  private final PathConsumer2D out;
-  private final float[] dash;
-  private final float startPhase;
-  private final boolean startDashOn;
-  private final int startIdx;
+  private PathConsumer2D out;
+  private float[] dash;
+  private float startPhase;
+  private boolean startDashOn;
+  private int startIdx;
   // temporary storage for the current curve
-  private final float[] curCurvepts;
+  // we need curCurvepts to be able to contain 2 curves because when
+  // dashing curves, we need to subdivide it
+  private final float[] curCurvepts = new float[(8 << 1)];
   private boolean starting;
   private boolean needsMoveTo;
   private int idx;
@@ -69,6 +71,14 @@ final class Dasher implements PathConsumer2D {
    * @param phase a {@code float} containing the dash phase
    */
   public Dasher(PathConsumer2D out, float[] dash, float phase) {
+    init(out, dash, phase);
+  }
+
+  /**
+   * Sets this {@code Dasher} up to dash a new path, as if newly constructed with the same
+   * arguments.
+   */
+  void init(PathConsumer2D out, float[] dash, float phase) {
     if (phase < 0) {
       throw new IllegalArgumentException("phase < 0 !");
     }
@@ -90,10 +100,8 @@ final class Dasher implements PathConsumer2D {
     startDashOn = dashOn;
     startIdx = idx;
     starting = true;
-
-    // we need curCurvepts to be able to contain 2 curves because when
-    // dashing curves, we need to subdivide it
-    curCurvepts = new float[(8 << 1)];
+    needsMoveTo = false;
+    firstSegidx = 0;
   }
 
   private static boolean pointCurve(float[] curve, int type) {
@@ -131,6 +139,16 @@ final class Dasher implements PathConsumer2D {
       return;
     }
 
+    // Most segments of dense polylines end within the current dash: there
+    // is nothing to split, and no need to work out their direction.
+    if (len < dash[idx] - phase) {
+      curCurvepts[0] = x1;
+      curCurvepts[1] = y1;
+      goTo(curCurvepts, 0, 4);
+      phase += len;
+      return;
+    }
+
     // The scaling factors needed to get the dx and dy of the
     // transformed dash segments.
     float cx = dx / len;
@@ -36,16 +36,19 @@ final class PiscesCache {
   static final int TILE_SIZE_LG = 5;
   static final int TILE_SIZE = 1 << TILE_SIZE_LG; // 32
   private static final int INIT_ROW_SIZE = 8; // enough for 3 run lengths
-  final int bboxX0, bboxY0, bboxX1, bboxY1;
+  int bboxX0, bboxY0, bboxX1, bboxY1;
   // rowAARLE[i] holds the encoding of the pixel row with y = bboxY0+i.
   // The format of each of the inner arrays is: rowAARLE[i][0,1] = (x0, n)
   // where x0 is the first x in row i with nonzero alpha, and n is the
   // number of RLE entries in this row. rowAARLE[i][j,j+1] for j>1 is
   // (val,runlen)
-  final int[][] rowAARLE;
+  // It may have more rows than the bounding box, and the rows more columns, when reused; the
+  // rows beyond it are kept cleared.
+  int[][] rowAARLE;
   // touchedTile[i][j] is the sum of all the alphas in the tile with
-  // y=i*TILE_SIZE+bboxY0 and x=j*TILE_SIZE+bboxX0.
-  private final int[][] touchedTile;
+  // y=i*TILE_SIZE+bboxY0 and x=j*TILE_SIZE+bboxX0. Like rowAARLE, it may be
+  // larger than the bounding box.
+  private int[][] touchedTile;
   // RLE encodings are added in increasing y rows and then in increasing
   // x inside those rows. Therefore, at any one time there is a well
   // defined position (x,y) where a run length is about to be added (or
@@ -54,6 +57,15 @@ final class PiscesCache {
   private int x0 = Integer.MIN_VALUE, y0 = Integer.MIN_VALUE;
 
   PiscesCache(int minx, int miny, int maxx, int maxy) {
+    init(minx, miny, maxx, maxy);
+  }
+
+  /**
+   * Sets this cache up for a new shape, as if newly constructed with the same arguments but
+   * keeping the arrays it already has if they are large enough. It must have been {@link
+   * #reset()} since its last shape.
+   */
+  void init(int minx, int miny, int maxx, int maxy) {
     assert maxy >= miny && maxx >= minx;
     bboxX0 = minx;
     bboxY0 = miny;
@@ -63,14 +75,54 @@ final class PiscesCache {
     // lazily (which would be beneficial for shapes with gaps), but we
     // assume there won't be too many of those so we allocate everything
     // up front (which is better for other cases)
-    rowAARLE = new int[bboxY1 - bboxY0 + 1][INIT_ROW_SIZE];
+    int rows = bboxY1 - bboxY0 + 1;
+    if (rowAARLE == null || rowAARLE.length < rows) {
+      int kept = 0;
+      if (rowAARLE == null) {
+        rowAARLE = new int[rows][];
+      } else {
+        RendererContext.rowArrayGrown();
+        kept = rowAARLE.length;
+        rowAARLE = Arrays.copyOf(rowAARLE, rows);
+      }
+      for (int i = kept; i < rows; i++) {
+        rowAARLE[i] = new int[INIT_ROW_SIZE];
+      }
+    }
     x0 = 0;
     y0 = -1; // -1 makes the first assert in startRow succeed
     // the ceiling of (maxy - miny + 1) / TILE_SIZE;
     int nyTiles = maxy - miny + TILE_SIZE >> TILE_SIZE_LG;
     int nxTiles = maxx - minx + TILE_SIZE >> TILE_SIZE_LG;
 
-    touchedTile = new int[nyTiles][nxTiles];
+    if (touchedTile == null || touchedTile.length < nyTiles) {
+      touchedTile = touchedTile == null ? new int[nyTiles][]
+          : Arrays.copyOf(touchedTile, nyTiles);
+    }
+    for (int i = 0; i < nyTiles; i++) {
+      if (touchedTile[i] == null || touchedTile[i].length < nxTiles) {
+        if (touchedTile[i] != null) {
+          RendererContext.rowArrayGrown();
+        }
+        touchedTile[i] = new int[nxTiles];
+      }
+    }
+  }
+
+  /**
+   * Clears the rows and tiles within the bounding box, so that {@link #init} can reuse them.
+   */
+  void reset() {
+    for (int i = 0, rows = bboxY1 - bboxY0 + 1; i < rows; i++) {
+      int[] row = rowAARLE[i];
+      row[0] = 0;
+      row[1] = 0;
+    }
+    int nyTiles = bboxY1 - bboxY0 + TILE_SIZE - 1 >> TILE_SIZE_LG;
+    int nxTiles = bboxX1 - bboxX0 + TILE_SIZE - 1 >> TILE_SIZE_LG;
+    for (int i = 0; i < nyTiles; i++) {
+      Arrays.fill(touchedTile[i], 0, nxTiles, 0);
+    }
   }
 
   void addRLERun(int val, int runLen) {
@@ -137,6 +189,30 @@ final class PiscesCache {
     rowAARLE[y0][1] = 2;
   }
 
+  /**
+   * Copies the rows of {@code band}, which must have the same x bounds as this cache and start a
+   * whole number of tiles below its top, into this cache's own arrays.
+   */
+  void copyRows(PiscesCache band) {
+    int dy = band.bboxY0 - bboxY0;
+    assert band.bboxX0 == bboxX0 && band.bboxX1 == bboxX1 && (dy & TILE_SIZE - 1) == 0;
+    for (int i = 0, rows = band.bboxY1 - band.bboxY0; i < rows; i++) {
+      int[] from = band.rowAARLE[i];
+      int length = Math.max(from[1], 2);
+      if (rowAARLE[dy + i].length < length) {
+        RendererContext.rowArrayGrown();
+        rowAARLE[dy + i] = new int[length];
+      }
+      System.arraycopy(from, 0, rowAARLE[dy + i], 0, length);
+    }
+    int nxTiles = bboxX1 - bboxX0 + TILE_SIZE - 1 >> TILE_SIZE_LG;
+    for (int i = 0, nyTiles = band.bboxY1 - band.bboxY0 + TILE_SIZE - 1 >> TILE_SIZE_LG;
+        i < nyTiles; i++) {
+      System.arraycopy(band.touchedTile[i], 0, touchedTile[(dy >> TILE_SIZE_LG) + i], 0,
+          nxTiles);
+    }
+  }
+
   int alphaSumInTile(int x, int y) {
     x -= bboxX0;
     y -= bboxY0;
@@ -153,7 +229,10 @@ final class PiscesCache {
 
   private void addTupleToRow(int row, int a, int b) {
     int end = rowAARLE[row][1];
-    rowAARLE[row] = Helpers.widenArray(rowAARLE[row], end, 2);
+    if (rowAARLE[row].length < end + 2) {
+      RendererContext.rowArrayGrown();
+      rowAARLE[row] = Helpers.widenArray(rowAARLE[row], end, 2);
+    }
     rowAARLE[row][end] = a;
     end++;
     rowAARLE[row][end] = b;
@@ -166,7 +245,8 @@ final class PiscesCache {
     String ret = "bbox = [" +
         bboxX0 + ", " + bboxY0 + " => " +
         bboxX1 + ", " + bboxY1 + "]\n";
-    for (int[] row : rowAARLE) {
+    for (int i = 0; i < bboxY1 - bboxY0 + 1; i++) {
+      int[] row = rowAARLE[i];
       ret += row != null ? "minTouchedX=" + row[0] +
           "\tRLE Entries: " + Arrays.toString(Arrays.copyOfRange(row, 2, row[1])) + "\n" : "[]\n";
     }
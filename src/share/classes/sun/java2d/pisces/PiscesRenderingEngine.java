@@ -27,6 +27,7 @@ package sun.java2d.pisces;
 
 import java.awt.BasicStroke;
 import java.awt.Shape;
+import java.awt.SkinJob;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Path2D;
 import java.awt.geom.PathIterator;
@@ -172,7 +173,8 @@ public class PiscesRenderingEngine extends RenderingEngine {
           public long getNativeConsumer() {
             throw new InternalError("Not using a native peer");
           }
-        });
+        },
+        null);
     return p2d;
   }
 
@@ -208,7 +210,7 @@ public class PiscesRenderingEngine extends RenderingEngine {
       Shape src, AffineTransform at, BasicStroke bs, boolean thin, boolean normalize,
       boolean antialias, PathConsumer2D consumer) {
     NormMode norm = normalize ? antialias ? NormMode.ON_WITH_AA : NormMode.ON_NO_AA : NormMode.OFF;
-    strokeTo(src, at, bs, thin, norm, antialias, consumer);
+    strokeTo(src, at, bs, thin, norm, antialias, consumer, null);
   }
 
   /**
@@ -264,13 +266,12 @@ public class PiscesRenderingEngine extends RenderingEngine {
       int[] bbox) {
     Renderer r;
     NormMode norm = normalize ? NormMode.ON_WITH_AA : NormMode.OFF;
+    RendererContext context = RendererContext.acquire();
     if (bs == null) {
       PathIterator pi;
-      pi = normalize ? new NormalizingPathIterator(s.getPathIterator(at), norm)
+      pi = normalize ? context.normalizer(s.getPathIterator(at), norm)
           : s.getPathIterator(at);
-      r = new Renderer(
-          3,
-          3,
+      r = context.renderer(
           clip.getLoX(),
           clip.getLoY(),
           clip.getWidth(),
@@ -278,18 +279,17 @@ public class PiscesRenderingEngine extends RenderingEngine {
           pi.getWindingRule());
       pathTo(pi, r);
     } else {
-      r = new Renderer(
-          3,
-          3,
+      r = context.renderer(
           clip.getLoX(),
           clip.getLoY(),
           clip.getWidth(),
           clip.getHeight(),
           PathIterator.WIND_NON_ZERO);
-      strokeTo(s, at, bs, thin, norm, true, r);
+      strokeTo(s, at, bs, thin, norm, true, r, context);
     }
-    r.endRendering();
-    PiscesTileGenerator ptg = new PiscesTileGenerator(r, r.MAX_AA_ALPHA);
+    int minEdges = SkinJob.parallelRasterizeMinEdges;
+    r.endRendering(minEdges > 0 && r.getNumEdges() >= minEdges);
+    PiscesTileGenerator ptg = new PiscesTileGenerator(r, r.MAX_AA_ALPHA, context);
     ptg.getBbox(bbox);
     return ptg;
   }
@@ -298,6 +298,29 @@ public class PiscesRenderingEngine extends RenderingEngine {
   public AATileGenerator getAATileGenerator(
       double x, double y, double dx1, double dy1, double dx2, double dy2, double lw1, double lw2,
       Region clip, int[] bbox) {
+    RendererContext context = RendererContext.acquire();
+    Renderer r = context.renderer(
+        clip.getLoX(),
+        clip.getLoY(),
+        clip.getWidth(),
+        clip.getHeight(),
+        PathIterator.WIND_EVEN_ODD);
+    parallelogramTo(x, y, dx1, dy1, dx2, dy2, lw1, lw2, r);
+
+    r.endRendering();
+    PiscesTileGenerator ptg = new PiscesTileGenerator(r, r.MAX_AA_ALPHA, context);
+    ptg.getBbox(bbox);
+    return ptg;
+  }
+
+  /**
+   * Sends the outline of a parallelogram, with the parallelogram inset by the line widths
+   * as a second subpath if it isn't entirely covered, to {@code pc2d}. The result is meant to be
+   * filled with the even-odd rule.
+   */
+  static void parallelogramTo(
+      double x, double y, double dx1, double dy1, double dx2, double dy2, double lw1, double lw2,
+      PathConsumer2D pc2d) {
     // REMIND: Deal with large coordinates!
     double ldx1, ldy1, ldx2, ldy2;
     boolean innerpgram = lw1 > 0 && lw2 > 0;
@@ -321,20 +344,11 @@ public class PiscesRenderingEngine extends RenderingEngine {
       ldx1 = ldy1 = ldx2 = ldy2 = 0;
     }
 
-    Renderer r = new Renderer(
-        3,
-        3,
-        clip.getLoX(),
-        clip.getLoY(),
-        clip.getWidth(),
-        clip.getHeight(),
-        PathIterator.WIND_EVEN_ODD);
-
-    r.moveTo((float) x, (float) y);
-    r.lineTo((float) (x + dx1), (float) (y + dy1));
-    r.lineTo((float) (x + dx1 + dx2), (float) (y + dy1 + dy2));
-    r.lineTo((float) (x + dx2), (float) (y + dy2));
-    r.closePath();
+    pc2d.moveTo((float) x, (float) y);
+    pc2d.lineTo((float) (x + dx1), (float) (y + dy1));
+    pc2d.lineTo((float) (x + dx1 + dx2), (float) (y + dy1 + dy2));
+    pc2d.lineTo((float) (x + dx2), (float) (y + dy2));
+    pc2d.closePath();
 
     if (innerpgram) {
       x += ldx1 + ldx2;
@@ -343,19 +357,14 @@ public class PiscesRenderingEngine extends RenderingEngine {
       dy1 -= 2.0 * ldy1;
       dx2 -= 2.0 * ldx2;
       dy2 -= 2.0 * ldy2;
-      r.moveTo((float) x, (float) y);
-      r.lineTo((float) (x + dx1), (float) (y + dy1));
-      r.lineTo((float) (x + dx1 + dx2), (float) (y + dy1 + dy2));
-      r.lineTo((float) (x + dx2), (float) (y + dy2));
-      r.closePath();
+      pc2d.moveTo((float) x, (float) y);
+      pc2d.lineTo((float) (x + dx1), (float) (y + dy1));
+      pc2d.lineTo((float) (x + dx1 + dx2), (float) (y + dy1 + dy2));
+      pc2d.lineTo((float) (x + dx2), (float) (y + dy2));
+      pc2d.closePath();
     }
 
-    r.pathDone();
-
-    r.endRendering();
-    PiscesTileGenerator ptg = new PiscesTileGenerator(r, r.MAX_AA_ALPHA);
-    ptg.getBbox(bbox);
-    return ptg;
+    pc2d.pathDone();
   }
 
   /**
@@ -369,9 +378,12 @@ public class PiscesRenderingEngine extends RenderingEngine {
     return 0.5f;
   }
 
+  /**
+   * @param context the context to take the stroking stages from, or null to create them
+   */
   void strokeTo(
       Shape src, AffineTransform at, BasicStroke bs, boolean thin, NormMode normalize,
-      boolean antialias, PathConsumer2D pc2d) {
+      boolean antialias, PathConsumer2D pc2d, RendererContext context) {
     float lw;
     if (thin) {
       lw = antialias ? userSpaceLineWidth(at, 0.5f) : userSpaceLineWidth(at, 1.0f);
@@ -388,7 +400,8 @@ public class PiscesRenderingEngine extends RenderingEngine {
         bs.getMiterLimit(),
         bs.getDashArray(),
         bs.getDashPhase(),
-        pc2d);
+        pc2d,
+        context);
   }
 
   private float userSpaceLineWidth(AffineTransform at, float lw) {
@@ -459,7 +472,8 @@ public class PiscesRenderingEngine extends RenderingEngine {
 
   void strokeTo(
       Shape src, AffineTransform at, float width, NormMode normalize, int caps, int join,
-      float miterlimit, float[] dashes, float dashphase, PathConsumer2D pc2d) {
+      float miterlimit, float[] dashes, float dashphase, PathConsumer2D pc2d,
+      RendererContext context) {
     // We use strokerat and outat so that in Stroker and Dasher we can work only
     // with the pre-transformation coordinates. This will repeat a lot of
     // computations done in the path iterator, but the alternative is to
@@ -521,7 +535,7 @@ public class PiscesRenderingEngine extends RenderingEngine {
         width = (float) (scale * width);
         pi = src.getPathIterator(at);
         if (normalize != NormMode.OFF) {
-          pi = new NormalizingPathIterator(pi, normalize);
+          pi = normalizer(pi, normalize, context);
         }
         // by now strokerat == null && outat == null. Input paths to
         // stroker (and maybe dasher) will have the full transform at
@@ -530,7 +544,7 @@ public class PiscesRenderingEngine extends RenderingEngine {
         if (normalize != NormMode.OFF) {
           strokerat = at;
           pi = src.getPathIterator(at);
-          pi = new NormalizingPathIterator(pi, normalize);
+          pi = normalizer(pi, normalize, context);
           // by now strokerat == at && outat == null. Input paths to
           // stroker (and maybe dasher) will have the full transform at
           // applied to them, then they will be normalized, and then
@@ -556,7 +570,7 @@ public class PiscesRenderingEngine extends RenderingEngine {
       // we don't transform the path.
       pi = src.getPathIterator(null);
       if (normalize != NormMode.OFF) {
-        pi = new NormalizingPathIterator(pi, normalize);
+        pi = normalizer(pi, normalize, context);
       }
     }
 
@@ -566,28 +580,80 @@ public class PiscesRenderingEngine extends RenderingEngine {
     // normalization is on, strokerat == at.
     pc2d = transformConsumer(pc2d, outat);
     pc2d = deltaTransformConsumer(pc2d, strokerat);
-    pc2d = new Stroker(pc2d, width, caps, join, miterlimit);
-    if (dashes != null) {
-      pc2d = new Dasher(pc2d, dashes, dashphase);
+    if (context != null && strokerat == null && outat == null
+        && width <= SkinJob.polylineStrokerMaxWidth && context.isPolyline(src)) {
+      // The width is in device space, and small enough for PolylineStroker's polygonal arcs.
+      pc2d = context.polylineStroker(pc2d, width, caps, join, miterlimit);
+      if (dashes != null) {
+        pc2d = context.dasher(pc2d, dashes, dashphase);
+      }
+    } else if (context != null) {
+      pc2d = context.stroker(pc2d, width, caps, join, miterlimit);
+      if (dashes != null) {
+        pc2d = context.dasher(pc2d, dashes, dashphase);
+      }
+    } else {
+      pc2d = new Stroker(pc2d, width, caps, join, miterlimit);
+      if (dashes != null) {
+        pc2d = new Dasher(pc2d, dashes, dashphase);
+      }
     }
     pc2d = inverseDeltaTransformConsumer(pc2d, strokerat);
     pathTo(pi, pc2d);
   }
 
-  private enum NormMode {OFF, ON_NO_AA, ON_WITH_AA}
+  private static NormalizingPathIterator normalizer(
+      PathIterator pi, NormMode mode, RendererContext context) {
+    return context != null ? context.normalizer(pi, mode) : new NormalizingPathIterator(pi, mode);
+  }
 
-  private static class NormalizingPathIterator implements PathIterator {
+  /**
+   * @return the number of times the antialiasing rasterizer has had to grow an edge list or edge
+   *     bucket array; with per-thread reuse, this should stop rising once the shapes drawn stop
+   *     getting larger
+   */
+  public static long getEdgeArrayGrowCount() {
+    return RendererContext.getEdgeArrayGrowCount();
+  }
 
-    private final PathIterator src;
+  /**
+   * @return the number of times the antialiasing rasterizer has had to grow an array of
+   *     scanline crossings or pixel row coverage
+   */
+  public static long getCrossingArrayGrowCount() {
+    return RendererContext.getCrossingArrayGrowCount();
+  }
+
+  /**
+   * @return the number of times the antialiasing rasterizer has had to grow its cache of
+   *     run-length encoded coverage rows or tile sums
+   */
+  public static long getRowArrayGrowCount() {
+    return RendererContext.getRowArrayGrowCount();
+  }
+
+  enum NormMode {OFF, ON_NO_AA, ON_WITH_AA}
+
+  static class NormalizingPathIterator implements PathIterator {
+
+    private PathIterator src;
     // constants used in normalization computations
-    private final float lval, rval;
+    private float lval, rval;
     // the adjustment applied to the current position.
     private float curx_adjust, cury_adjust;
     // the adjustment applied to the last moveTo position.
     private float movx_adjust, movy_adjust;
 
     NormalizingPathIterator(PathIterator src, NormMode mode) {
+      init(src, mode);
+    }
+
+    /**
+     * Sets this iterator up to normalize {@code src}, as if newly constructed.
+     */
+    void init(PathIterator src, NormMode mode) {
       this.src = src;
+      curx_adjust = cury_adjust = movx_adjust = movy_adjust = 0;
       switch (mode) {
         case ON_NO_AA:
           // round to nearest (0.25, 0.25) pixel
@@ -606,6 +672,13 @@ public class PiscesRenderingEngine extends RenderingEngine {
       }
     }
 
+    /**
+     * Drops the reference to the source iterator.
+     */
+    void clear() {
+      src = null;
+    }
+
     @Override
     public int getWindingRule() {
       return src.getWindingRule();
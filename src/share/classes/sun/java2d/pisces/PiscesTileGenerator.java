@@ -46,8 +46,15 @@ final class PiscesTileGenerator implements AATileGenerator {
   // pixel coverage counts gotten from PiscesCache (which are in the range
   // [0, maxalpha]) into alpha values, which are in [0,256).
   final byte[] alphaMap;
+  // The context r belongs to, until released on dispose; or null.
+  private RendererContext context;
 
   public PiscesTileGenerator(Renderer r, int maxalpha) {
+    this(r, maxalpha, null);
+  }
+
+  PiscesTileGenerator(Renderer r, int maxalpha, RendererContext context) {
+    this.context = context;
     cache = r.getCache();
     x = cache.bboxX0;
     y = cache.bboxY0;
@@ -270,6 +277,10 @@ final class PiscesTileGenerator implements AATileGenerator {
    */
   @Override
   public void dispose() {
+    if (context != null) {
+      context.release();
+      context = null;
+    }
   }
 }
 
@@ -0,0 +1,336 @@
+package sun.java2d.pisces;
+
+import java.awt.Polygon;
+import java.awt.Shape;
+import java.awt.geom.Line2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.awt.geom.RectangularShape;
+import java.util.Arrays;
+import sun.awt.geom.PathConsumer2D;
+
+/**
+ * A {@link Stroker} for paths made only of straight lines, meant for thin lines such as those of
+ * charts. It traces the same outline as {@link Stroker}, with the left side emitted as it goes and
+ * the right side kept to be emitted in reverse, but without the curve offsetting and subdivision
+ * that has to allow for: offsets are worked out once per segment, miters in closed form, and round
+ * joins and caps are emitted as polygons whose edges stay within a tenth of a pixel of the arc at
+ * the widths this is used for.
+ */
+final class PolylineStroker implements PathConsumer2D {
+
+  private static final int MOVE_TO = 0;
+  private static final int DRAWING_OP_TO = 1;
+  private static final int CLOSE = 2;
+  // Same as Stroker's: round joins that turn less than this are beveled.
+  private static final float ROUND_JOIN_THRESHOLD = 1000 / 65536f;
+  // Arcs are split until each piece spans at most 45 degrees, i.e. its chord's cosine is this.
+  private static final float MIN_ARC_COS = 0.7f;
+  private static final int INIT_SIZE = 256;
+
+  private PathConsumer2D out;
+  private int capStyle;
+  private int joinStyle;
+  private float lineWidth2;
+  private float miterLimitSq;
+  private int prev;
+  // The subpath's start, and its first segment's offset to the left.
+  private float sx0, sy0, smx, smy;
+  // The current point, and the direction and offset to the left of the segment ending there.
+  private float cx0, cy0, cdx, cdy, cmx, cmy;
+  // The right side of the subpath so far, in order.
+  private float[] right = new float[INIT_SIZE];
+  private int rightLength;
+  // Vertices of a join or cap being worked out.
+  private final float[] arc = new float[32];
+  private int arcLength;
+
+  PolylineStroker(
+      PathConsumer2D pc2d, float lineWidth, int capStyle, int joinStyle, float miterLimit) {
+    init(pc2d, lineWidth, capStyle, joinStyle, miterLimit);
+  }
+
+  /**
+   * Sets this {@code PolylineStroker} up to stroke a new path, as if newly constructed with the
+   * same arguments.
+   */
+  void init(PathConsumer2D pc2d, float lineWidth, int capStyle, int joinStyle, float miterLimit) {
+    out = pc2d;
+    lineWidth2 = lineWidth / 2;
+    this.capStyle = capStyle;
+    this.joinStyle = joinStyle;
+    float limit = miterLimit * lineWidth2;
+    miterLimitSq = limit * limit;
+    prev = CLOSE;
+    rightLength = 0;
+  }
+
+  /**
+   * @param coords scratch space for at least 6 floats
+   * @return true if the shape is made only of straight lines
+   */
+  static boolean isPolyline(Shape s, float[] coords) {
+    if (s instanceof Line2D || s instanceof Rectangle2D || s instanceof Polygon) {
+      return true;
+    }
+    if (s instanceof RectangularShape) {
+      // Ellipses, arcs and round rectangles.
+      return false;
+    }
+    for (PathIterator pi = s.getPathIterator(null); !pi.isDone(); pi.next()) {
+      int type = pi.currentSegment(coords);
+      if (type == PathIterator.SEG_QUADTO || type == PathIterator.SEG_CUBICTO) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public void moveTo(float x0, float y0) {
+    if (prev == DRAWING_OP_TO) {
+      finish();
+    }
+    sx0 = cx0 = x0;
+    sy0 = cy0 = y0;
+    prev = MOVE_TO;
+  }
+
+  @Override
+  public void lineTo(float x1, float y1) {
+    float dx = x1 - cx0;
+    float dy = y1 - cy0;
+    if (dx == 0f && dy == 0f) {
+      dx = 1;
+    }
+    float scale = lineWidth2 / (float) Math.sqrt(dx * dx + dy * dy);
+    float mx = dy * scale;
+    float my = -dx * scale;
+
+    if (prev == DRAWING_OP_TO) {
+      drawJoin(cx0, cy0, cdx, cdy, cmx, cmy, dx, dy, mx, my);
+    } else {
+      out.moveTo(cx0 + mx, cy0 + my);
+      pushRight(cx0 - mx, cy0 - my);
+      smx = mx;
+      smy = my;
+    }
+    out.lineTo(x1 + mx, y1 + my);
+    pushRight(x1 - mx, y1 - my);
+    cx0 = x1;
+    cy0 = y1;
+    cdx = dx;
+    cdy = dy;
+    cmx = mx;
+    cmy = my;
+    prev = DRAWING_OP_TO;
+  }
+
+  @Override
+  public void quadTo(float x1, float y1, float x2, float y2) {
+    throw new InternalError("PolylineStroker only strokes straight lines");
+  }
+
+  @Override
+  public void curveTo(float x1, float y1, float x2, float y2, float x3, float y3) {
+    throw new InternalError("PolylineStroker only strokes straight lines");
+  }
+
+  @Override
+  public void closePath() {
+    if (prev != DRAWING_OP_TO) {
+      if (prev == CLOSE) {
+        return;
+      }
+      // A lone point: caps facing either way, as Stroker draws it.
+      float mx = 0;
+      float my = -lineWidth2;
+      out.moveTo(cx0 + mx, cy0 + my);
+      addCap(cx0, cy0, mx, my);
+      emitLeft();
+      out.lineTo(cx0 - mx, cy0 - my);
+      addCap(cx0, cy0, -mx, -my);
+      emitLeft();
+      out.closePath();
+      prev = CLOSE;
+      return;
+    }
+
+    if (cx0 != sx0 || cy0 != sy0) {
+      lineTo(sx0, sy0);
+    }
+    // The left and right sides become separate loops, winding opposite ways.
+    drawJoin(cx0, cy0, cdx, cdy, cmx, cmy, -smy, smx, smx, smy);
+    out.closePath();
+    emitRight(true);
+    out.closePath();
+    prev = CLOSE;
+  }
+
+  @Override
+  public void pathDone() {
+    if (prev == DRAWING_OP_TO) {
+      finish();
+    }
+    out.pathDone();
+    prev = CLOSE;
+  }
+
+  @Override
+  public long getNativeConsumer() {
+    throw new InternalError("PolylineStroker doesn't use a native consumer");
+  }
+
+  /**
+   * Ends an open subpath: the end cap, the right side back to the start, and the start cap.
+   */
+  private void finish() {
+    addCap(cx0, cy0, cmx, cmy);
+    emitLeft();
+    emitRight(false);
+    addCap(sx0, sy0, -smx, -smy);
+    emitLeft();
+    out.closePath();
+  }
+
+  /**
+   * Continues both sides from the segment with direction (pdx, pdy) and offset (omx, omy) ending
+   * at (x, y) to the one with direction (dx, dy) and offset (mx, my) starting there: the outside
+   * of the turn gets the join, and the inside goes through (x, y), which the segments both cover.
+   */
+  private void drawJoin(
+      float x, float y, float pdx, float pdy, float omx, float omy, float dx, float dy, float mx,
+      float my) {
+    if (mx == omx && my == omy) {
+      return;
+    }
+    // The outside of the turn is the side the offsets point to if this is positive.
+    if (pdx * dy - pdy * dx >= 0) {
+      addJoin(x, y, pdx, pdy, omx, omy, dx, dy, mx, my);
+      emitLeft();
+      out.lineTo(x + mx, y + my);
+      pushRight(x, y);
+      pushRight(x - mx, y - my);
+    } else {
+      out.lineTo(x, y);
+      out.lineTo(x + mx, y + my);
+      addJoin(x, y, pdx, pdy, -omx, -omy, dx, dy, -mx, -my);
+      for (int i = 0; i < arcLength; i += 2) {
+        pushRight(arc[i], arc[i + 1]);
+      }
+      pushRight(x - mx, y - my);
+    }
+  }
+
+  /**
+   * Sets {@link #arc} to the vertices strictly between (x + omx, y + omy) and (x + mx, y + my)
+   * that fill the gap on the outside of a turn at (x, y) from direction (pdx, pdy) to (dx, dy).
+   */
+  private void addJoin(
+      float x, float y, float pdx, float pdy, float omx, float omy, float dx, float dy, float mx,
+      float my) {
+    arcLength = 0;
+    if (joinStyle == Stroker.JOIN_MITER) {
+      // The offset lines meet at the offsets' sum scaled by r^2 / (r^2 + their dot product).
+      float r2 = lineWidth2 * lineWidth2;
+      float den = r2 + omx * mx + omy * my;
+      float scale = r2 / den;
+      float tx = (omx + mx) * scale;
+      float ty = (omy + my) * scale;
+      if (den > 0 && tx * tx + ty * ty < miterLimitSq) {
+        addVertex(x + tx, y + ty);
+      }
+    } else if (joinStyle == Stroker.JOIN_ROUND) {
+      float domx = omx - mx;
+      float domy = omy - my;
+      if (domx * domx + domy * domy >= ROUND_JOIN_THRESHOLD) {
+        // Bisect towards where the segments would have continued.
+        float plen = (float) Math.sqrt(pdx * pdx + pdy * pdy);
+        float len = (float) Math.sqrt(dx * dx + dy * dy);
+        addArc(x, y, omx, omy, mx, my, pdx / plen - dx / len, pdy / plen - dy / len);
+        arcLength -= 2;
+      }
+    }
+  }
+
+  /**
+   * Sets {@link #arc} to the vertices of a cap strictly between (x + mx, y + my) and
+   * (x - mx, y - my).
+   *
+   * @param mx the offset to the left of the segment the cap ends, facing out of it
+   */
+  private void addCap(float x, float y, float mx, float my) {
+    arcLength = 0;
+    // The outward direction, as long as the offset.
+    float ox = -my;
+    float oy = mx;
+    if (capStyle == Stroker.CAP_ROUND) {
+      addArc(x, y, mx, my, ox, oy, mx + ox, my + oy);
+      addArc(x, y, ox, oy, -mx, -my, ox - mx, oy - my);
+      arcLength -= 2;
+    } else if (capStyle == Stroker.CAP_SQUARE) {
+      addVertex(x + mx + ox, y + my + oy);
+      addVertex(x - mx + ox, y - my + oy);
+    }
+  }
+
+  /**
+   * Adds the vertices after (x + ax, y + ay) up to (x + bx, y + by) of a polygon approximating
+   * the arc of radius lineWidth2 around (x, y) between them that is bisected by (hx, hy).
+   */
+  private void addArc(
+      float x, float y, float ax, float ay, float bx, float by, float hx, float hy) {
+    float r2 = lineWidth2 * lineWidth2;
+    float hlen = (float) Math.sqrt(hx * hx + hy * hy);
+    if (ax * bx + ay * by >= MIN_ARC_COS * r2 || hlen == 0) {
+      addVertex(x + bx, y + by);
+      return;
+    }
+    float scale = lineWidth2 / hlen;
+    float mx = hx * scale;
+    float my = hy * scale;
+    addArc(x, y, ax, ay, mx, my, ax + mx, ay + my);
+    addArc(x, y, mx, my, bx, by, mx + bx, my + by);
+  }
+
+  private void addVertex(float x, float y) {
+    arc[arcLength] = x;
+    arc[arcLength + 1] = y;
+    arcLength += 2;
+  }
+
+  /**
+   * Continues the left side through the vertices in {@link #arc}.
+   */
+  private void emitLeft() {
+    for (int i = 0; i < arcLength; i += 2) {
+      out.lineTo(arc[i], arc[i + 1]);
+    }
+  }
+
+  private void pushRight(float x, float y) {
+    if (rightLength + 2 > right.length) {
+      right = Arrays.copyOf(right, right.length << 1);
+    }
+    right[rightLength] = x;
+    right[rightLength + 1] = y;
+    rightLength += 2;
+  }
+
+  /**
+   * Emits the right side in reverse, continuing the left side, or as a loop of its own once the
+   * left side has been closed.
+   */
+  private void emitRight(boolean loop) {
+    int i = rightLength - 2;
+    if (loop) {
+      out.moveTo(right[i], right[i + 1]);
+    } else {
+      out.lineTo(right[i], right[i + 1]);
+    }
+    for (i -= 2; i >= 0; i -= 2) {
+      out.lineTo(right[i], right[i + 1]);
+    }
+    rightLength = 0;
+  }
+}
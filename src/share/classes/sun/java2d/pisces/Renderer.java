@@ -26,6 +26,8 @@
 package sun.java2d.pisces;
 
 import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import sun.awt.geom.PathConsumer2D;
 
 final class Renderer implements PathConsumer2D {
@@ -53,20 +55,23 @@ final class Renderer implements PathConsumer2D {
   private static final int INIT_NUM_EDGES = 8;
   private static final float DEC_BND = 20f;
   private static final float INC_BND = 8f;
-  final int MAX_AA_ALPHA;
+  // Edge arrays larger than this aren't kept for the next shape.
+  private static final int MAX_KEPT_EDGES = 4096;
+  int MAX_AA_ALPHA;
   // Antialiasing
-  private final int SUBPIXEL_LG_POSITIONS_X;
-  private final int SUBPIXEL_LG_POSITIONS_Y;
-  private final int SUBPIXEL_POSITIONS_X;
-  private final int SUBPIXEL_POSITIONS_Y;
-  private final int SUBPIXEL_MASK_X;
-  private final int SUBPIXEL_MASK_Y;
+  private int SUBPIXEL_LG_POSITIONS_X;
+  private int SUBPIXEL_LG_POSITIONS_Y;
+  private int SUBPIXEL_POSITIONS_X;
+  private int SUBPIXEL_POSITIONS_Y;
+  private int SUBPIXEL_MASK_X;
+  private int SUBPIXEL_MASK_Y;
   // Bounds of the drawing region, at subpixel precision.
-  final int boundsMinX, boundsMinY, boundsMaxX, boundsMaxY;
+  int boundsMinX, boundsMinY, boundsMaxX, boundsMaxY;
   // Current winding rule
-  private final int windingRule;
-  final int[] edgeBuckets;
-  final int[] edgeBucketCounts; // 2*newedges + (1 if pruning needed)
+  private int windingRule;
+  // Both are kept clear beyond the current shape's edges, so they can be reused.
+  int[] edgeBuckets;
+  int[] edgeBucketCounts; // 2*newedges + (1 if pruning needed)
   private final Curve c = new Curve();
   // Cache to store RLE-encoded coverage mask of the current primitive
   PiscesCache cache;
@@ -82,10 +87,27 @@ final class Renderer implements PathConsumer2D {
   private float x0, y0;
   // Position of most recent 'moveTo' command
   private float pix_sx0, pix_sy0;
+  // Coverage accumulator for one pixel row, zero between rows.
+  private int[] alpha;
+  private final ScanlineIterator it = this.new ScanlineIterator();
+  // Renderers of the bands of the last shape rasterized in parallel, by band.
+  private Renderer[] bands;
 
   public Renderer(
       int subpixelLgPositionsX, int subpixelLgPositionsY, int pix_boundsX, int pix_boundsY,
       int pix_boundsWidth, int pix_boundsHeight, int windingRule) {
+    init(subpixelLgPositionsX, subpixelLgPositionsY, pix_boundsX, pix_boundsY, pix_boundsWidth,
+        pix_boundsHeight, windingRule);
+  }
+
+  /**
+   * Sets this renderer up for a new shape, as if newly constructed with the same arguments but
+   * keeping the arrays it already has if they are large enough. It must have been {@link
+   * #reset()} since its last shape.
+   */
+  void init(
+      int subpixelLgPositionsX, int subpixelLgPositionsY, int pix_boundsX, int pix_boundsY,
+      int pix_boundsWidth, int pix_boundsHeight, int windingRule) {
     SUBPIXEL_LG_POSITIONS_X = subpixelLgPositionsX;
     SUBPIXEL_LG_POSITIONS_Y = subpixelLgPositionsY;
     SUBPIXEL_MASK_X = (1 << SUBPIXEL_LG_POSITIONS_X) - 1;
@@ -101,11 +123,43 @@ final class Renderer implements PathConsumer2D {
     boundsMaxX = (pix_boundsX + pix_boundsWidth) * SUBPIXEL_POSITIONS_X;
     boundsMaxY = (pix_boundsY + pix_boundsHeight) * SUBPIXEL_POSITIONS_Y;
 
-    edges = new float[INIT_NUM_EDGES * SIZEOF_EDGE];
+    if (edges == null) {
+      edges = new float[INIT_NUM_EDGES * SIZEOF_EDGE];
+    }
+    numEdges = 0;
+    int numBuckets = boundsMaxY - boundsMinY;
+    if (edgeBuckets == null || edgeBuckets.length < numBuckets) {
+      if (edgeBuckets != null) {
+        RendererContext.edgeArrayGrown();
+      }
+      edgeBuckets = new int[numBuckets];
+      Arrays.fill(edgeBuckets, NULL);
+      edgeBucketCounts = new int[numBuckets + 1];
+    }
+  }
+
+  /**
+   * Clears the parts of the arrays the last shape used, so that {@link #init} can reuse them.
+   */
+  void reset() {
+    if (numEdges > 0) {
+      int from = Math.max((int) Math.ceil(edgeMinY), boundsMinY) - boundsMinY;
+      int to = Math.min((int) Math.ceil(edgeMaxY), boundsMaxY) - boundsMinY;
+      Arrays.fill(edgeBuckets, from, to, NULL);
+      Arrays.fill(edgeBucketCounts, from, to + 1, 0);
+    }
+    if (edges.length > MAX_KEPT_EDGES * SIZEOF_EDGE) {
+      edges = new float[INIT_NUM_EDGES * SIZEOF_EDGE];
+    }
     numEdges = 0;
-    edgeBuckets = new int[boundsMaxY - boundsMinY];
-    Arrays.fill(edgeBuckets, NULL);
-    edgeBucketCounts = new int[edgeBuckets.length + 1];
+    edgeMinY = Float.POSITIVE_INFINITY;
+    edgeMaxY = Float.NEGATIVE_INFINITY;
+    edgeMinX = Float.POSITIVE_INFINITY;
+    edgeMaxX = Float.NEGATIVE_INFINITY;
+    x0 = y0 = pix_sx0 = pix_sy0 = 0;
+    if (cache != null) {
+      cache.reset();
+    }
   }
 
   // each bucket is a linked list. this method adds eptr to the
@@ -254,7 +308,10 @@ final class Renderer implements PathConsumer2D {
     }
 
     int ptr = numEdges * SIZEOF_EDGE;
-    edges = Helpers.widenArray(edges, ptr, SIZEOF_EDGE);
+    if (edges.length < ptr + SIZEOF_EDGE) {
+      RendererContext.edgeArrayGrown();
+      edges = Helpers.widenArray(edges, ptr, SIZEOF_EDGE);
+    }
     numEdges++;
     edges[ptr + OR] = or;
     edges[ptr + CURX] = x1 + (firstCrossing - y1) * slope;
@@ -336,7 +393,13 @@ final class Renderer implements PathConsumer2D {
 
     // add 2 to better deal with the last pixel in a pixel row.
     int width = pix_bboxx1 - pix_bboxx0;
-    int[] alpha = new int[width + 2];
+    if (alpha == null || alpha.length < width + 2) {
+      if (alpha != null) {
+        RendererContext.crossingArrayGrown();
+      }
+      alpha = new int[width + 2];
+    }
+    int[] alpha = this.alpha;
 
     int bboxx0 = pix_bboxx0 << SUBPIXEL_LG_POSITIONS_X;
     int bboxx1 = pix_bboxx1 << SUBPIXEL_LG_POSITIONS_X;
@@ -351,7 +414,8 @@ final class Renderer implements PathConsumer2D {
     int pix_minX = Integer.MAX_VALUE;
 
     int y = boundsMinY; // needs to be declared here so we emit the last row properly.
-    ScanlineIterator it = this.new ScanlineIterator(ymin, ymax);
+    ScanlineIterator it = this.it;
+    it.init(ymin, ymax);
     for (; it.hasNext(); ) {
       int numCrossings = it.next();
       int[] crossings = it.crossings;
@@ -418,6 +482,17 @@ final class Renderer implements PathConsumer2D {
   }
 
   public void endRendering() {
+    endRendering(false);
+  }
+
+  /**
+   * Rasterizes the edges added so far into the cache.
+   *
+   * @param inBands whether to split the shape, if it is tall enough, into bands of whole tile
+   *     rows that are rasterized in parallel on the common {@link ForkJoinPool}. The coverage
+   *     is the same as that of a single pass.
+   */
+  public void endRendering(boolean inBands) {
     int spminX = Math.max((int) Math.ceil(edgeMinX), boundsMinX);
     int spmaxX = Math.min((int) Math.ceil(edgeMaxX), boundsMaxX);
     int spminY = Math.max((int) Math.ceil(edgeMinY), boundsMinY);
@@ -429,15 +504,93 @@ final class Renderer implements PathConsumer2D {
     int pmaxY = spmaxY + SUBPIXEL_MASK_Y >> SUBPIXEL_LG_POSITIONS_Y;
 
     if (pminX > pmaxX || pminY > pmaxY) {
-      cache = new PiscesCache(boundsMinX >> SUBPIXEL_LG_POSITIONS_X,
+      initCache(boundsMinX >> SUBPIXEL_LG_POSITIONS_X,
           boundsMinY >> SUBPIXEL_LG_POSITIONS_Y,
           boundsMaxX >> SUBPIXEL_LG_POSITIONS_X,
           boundsMaxY >> SUBPIXEL_LG_POSITIONS_Y);
       return;
     }
 
-    cache = new PiscesCache(pminX, pminY, pmaxX, pmaxY);
-    _endRendering(pminX, pmaxX, spminY, spmaxY);
+    initCache(pminX, pminY, pmaxX, pmaxY);
+    int bandRows = inBands ? bandRows(pmaxY - pminY + 1) : 0;
+    if (bandRows > 0) {
+      int numBands = (pmaxY - pminY + bandRows) / bandRows;
+      if (bands == null || bands.length < numBands) {
+        bands = bands == null ? new Renderer[numBands] : Arrays.copyOf(bands, numBands);
+      }
+      ForkJoinPool.commonPool().invoke(
+          new Band(0, numBands, bandRows, pminX, pmaxX, pminY, pmaxY, spminY, spmaxY));
+    } else {
+      _endRendering(pminX, pmaxX, spminY, spmaxY);
+    }
+  }
+
+  private void initCache(int minx, int miny, int maxx, int maxy) {
+    if (cache == null) {
+      cache = new PiscesCache(minx, miny, maxx, maxy);
+    } else {
+      cache.init(minx, miny, maxx, maxy);
+    }
+  }
+
+  int getNumEdges() {
+    return numEdges;
+  }
+
+  /**
+   * @return the height of the bands to rasterize {@code rows} pixel rows in, a multiple of the
+   *     tile size so that no two bands share a tile; or 0 if there should be only one
+   */
+  private static int bandRows(int rows) {
+    int bands = 4 * ForkJoinPool.getCommonPoolParallelism();
+    int bandRows = (rows + bands - 1) / bands + PiscesCache.TILE_SIZE - 1
+        & -PiscesCache.TILE_SIZE;
+    return bandRows < rows ? bandRows : 0;
+  }
+
+  /**
+   * Rasterizes the part of the shape of {@code whole}, which must not have been rasterized yet,
+   * that lies within this renderer's vertical bounds into its {@link #cache}.
+   */
+  private void renderBand(Renderer whole, int pminX, int pmaxX, int spminY, int spmaxY) {
+    // Copy each edge that crosses the band, starting at its first crossing within it.
+    float[] wholeEdges = whole.edges;
+    int end = Math.min(boundsMaxY, whole.boundsMaxY) - whole.boundsMinY;
+    for (int bucket = 0; bucket < end; bucket++) {
+      int firstCrossing = whole.boundsMinY + bucket;
+      for (int e = whole.edgeBuckets[bucket]; e != NULL; e = (int) wholeEdges[e + NEXT]) {
+        int lastCrossing = Math.min((int) wholeEdges[e + YMAX], boundsMaxY);
+        if (lastCrossing <= boundsMinY) {
+          continue;
+        }
+        int first = Math.max(firstCrossing, boundsMinY);
+        float slope = wholeEdges[e + SLOPE];
+        int ptr = numEdges * SIZEOF_EDGE;
+        if (edges.length < ptr + SIZEOF_EDGE) {
+          RendererContext.edgeArrayGrown();
+          edges = Helpers.widenArray(edges, ptr, SIZEOF_EDGE);
+        }
+        numEdges++;
+        edges[ptr + OR] = wholeEdges[e + OR];
+        // Step to the band the way the single pass does, so that the crossings come out the
+        // same to the last bit.
+        float curx = wholeEdges[e + CURX];
+        for (int y = firstCrossing; y < first; y++) {
+          curx += slope;
+        }
+        edges[ptr + CURX] = curx;
+        edges[ptr + SLOPE] = slope;
+        edges[ptr + YMAX] = lastCrossing;
+        addEdgeToBucket(ptr, first - boundsMinY);
+        edgeBucketCounts[lastCrossing - boundsMinY] |= 1;
+      }
+    }
+    // So that reset() clears every bucket the band may have used.
+    edgeMinY = boundsMinY;
+    edgeMaxY = boundsMaxY;
+    initCache(pminX, boundsMinY >> SUBPIXEL_LG_POSITIONS_Y, pmaxX,
+        (boundsMaxY >> SUBPIXEL_LG_POSITIONS_Y) - 1);
+    _endRendering(pminX, pmaxX, Math.max(spminY, boundsMinY), Math.min(spmaxY, boundsMaxY));
   }
 
   public PiscesCache getCache() {
@@ -470,34 +623,100 @@ final class Renderer implements PathConsumer2D {
           }
         }
         cache.addRLERun(startVal, runLen);
+        Arrays.fill(alphaRow, from, to + 2, 0);
+      }
+    }
+  }
+
+  /**
+   * Rasterizes bands {@code [first, last)} of this renderer's shape, each with a renderer of its
+   * own, and copies their rows into {@link #cache}.
+   */
+  private final class Band extends RecursiveAction {
+    private static final long serialVersionUID = 137370235100933457L;
+
+    private final int first;
+    private final int last;
+    private final int bandRows;
+    private final int pminX;
+    private final int pmaxX;
+    private final int pminY;
+    private final int pmaxY;
+    private final int spminY;
+    private final int spmaxY;
+
+    Band(
+        int first, int last, int bandRows, int pminX, int pmaxX, int pminY, int pmaxY,
+        int spminY, int spmaxY) {
+      this.first = first;
+      this.last = last;
+      this.bandRows = bandRows;
+      this.pminX = pminX;
+      this.pmaxX = pmaxX;
+      this.pminY = pminY;
+      this.pmaxY = pmaxY;
+      this.spminY = spminY;
+      this.spmaxY = spmaxY;
+    }
+
+    @Override
+    protected void compute() {
+      if (last - first > 1) {
+        int mid = first + last >>> 1;
+        invokeAll(
+            new Band(first, mid, bandRows, pminX, pmaxX, pminY, pmaxY, spminY, spmaxY),
+            new Band(mid, last, bandRows, pminX, pmaxX, pminY, pmaxY, spminY, spmaxY));
+        return;
+      }
+      int y0 = pminY + first * bandRows;
+      int y1 = Math.min(y0 + bandRows, pmaxY + 1);
+      // Each band keeps its renderer, and with it its cache, from shape to shape, whichever
+      // thread takes it. The rows are copied out of the band's cache, so both keep their arrays.
+      Renderer band = bands[first];
+      int x = boundsMinX >> SUBPIXEL_LG_POSITIONS_X;
+      int width = boundsMaxX - boundsMinX >> SUBPIXEL_LG_POSITIONS_X;
+      if (band == null) {
+        band = new Renderer(SUBPIXEL_LG_POSITIONS_X, SUBPIXEL_LG_POSITIONS_Y, x, y0, width,
+            y1 - y0, windingRule);
+        bands[first] = band;
+      } else {
+        band.init(SUBPIXEL_LG_POSITIONS_X, SUBPIXEL_LG_POSITIONS_Y, x, y0, width, y1 - y0,
+            windingRule);
+      }
+      try {
+        band.renderBand(Renderer.this, pminX, pmaxX, spminY, spmaxY);
+        cache.copyRows(band.cache);
+      } finally {
+        band.reset();
       }
     }
-    Arrays.fill(alphaRow, 0);
   }
 
   private class ScanlineIterator {
 
     private static final int INIT_CROSSINGS_SIZE = 10;
+    // Moves insertion sort may make beyond its n log n budget before giving up.
+    private static final int INSERTION_SORT_SLACK = 256;
     // crossing bounds. The bounds are not necessarily tight (the scan line
     // at minY, for example, might have no crossings). The x bounds will
     // be accumulated as crossings are computed.
-    private final int maxY;
-    int[] crossings;
+    private int maxY;
+    int[] crossings = new int[INIT_CROSSINGS_SIZE];
     private int nextY;
     // indices into the segment pointer lists. They indicate the "active"
     // sublist in the segment lists (the portion of the list that contains
     // all the segments that cross the next scan line).
     private int edgeCount;
-    private int[] edgePtrs;
+    private int[] edgePtrs = new int[INIT_CROSSINGS_SIZE];
+    // Scratch space for mergeSort.
+    private int[] auxCrossings = new int[0];
+    private int[] auxPtrs = new int[0];
 
     // Preconditions: Only subpixel scanlines in the range
     // (start <= subpixel_y <= end) will be evaluated. No
     // edge may have a valid (i.e. inside the supplied clip)
     // crossing that would be generated outside that range.
-    ScanlineIterator(int start, int end) {
-      crossings = new int[INIT_CROSSINGS_SIZE];
-      edgePtrs = new int[INIT_CROSSINGS_SIZE];
-
+    void init(int start, int end) {
       nextY = start;
       maxY = end;
       edgeCount = 0;
@@ -521,7 +740,11 @@ final class Renderer implements PathConsumer2D {
         }
         count = newCount;
       }
-      ptrs = Helpers.widenArray(ptrs, count, bucketcount >> 1);
+      int oldCount = count;
+      if (ptrs.length < count + (bucketcount >> 1)) {
+        RendererContext.crossingArrayGrown();
+        ptrs = Helpers.widenArray(ptrs, count, bucketcount >> 1);
+      }
       for (int ecur = edgeBuckets[bucket]; ecur != NULL; ecur = (int) edges[ecur + NEXT]) {
         ptrs[count] = ecur;
         count++;
@@ -534,8 +757,15 @@ final class Renderer implements PathConsumer2D {
       //            }
       int[] xings = crossings;
       if (xings.length < count) {
+        RendererContext.crossingArrayGrown();
         crossings = xings = new int[ptrs.length];
       }
+      // The edges are still in the order of their crossings on the previous scanline, followed
+      // by the new ones, so the crossings are mostly sorted already; count the places where
+      // they aren't.
+      int descents = 0;
+      int newDescents = 0;
+      int last = Integer.MIN_VALUE;
       for (int i = 0; i < count; i++) {
         int ecur = ptrs[i];
         float curx = edges[ecur + CURX];
@@ -544,9 +774,63 @@ final class Renderer implements PathConsumer2D {
         if (edges[ecur + OR] > 0) {
           cross |= 1;
         }
-        int j = i;
-        --j;
-        while (j >= 0) {
+        xings[i] = cross;
+        if (cross < last) {
+          if (i > oldCount) {
+            newDescents++;
+          } else if (i < oldCount) {
+            descents++;
+          }
+        }
+        last = cross;
+      }
+      if (oldCount == 0 || oldCount == count) {
+        if (descents > 0 || newDescents > 0) {
+          sort(xings, ptrs, 0, count);
+        }
+      } else {
+        // Sort the edges carried over and the new ones separately, so that each new edge
+        // doesn't have to be moved past all those to its right, then merge them.
+        if (descents > 0) {
+          sort(xings, ptrs, 0, oldCount);
+        }
+        if (newDescents > 0) {
+          sort(xings, ptrs, oldCount, count);
+        }
+        if (xings[oldCount - 1] > xings[oldCount]) {
+          mergeNew(xings, ptrs, oldCount, count);
+        }
+      }
+      return count;
+    }
+
+    /**
+     * Sorts the crossings in {@code [from, to)} and their edges with {@link #insertionSort}, or
+     * {@link #mergeSort} if they turn out to be far from sorted.
+     */
+    private void sort(int[] xings, int[] ptrs, int from, int to) {
+      if (!insertionSort(xings, ptrs, from, to)) {
+        mergeSort(xings, ptrs, from, to);
+      }
+    }
+
+    /**
+     * Insertion sorts the crossings, which takes time proportional to the number of pairs out
+     * of order: little, usually, but as much as O(n^2) when many edges cross each other between
+     * scanlines, as in dense self-intersecting paths.
+     *
+     * @return false, leaving the crossings partly sorted, if that number is clearly large enough
+     *     that {@link #mergeSort} would be faster
+     */
+    private boolean insertionSort(int[] xings, int[] ptrs, int from, int to) {
+      // About n log n, plus some slack for small n.
+      int count = to - from;
+      int budget = count * (32 - Integer.numberOfLeadingZeros(count)) + INSERTION_SORT_SLACK;
+      for (int i = from + 1; i < to; i++) {
+        int cross = xings[i];
+        int ecur = ptrs[i];
+        int j = i - 1;
+        while (j >= from) {
           int jcross = xings[j];
           if (jcross <= cross) {
             break;
@@ -557,8 +841,111 @@ final class Renderer implements PathConsumer2D {
         }
         xings[j + 1] = cross;
         ptrs[j + 1] = ecur;
+        budget -= i - 1 - j;
+        if (budget < 0) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Sorts by repeatedly merging adjacent ascending runs, which takes O(n log runs) time.
+     */
+    private void mergeSort(int[] xings, int[] ptrs, int from, int to) {
+      ensureAuxCapacity(xings.length);
+      int[] srcX = xings;
+      int[] srcP = ptrs;
+      int[] dstX = auxCrossings;
+      int[] dstP = auxPtrs;
+      int runs;
+      do {
+        runs = 0;
+        for (int start = from; start < to; runs++) {
+          int mid = runEnd(srcX, start, to);
+          int end = runEnd(srcX, mid, to);
+          merge(srcX, srcP, start, mid, end, dstX, dstP);
+          start = end;
+        }
+        int[] t = srcX;
+        srcX = dstX;
+        dstX = t;
+        t = srcP;
+        srcP = dstP;
+        dstP = t;
+      } while (runs > 1);
+      if (srcX != xings) {
+        System.arraycopy(srcX, from, xings, from, to - from);
+        System.arraycopy(srcP, from, ptrs, from, to - from);
+      }
+    }
+
+    /**
+     * Merges the sorted crossings of the edges added on this scanline, in {@code [oldCount,
+     * count)}, into the sorted ones before them, working from the right so that only the
+     * crossings to the right of the leftmost new one move.
+     */
+    private void mergeNew(int[] xings, int[] ptrs, int oldCount, int count) {
+      int newCount = count - oldCount;
+      ensureAuxCapacity(newCount);
+      System.arraycopy(xings, oldCount, auxCrossings, 0, newCount);
+      System.arraycopy(ptrs, oldCount, auxPtrs, 0, newCount);
+      int i = oldCount - 1;
+      int j = newCount - 1;
+      for (int k = count - 1; j >= 0; k--) {
+        if (i >= 0 && xings[i] > auxCrossings[j]) {
+          xings[k] = xings[i];
+          ptrs[k] = ptrs[i];
+          i--;
+        } else {
+          xings[k] = auxCrossings[j];
+          ptrs[k] = auxPtrs[j];
+          j--;
+        }
+      }
+    }
+
+    private void ensureAuxCapacity(int length) {
+      if (auxCrossings.length < length) {
+        RendererContext.crossingArrayGrown();
+        auxCrossings = new int[length];
+        auxPtrs = new int[length];
+      }
+    }
+
+    /**
+     * @return the end of the ascending run of {@code xings} that starts at {@code from}
+     */
+    private int runEnd(int[] xings, int from, int to) {
+      if (from >= to) {
+        return to;
+      }
+      int i = from + 1;
+      while (i < to && xings[i - 1] <= xings[i]) {
+        i++;
+      }
+      return i;
+    }
+
+    /**
+     * Merges the sorted ranges {@code [from, mid)} and {@code [mid, to)} of {@code x} and its
+     * companion {@code p} into the same range of {@code dstX} and {@code dstP}, taking from the
+     * first range on ties.
+     */
+    private void merge(int[] x, int[] p, int from, int mid, int to, int[] dstX, int[] dstP) {
+      int i = from;
+      int j = mid;
+      for (int k = from; k < to; k++) {
+        if (j >= to || i < mid && x[i] <= x[j]) {
+          dstX[k] = x[i];
+          dstP[k] = p[i];
+          i++;
+        } else {
+          dstX[k] = x[j];
+          dstP[k] = p[j];
+          j++;
+        }
       }
-      return count;
     }
 
     boolean hasNext() {
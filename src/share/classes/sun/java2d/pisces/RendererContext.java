@@ -0,0 +1,158 @@
+package sun.java2d.pisces;
+
+import java.awt.Shape;
+import java.awt.geom.PathIterator;
+import java.util.concurrent.atomic.AtomicLong;
+import sun.awt.geom.PathConsumer2D;
+import sun.java2d.pisces.PiscesRenderingEngine.NormMode;
+import sun.java2d.pisces.PiscesRenderingEngine.NormalizingPathIterator;
+
+/**
+ * The pipeline stages of one {@link PiscesRenderingEngine#getAATileGenerator} call, kept per
+ * thread so that rendering many small shapes doesn't allocate a new {@link Renderer}, {@link
+ * PiscesCache}, {@link Stroker} and so on, and grow their arrays from scratch, for each of them.
+ * A context is taken by {@link #acquire()} and handed back by its tile generator's {@code
+ * dispose()}, which clears only the parts of its arrays that the shape used.
+ */
+final class RendererContext {
+
+  private static final ThreadLocal<RendererContext> CONTEXTS =
+      new ThreadLocal<RendererContext>() {
+        @Override
+        protected RendererContext initialValue() {
+          return new RendererContext();
+        }
+      };
+
+  private static final AtomicLong edgeArrayGrowCount = new AtomicLong();
+  private static final AtomicLong crossingArrayGrowCount = new AtomicLong();
+  private static final AtomicLong rowArrayGrowCount = new AtomicLong();
+
+  private Renderer renderer;
+  private Stroker stroker;
+  private PolylineStroker polylineStroker;
+  private Dasher dasher;
+  private NormalizingPathIterator normalizer;
+  // Scratch space for PolylineStroker.isPolyline().
+  private final float[] coords = new float[6];
+  private boolean inUse;
+
+  private RendererContext() {
+  }
+
+  /**
+   * @return this thread's context, or a new one that replaces it if it is still in use, as it
+   *     is if a tile generator was never disposed
+   */
+  static RendererContext acquire() {
+    RendererContext context = CONTEXTS.get();
+    if (context.inUse) {
+      context = new RendererContext();
+      CONTEXTS.set(context);
+    }
+    context.inUse = true;
+    return context;
+  }
+
+  /**
+   * Clears the arrays the last shape used and makes this context available again.
+   */
+  void release() {
+    if (renderer != null) {
+      renderer.reset();
+    }
+    if (normalizer != null) {
+      normalizer.clear();
+    }
+    inUse = false;
+  }
+
+  Renderer renderer(
+      int pix_boundsX, int pix_boundsY, int pix_boundsWidth, int pix_boundsHeight,
+      int windingRule) {
+    if (renderer == null) {
+      renderer = new Renderer(
+          3, 3, pix_boundsX, pix_boundsY, pix_boundsWidth, pix_boundsHeight, windingRule);
+    } else {
+      renderer.init(
+          3, 3, pix_boundsX, pix_boundsY, pix_boundsWidth, pix_boundsHeight, windingRule);
+    }
+    return renderer;
+  }
+
+  Stroker stroker(
+      PathConsumer2D pc2d, float lineWidth, int capStyle, int joinStyle, float miterLimit) {
+    if (stroker == null) {
+      stroker = new Stroker(pc2d, lineWidth, capStyle, joinStyle, miterLimit);
+    } else {
+      stroker.init(pc2d, lineWidth, capStyle, joinStyle, miterLimit);
+    }
+    return stroker;
+  }
+
+  PolylineStroker polylineStroker(
+      PathConsumer2D pc2d, float lineWidth, int capStyle, int joinStyle, float miterLimit) {
+    if (polylineStroker == null) {
+      polylineStroker = new PolylineStroker(pc2d, lineWidth, capStyle, joinStyle, miterLimit);
+    } else {
+      polylineStroker.init(pc2d, lineWidth, capStyle, joinStyle, miterLimit);
+    }
+    return polylineStroker;
+  }
+
+  boolean isPolyline(Shape s) {
+    return PolylineStroker.isPolyline(s, coords);
+  }
+
+  Dasher dasher(PathConsumer2D out, float[] dash, float phase) {
+    if (dasher == null) {
+      dasher = new Dasher(out, dash, phase);
+    } else {
+      dasher.init(out, dash, phase);
+    }
+    return dasher;
+  }
+
+  NormalizingPathIterator normalizer(PathIterator src, NormMode mode) {
+    if (normalizer == null) {
+      normalizer = new NormalizingPathIterator(src, mode);
+    } else {
+      normalizer.init(src, mode);
+    }
+    return normalizer;
+  }
+
+  static void edgeArrayGrown() {
+    edgeArrayGrowCount.incrementAndGet();
+  }
+
+  static void crossingArrayGrown() {
+    crossingArrayGrowCount.incrementAndGet();
+  }
+
+  static void rowArrayGrown() {
+    rowArrayGrowCount.incrementAndGet();
+  }
+
+  /**
+   * @return the number of times a renderer's edge list or edge bucket arrays have had to grow
+   */
+  static long getEdgeArrayGrowCount() {
+    return edgeArrayGrowCount.get();
+  }
+
+  /**
+   * @return the number of times a renderer's per-scanline crossing or alpha arrays have had to
+   *     grow
+   */
+  static long getCrossingArrayGrowCount() {
+    return crossingArrayGrowCount.get();
+  }
+
+  /**
+   * @return the number of times a cache's RLE row or tile arrays have had to grow
+   */
+  static long getRowArrayGrowCount() {
+    return rowArrayGrowCount.get();
+  }
+}
@@ -177,13 +177,13 @@ final class Stroker implements PathConsumer2D {
   // to get good offset curves a distance of w away from the middle curve.
   // Stores the points in ts, and returns how many of them there were.
   private static final Curve c = new Curve();
-  private final PathConsumer2D out;
-  private final int capStyle;
-  private final int joinStyle;
-  private final float lineWidth2;
+  private PathConsumer2D out;
+  private int capStyle;
+  private int joinStyle;
+  private float lineWidth2;
   private final float[][] offset = new float[3][2];
   private final float[] miter = new float[2];
-  private final float miterLimitSq;
+  private float miterLimitSq;
   private final PolyStack reverse = new PolyStack();
   // This is where the curve to be processed is put. We give it
   // enough room to store 2 curves: one for the current subdivision, the
@@ -220,6 +220,14 @@ final class Stroker implements PathConsumer2D {
    */
   public Stroker(
       PathConsumer2D pc2d, float lineWidth, int capStyle, int joinStyle, float miterLimit) {
+    init(pc2d, lineWidth, capStyle, joinStyle, miterLimit);
+  }
+
+  /**
+   * Sets this {@code Stroker} up to stroke a new path, as if newly constructed with the same
+   * arguments.
+   */
+  void init(PathConsumer2D pc2d, float lineWidth, int capStyle, int joinStyle, float miterLimit) {
     out = pc2d;
 
     lineWidth2 = lineWidth / 2;
@@ -230,6 +238,7 @@ final class Stroker implements PathConsumer2D {
     miterLimitSq = limit * limit;
 
     prev = CLOSE;
+    reverse.clear();
   }
 
   private static void computeOffset(
@@ -1178,6 +1187,11 @@ final class Stroker implements PathConsumer2D {
       return numCurves == 0;
     }
 
+    void clear() {
+      end = 0;
+      numCurves = 0;
+    }
+
     private void ensureSpace(int n) {
       if (end + n >= curves.length) {
         int newSize = (end + n) << 1;
@@ -0,0 +1,230 @@
+/*
+ * @test
+ * @summary Checks that a bounded SoftCache keeps exactly its least recently used values within
+ *          its byte budget by their weight, counts hits, misses and evictions, trims on demand
+ *          and holds its values through memory pressure
+ * @run main/othervm -Xmx64m BoundedSoftCacheTest
+ */
+
+import java.awt.Graphics;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.awt.image.ImageObserver;
+import java.awt.image.ImageProducer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import sun.awt.SoftCache;
+
+public final class BoundedSoftCacheTest {
+
+    private BoundedSoftCacheTest() {
+    }
+
+    public static void main(String[] args) {
+        testLru();
+        testAgainstModel();
+        testEstimateImageBytes();
+        testTrimAll();
+        testMemoryPressure();
+    }
+
+    private static void testLru() {
+        SoftCache<String, byte[]> cache = new SoftCache<>(100, v -> v.length);
+        byte[] a = new byte[30];
+        byte[] b = new byte[30];
+        cache.put("a", a);
+        cache.put("b", b);
+        cache.put("c", new byte[30]);
+        check(cache.getCurrentBytes() == 90, "current bytes " + cache.getCurrentBytes());
+        check(cache.get("a") == a, "a is missing");
+        // a was used last, so b is the least recently used and makes room for d.
+        cache.put("d", new byte[30]);
+        check(cache.get("b") == null, "b wasn't evicted");
+        check(cache.get("a") == a, "a was evicted");
+        // Replacing a value reweighs it, and evicts c and d but never the new value.
+        byte[] large = new byte[150];
+        check(cache.put("a", large) == a, "put didn't return the old value");
+        check(cache.getCurrentBytes() == 150, "current bytes " + cache.getCurrentBytes());
+        check(cache.get("a") == large, "the new value was evicted");
+        check(cache.get("c") == null && cache.get("d") == null, "c and d weren't evicted");
+        check(cache.getHitCount() == 3, "hit count " + cache.getHitCount());
+        check(cache.getMissCount() == 3, "miss count " + cache.getMissCount());
+        check(cache.getEvictionCount() == 3, "eviction count " + cache.getEvictionCount());
+        check(cache.remove("a") == large, "remove didn't return the value");
+        check(cache.getCurrentBytes() == 0, "current bytes " + cache.getCurrentBytes());
+        check(cache.getEvictionCount() == 3, "remove counted as an eviction");
+        cache.put("e", new byte[10]);
+        cache.put("f", new byte[20]);
+        cache.trimToSize(25);
+        check(cache.getCurrentBytes() == 20, "current bytes " + cache.getCurrentBytes());
+        check(cache.size() == 1, "size " + cache.size());
+        check(cache.containsKey("f") && !cache.containsKey("e"), "trimmed the wrong value");
+        cache.clear();
+        check(cache.getCurrentBytes() == 0 && cache.isEmpty(), "clear left values");
+    }
+
+    /**
+     * Runs random gets, puts, removes and trims against a list of keys in least recently used
+     * order.
+     */
+    private static void testAgainstModel() {
+        int maxBytes = 1000;
+        SoftCache<Integer, byte[]> cache = new SoftCache<>(maxBytes, v -> v.length);
+        Random random = new Random(1);
+        List<Integer> lru = new ArrayList<>();
+        Map<Integer, byte[]> values = new HashMap<>();
+        long bytes = 0;
+        long hits = 0;
+        long misses = 0;
+        long evictions = 0;
+        for (int op = 0; op < 20000; op++) {
+            Integer key = random.nextInt(40);
+            int what = random.nextInt(20);
+            String where = "op " + op;
+            if (what < 10) {
+                byte[] value = cache.get(key);
+                if (lru.remove(key)) {
+                    lru.add(key);
+                    hits++;
+                    check(value == values.get(key), where + ": wrong value for " + key);
+                } else {
+                    misses++;
+                    check(value == null, where + ": " + key + " should have been evicted");
+                }
+            } else if (what < 17) {
+                // Now and then a value over the whole budget, which must be kept anyway.
+                byte[] value = new byte[random.nextInt(50) == 0 ? 1200 : random.nextInt(300)];
+                byte[] old = cache.put(key, value);
+                check(old == values.get(key), where + ": put returned the wrong old value");
+                if (lru.remove(key)) {
+                    bytes -= old.length;
+                }
+                bytes += value.length;
+                while (bytes > maxBytes && lru.size() > 0) {
+                    bytes -= values.remove(lru.remove(0)).length;
+                    evictions++;
+                }
+                lru.add(key);
+                values.put(key, value);
+            } else if (what < 19) {
+                byte[] old = cache.remove(key);
+                check(old == values.remove(key), where + ": remove returned the wrong value");
+                if (lru.remove(key)) {
+                    bytes -= old.length;
+                }
+            } else {
+                long budget = random.nextInt(maxBytes);
+                cache.trimToSize(budget);
+                while (bytes > budget && lru.size() > 0) {
+                    bytes -= values.remove(lru.remove(0)).length;
+                    evictions++;
+                }
+            }
+            check(cache.getCurrentBytes() == bytes,
+                where + ": current bytes " + cache.getCurrentBytes() + ", expected " + bytes);
+            check(cache.getHitCount() == hits, where + ": hit count " + cache.getHitCount());
+            check(cache.getMissCount() == misses, where + ": miss count " + cache.getMissCount());
+            check(cache.getEvictionCount() == evictions,
+                where + ": eviction count " + cache.getEvictionCount());
+        }
+        check(evictions > 1000, "only " + evictions + " evictions");
+        check(cache.keySet().equals(new HashSet<>(lru)), "holds " + cache.keySet()
+            + ", expected " + lru);
+    }
+
+    private static void testEstimateImageBytes() {
+        check(SoftCache.estimateImageBytes(new BufferedImage(10, 20, BufferedImage.TYPE_BYTE_GRAY))
+            == 800, "BufferedImage weight");
+        check(SoftCache.estimateImageBytes("not an image") == 0, "String weight");
+        check(SoftCache.estimateImageBytes(null) == 0, "null weight");
+        // Images still loading don't know their size yet, and are guessed to be of some size.
+        long unknown = SoftCache.estimateImageBytes(new LoadingImage());
+        check(unknown >= 1024, "unknown size weight " + unknown);
+        SoftCache<String, Image> cache = new SoftCache<>(4000, SoftCache::estimateImageBytes);
+        cache.put("a", new BufferedImage(20, 20, BufferedImage.TYPE_INT_ARGB));
+        cache.put("b", new BufferedImage(20, 20, BufferedImage.TYPE_INT_ARGB));
+        check(cache.getCurrentBytes() == 3200, "current bytes " + cache.getCurrentBytes());
+        cache.put("c", new BufferedImage(20, 20, BufferedImage.TYPE_INT_ARGB));
+        check(cache.getCurrentBytes() == 3200 && !cache.containsKey("a"), "a wasn't evicted");
+    }
+
+    private static void testTrimAll() {
+        SoftCache<Integer, byte[]> small = new SoftCache<>(1000, v -> v.length);
+        SoftCache<Integer, byte[]> large = new SoftCache<>(10000, v -> v.length);
+        SoftCache<Integer, byte[]> soft = new SoftCache<>();
+        for (int i = 0; i < 10; i++) {
+            small.put(i, new byte[100]);
+            large.put(i, new byte[1000]);
+            soft.put(i, new byte[1000]);
+        }
+        SoftCache.trimAll(0.5f);
+        check(small.getCurrentBytes() == 500, "small holds " + small.getCurrentBytes());
+        check(large.getCurrentBytes() == 5000, "large holds " + large.getCurrentBytes());
+        check(small.containsKey(9) && !small.containsKey(4), "small trimmed the wrong values");
+        SoftCache.trimAll(0);
+        check(small.isEmpty() && large.isEmpty(), "trimAll(0) left values");
+        check(soft.get(9) != null, "trimAll emptied a soft cache");
+    }
+
+    /**
+     * Soft references are all cleared before an OutOfMemoryError, so a bounded cache mustn't
+     * lose anything to one.
+     */
+    private static void testMemoryPressure() {
+        SoftCache<Integer, byte[]> cache = new SoftCache<>(100000, v -> v.length);
+        for (int i = 0; i < 10; i++) {
+            cache.put(i, new byte[10000]);
+        }
+        List<long[]> hog = new ArrayList<>();
+        try {
+            while (true) {
+                hog.add(new long[1 << 20]);
+            }
+        } catch (OutOfMemoryError expected) {
+            hog = null;
+        }
+        for (int i = 0; i < 10; i++) {
+            check(cache.get(i) != null, "value " + i + " was cleared");
+        }
+        check(cache.getEvictionCount() == 0, "eviction count " + cache.getEvictionCount());
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new RuntimeException(message);
+        }
+    }
+
+    private static final class LoadingImage extends Image {
+
+        @Override
+        public int getWidth(ImageObserver observer) {
+            return -1;
+        }
+
+        @Override
+        public int getHeight(ImageObserver observer) {
+            return -1;
+        }
+
+        @Override
+        public ImageProducer getSource() {
+            return null;
+        }
+
+        @Override
+        public Graphics getGraphics() {
+            return null;
+        }
+
+        @Override
+        public Object getProperty(String name, ImageObserver observer) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * @test
+ * @summary Checks that a bounded ImageCache keeps exactly its least recently used images within
+ *          its byte budget, flushes what it evicts, counts hits, misses and evictions, trims on
+ *          demand and holds its images through memory pressure
+ * @run main/othervm -Xmx64m BoundedImageCacheTest
+ */
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import sun.awt.image.ImageCache;
+
+public final class BoundedImageCacheTest {
+
+    private BoundedImageCacheTest() {
+    }
+
+    public static void main(String[] args) {
+        testLru();
+        testAgainstModel();
+        testTrimAll();
+        testMemoryPressure();
+    }
+
+    private static void testLru() {
+        ImageCache cache = ImageCache.createBounded(400);
+        check(cache.getMaxBytes() == 400, "max bytes " + cache.getMaxBytes());
+        Key a = new Key(0, 30);
+        Key b = new Key(1, 30);
+        Key c = new Key(2, 30);
+        Key d = new Key(3, 30);
+        TrackedImage imageA = new TrackedImage();
+        TrackedImage imageB = new TrackedImage();
+        cache.setImage(a, imageA);
+        cache.setImage(b, imageB);
+        cache.setImage(c, new TrackedImage());
+        check(cache.getCurrentBytes() == 360, "current bytes " + cache.getCurrentBytes());
+        check(cache.getImage(a) == imageA, "a is missing");
+        // a was used last, so b is the least recently used and makes room for d.
+        cache.setImage(d, new TrackedImage());
+        check(cache.getImage(b) == null, "b wasn't evicted");
+        check(imageB.flushes == 1, "b was flushed " + imageB.flushes + " times");
+        check(imageA.flushes == 0, "a was flushed");
+        check(cache.getImage(a) == imageA, "a was evicted");
+        check(cache.getCurrentBytes() == 360, "current bytes " + cache.getCurrentBytes());
+        // Setting an image that's already cached keeps the first one.
+        cache.setImage(a, new TrackedImage());
+        check(cache.getImage(a) == imageA, "a was replaced");
+        check(cache.getHitCount() == 3, "hit count " + cache.getHitCount());
+        check(cache.getMissCount() == 1, "miss count " + cache.getMissCount());
+        check(cache.getEvictionCount() == 1, "eviction count " + cache.getEvictionCount());
+        // c is now the least recently used, then d.
+        cache.trimToSize(200);
+        check(cache.getCurrentBytes() == 120, "current bytes " + cache.getCurrentBytes());
+        check(cache.getEvictionCount() == 3, "eviction count " + cache.getEvictionCount());
+        check(cache.getImage(a) == imageA, "a was trimmed");
+        cache.flush();
+        check(cache.getCurrentBytes() == 0, "current bytes " + cache.getCurrentBytes());
+        check(cache.getImage(a) == null, "a survived the flush");
+    }
+
+    /**
+     * Runs random gets, sets and trims against a list of keys in least recently used order.
+     */
+    private static void testAgainstModel() {
+        int maxPixels = 1000;
+        ImageCache cache = ImageCache.createBounded(maxPixels * 4);
+        Random random = new Random(1);
+        Key[] keys = new Key[40];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = new Key(i, 1 + random.nextInt(300));
+        }
+        List<Key> lru = new ArrayList<>();
+        Map<Key, TrackedImage> images = new HashMap<>();
+        List<TrackedImage> evicted = new ArrayList<>();
+        long pixels = 0;
+        long hits = 0;
+        long misses = 0;
+        for (int op = 0; op < 20000; op++) {
+            Key key = keys[random.nextInt(keys.length)];
+            int what = random.nextInt(20);
+            String where = "op " + op;
+            if (what < 12) {
+                TrackedImage image = (TrackedImage) cache.getImage(key);
+                if (lru.remove(key)) {
+                    lru.add(key);
+                    hits++;
+                    check(image == images.get(key), where + ": wrong image for " + key.id);
+                } else {
+                    misses++;
+                    check(image == null, where + ": " + key.id + " should have been evicted");
+                }
+            } else if (what < 19) {
+                TrackedImage image = new TrackedImage();
+                cache.setImage(key, image);
+                if (lru.remove(key)) {
+                    lru.add(key);
+                } else {
+                    pixels += key.pixels;
+                    while (pixels > maxPixels && !lru.isEmpty()) {
+                        pixels -= evict(lru, images, evicted);
+                    }
+                    lru.add(key);
+                    images.put(key, image);
+                }
+            } else {
+                long bytes = random.nextInt(maxPixels * 4);
+                cache.trimToSize(bytes);
+                while (pixels > bytes / 4 && !lru.isEmpty()) {
+                    pixels -= evict(lru, images, evicted);
+                }
+            }
+            check(cache.getCurrentBytes() == pixels * 4,
+                where + ": current bytes " + cache.getCurrentBytes() + ", expected " + pixels * 4);
+            check(cache.getHitCount() == hits, where + ": hit count " + cache.getHitCount());
+            check(cache.getMissCount() == misses, where + ": miss count " + cache.getMissCount());
+            check(cache.getEvictionCount() == evicted.size(),
+                where + ": eviction count " + cache.getEvictionCount());
+        }
+        check(evicted.size() > 1000, "only " + evicted.size() + " evictions");
+        for (TrackedImage image : evicted) {
+            check(image.flushes == 1, "an evicted image was flushed " + image.flushes + " times");
+        }
+        for (TrackedImage image : images.values()) {
+            check(image.flushes == 0, "a cached image was flushed");
+        }
+    }
+
+    private static int evict(List<Key> lru, Map<Key, TrackedImage> images,
+            List<TrackedImage> evicted) {
+        Key eldest = lru.remove(0);
+        evicted.add(images.remove(eldest));
+        return eldest.pixels;
+    }
+
+    private static void testTrimAll() {
+        ImageCache small = ImageCache.createBounded(4000);
+        ImageCache large = ImageCache.createBounded(40000);
+        for (int i = 0; i < 10; i++) {
+            small.setImage(new Key(i, 100), new TrackedImage());
+            large.setImage(new Key(i, 1000), new TrackedImage());
+        }
+        check(small.getCurrentBytes() == 4000, "small holds " + small.getCurrentBytes());
+        check(large.getCurrentBytes() == 40000, "large holds " + large.getCurrentBytes());
+        ImageCache.trimAll(0.5f);
+        check(small.getCurrentBytes() == 2000, "small holds " + small.getCurrentBytes());
+        check(large.getCurrentBytes() == 20000, "large holds " + large.getCurrentBytes());
+        check(small.getImage(new Key(9, 100)) != null, "small lost its newest image");
+        check(small.getImage(new Key(4, 100)) == null, "small kept an old image");
+        ImageCache.trimAll(0);
+        check(small.getCurrentBytes() == 0, "small holds " + small.getCurrentBytes());
+        check(large.getCurrentBytes() == 0, "large holds " + large.getCurrentBytes());
+    }
+
+    /**
+     * Soft references are all cleared before an OutOfMemoryError, so a bounded cache mustn't
+     * lose anything to one.
+     */
+    private static void testMemoryPressure() {
+        ImageCache cache = ImageCache.createBounded(4000);
+        TrackedImage[] images = new TrackedImage[10];
+        for (int i = 0; i < images.length; i++) {
+            images[i] = new TrackedImage();
+            cache.setImage(new Key(i, 100), images[i]);
+            images[i] = null;
+        }
+        exhaustMemory();
+        for (int i = 0; i < images.length; i++) {
+            check(cache.getImage(new Key(i, 100)) != null, "image " + i + " was cleared");
+        }
+        check(cache.getEvictionCount() == 0, "eviction count " + cache.getEvictionCount());
+    }
+
+    private static void exhaustMemory() {
+        List<long[]> hog = new ArrayList<>();
+        try {
+            while (true) {
+                hog.add(new long[1 << 20]);
+            }
+        } catch (OutOfMemoryError expected) {
+            hog = null;
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new RuntimeException(message);
+        }
+    }
+
+    private static final class Key implements ImageCache.PixelsKey {
+        final int id;
+        final int pixels;
+
+        Key(int id, int pixels) {
+            this.id = id;
+            this.pixels = pixels;
+        }
+
+        @Override
+        public int getPixelCount() {
+            return pixels;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).id == id && ((Key) o).pixels == pixels;
+        }
+
+        @Override
+        public int hashCode() {
+            return id * 31 + pixels;
+        }
+    }
+
+    private static final class TrackedImage extends BufferedImage {
+        int flushes;
+
+        TrackedImage() {
+            super(1, 1, BufferedImage.TYPE_INT_ARGB);
+        }
+
+        @Override
+        public void flush() {
+            flushes++;
+            super.flush();
+        }
+    }
+}
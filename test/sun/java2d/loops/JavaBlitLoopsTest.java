@@ -0,0 +1,249 @@
+/*
+ * @test
+ * @summary Compares the pure-Java Blit and BlitBg loops with the general loops they replace,
+ *          for every source, destination and composite they are registered for, and checks
+ *          that overlapping copies within one surface read each pixel before overwriting it
+ * @run main JavaBlitLoopsTest
+ */
+
+import java.awt.AlphaComposite;
+import java.awt.Composite;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.IndexColorModel;
+import java.util.Arrays;
+import java.util.Random;
+
+import sun.awt.image.BufImgSurfaceData;
+import sun.java2d.SurfaceData;
+import sun.java2d.loops.Blit;
+import sun.java2d.loops.BlitBg;
+import sun.java2d.loops.CompositeType;
+import sun.java2d.loops.MaskBlit;
+import sun.java2d.loops.SurfaceType;
+import sun.java2d.pipe.Region;
+
+public final class JavaBlitLoopsTest {
+
+    private static final int W = 37;
+    private static final int H = 23;
+
+    private static final SurfaceType[] TYPES = {
+        SurfaceType.IntArgb, SurfaceType.IntArgbPre, SurfaceType.IntRgb,
+        SurfaceType.ThreeByteBgr, SurfaceType.ByteGray, SurfaceType.Index8Gray,
+    };
+
+    private static final CompositeType[] COMPOSITE_TYPES = {
+        CompositeType.SrcNoEa, CompositeType.Src, CompositeType.Src,
+        CompositeType.SrcOver, CompositeType.SrcOver,
+    };
+
+    private static final Composite[] COMPOSITES = {
+        AlphaComposite.Src, AlphaComposite.Src.derive(0.5f), AlphaComposite.Src.derive(0.2f),
+        AlphaComposite.SrcOver, AlphaComposite.SrcOver.derive(0.5f),
+    };
+
+    private static final int[] BACKGROUNDS = {0xFF3080C0, 0x80FF2040, 0};
+
+    // A clip of many bands, each with two spans.
+    private static final Region CLIP =
+        Region.getInstance(new Ellipse2D.Double(-4, -2, W + 6, H + 3), new AffineTransform())
+            .getDifference(Region.getInstanceXYWH(12, 0, 5, H));
+
+    private static final Random random = new Random(1);
+
+    private JavaBlitLoopsTest() {
+    }
+
+    public static void main(String[] args) {
+        for (int src = 0; src < TYPES.length; src++) {
+            for (int dst = 0; dst < TYPES.length; dst++) {
+                for (int c = 0; c < COMPOSITES.length; c++) {
+                    testBlit(src, dst, c);
+                    for (int bg : BACKGROUNDS) {
+                        testBlitBg(src, dst, c, bg);
+                    }
+                }
+            }
+        }
+        for (int type = 0; type < TYPES.length; type++) {
+            for (int c = 0; c < COMPOSITES.length; c++) {
+                for (int dx = -2; dx <= 2; dx++) {
+                    for (int dy = -2; dy <= 2; dy++) {
+                        testOverlap(type, c, dx, dy);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void testBlit(int srcType, int dstType, int c) {
+        BufferedImage src = createImage(srcType);
+        BufferedImage dst = createImage(dstType);
+        BufferedImage expected = copyOf(dst);
+        Blit blit = Blit.locate(TYPES[srcType], COMPOSITE_TYPES[c], TYPES[dstType]);
+        checkJava(blit);
+        blit.Blit(data(src), data(dst), COMPOSITES[c], CLIP, 3, 1, 2, 4, W - 4, H - 5);
+        referenceBlit(src, expected, c, 3, 1, 2, 4, W - 4, H - 5);
+        compare(dst, expected, "Blit " + describe(srcType, dstType, c));
+    }
+
+    private static void testBlitBg(int srcType, int dstType, int c, int bg) {
+        BufferedImage src = createImage(srcType);
+        BufferedImage dst = createImage(dstType);
+        BufferedImage expected = copyOf(dst);
+        BlitBg blit = BlitBg.locate(TYPES[srcType], COMPOSITE_TYPES[c], TYPES[dstType]);
+        checkJava(blit);
+        blit.BlitBg(data(src), data(dst), COMPOSITES[c], CLIP, bg, 1, 2, 3, 1, W - 4, H - 3);
+        // The source over the background color, then blitted with the composite.
+        BufferedImage over = new BufferedImage(W, H, BufferedImage.TYPE_INT_ARGB_PRE);
+        Arrays.fill(((DataBufferInt) over.getRaster().getDataBuffer()).getData(),
+            premultiply(bg));
+        MaskBlit.locate(TYPES[srcType], CompositeType.SrcOverNoEa, SurfaceType.IntArgbPre)
+            .MaskBlit(data(src), data(over), AlphaComposite.SrcOver, null, 0, 0, 0, 0, W, H,
+                null, 0, 0);
+        MaskBlit.locate(SurfaceType.IntArgbPre, COMPOSITE_TYPES[c], TYPES[dstType])
+            .MaskBlit(data(over), data(expected), COMPOSITES[c], CLIP, 1, 2, 3, 1, W - 4, H - 3,
+                null, 0, 0);
+        compare(dst, expected,
+            "BlitBg " + describe(srcType, dstType, c) + " bg " + Integer.toHexString(bg));
+    }
+
+    private static void testOverlap(int type, int c, int dx, int dy) {
+        BufferedImage image = createImage(type);
+        BufferedImage expected = copyOf(image);
+        Blit blit = Blit.locate(TYPES[type], COMPOSITE_TYPES[c], TYPES[type]);
+        blit.Blit(data(image), data(image), COMPOSITES[c], CLIP, 2, 2, 2 + dx, 2 + dy, W - 4,
+            H - 4);
+        referenceBlit(copyOf(expected), expected, c, 2, 2, 2 + dx, 2 + dy, W - 4, H - 4);
+        compare(image, expected,
+            "overlapping Blit " + describe(type, type, c) + " by (" + dx + ", " + dy + ")");
+    }
+
+    /**
+     * Blits as {@link Blit}'s general loop for these composites does: through the
+     * {@link MaskBlit} loop, without a mask.
+     */
+    private static void referenceBlit(
+            BufferedImage src, BufferedImage dst, int c, int srcx, int srcy, int dstx, int dsty,
+            int w, int h) {
+        MaskBlit.locate(typeOf(src), COMPOSITE_TYPES[c], typeOf(dst))
+            .MaskBlit(data(src), data(dst), COMPOSITES[c], CLIP, srcx, srcy, dstx, dsty, w, h,
+                null, 0, 0);
+    }
+
+    private static void checkJava(Object loop) {
+        if (!loop.getClass().getName().startsWith("sun.java2d.loops.JavaBlitLoops")) {
+            throw new RuntimeException("Not a pure-Java loop: " + loop);
+        }
+    }
+
+    private static String describe(int srcType, int dstType, int c) {
+        return TYPES[srcType] + " to " + TYPES[dstType] + " with " + COMPOSITE_TYPES[c]
+            + " alpha " + ((AlphaComposite) COMPOSITES[c]).getAlpha();
+    }
+
+    private static SurfaceType typeOf(BufferedImage image) {
+        return data(image).getSurfaceType();
+    }
+
+    private static SurfaceData data(BufferedImage image) {
+        return BufImgSurfaceData.createData(image);
+    }
+
+    private static BufferedImage createImage(int type) {
+        BufferedImage image;
+        switch (type) {
+            case 0:
+                image = new BufferedImage(W, H, BufferedImage.TYPE_INT_ARGB);
+                break;
+            case 1:
+                image = new BufferedImage(W, H, BufferedImage.TYPE_INT_ARGB_PRE);
+                break;
+            case 2:
+                image = new BufferedImage(W, H, BufferedImage.TYPE_INT_RGB);
+                break;
+            case 3:
+                image = new BufferedImage(W, H, BufferedImage.TYPE_3BYTE_BGR);
+                break;
+            case 4:
+                image = new BufferedImage(W, H, BufferedImage.TYPE_BYTE_GRAY);
+                break;
+            default:
+                // Fewer levels than gray values, so that stores have to pick the nearest.
+                byte[] levels = new byte[64];
+                for (int i = 0; i < levels.length; i++) {
+                    levels[i] = (byte) (i * 255 / (levels.length - 1));
+                }
+                image = new BufferedImage(W, H, BufferedImage.TYPE_BYTE_INDEXED,
+                    new IndexColorModel(8, levels.length, levels, levels, levels));
+                break;
+        }
+        if (typeOf(image) != TYPES[type]) {
+            throw new RuntimeException("Expected " + TYPES[type] + ", got " + typeOf(image));
+        }
+        if (image.getRaster().getDataBuffer() instanceof DataBufferInt) {
+            int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            for (int i = 0; i < pixels.length; i++) {
+                // Often fully opaque or transparent, as images usually are.
+                int alpha = new int[] {0, 0xFF, random.nextInt(256)}[random.nextInt(3)];
+                int argb = (alpha << 24) | random.nextInt(0x1000000);
+                pixels[i] = type == 1 ? premultiply(argb) : type == 2 ? argb & 0xFFFFFF : argb;
+            }
+        } else {
+            byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+            int limit = type == 5 ? 64 : 256;
+            for (int i = 0; i < pixels.length; i++) {
+                pixels[i] = (byte) random.nextInt(limit);
+            }
+        }
+        return image;
+    }
+
+    private static BufferedImage copyOf(BufferedImage image) {
+        BufferedImage copy = new BufferedImage(image.getColorModel(),
+            image.getRaster().createCompatibleWritableRaster(), image.isAlphaPremultiplied(),
+            null);
+        copy.setData(image.getRaster());
+        return copy;
+    }
+
+    private static int premultiply(int argb) {
+        int a = argb >>> 24;
+        int r = ((argb >> 16) & 0xFF) * a;
+        int g = ((argb >> 8) & 0xFF) * a;
+        int b = (argb & 0xFF) * a;
+        return (a << 24) | (((r + 127) / 255) << 16) | (((g + 127) / 255) << 8)
+            | ((b + 127) / 255);
+    }
+
+    private static void compare(BufferedImage actual, BufferedImage expected, String what) {
+        Object actualData = actual.getRaster().getDataElements(0, 0, W, H, null);
+        Object expectedData = expected.getRaster().getDataElements(0, 0, W, H, null);
+        int bands = actual.getRaster().getNumDataElements();
+        for (int i = 0; i < W * H * bands; i++) {
+            int a;
+            int e;
+            if (actual.getType() == BufferedImage.TYPE_INT_ARGB) {
+                // The general loops work with premultiplied colors, so a translucent color may
+                // come back from them as another one that premultiplies the same.
+                a = premultiply(((int[]) actualData)[i]);
+                e = premultiply(((int[]) expectedData)[i]);
+            } else if (actualData instanceof int[]) {
+                a = ((int[]) actualData)[i];
+                e = ((int[]) expectedData)[i];
+            } else {
+                a = ((byte[]) actualData)[i] & 0xFF;
+                e = ((byte[]) expectedData)[i] & 0xFF;
+            }
+            if (a != e) {
+                throw new RuntimeException(what + ": pixel (" + (i / bands % W) + ", "
+                    + (i / bands / W) + ") is " + Integer.toHexString(a) + ", expected "
+                    + Integer.toHexString(e));
+            }
+        }
+    }
+}
@@ -0,0 +1,477 @@
+/*
+ * @test
+ * @summary Compares the pure-Java MaskFill and MaskBlit loops with the Porter-Duff equations of
+ *          every AlphaComposite rule, for every format they are registered for, and their
+ *          antialiased parallelograms with the exact area each pixel has in common with them
+ * @run main JavaMaskLoopsTest
+ */
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Area;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.IndexColorModel;
+import java.util.Random;
+
+import sun.awt.image.BufImgSurfaceData;
+import sun.java2d.SunGraphics2D;
+import sun.java2d.SurfaceData;
+import sun.java2d.loops.CompositeType;
+import sun.java2d.loops.MaskBlit;
+import sun.java2d.loops.MaskFill;
+import sun.java2d.loops.SurfaceType;
+import sun.java2d.pipe.Region;
+
+public final class JavaMaskLoopsTest {
+
+    private static final int W = 19;
+    private static final int H = 13;
+
+    // The formats the loops are registered for, by the types of images created for them.
+    private static final int INT_ARGB = 0;
+    private static final int INT_ARGB_PRE = 1;
+    private static final int INT_RGB = 2;
+    private static final int THREE_BYTE_BGR = 3;
+    private static final int BYTE_GRAY = 4;
+    private static final int INDEX8_GRAY = 5;
+    private static final int NUM_TYPES = 6;
+
+    // Levels of the Index8Gray palette, fewer than gray values so that stores pick the nearest.
+    private static final int GRAY_LEVELS = 64;
+
+    // Allowed difference, in 8-bit levels, from the exact result: the loops round each product.
+    private static final double TOLERANCE = 3;
+
+    private static final float[] EXTRA_ALPHAS = {1f, 0.6f};
+
+    private static final Region CLIP =
+        Region.getInstance(new Ellipse2D.Double(-2, -1, W + 3, H + 2), new AffineTransform())
+            .getDifference(Region.getInstanceXYWH(8, 0, 3, H));
+
+    private static final Random random = new Random(1);
+
+    private JavaMaskLoopsTest() {
+    }
+
+    public static void main(String[] args) {
+        int cases = 0;
+        for (int rule = AlphaComposite.CLEAR; rule <= AlphaComposite.XOR; rule++) {
+            for (float extraAlpha : EXTRA_ALPHAS) {
+                AlphaComposite comp = AlphaComposite.getInstance(rule, extraAlpha);
+                for (int dst = 0; dst < NUM_TYPES; dst++) {
+                    testMaskFill(comp, dst, cases++ % 4 == 0);
+                    for (int src = 0; src < NUM_TYPES; src++) {
+                        testMaskBlit(comp, src, dst, cases++ % 4 == 0);
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < 300; i++) {
+            testPgram(i);
+        }
+    }
+
+    private static void testMaskFill(AlphaComposite comp, int dstType, boolean nullMask) {
+        BufferedImage dst = createImage(dstType);
+        BufferedImage before = copyOf(dst);
+        SunGraphics2D sg2d = graphics(dst, new Color(random.nextInt(), true));
+        sg2d.setComposite(comp);
+        MaskFill loop = MaskFill.locate(SurfaceType.AnyColor,
+            CompositeType.forAlphaComposite(comp), data(dst).getSurfaceType());
+        checkJava(loop);
+        byte[] mask = nullMask ? null : createMask();
+        int maskoff = 3;
+        int maskscan = W + 2;
+        loop.MaskFill(sg2d, data(dst), comp, 2, 1, W - 4, H - 3, mask, maskoff, maskscan);
+
+        double[] color = premultiplied(sg2d.eargb);
+        for (int y = 0; y < H; y++) {
+            for (int x = 0; x < W; x++) {
+                double[] d = read(before, x, y);
+                double[] expected = d;
+                if (x >= 2 && x < W - 2 && y >= 1 && y < H - 2) {
+                    double m = mask == null ? 1
+                        : (mask[maskoff + (y - 1) * maskscan + (x - 2)] & 0xFF) / 255.0;
+                    expected = composite(comp.getRule(), color, d, m);
+                }
+                check(dst, x, y, expected, "MaskFill " + describe(comp, -1, dstType, nullMask));
+            }
+        }
+    }
+
+    private static void testMaskBlit(
+            AlphaComposite comp, int srcType, int dstType, boolean nullMask) {
+        BufferedImage src = createImage(srcType);
+        BufferedImage dst = createImage(dstType);
+        BufferedImage before = copyOf(dst);
+        MaskBlit loop = MaskBlit.locate(data(src).getSurfaceType(),
+            CompositeType.forAlphaComposite(comp), data(dst).getSurfaceType());
+        checkJava(loop);
+        byte[] mask = nullMask ? null : createMask();
+        int maskoff = 3;
+        int maskscan = W + 2;
+        loop.MaskBlit(data(src), data(dst), comp, CLIP, 1, 2, 2, 1, W - 4, H - 3, mask, maskoff,
+            maskscan);
+
+        for (int y = 0; y < H; y++) {
+            for (int x = 0; x < W; x++) {
+                double[] d = read(before, x, y);
+                double[] expected = d;
+                if (x >= 2 && x < W - 2 && y >= 1 && y < H - 2 && CLIP.contains(x, y)) {
+                    double m = mask == null ? 1
+                        : (mask[maskoff + (y - 1) * maskscan + (x - 2)] & 0xFF) / 255.0;
+                    double[] s = read(src, x - 1, y + 1);
+                    for (int i = 0; i < 4; i++) {
+                        s[i] *= comp.getAlpha();
+                    }
+                    expected = composite(comp.getRule(), s, d, m);
+                }
+                check(dst, x, y, expected,
+                    "MaskBlit " + describe(comp, srcType, dstType, nullMask));
+            }
+        }
+    }
+
+    /**
+     * Fills and outlines a random parallelogram in opaque white over transparent black, so that
+     * the alpha of each pixel is its coverage, and compares the coverage with the area the
+     * pixel has in common with the parallelogram, or with the outline.
+     */
+    private static void testPgram(int i) {
+        double x = random.nextDouble() * W;
+        double y = random.nextDouble() * H;
+        double dx1 = (random.nextDouble() - 0.5) * W;
+        double dy1 = (random.nextDouble() - 0.5) * H;
+        double dx2 = (random.nextDouble() - 0.5) * W;
+        double dy2 = (random.nextDouble() - 0.5) * H;
+        if (i % 5 == 0) {
+            // Thin, as antialiased lines are.
+            dx2 = -dy1 / 30;
+            dy2 = dx1 / 30;
+        }
+        double lw1 = random.nextDouble() * (i % 7 == 0 ? 1.5 : 0.6);
+        double lw2 = random.nextDouble() * (i % 7 == 0 ? 1.5 : 0.6);
+        String what = "parallelogram (" + x + ", " + y + ") + (" + dx1 + ", " + dy1 + "), ("
+            + dx2 + ", " + dy2 + ")";
+
+        BufferedImage image = new BufferedImage(W, H, BufferedImage.TYPE_INT_ARGB_PRE);
+        SunGraphics2D sg2d = graphics(image, Color.WHITE);
+        MaskFill loop = MaskFill.locate(SurfaceType.AnyColor, CompositeType.SrcOverNoEa,
+            data(image).getSurfaceType());
+        checkJava(loop);
+        loop.FillAAPgram(sg2d, data(image), sg2d.composite, x, y, dx1, dy1, dx2, dy2);
+        Area fill = pgram(x, y, dx1, dy1, dx2, dy2);
+        checkCoverage(image, fill, "fill of " + what);
+
+        image = new BufferedImage(W, H, BufferedImage.TYPE_INT_ARGB_PRE);
+        sg2d = graphics(image, Color.WHITE);
+        loop.DrawAAPgram(sg2d, data(image), sg2d.composite, x, y, dx1, dy1, dx2, dy2, lw1, lw2);
+        Area outline = pgram(x - (dx1 * lw1 + dx2 * lw2) / 2, y - (dy1 * lw1 + dy2 * lw2) / 2,
+            dx1 * (1 + lw1), dy1 * (1 + lw1), dx2 * (1 + lw2), dy2 * (1 + lw2));
+        if (lw1 < 1 && lw2 < 1) {
+            outline.subtract(pgram(x + (dx1 * lw1 + dx2 * lw2) / 2,
+                y + (dy1 * lw1 + dy2 * lw2) / 2, dx1 * (1 - lw1), dy1 * (1 - lw1),
+                dx2 * (1 - lw2), dy2 * (1 - lw2)));
+        }
+        checkCoverage(image, outline,
+            "outline of " + what + " with line widths " + lw1 + ", " + lw2);
+    }
+
+    private static Area pgram(double x, double y, double dx1, double dy1, double dx2, double dy2) {
+        Path2D path = new Path2D.Double();
+        path.moveTo(x, y);
+        path.lineTo(x + dx1, y + dy1);
+        path.lineTo(x + dx1 + dx2, y + dy1 + dy2);
+        path.lineTo(x + dx2, y + dy2);
+        path.closePath();
+        return new Area(path);
+    }
+
+    private static void checkCoverage(BufferedImage image, Area shape, String what) {
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        for (int y = 0; y < H; y++) {
+            for (int x = 0; x < W; x++) {
+                Area pixel = new Area(new Rectangle2D.Double(x, y, 1, 1));
+                pixel.intersect(shape);
+                int expected = (int) Math.round(area(pixel) * 255);
+                int actual = pixels[y * W + x] >>> 24;
+                if (Math.abs(actual - expected) > 1) {
+                    throw new RuntimeException(what + ": pixel (" + x + ", " + y
+                        + ") has coverage " + actual + ", expected " + expected);
+                }
+            }
+        }
+    }
+
+    private static double area(Area area) {
+        double sum = 0;
+        double[] coords = new double[6];
+        double startX = 0;
+        double startY = 0;
+        double lastX = 0;
+        double lastY = 0;
+        for (PathIterator pi = area.getPathIterator(null); !pi.isDone(); pi.next()) {
+            switch (pi.currentSegment(coords)) {
+                case PathIterator.SEG_MOVETO:
+                    startX = lastX = coords[0];
+                    startY = lastY = coords[1];
+                    break;
+                case PathIterator.SEG_LINETO:
+                    sum += lastX * coords[1] - coords[0] * lastY;
+                    lastX = coords[0];
+                    lastY = coords[1];
+                    break;
+                default:
+                    sum += lastX * startY - startX * lastY;
+                    lastX = startX;
+                    lastY = startY;
+                    break;
+            }
+        }
+        return Math.abs(sum) / 2;
+    }
+
+    /**
+     * @return the premultiplied components, alpha first, from 0 to 255, of the Porter-Duff rule
+     *         applied to {@code s} over {@code d}, blended with {@code d} by the coverage
+     */
+    private static double[] composite(int rule, double[] s, double[] d, double coverage) {
+        double as = s[0] / 255;
+        double ad = d[0] / 255;
+        double fs;
+        double fd;
+        switch (rule) {
+            case AlphaComposite.CLEAR:
+                fs = 0;
+                fd = 0;
+                break;
+            case AlphaComposite.SRC:
+                fs = 1;
+                fd = 0;
+                break;
+            case AlphaComposite.SRC_OVER:
+                fs = 1;
+                fd = 1 - as;
+                break;
+            case AlphaComposite.DST_OVER:
+                fs = 1 - ad;
+                fd = 1;
+                break;
+            case AlphaComposite.SRC_IN:
+                fs = ad;
+                fd = 0;
+                break;
+            case AlphaComposite.DST_IN:
+                fs = 0;
+                fd = as;
+                break;
+            case AlphaComposite.SRC_OUT:
+                fs = 1 - ad;
+                fd = 0;
+                break;
+            case AlphaComposite.DST_OUT:
+                fs = 0;
+                fd = 1 - as;
+                break;
+            case AlphaComposite.DST:
+                fs = 0;
+                fd = 1;
+                break;
+            case AlphaComposite.SRC_ATOP:
+                fs = ad;
+                fd = 1 - as;
+                break;
+            case AlphaComposite.DST_ATOP:
+                fs = 1 - ad;
+                fd = as;
+                break;
+            default:
+                fs = 1 - ad;
+                fd = 1 - as;
+                break;
+        }
+        double[] result = new double[4];
+        for (int i = 0; i < 4; i++) {
+            result[i] = Math.min(255, coverage * (fs * s[i] + fd * d[i]) + (1 - coverage) * d[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Checks a stored pixel against premultiplied components. Opaque formats store the color
+     * divided by its alpha, so they are compared multiplied back by it, as the gray ones are
+     * after converting the expected color to gray.
+     */
+    private static void check(BufferedImage image, int x, int y, double[] expected, String what) {
+        double[] actual = read(image, x, y);
+        int type = typeOf(image);
+        boolean ok;
+        if (type == INT_ARGB || type == INT_ARGB_PRE) {
+            ok = true;
+            for (int i = 0; i < 4; i++) {
+                ok &= Math.abs(actual[i] - expected[i]) <= TOLERANCE;
+            }
+        } else {
+            double alpha = expected[0] / 255;
+            if (type == BYTE_GRAY || type == INDEX8_GRAY) {
+                double gray = (77 * expected[1] + 150 * expected[2] + 29 * expected[3]) / 256;
+                // The palette can only come within half a step of the gray value.
+                double tolerance = TOLERANCE
+                    + (type == INDEX8_GRAY ? 255.0 / (GRAY_LEVELS - 1) / 2 : 0);
+                ok = Math.abs(actual[1] * alpha - gray) <= tolerance;
+            } else {
+                ok = true;
+                for (int i = 1; i < 4; i++) {
+                    ok &= Math.abs(actual[i] * alpha - expected[i]) <= TOLERANCE;
+                }
+            }
+        }
+        if (!ok) {
+            throw new RuntimeException(what + ": pixel (" + x + ", " + y + ") is "
+                + format(actual) + ", expected " + format(expected));
+        }
+    }
+
+    private static String format(double[] argb) {
+        return String.format("[%.1f, %.1f, %.1f, %.1f]", argb[0], argb[1], argb[2], argb[3]);
+    }
+
+    /**
+     * @return the premultiplied components, alpha first, from 0 to 255, of a pixel. Gray values
+     *         are taken as they are stored, as the loops take them, without a color space
+     *         conversion.
+     */
+    private static double[] read(BufferedImage image, int x, int y) {
+        switch (typeOf(image)) {
+            case INT_ARGB_PRE: {
+                int argb = ((int[]) image.getRaster().getDataElements(x, y, null))[0];
+                return new double[] {
+                    argb >>> 24, (argb >> 16) & 0xFF, (argb >> 8) & 0xFF, argb & 0xFF,
+                };
+            }
+            case BYTE_GRAY: {
+                int gray = image.getRaster().getSample(x, y, 0);
+                return new double[] {255, gray, gray, gray};
+            }
+            case INDEX8_GRAY: {
+                int gray = image.getColorModel().getRGB(image.getRaster().getSample(x, y, 0))
+                    & 0xFF;
+                return new double[] {255, gray, gray, gray};
+            }
+            default:
+                return premultiplied(image.getRGB(x, y));
+        }
+    }
+
+    private static double[] premultiplied(int argb) {
+        double a = (argb >>> 24) / 255.0;
+        return new double[] {
+            argb >>> 24, ((argb >> 16) & 0xFF) * a, ((argb >> 8) & 0xFF) * a, (argb & 0xFF) * a,
+        };
+    }
+
+    private static byte[] createMask() {
+        byte[] mask = new byte[3 + H * (W + 2)];
+        for (int i = 0; i < mask.length; i++) {
+            mask[i] = (byte) new int[] {0, 0xFF, random.nextInt(256)}[random.nextInt(3)];
+        }
+        return mask;
+    }
+
+    private static BufferedImage createImage(int type) {
+        BufferedImage image;
+        switch (type) {
+            case INT_ARGB:
+                image = new BufferedImage(W, H, BufferedImage.TYPE_INT_ARGB);
+                break;
+            case INT_ARGB_PRE:
+                image = new BufferedImage(W, H, BufferedImage.TYPE_INT_ARGB_PRE);
+                break;
+            case INT_RGB:
+                image = new BufferedImage(W, H, BufferedImage.TYPE_INT_RGB);
+                break;
+            case THREE_BYTE_BGR:
+                image = new BufferedImage(W, H, BufferedImage.TYPE_3BYTE_BGR);
+                break;
+            case BYTE_GRAY:
+                image = new BufferedImage(W, H, BufferedImage.TYPE_BYTE_GRAY);
+                break;
+            default:
+                byte[] levels = new byte[GRAY_LEVELS];
+                for (int i = 0; i < levels.length; i++) {
+                    levels[i] = (byte) (i * 255 / (levels.length - 1));
+                }
+                image = new BufferedImage(W, H, BufferedImage.TYPE_BYTE_INDEXED,
+                    new IndexColorModel(8, levels.length, levels, levels, levels));
+                break;
+        }
+        for (int y = 0; y < H; y++) {
+            for (int x = 0; x < W; x++) {
+                if (type == BYTE_GRAY || type == INDEX8_GRAY) {
+                    image.getRaster().setSample(x, y, 0,
+                        random.nextInt(type == BYTE_GRAY ? 256 : GRAY_LEVELS));
+                } else {
+                    // Often fully opaque or transparent, as images usually are.
+                    int alpha = new int[] {0, 0xFF, random.nextInt(256)}[random.nextInt(3)];
+                    image.setRGB(x, y, (alpha << 24) | random.nextInt(0x1000000));
+                }
+            }
+        }
+        return image;
+    }
+
+    private static int typeOf(BufferedImage image) {
+        switch (image.getType()) {
+            case BufferedImage.TYPE_INT_ARGB:
+                return INT_ARGB;
+            case BufferedImage.TYPE_INT_ARGB_PRE:
+                return INT_ARGB_PRE;
+            case BufferedImage.TYPE_INT_RGB:
+                return INT_RGB;
+            case BufferedImage.TYPE_3BYTE_BGR:
+                return THREE_BYTE_BGR;
+            case BufferedImage.TYPE_BYTE_GRAY:
+                return BYTE_GRAY;
+            default:
+                return INDEX8_GRAY;
+        }
+    }
+
+    private static BufferedImage copyOf(BufferedImage image) {
+        BufferedImage copy = new BufferedImage(image.getColorModel(),
+            image.getRaster().createCompatibleWritableRaster(), image.isAlphaPremultiplied(),
+            null);
+        copy.setData(image.getRaster());
+        return copy;
+    }
+
+    private static SunGraphics2D graphics(BufferedImage image, Color color) {
+        return new SunGraphics2D(data(image), color, Color.BLACK,
+            new Font(Font.DIALOG, Font.PLAIN, 12));
+    }
+
+    private static SurfaceData data(BufferedImage image) {
+        return BufImgSurfaceData.createData(image);
+    }
+
+    private static void checkJava(Object loop) {
+        if (!loop.getClass().getName().startsWith("sun.java2d.loops.JavaMaskLoops")) {
+            throw new RuntimeException("Not a pure-Java loop: " + loop);
+        }
+    }
+
+    private static String describe(AlphaComposite comp, int srcType, int dstType,
+            boolean nullMask) {
+        String[] names = {"IntArgb", "IntArgbPre", "IntRgb", "ThreeByteBgr", "ByteGray",
+            "Index8Gray"};
+        return (srcType < 0 ? "" : names[srcType] + " ") + "to " + names[dstType] + " with rule "
+            + comp.getRule() + " alpha " + comp.getAlpha() + (nullMask ? " without a mask" : "");
+    }
+}
@@ -0,0 +1,521 @@
+/*
+ * @test
+ * @summary Checks that the pure-Java solid-color loops set exactly the pixels of each primitive
+ *          that lie in the clip, for every kind of surface they are registered for, under
+ *          rectangular and shape clips
+ * @run main JavaSolidLoopsTest
+ */
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Area;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import java.util.Random;
+
+import sun.awt.SunHints;
+import sun.awt.image.BufImgSurfaceData;
+import sun.java2d.SunGraphics2D;
+import sun.java2d.SurfaceData;
+import sun.java2d.loops.CompositeType;
+import sun.java2d.loops.DrawLine;
+import sun.java2d.loops.DrawPath;
+import sun.java2d.loops.DrawPolygons;
+import sun.java2d.loops.DrawRect;
+import sun.java2d.loops.FillPath;
+import sun.java2d.loops.FillRect;
+import sun.java2d.loops.FillSpans;
+import sun.java2d.loops.ProcessPath;
+import sun.java2d.loops.SurfaceType;
+import sun.java2d.pipe.Region;
+
+public final class JavaSolidLoopsTest {
+
+    private static final int W = 53;
+    private static final int H = 41;
+
+    // One image type for each kind of surface the loops are registered for.
+    private static final int[] IMAGE_TYPES = {
+        BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB,
+        BufferedImage.TYPE_USHORT_565_RGB, BufferedImage.TYPE_USHORT_GRAY,
+        BufferedImage.TYPE_BYTE_GRAY, BufferedImage.TYPE_3BYTE_BGR,
+        BufferedImage.TYPE_4BYTE_ABGR,
+    };
+
+    private static final Shape[] CLIPS = {
+        null,
+        new Rectangle(5, 3, W - 12, H - 9),
+        clipShape(),
+    };
+
+    private static final Random random = new Random(1);
+
+    private JavaSolidLoopsTest() {
+    }
+
+    public static void main(String[] args) {
+        for (int type : IMAGE_TYPES) {
+            for (Shape clip : CLIPS) {
+                for (int i = 0; i < 20; i++) {
+                    // A subimage, so that the surface doesn't start at the array's start.
+                    boolean sub = i % 2 == 1;
+                    check(type, clip, sub, new FillRectOp());
+                    check(type, clip, sub, new FillSpansOp());
+                    check(type, clip, sub, new DrawLineOp());
+                    check(type, clip, sub, new DrawRectOp());
+                    check(type, clip, sub, new DrawPolygonsOp());
+                    check(type, clip, sub, new PathOp(false));
+                    check(type, clip, sub, new PathOp(true));
+                }
+            }
+        }
+    }
+
+    private static Shape clipShape() {
+        Area area = new Area(new Ellipse2D.Double(-6, -4, W + 10, H + 6));
+        area.subtract(new Area(new Rectangle(20, 0, 7, H)));
+        area.subtract(new Area(new Ellipse2D.Double(30, 12, 12, 14)));
+        return area;
+    }
+
+    /**
+     * Draws with the loop for the surface, sets the pixels the primitive should cover, one at a
+     * time, in a copy, and compares the whole of both images, including the margins of
+     * subimages.
+     */
+    private static void check(int type, Shape clip, boolean sub, Op op) {
+        BufferedImage image = new BufferedImage(W + 7, H + 5, type);
+        BufferedImage expected = new BufferedImage(W + 7, H + 5, type);
+        Random pixels = new Random(type);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                int rgb = pixels.nextInt();
+                image.setRGB(x, y, rgb);
+                expected.setRGB(x, y, rgb);
+            }
+        }
+        Color color = new Color(random.nextInt(), true);
+        SunGraphics2D sg2d = graphics(surface(image, sub), color, clip);
+        op.draw(sg2d, sg2d.getSurfaceData().getSurfaceType());
+
+        Mask mask = new Mask(sg2d.getCompClip());
+        op.reference(mask);
+        WritableRaster raster = surface(expected, sub).getRaster();
+        Object pixel = dataElements(raster, sg2d.pixel);
+        for (int y = 0; y < H; y++) {
+            for (int x = 0; x < W; x++) {
+                if (mask.covered(x, y)) {
+                    raster.setDataElements(x, y, pixel);
+                }
+            }
+        }
+
+        int[] a = image.getRaster().getPixels(0, 0, W + 7, H + 5, (int[]) null);
+        int[] e = expected.getRaster().getPixels(0, 0, W + 7, H + 5, (int[]) null);
+        if (!Arrays.equals(a, e)) {
+            int bands = image.getRaster().getNumBands();
+            int i = 0;
+            while (a[i] == e[i]) {
+                i++;
+            }
+            int x = i / bands % (W + 7) - (sub ? 4 : 0);
+            int y = i / bands / (W + 7) - (sub ? 3 : 0);
+            throw new RuntimeException(op + " on " + sg2d.getSurfaceData().getSurfaceType()
+                + (sub ? " subimage" : "") + " clipped to " + clip + ": pixel (" + x + ", " + y
+                + ") is " + (mask.covered(x, y) ? "not set" : "set, but shouldn't be"));
+        }
+    }
+
+    private static BufferedImage surface(BufferedImage image, boolean sub) {
+        return sub ? image.getSubimage(4, 3, W, H) : image.getSubimage(0, 0, W, H);
+    }
+
+    /**
+     * @return the data elements of a pixel value as the native loops store it: as the one
+     *         element of a packed surface, or as the bytes of an interleaved one, least
+     *         significant first
+     */
+    private static Object dataElements(WritableRaster raster, int pixel) {
+        Object elements = raster.getDataElements(0, 0, null);
+        if (elements instanceof int[]) {
+            ((int[]) elements)[0] = pixel;
+        } else if (elements instanceof short[]) {
+            ((short[]) elements)[0] = (short) pixel;
+        } else {
+            byte[] bytes = (byte[]) elements;
+            int[] offsets = ((ComponentSampleModel) raster.getSampleModel()).getBandOffsets();
+            int first = Arrays.stream(offsets).min().getAsInt();
+            for (int band = 0; band < bytes.length; band++) {
+                bytes[band] = (byte) (pixel >> ((offsets[band] - first) << 3));
+            }
+        }
+        return elements;
+    }
+
+    private static SunGraphics2D graphics(BufferedImage image, Color color, Shape clip) {
+        SunGraphics2D sg2d = new SunGraphics2D(BufImgSurfaceData.createData(image), color,
+            Color.BLACK, new Font(Font.DIALOG, Font.PLAIN, 12));
+        if (clip != null) {
+            sg2d.setClip(clip);
+        }
+        return sg2d;
+    }
+
+    private static void checkJava(Object loop) {
+        if (!loop.getClass().getName().startsWith("sun.java2d.loops.JavaSolidLoops")) {
+            throw new RuntimeException("Not a pure-Java loop: " + loop);
+        }
+    }
+
+    /**
+     * The pixels a primitive should set: those it covers that lie in the clip.
+     */
+    private static final class Mask {
+        private final boolean[] covered = new boolean[W * H];
+        final Region clip;
+
+        Mask(Region clip) {
+            this.clip = clip;
+        }
+
+        void set(int x, int y) {
+            if (clip.contains(x, y)) {
+                covered[y * W + x] = true;
+            }
+        }
+
+        boolean covered(int x, int y) {
+            return x >= 0 && y >= 0 && x < W && y < H && covered[y * W + x];
+        }
+
+        void fill(int x, int y, int w, int h) {
+            for (int j = y; j < y + h; j++) {
+                for (int i = x; i < x + w; i++) {
+                    set(i, j);
+                }
+            }
+        }
+
+        /**
+         * Sets the pixels of the whole line, both endpoints included, by Bresenham's algorithm:
+         * what a loop that clips the line must set within the clip.
+         */
+        void line(int x1, int y1, int x2, int y2) {
+            int ax = Math.abs(x2 - x1);
+            int ay = Math.abs(y2 - y1);
+            int bumpx = x2 < x1 ? -1 : 1;
+            int bumpy = y2 < y1 ? -1 : 1;
+            if (ax >= ay) {
+                int error = -ax;
+                for (int i = 0; i <= ax; i++, x1 += bumpx) {
+                    set(x1, y1);
+                    error += 2 * ay;
+                    if (error >= 0) {
+                        y1 += bumpy;
+                        error -= 2 * ax;
+                    }
+                }
+            } else {
+                int error = -ay;
+                for (int i = 0; i <= ay; i++, y1 += bumpy) {
+                    set(x1, y1);
+                    error += 2 * ax;
+                    if (error >= 0) {
+                        x1 += bumpx;
+                        error -= 2 * ay;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * A primitive with random geometry, the same each time it is drawn.
+     */
+    private abstract static class Op {
+        private final long seed = random.nextLong();
+        Random geometry;
+
+        void draw(SunGraphics2D sg2d, SurfaceType type) {
+            geometry = new Random(seed);
+            draw(sg2d, sg2d.getSurfaceData(), type);
+        }
+
+        void reference(Mask mask) {
+            geometry = new Random(seed);
+            draw(mask);
+        }
+
+        abstract void draw(SunGraphics2D sg2d, SurfaceData sd, SurfaceType type);
+
+        abstract void draw(Mask mask);
+
+        int x() {
+            return geometry.nextInt(W + 20) - 10;
+        }
+
+        int y() {
+            return geometry.nextInt(H + 20) - 10;
+        }
+
+        @Override
+        public String toString() {
+            return getClass().getSimpleName() + " " + seed;
+        }
+    }
+
+    private static final class FillRectOp extends Op {
+        @Override
+        void draw(SunGraphics2D sg2d, SurfaceData sd, SurfaceType type) {
+            FillRect loop = FillRect.locate(SurfaceType.AnyColor, CompositeType.SrcNoEa, type);
+            checkJava(loop);
+            for (int i = 0; i < 5; i++) {
+                loop.FillRect(sg2d, sd, x(), y(), geometry.nextInt(W), geometry.nextInt(H));
+            }
+        }
+
+        @Override
+        void draw(Mask mask) {
+            for (int i = 0; i < 5; i++) {
+                mask.fill(x(), y(), geometry.nextInt(W), geometry.nextInt(H));
+            }
+        }
+    }
+
+    private static final class FillSpansOp extends Op {
+        @Override
+        void draw(SunGraphics2D sg2d, SurfaceData sd, SurfaceType type) {
+            FillSpans loop = FillSpans.locate(SurfaceType.AnyColor, CompositeType.SrcNoEa, type);
+            checkJava(loop);
+            loop.FillSpans(sg2d, sd, spans().getIntersection(sg2d.getCompClip())
+                .getSpanIterator());
+        }
+
+        @Override
+        void draw(Mask mask) {
+            Region spans = spans();
+            for (int y = 0; y < H; y++) {
+                for (int x = 0; x < W; x++) {
+                    if (spans.contains(x, y)) {
+                        mask.set(x, y);
+                    }
+                }
+            }
+        }
+
+        private Region spans() {
+            return Region.getInstance(
+                new Ellipse2D.Double(x(), y(), geometry.nextInt(W), geometry.nextInt(H)),
+                new AffineTransform());
+        }
+    }
+
+    private static final class DrawLineOp extends Op {
+        @Override
+        void draw(SunGraphics2D sg2d, SurfaceData sd, SurfaceType type) {
+            DrawLine loop = DrawLine.locate(SurfaceType.AnyColor, CompositeType.SrcNoEa, type);
+            checkJava(loop);
+            for (int i = 0; i < 10; i++) {
+                loop.DrawLine(sg2d, sd, x(), y(), x(), y());
+            }
+        }
+
+        @Override
+        void draw(Mask mask) {
+            for (int i = 0; i < 10; i++) {
+                mask.line(x(), y(), x(), y());
+            }
+        }
+    }
+
+    private static final class DrawRectOp extends Op {
+        @Override
+        void draw(SunGraphics2D sg2d, SurfaceData sd, SurfaceType type) {
+            DrawRect loop = DrawRect.locate(SurfaceType.AnyColor, CompositeType.SrcNoEa, type);
+            checkJava(loop);
+            for (int i = 0; i < 5; i++) {
+                loop.DrawRect(sg2d, sd, x(), y(), width(), height());
+            }
+        }
+
+        @Override
+        void draw(Mask mask) {
+            for (int i = 0; i < 5; i++) {
+                int x = x();
+                int y = y();
+                int w = width();
+                int h = height();
+                if (w >= 0 && h >= 0) {
+                    mask.fill(x, y, w + 1, 1);
+                    mask.fill(x, y + h, w + 1, 1);
+                    mask.fill(x, y, 1, h + 1);
+                    mask.fill(x + w, y, 1, h + 1);
+                }
+            }
+        }
+
+        // Including negative widths, which draw nothing.
+        private int width() {
+            return geometry.nextInt(W) - 1;
+        }
+
+        // Including heights of 0 and 1, which leave no space inside.
+        private int height() {
+            return geometry.nextInt(4) == 0 ? geometry.nextInt(2) : geometry.nextInt(H);
+        }
+    }
+
+    private static final class DrawPolygonsOp extends Op {
+        private int[] xPoints;
+        private int[] yPoints;
+        private int[] nPoints;
+        private int transX;
+        private int transY;
+        private boolean close;
+
+        @Override
+        void draw(SunGraphics2D sg2d, SurfaceData sd, SurfaceType type) {
+            DrawPolygons loop =
+                DrawPolygons.locate(SurfaceType.AnyColor, CompositeType.SrcNoEa, type);
+            checkJava(loop);
+            polygons();
+            loop.DrawPolygons(sg2d, sd, xPoints, yPoints, nPoints, nPoints.length, transX,
+                transY, close);
+        }
+
+        @Override
+        void draw(Mask mask) {
+            polygons();
+            int off = 0;
+            for (int n : nPoints) {
+                int x0 = xPoints[off] + transX;
+                int y0 = yPoints[off] + transY;
+                mask.line(x0, y0, x0, y0);
+                for (int j = 1; j < n; j++) {
+                    mask.line(xPoints[off + j - 1] + transX, yPoints[off + j - 1] + transY,
+                        xPoints[off + j] + transX, yPoints[off + j] + transY);
+                }
+                if (close) {
+                    mask.line(xPoints[off + n - 1] + transX, yPoints[off + n - 1] + transY, x0,
+                        y0);
+                }
+                off += n;
+            }
+        }
+
+        /**
+         * Makes polygons of 1 to 6 points, including single points.
+         */
+        private void polygons() {
+            nPoints = new int[4];
+            int total = 0;
+            for (int i = 0; i < nPoints.length; i++) {
+                nPoints[i] = 1 + geometry.nextInt(6);
+                total += nPoints[i];
+            }
+            xPoints = new int[total];
+            yPoints = new int[total];
+            for (int i = 0; i < total; i++) {
+                xPoints[i] = x();
+                yPoints[i] = y();
+            }
+            transX = geometry.nextInt(5) - 2;
+            transY = geometry.nextInt(5) - 2;
+            close = geometry.nextBoolean();
+        }
+    }
+
+    /**
+     * The reference runs the path through {@link ProcessPath} too, so this checks how the loops
+     * draw what it hands them.
+     */
+    private static final class PathOp extends Op {
+        private final boolean fill;
+        private Path2D.Float path;
+        private int strokeHint;
+        private int transX;
+        private int transY;
+
+        PathOp(boolean fill) {
+            this.fill = fill;
+        }
+
+        @Override
+        void draw(SunGraphics2D sg2d, SurfaceData sd, SurfaceType type) {
+            path();
+            sg2d.strokeHint = strokeHint;
+            if (fill) {
+                FillPath loop = FillPath.locate(SurfaceType.AnyColor, CompositeType.SrcNoEa, type);
+                checkJava(loop);
+                loop.FillPath(sg2d, sd, transX, transY, path);
+            } else {
+                DrawPath loop = DrawPath.locate(SurfaceType.AnyColor, CompositeType.SrcNoEa, type);
+                checkJava(loop);
+                loop.DrawPath(sg2d, sd, transX, transY, path);
+            }
+        }
+
+        @Override
+        void draw(Mask mask) {
+            path();
+            ProcessPath.DrawHandler handler = new ProcessPath.DrawHandler(mask.clip.getLoX(),
+                mask.clip.getLoY(), mask.clip.getHiX(), mask.clip.getHiY(), strokeHint) {
+                @Override
+                public void drawLine(int x0, int y0, int x1, int y1) {
+                    mask.line(x0, y0, x1, y1);
+                }
+
+                @Override
+                public void drawPixel(int x0, int y0) {
+                    mask.set(x0, y0);
+                }
+
+                @Override
+                public void drawScanline(int x0, int x1, int y0) {
+                    mask.fill(x0, y0, x1 - x0 + 1, 1);
+                }
+            };
+            if (fill) {
+                ProcessPath.fillPath(handler, path, transX, transY);
+            } else {
+                ProcessPath.drawPath(handler, path, transX, transY);
+            }
+        }
+
+        private void path() {
+            path = new Path2D.Float(
+                geometry.nextBoolean() ? Path2D.WIND_EVEN_ODD : Path2D.WIND_NON_ZERO);
+            path.moveTo(x(), y());
+            for (int i = 0; i < 6; i++) {
+                switch (geometry.nextInt(3)) {
+                    case 0:
+                        path.lineTo(x() + geometry.nextFloat(), y() + geometry.nextFloat());
+                        break;
+                    case 1:
+                        path.quadTo(x(), y(), x(), y());
+                        break;
+                    default:
+                        path.curveTo(x(), y(), x(), y(), x(), y());
+                        break;
+                }
+            }
+            path.closePath();
+            strokeHint = geometry.nextBoolean()
+                ? SunHints.INTVAL_STROKE_PURE : SunHints.INTVAL_STROKE_NORMALIZE;
+            transX = geometry.nextInt(5) - 2;
+            transY = geometry.nextInt(5) - 2;
+        }
+
+        @Override
+        public String toString() {
+            return (fill ? "FillPath " : "DrawPath ") + super.toString();
+        }
+    }
+}
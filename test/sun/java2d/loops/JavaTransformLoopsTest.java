@@ -0,0 +1,554 @@
+/*
+ * @test
+ * @summary Checks the pure-Java ScaledBlit, TransformBlit and TransformHelper loops against
+ *          nearest-neighbor, bilinear and bicubic interpolation of the source computed for
+ *          each pixel, and that rendering in parallel bands gives the pixels of a single pass
+ * @run main/othervm JavaTransformLoopsTest
+ */
+
+import java.awt.AlphaComposite;
+import java.awt.Composite;
+import java.awt.SkinJob;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Point2D;
+import java.awt.image.AffineTransformOp;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.IndexColorModel;
+import java.util.Random;
+
+import sun.awt.image.BufImgSurfaceData;
+import sun.java2d.SurfaceData;
+import sun.java2d.loops.CompositeType;
+import sun.java2d.loops.MaskBlit;
+import sun.java2d.loops.ScaledBlit;
+import sun.java2d.loops.SurfaceType;
+import sun.java2d.loops.TransformBlit;
+import sun.java2d.loops.TransformHelper;
+import sun.java2d.pipe.Region;
+
+public final class JavaTransformLoopsTest {
+
+    private static final int SW = 29;
+    private static final int SH = 21;
+    private static final int W = 61;
+    private static final int H = 47;
+
+    private static final SurfaceType[] TYPES = {
+        SurfaceType.IntArgb, SurfaceType.IntArgbPre, SurfaceType.IntRgb,
+        SurfaceType.ThreeByteBgr, SurfaceType.ByteGray, SurfaceType.Index8Gray,
+    };
+
+    private static final int[] INTERPOLATIONS = {
+        AffineTransformOp.TYPE_NEAREST_NEIGHBOR, AffineTransformOp.TYPE_BILINEAR,
+        AffineTransformOp.TYPE_BICUBIC,
+    };
+
+    private static final String[] NAMES = {"nearest neighbor", "bilinear", "bicubic"};
+
+    // How far each interpolation may be from the exact one: the loops truncate subpixel positions
+    // to 1/256 of a pixel, which can be off by almost a level in each direction, and round
+    // bicubic weights to 1/256.
+    private static final int[] TOLERANCES = {0, 3, 3};
+
+    private static final CompositeType[] COMPOSITE_TYPES = {
+        CompositeType.Src, CompositeType.SrcOver,
+    };
+
+    private static final Composite[] COMPOSITES = {
+        AlphaComposite.Src, AlphaComposite.SrcOver.derive(0.5f),
+    };
+
+    // Pixel centers closer than this to a source pixel boundary may land on either side of it.
+    private static final double EPSILON = 1e-6;
+
+    private static final Region CLIP =
+        Region.getInstance(new Ellipse2D.Double(-4, -2, W + 6, H + 3), new AffineTransform())
+            .getDifference(Region.getInstanceXYWH(25, 0, 4, H));
+
+    private static final Random random = new Random(1);
+
+    private JavaTransformLoopsTest() {
+    }
+
+    public static void main(String[] args) {
+        for (int type = 0; type < TYPES.length; type++) {
+            for (int i = 0; i < 6; i++) {
+                testScaledBlit(type, i);
+            }
+            for (int i = 0; i < INTERPOLATIONS.length; i++) {
+                for (int c = 0; c < COMPOSITES.length; c++) {
+                    testTransformBlit(type, i, c);
+                    testTransformHelper(type, i, c);
+                }
+            }
+        }
+        for (int i = 0; i < INTERPOLATIONS.length; i++) {
+            testTransformHelperOutput(i);
+        }
+        int saved = SkinJob.parallelTransformMinPixels;
+        try {
+            for (int i = 0; i < INTERPOLATIONS.length; i++) {
+                testBands(i);
+            }
+        } finally {
+            SkinJob.parallelTransformMinPixels = saved;
+        }
+    }
+
+    /**
+     * Scales a random part of the source to a random rectangle, partly off the destination, as
+     * a copy into an {@code IntArgb} destination or blended into an {@code IntArgbPre} one.
+     */
+    private static void testScaledBlit(int srcType, int i) {
+        Source src = new Source(srcType, random.nextInt(5), random.nextInt(5),
+            SW - random.nextInt(5), SH - random.nextInt(5));
+        double dx1 = random.nextDouble() * 20 - 5;
+        double dy1 = random.nextDouble() * 20 - 5;
+        double dx2 = dx1 + 10 + random.nextDouble() * W;
+        double dy2 = dy1 + 10 + random.nextDouble() * H;
+        boolean copy = i % 2 == 0;
+        CompositeType comptype = copy ? CompositeType.SrcNoEa : CompositeType.SrcOver;
+        Composite comp = copy ? AlphaComposite.Src : COMPOSITES[1];
+        BufferedImage dst = createImage(copy ? 0 : 1, W, H);
+        BufferedImage before = copyOf(dst);
+        ScaledBlit blit = ScaledBlit.locate(TYPES[srcType], comptype, typeOf(dst));
+        checkJava(blit);
+        blit.Scale(data(src.image), data(dst), comp, CLIP, src.x1, src.y1, src.x2, src.y2, dx1,
+            dy1, dx2, dy2);
+        double scaleX = (src.x2 - src.x1) / (dx2 - dx1);
+        double scaleY = (src.y2 - src.y1) / (dy2 - dy1);
+        AffineTransform itx = new AffineTransform(scaleX, 0, 0, scaleY,
+            src.x1 - dx1 * scaleX, src.y1 - dy1 * scaleY);
+        check(src, itx, 0, 0, 0, W, H, comp, before, dst,
+            "ScaledBlit " + TYPES[srcType] + " with " + comptype + " to (" + dx1 + ", " + dy1
+                + ", " + dx2 + ", " + dy2 + ")");
+    }
+
+    private static void testTransformBlit(int srcType, int i, int c) {
+        Source src = new Source(srcType, 2, 1, SW - 1, SH - 3);
+        BufferedImage dst = createImage(1, W, H);
+        BufferedImage before = copyOf(dst);
+        AffineTransform at = randomTransform(c == 0, W, H);
+        TransformBlit blit = TransformBlit.locate(TYPES[srcType], COMPOSITE_TYPES[c], typeOf(dst));
+        checkJava(blit);
+        blit.Transform(data(src.image), data(dst), COMPOSITES[c], CLIP, at, INTERPOLATIONS[i],
+            src.x1, src.y1, 3, 2, src.x2 - src.x1, src.y2 - src.y1);
+        AffineTransform tx = new AffineTransform(at);
+        tx.translate(3 - src.x1, 2 - src.y1);
+        check(src, inverse(tx), i, 0, 0, W, H, COMPOSITES[c], before, dst,
+            "TransformBlit " + describe(srcType, i, c) + " by " + at);
+    }
+
+    /**
+     * Transforms through a pure-Java {@link MaskBlit}, which TransformHelper composites with
+     * directly, and checks the row extents it reports.
+     */
+    private static void testTransformHelper(int srcType, int i, int c) {
+        Source src = new Source(srcType, 1, 2, SW - 2, SH - 1);
+        BufferedImage dst = createImage(1, W, H);
+        BufferedImage before = copyOf(dst);
+        AffineTransform at = randomTransform(c == 1, W, H);
+        int[] edges = transform(src, dst, COMPOSITE_TYPES[c], COMPOSITES[c], at, i, 4, 3, W - 2,
+            H - 5);
+        String what = "TransformHelper " + describe(srcType, i, c) + " by " + at;
+        check(src, inverse(at), i, 4, 3, W - 2, H - 5, COMPOSITES[c], before, dst, what);
+        checkEdges(src, inverse(at), edges, 4, 3, W - 2, H - 5, what);
+    }
+
+    /**
+     * Transforms into a destination the pure-Java loops don't know, so that TransformHelper hands
+     * each row to the general MaskBlit loop.
+     */
+    private static void testTransformHelperOutput(int i) {
+        Source src = new Source(2, 0, 0, SW, SH);
+        BufferedImage dst = new BufferedImage(W, H, BufferedImage.TYPE_USHORT_565_RGB);
+        BufferedImage before = copyOf(dst);
+        AffineTransform at = randomTransform(false, W, H);
+        transform(src, dst, CompositeType.Src, AlphaComposite.Src, at, i, 0, 0, W, H);
+        check(src, inverse(at), i, 0, 0, W, H, AlphaComposite.Src, before, dst,
+            "TransformHelper " + TYPES[2] + " to " + typeOf(dst) + " with " + NAMES[i]
+                + " by " + at);
+    }
+
+    /**
+     * Renders a large destination in bands and in a single pass, which should give exactly the
+     * same pixels.
+     */
+    private static void testBands(int i) {
+        int w = 360;
+        int h = 260;
+        Source src = new Source(0, 0, 0, SW, SH);
+        AffineTransform at = randomTransform(false, w, h);
+        at.scale(10, 10);
+        BufferedImage blitBands = createImage(1, w, h);
+        BufferedImage blitSingle = copyOf(blitBands);
+        BufferedImage helperBands = copyOf(blitBands);
+        BufferedImage helperSingle = copyOf(blitBands);
+        Region clip = Region.getInstanceXYWH(0, 0, w, h);
+        TransformBlit blit =
+            TransformBlit.locate(TYPES[0], CompositeType.SrcOver, typeOf(blitBands));
+        SkinJob.parallelTransformMinPixels = 1;
+        blit.Transform(data(src.image), data(blitBands), COMPOSITES[1], clip, at,
+            INTERPOLATIONS[i], 0, 0, 0, 0, SW, SH);
+        transform(src, helperBands, CompositeType.SrcOver, COMPOSITES[1], at, i, 0, 0, w, h);
+        SkinJob.parallelTransformMinPixels = 0;
+        blit.Transform(data(src.image), data(blitSingle), COMPOSITES[1], clip, at,
+            INTERPOLATIONS[i], 0, 0, 0, 0, SW, SH);
+        transform(src, helperSingle, CompositeType.SrcOver, COMPOSITES[1], at, i, 0, 0, w, h);
+        checkSame(blitBands, blitSingle, "TransformBlit with " + NAMES[i]);
+        checkSame(helperBands, helperSingle, "TransformHelper with " + NAMES[i]);
+    }
+
+    /**
+     * Draws {@code src} transformed by {@code at} as DrawImage does, into the given destination
+     * rectangle.
+     *
+     * @return the row extents TransformHelper reported
+     */
+    private static int[] transform(
+            Source src, BufferedImage dst, CompositeType comptype, Composite comp,
+            AffineTransform at, int i, int dx1, int dy1, int dx2, int dy2) {
+        TransformHelper helper = TransformHelper.locate(TYPES[src.type]);
+        checkJava(helper);
+        MaskBlit output = MaskBlit.locate(SurfaceType.IntArgbPre, comptype, typeOf(dst));
+        int[] edges = new int[2 + 2 * (dy2 - dy1)];
+        Region clip = dst.getWidth() == W ? CLIP : Region.getInstanceXYWH(0, 0, dst.getWidth(),
+            dst.getHeight());
+        helper.Transform(output, data(src.image), data(dst), comp, clip, inverse(at),
+            INTERPOLATIONS[i], src.x1, src.y1, src.x2, src.y2, dx1, dy1, dx2, dy2, edges, 0, 0);
+        return edges;
+    }
+
+    /**
+     * Checks each pixel of {@code actual}. Those within the destination rectangle and the clip
+     * whose centers {@code itx} maps inside the source rectangle should be the interpolated
+     * source composited over {@code before}, and all others should be as in {@code before}.
+     */
+    private static void check(
+            Source src, AffineTransform itx, int i, int dx1, int dy1, int dx2, int dy2,
+            Composite comp, BufferedImage before, BufferedImage actual, String what) {
+        int written = 0;
+        int tolerance = TOLERANCES[i] + (actual.getType() == BufferedImage.TYPE_INT_ARGB ? 1
+            : actual.getType() == BufferedImage.TYPE_USHORT_565_RGB ? 8 : 0);
+        float extraAlpha = ((AlphaComposite) comp).getAlpha();
+        boolean srcOver = ((AlphaComposite) comp).getRule() == AlphaComposite.SRC_OVER;
+        for (int y = 0; y < actual.getHeight(); y++) {
+            for (int x = 0; x < actual.getWidth(); x++) {
+                Point2D p = itx.transform(new Point2D.Double(x + 0.5, y + 0.5), null);
+                double u = p.getX();
+                double v = p.getY();
+                boolean inDst = x >= dx1 && x < dx2 && y >= dy1 && y < dy2 && CLIP.contains(x, y);
+                if (inDst && src.nearEdge(u, v)) {
+                    continue;
+                }
+                if (!inDst || !src.contains(u, v)) {
+                    if (actual.getRGB(x, y) != before.getRGB(x, y)
+                        || readPre(actual, x, y) != readPre(before, x, y)) {
+                        throw new RuntimeException(what + ": pixel (" + x + ", " + y
+                            + ") outside the source was written");
+                    }
+                    continue;
+                }
+                double[] s = src.sample(u, v, INTERPOLATIONS[i]);
+                if (s == null) {
+                    continue;
+                }
+                int d = readPre(before, x, y);
+                int a = readPre(actual, x, y);
+                for (int k = 0; k < 4; k++) {
+                    double expected = s[k] * extraAlpha;
+                    if (srcOver) {
+                        expected += ((d >>> (24 - 8 * k)) & 0xFF) * (1 - s[0] * extraAlpha / 255);
+                    }
+                    int value = (a >>> (24 - 8 * k)) & 0xFF;
+                    if (Math.abs(value - expected) > tolerance + (srcOver ? 1 : 0)) {
+                        throw new RuntimeException(what + ": pixel (" + x + ", " + y
+                            + ") at (" + u + ", " + v + ") in the source is "
+                            + Integer.toHexString(a) + ", expected component " + k + " to be "
+                            + expected);
+                    }
+                }
+                written++;
+            }
+        }
+        if (written == 0) {
+            throw new RuntimeException(what + ": no pixels were checked");
+        }
+    }
+
+    /**
+     * Checks that every row extent TransformHelper reported covers the pixels whose centers map
+     * inside the source.
+     */
+    private static void checkEdges(
+            Source src, AffineTransform itx, int[] edges, int dx1, int dy1, int dx2, int dy2,
+            String what) {
+        if (edges[0] != dy1 || edges[1] != dy2) {
+            throw new RuntimeException(what + ": rows " + edges[0] + " to " + edges[1]
+                + " reported, expected " + dy1 + " to " + dy2);
+        }
+        for (int y = dy1; y < dy2; y++) {
+            for (int x = dx1; x < dx2; x++) {
+                Point2D p = itx.transform(new Point2D.Double(x + 0.5, y + 0.5), null);
+                int left = edges[2 + 2 * (y - dy1)];
+                int right = edges[3 + 2 * (y - dy1)];
+                if (!src.nearEdge(p.getX(), p.getY()) && src.contains(p.getX(), p.getY())
+                    && (x < left || x >= right)) {
+                    throw new RuntimeException(what + ": pixel (" + x + ", " + y
+                        + ") maps inside the source, but row " + y + " was reported as " + left
+                        + " to " + right);
+                }
+            }
+        }
+    }
+
+    private static void checkSame(BufferedImage actual, BufferedImage expected, String what) {
+        int[] a = ((DataBufferInt) actual.getRaster().getDataBuffer()).getData();
+        int[] e = ((DataBufferInt) expected.getRaster().getDataBuffer()).getData();
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] != e[i]) {
+                throw new RuntimeException(what + ": pixel (" + i % actual.getWidth() + ", "
+                    + i / actual.getWidth() + ") is " + Integer.toHexString(a[i])
+                    + " in bands, " + Integer.toHexString(e[i]) + " in a single pass");
+            }
+        }
+    }
+
+    /**
+     * A random rotation, shear and scale about the center of the source, or only a scale if
+     * {@code axisAligned}, moved to the center of a {@code w} by {@code h} destination.
+     */
+    private static AffineTransform randomTransform(boolean axisAligned, int w, int h) {
+        AffineTransform at = AffineTransform.getTranslateInstance(
+            w / 2.0 + random.nextGaussian() * 3, h / 2.0 + random.nextGaussian() * 3);
+        if (!axisAligned) {
+            at.rotate(random.nextDouble() * 2 * Math.PI);
+            at.shear(random.nextGaussian() * 0.3, 0);
+        }
+        at.scale((random.nextBoolean() ? 1 : -1) * (0.5 + random.nextDouble() * 2),
+            0.5 + random.nextDouble() * 2);
+        at.translate(-SW / 2.0, -SH / 2.0);
+        return at;
+    }
+
+    private static AffineTransform inverse(AffineTransform at) {
+        try {
+            return at.createInverse();
+        } catch (NoninvertibleTransformException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void checkJava(Object loop) {
+        if (!loop.getClass().getName().startsWith("sun.java2d.loops.JavaTransformLoops")) {
+            throw new RuntimeException("Not a pure-Java loop: " + loop);
+        }
+    }
+
+    private static String describe(int srcType, int i, int c) {
+        return TYPES[srcType] + " with " + NAMES[i] + " and " + COMPOSITE_TYPES[c]
+            + " alpha " + ((AlphaComposite) COMPOSITES[c]).getAlpha();
+    }
+
+    /**
+     * @return the premultiplied color of a destination pixel
+     */
+    private static int readPre(BufferedImage image, int x, int y) {
+        switch (image.getType()) {
+            case BufferedImage.TYPE_INT_ARGB_PRE:
+                return ((DataBufferInt) image.getRaster().getDataBuffer()).getData()[
+                    y * image.getWidth() + x];
+            case BufferedImage.TYPE_INT_ARGB:
+                return premultiply(image.getRGB(x, y));
+            default:
+                return image.getRGB(x, y);
+        }
+    }
+
+    private static SurfaceType typeOf(BufferedImage image) {
+        return data(image).getSurfaceType();
+    }
+
+    private static SurfaceData data(BufferedImage image) {
+        return BufImgSurfaceData.createData(image);
+    }
+
+    private static BufferedImage createImage(int type, int w, int h) {
+        BufferedImage image;
+        switch (type) {
+            case 0:
+                image = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+                break;
+            case 1:
+                image = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB_PRE);
+                break;
+            case 2:
+                image = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+                break;
+            case 3:
+                image = new BufferedImage(w, h, BufferedImage.TYPE_3BYTE_BGR);
+                break;
+            case 4:
+                image = new BufferedImage(w, h, BufferedImage.TYPE_BYTE_GRAY);
+                break;
+            default:
+                byte[] levels = new byte[64];
+                for (int i = 0; i < levels.length; i++) {
+                    levels[i] = (byte) (i * 255 / (levels.length - 1));
+                }
+                image = new BufferedImage(w, h, BufferedImage.TYPE_BYTE_INDEXED,
+                    new IndexColorModel(8, levels.length, levels, levels, levels));
+                break;
+        }
+        if (typeOf(image) != TYPES[type]) {
+            throw new RuntimeException("Expected " + TYPES[type] + ", got " + typeOf(image));
+        }
+        if (image.getRaster().getDataBuffer() instanceof DataBufferInt) {
+            int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            for (int i = 0; i < pixels.length; i++) {
+                int alpha = new int[] {0, 0xFF, random.nextInt(256)}[random.nextInt(3)];
+                int argb = (alpha << 24) | random.nextInt(0x1000000);
+                pixels[i] = type == 1 ? premultiply(argb) : type == 2 ? argb & 0xFFFFFF : argb;
+            }
+        } else {
+            byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+            int limit = type == 5 ? 64 : 256;
+            for (int i = 0; i < pixels.length; i++) {
+                pixels[i] = (byte) random.nextInt(limit);
+            }
+        }
+        return image;
+    }
+
+    private static BufferedImage copyOf(BufferedImage image) {
+        BufferedImage copy = new BufferedImage(image.getColorModel(),
+            image.getRaster().createCompatibleWritableRaster(), image.isAlphaPremultiplied(),
+            null);
+        copy.setData(image.getRaster());
+        return copy;
+    }
+
+    private static int premultiply(int argb) {
+        int a = argb >>> 24;
+        int r = ((argb >> 16) & 0xFF) * a;
+        int g = ((argb >> 8) & 0xFF) * a;
+        int b = (argb & 0xFF) * a;
+        return (a << 24) | (((r + 127) / 255) << 16) | (((g + 127) / 255) << 8)
+            | ((b + 127) / 255);
+    }
+
+    /**
+     * A rectangle of a random source image, and its interpolation.
+     */
+    private static final class Source {
+        final int type;
+        final BufferedImage image;
+        final int x1;
+        final int y1;
+        final int x2;
+        final int y2;
+
+        Source(int type, int x1, int y1, int x2, int y2) {
+            this.type = type;
+            image = createImage(type, SW, SH);
+            this.x1 = x1;
+            this.y1 = y1;
+            this.x2 = x2;
+            this.y2 = y2;
+        }
+
+        boolean contains(double u, double v) {
+            return u >= x1 && u < x2 && v >= y1 && v < y2;
+        }
+
+        boolean nearEdge(double u, double v) {
+            return Math.min(Math.abs(u - x1), Math.abs(u - x2)) < EPSILON
+                || Math.min(Math.abs(v - y1), Math.abs(v - y2)) < EPSILON;
+        }
+
+        /**
+         * @return the premultiplied components of the source at ({@code u}, {@code v}), edge
+         *     pixels extended outward, or null if nearest-neighbor sampling could pick either of
+         *     two pixels
+         */
+        double[] sample(double u, double v, int interpolation) {
+            double[] result = new double[4];
+            switch (interpolation) {
+                case AffineTransformOp.TYPE_NEAREST_NEIGHBOR:
+                    if (Math.abs(u - Math.rint(u)) < EPSILON
+                        || Math.abs(v - Math.rint(v)) < EPSILON) {
+                        return null;
+                    }
+                    accumulate(result, (int) Math.floor(u), (int) Math.floor(v), 1);
+                    return result;
+                case AffineTransformOp.TYPE_BILINEAR: {
+                    int x = (int) Math.floor(u - 0.5);
+                    int y = (int) Math.floor(v - 0.5);
+                    double fx = u - 0.5 - x;
+                    double fy = v - 0.5 - y;
+                    accumulate(result, x, y, (1 - fx) * (1 - fy));
+                    accumulate(result, x + 1, y, fx * (1 - fy));
+                    accumulate(result, x, y + 1, (1 - fx) * fy);
+                    accumulate(result, x + 1, y + 1, fx * fy);
+                    return result;
+                }
+                default: {
+                    int x = (int) Math.floor(u - 0.5);
+                    int y = (int) Math.floor(v - 0.5);
+                    double fx = u - 0.5 - x;
+                    double fy = v - 0.5 - y;
+                    for (int j = 0; j < 4; j++) {
+                        for (int k = 0; k < 4; k++) {
+                            accumulate(result, x - 1 + k, y - 1 + j,
+                                cubic(Math.abs(fx + 1 - k)) * cubic(Math.abs(fy + 1 - j)));
+                        }
+                    }
+                    // The kernel overshoots; the loops keep the result a premultiplied color.
+                    result[0] = Math.max(0, Math.min(255, result[0]));
+                    for (int k = 1; k < 4; k++) {
+                        result[k] = Math.max(0, Math.min(Math.round(result[0]), result[k]));
+                    }
+                    return result;
+                }
+            }
+        }
+
+        private void accumulate(double[] result, int x, int y, double weight) {
+            int argb = pre(Math.max(x1, Math.min(x2 - 1, x)), Math.max(y1, Math.min(y2 - 1, y)));
+            for (int k = 0; k < 4; k++) {
+                result[k] += ((argb >>> (24 - 8 * k)) & 0xFF) * weight;
+            }
+        }
+
+        private int pre(int x, int y) {
+            switch (type) {
+                case 0:
+                    return premultiply(image.getRGB(x, y));
+                case 1:
+                    return ((DataBufferInt) image.getRaster().getDataBuffer()).getData()[
+                        y * SW + x];
+                case 4:
+                    return 0xFF000000 | image.getRaster().getSample(x, y, 0) * 0x10101;
+                default:
+                    return image.getRGB(x, y);
+            }
+        }
+
+        /**
+         * The cubic convolution kernel with a = -0.5 at distance {@code d}.
+         */
+        private static double cubic(double d) {
+            if (d <= 1) {
+                return (1.5 * d - 2.5) * d * d + 1;
+            }
+            if (d < 2) {
+                return ((-0.5 * d + 2.5) * d - 4) * d + 2;
+            }
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * @test
+ * @summary Checks that the analytic rendering engine covers pixels by their exact area, and
+ *          that even-odd shapes whose subpaths cover each other, which summed areas get wrong,
+ *          come out as Pisces renders them
+ * @run main AnalyticRenderingEngineTest
+ */
+
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+import java.util.Random;
+
+import sun.java2d.pipe.AATileGenerator;
+import sun.java2d.pipe.Region;
+import sun.java2d.pipe.RenderingEngine;
+import sun.java2d.pisces.AnalyticRenderingEngine;
+import sun.java2d.pisces.PiscesRenderingEngine;
+
+public final class AnalyticRenderingEngineTest {
+
+    private static final int W = 90;
+    private static final int H = 70;
+
+    private static final RenderingEngine analytic = new AnalyticRenderingEngine();
+    private static final RenderingEngine pisces = new PiscesRenderingEngine();
+
+    private AnalyticRenderingEngineTest() {
+    }
+
+    public static void main(String[] args) {
+        Random random = new Random(1);
+        for (int i = 0; i < 50; i++) {
+            double x0 = random.nextDouble() * W;
+            double y0 = random.nextDouble() * H;
+            double x1 = x0 + random.nextDouble() * (W - x0);
+            double y1 = y0 + random.nextDouble() * (H - y0);
+            checkRectangle(x0, y0, x1, y1);
+        }
+        checkCoincidentSubpaths();
+        checkParallelogramOutlines(random);
+        checkEvenOdd(random);
+    }
+
+    /**
+     * An axis-aligned rectangle covers each pixel by the product of its overlaps in x and y,
+     * which is what an exact area rasterizer should give, within rounding.
+     */
+    private static void checkRectangle(double x0, double y0, double x1, double y1) {
+        Rectangle2D rect = new Rectangle2D.Double(x0, y0, x1 - x0, y1 - y0);
+        byte[] shape = render(analytic, rect);
+        byte[] pgram = render(analytic, x0, y0, x1 - x0, 0, 0, y1 - y0, 0, 0);
+        for (int y = 0; y < H; y++) {
+            double dy = Math.max(0, Math.min(y + 1, y1) - Math.max(y, y0));
+            for (int x = 0; x < W; x++) {
+                double dx = Math.max(0, Math.min(x + 1, x1) - Math.max(x, x0));
+                int expected = (int) Math.round(dx * dy * 255);
+                String what = "rectangle " + rect;
+                check(shape[y * W + x] & 0xFF, expected, 1, x, y, "fill of " + what);
+                check(pgram[y * W + x] & 0xFF, expected, 1, x, y, "parallelogram of " + what);
+            }
+        }
+    }
+
+    /**
+     * Two copies of a square, with edges halfway across pixels: by the even-odd rule nothing is
+     * inside, but the pixels along the edges are half covered twice, which sums to full coverage.
+     */
+    private static void checkCoincidentSubpaths() {
+        Path2D path = new Path2D.Double(Path2D.WIND_EVEN_ODD);
+        path.append(new Rectangle2D.Double(10.5, 10.5, 40, 30), false);
+        path.append(new Rectangle2D.Double(10.5, 10.5, 40, 30), false);
+        byte[] coverage = render(analytic, path);
+        for (int i = 0; i < coverage.length; i++) {
+            check(coverage[i] & 0xFF, 0, 0, i % W, i / W, "doubled even-odd square");
+        }
+    }
+
+    /**
+     * Outlines of thin parallelograms, whose inner subpath passes within a pixel of the outer
+     * one, are rendered as Pisces renders them.
+     */
+    private static void checkParallelogramOutlines(Random random) {
+        for (int i = 0; i < 20; i++) {
+            double x = 10 + random.nextDouble() * 20;
+            double y = 10 + random.nextDouble() * 20;
+            double dx1 = 20 + random.nextDouble() * 30;
+            double dy1 = random.nextDouble() * 10;
+            double dx2 = random.nextDouble() * 10;
+            double dy2 = 20 + random.nextDouble() * 20;
+            double lw1 = random.nextDouble() * 0.1;
+            double lw2 = random.nextDouble() * 0.1;
+            byte[] expected = render(pisces, x, y, dx1, dy1, dx2, dy2, lw1, lw2);
+            byte[] actual = render(analytic, x, y, dx1, dy1, dx2, dy2, lw1, lw2);
+            checkSame(actual, expected, "parallelogram outline " + i);
+        }
+    }
+
+    private static void checkEvenOdd(Random random) {
+        for (int i = 0; i < 10; i++) {
+            Path2D path = new Path2D.Double(Path2D.WIND_EVEN_ODD);
+            for (int j = 0; j < 4; j++) {
+                path.append(new Ellipse2D.Double(random.nextDouble() * W / 2,
+                    random.nextDouble() * H / 2, 10 + random.nextDouble() * W / 2,
+                    10 + random.nextDouble() * H / 2), false);
+            }
+            checkSame(render(analytic, path), render(pisces, path), "even-odd ellipses " + i);
+        }
+    }
+
+    private static void checkSame(byte[] actual, byte[] expected, String what) {
+        for (int i = 0; i < actual.length; i++) {
+            check(actual[i] & 0xFF, expected[i] & 0xFF, 0, i % W, i / W, what);
+        }
+    }
+
+    private static void check(int actual, int expected, int tolerance, int x, int y, String what) {
+        if (Math.abs(actual - expected) > tolerance) {
+            throw new RuntimeException(what + ": pixel (" + x + ", " + y + ") has coverage "
+                + actual + ", expected " + expected);
+        }
+    }
+
+    private static byte[] render(RenderingEngine engine, Shape shape) {
+        int[] bbox = new int[4];
+        return read(engine.getAATileGenerator(shape, new AffineTransform(), clip(), null, false,
+            false, bbox), bbox);
+    }
+
+    private static byte[] render(
+            RenderingEngine engine, double x, double y, double dx1, double dy1, double dx2,
+            double dy2, double lw1, double lw2) {
+        int[] bbox = new int[4];
+        return read(engine.getAATileGenerator(x, y, dx1, dy1, dx2, dy2, lw1, lw2, clip(), bbox),
+            bbox);
+    }
+
+    private static Region clip() {
+        return Region.getInstanceXYWH(0, 0, W, H);
+    }
+
+    private static byte[] read(AATileGenerator generator, int[] bbox) {
+        byte[] coverage = new byte[W * H];
+        if (generator == null) {
+            return coverage;
+        }
+        int tw = generator.getTileWidth();
+        int th = generator.getTileHeight();
+        byte[] tile = new byte[tw * th];
+        for (int y = bbox[1]; y < bbox[3]; y += th) {
+            for (int x = bbox[0]; x < bbox[2]; x += tw) {
+                int alpha = generator.getTypicalAlpha();
+                if (alpha == 0 || alpha == 0xFF) {
+                    Arrays.fill(tile, (byte) alpha);
+                    generator.nextTile();
+                } else {
+                    generator.getAlpha(tile, 0, tw);
+                }
+                for (int j = 0; j < th && y + j < Math.min(bbox[3], H); j++) {
+                    for (int i = 0; i < tw && x + i < Math.min(bbox[2], W); i++) {
+                        coverage[(y + j) * W + x + i] = tile[j * tw + i];
+                    }
+                }
+            }
+        }
+        generator.dispose();
+        return coverage;
+    }
+}
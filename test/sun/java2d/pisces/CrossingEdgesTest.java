@@ -0,0 +1,277 @@
+/*
+ * @test
+ * @summary Checks Pisces' coverage of polygons with many edges crossing between scanlines, which
+ *          keep the active edge list far from sorted, against the winding number at each
+ *          subpixel sample, and that it doesn't depend on the order the edges come in
+ * @run main CrossingEdgesTest
+ */
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import sun.java2d.pipe.AATileGenerator;
+import sun.java2d.pipe.Region;
+import sun.java2d.pisces.PiscesRenderingEngine;
+
+public final class CrossingEdgesTest {
+
+    private static final int W = 320;
+    private static final int H = 300;
+
+    // Pisces samples 8 by 8 subpixels in each pixel.
+    private static final int SUBPIXELS = 8;
+
+    private static final PiscesRenderingEngine engine = new PiscesRenderingEngine();
+
+    private CrossingEdgesTest() {
+    }
+
+    public static void main(String[] args) {
+        Random random = new Random(1);
+        List<List<float[]>> shapes = new ArrayList<>();
+        shapes.add(Collections.singletonList(star(2001, 1000, 0)));
+        shapes.add(Collections.singletonList(star(501, 200, 0.3)));
+        shapes.add(Collections.singletonList(randomPolygon(random, 3000)));
+        shapes.add(fan(random, 400));
+        shapes.add(triangles(random, 300));
+        for (int i = 0; i < shapes.size(); i++) {
+            for (int rule : new int[] {Path2D.WIND_NON_ZERO, Path2D.WIND_EVEN_ODD}) {
+                String what = "shape " + i + (rule == Path2D.WIND_EVEN_ODD ? " even-odd"
+                    : " non-zero");
+                List<float[]> polygons = shapes.get(i);
+                byte[] coverage = render(polygons, rule);
+                checkReference(coverage, polygons, rule, what);
+                checkSame(render(reversed(polygons), rule), coverage, what + " reversed");
+            }
+        }
+    }
+
+    /**
+     * Compares the coverage with a rasterization that steps along each edge exactly as Pisces
+     * does, but sorts each scanline's crossings from scratch.
+     */
+    private static void checkReference(
+            byte[] coverage, List<float[]> polygons, int rule, String what) {
+        int[] samples = reference(polygons, rule);
+        int covered = 0;
+        for (int i = 0; i < coverage.length; i++) {
+            int expected = (samples[i] * 255 + 16) / (SUBPIXELS * SUBPIXELS);
+            if ((coverage[i] & 0xFF) != expected) {
+                throw new RuntimeException(what + ": pixel (" + i % W + ", " + i / W
+                    + ") has coverage " + (coverage[i] & 0xFF) + ", expected " + expected);
+            }
+            if (expected != 0) {
+                covered++;
+            }
+        }
+        if (covered == 0) {
+            throw new RuntimeException(what + ": nothing was covered");
+        }
+    }
+
+    private static void checkSame(byte[] actual, byte[] expected, String what) {
+        for (int i = 0; i < actual.length; i++) {
+            if (actual[i] != expected[i]) {
+                throw new RuntimeException(what + ": pixel (" + i % W + ", " + i / W
+                    + ") has coverage " + (actual[i] & 0xFF) + ", expected "
+                    + (expected[i] & 0xFF));
+            }
+        }
+    }
+
+    /**
+     * Counts the subpixel samples inside by {@code rule} in each pixel. Each edge crosses
+     * subpixel rows from the ceiling of its upper end to below the ceiling of its lower end,
+     * at x stepped in float by its slope and truncated, and the samples between two crossings
+     * are inside if the winding number after the first is. Like Pisces, only samples right of
+     * the edges' least x, rounded up to a subpixel, and then down to a pixel, are counted.
+     */
+    private static int[] reference(List<float[]> polygons, int rule) {
+        int rows = H * SUBPIXELS;
+        int columns = W * SUBPIXELS;
+        int[][] crossings = new int[rows][];
+        int[] counts = new int[rows];
+        float minX = Float.POSITIVE_INFINITY;
+        for (float[] p : polygons) {
+            for (int i = 0; i < p.length; i += 2) {
+                int j = (i + 2) % p.length;
+                float x1 = p[i] * SUBPIXELS;
+                float y1 = p[i + 1] * SUBPIXELS;
+                float x2 = p[j] * SUBPIXELS;
+                float y2 = p[j + 1] * SUBPIXELS;
+                int orientation = 1;
+                if (y2 < y1) {
+                    float t = y1;
+                    y1 = y2;
+                    y2 = t;
+                    t = x1;
+                    x1 = x2;
+                    x2 = t;
+                    orientation = 0;
+                }
+                int first = Math.max((int) Math.ceil(y1), 0);
+                int last = Math.min((int) Math.ceil(y2), rows);
+                if (first >= last) {
+                    continue;
+                }
+                minX = Math.min(minX, Math.min(x1, x2));
+                float slope = (x2 - x1) / (y2 - y1);
+                float x = x1 + (first - y1) * slope;
+                for (int k = first; k < last; k++, x += slope) {
+                    if (crossings[k] == null) {
+                        crossings[k] = new int[16];
+                    } else if (counts[k] == crossings[k].length) {
+                        crossings[k] = Arrays.copyOf(crossings[k], 2 * counts[k]);
+                    }
+                    crossings[k][counts[k]++] = ((int) x << 1) | orientation;
+                }
+            }
+        }
+        int left = Math.max((int) Math.ceil(minX), 0) / SUBPIXELS * SUBPIXELS;
+        int mask = rule == Path2D.WIND_EVEN_ODD ? 1 : -1;
+        int[] samples = new int[W * H];
+        for (int k = 0; k < rows; k++) {
+            if (crossings[k] == null) {
+                continue;
+            }
+            Arrays.sort(crossings[k], 0, counts[k]);
+            int winding = 0;
+            int prev = 0;
+            for (int i = 0; i < counts[k]; i++) {
+                int x = crossings[k][i] >> 1;
+                if ((winding & mask) != 0) {
+                    for (int c = Math.max(prev, left); c < Math.min(x, columns); c++) {
+                        samples[k / SUBPIXELS * W + c / SUBPIXELS]++;
+                    }
+                }
+                winding += ((crossings[k][i] & 1) << 1) - 1;
+                prev = x;
+            }
+        }
+        return samples;
+    }
+
+    /**
+     * A star polygon of {@code n} points on a circle, each joined to the one {@code step} points
+     * on, with radii varied by up to {@code jitter} of the radius.
+     */
+    private static float[] star(int n, int step, double jitter) {
+        float[] p = new float[2 * n];
+        for (int i = 0; i < n; i++) {
+            double angle = 2 * Math.PI * i * step / n + 0.1;
+            double r = (H / 2.0 - 5) * (1 - jitter * ((i * 7919) % 13) / 13.0);
+            p[2 * i] = (float) (W / 2.0 + 0.3 + r * Math.cos(angle));
+            p[2 * i + 1] = (float) (H / 2.0 + 0.2 + r * Math.sin(angle));
+        }
+        return p;
+    }
+
+    private static float[] randomPolygon(Random random, int n) {
+        float[] p = new float[2 * n];
+        for (int i = 0; i < n; i++) {
+            p[2 * i] = random.nextFloat() * W;
+            p[2 * i + 1] = random.nextFloat() * H;
+        }
+        return p;
+    }
+
+    /**
+     * Thin quadrilaterals through the middle at all angles, so that they all cross each other.
+     */
+    private static List<float[]> fan(Random random, int n) {
+        List<float[]> quads = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            double angle = random.nextDouble() * Math.PI;
+            double length = H / 2.0 - 5;
+            double width = 0.2 + random.nextDouble() * 3;
+            double cx = W / 2.0 + random.nextGaussian() * 10;
+            double cy = H / 2.0 + random.nextGaussian() * 10;
+            double ux = Math.cos(angle);
+            double uy = Math.sin(angle);
+            quads.add(new float[] {
+                (float) (cx - ux * length - uy * width), (float) (cy - uy * length + ux * width),
+                (float) (cx + ux * length - uy * width), (float) (cy + uy * length + ux * width),
+                (float) (cx + ux * length + uy * width), (float) (cy + uy * length - ux * width),
+                (float) (cx - ux * length + uy * width), (float) (cy - uy * length - ux * width),
+            });
+        }
+        return quads;
+    }
+
+    /**
+     * Small triangles all over, so that edges are added to the active list on most scanlines.
+     */
+    private static List<float[]> triangles(Random random, int n) {
+        List<float[]> triangles = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            float x = random.nextFloat() * (W - 20);
+            float y = random.nextFloat() * (H - 20);
+            triangles.add(new float[] {
+                x + random.nextFloat() * 20, y + random.nextFloat() * 20,
+                x + random.nextFloat() * 20, y + random.nextFloat() * 20,
+                x + random.nextFloat() * 20, y + random.nextFloat() * 20,
+            });
+        }
+        return triangles;
+    }
+
+    /**
+     * The same polygons in the opposite order, each traced the other way round.
+     */
+    private static List<float[]> reversed(List<float[]> polygons) {
+        List<float[]> reversed = new ArrayList<>();
+        for (float[] p : polygons) {
+            float[] r = new float[p.length];
+            for (int i = 0; i < p.length; i += 2) {
+                r[p.length - 2 - i] = p[i];
+                r[p.length - 1 - i] = p[i + 1];
+            }
+            reversed.add(0, r);
+        }
+        return reversed;
+    }
+
+    private static byte[] render(List<float[]> polygons, int rule) {
+        Path2D path = new Path2D.Float(rule);
+        for (float[] p : polygons) {
+            path.moveTo(p[0], p[1]);
+            for (int i = 2; i < p.length; i += 2) {
+                path.lineTo(p[i], p[i + 1]);
+            }
+            path.closePath();
+        }
+        int[] bbox = new int[4];
+        AATileGenerator generator = engine.getAATileGenerator(path, new AffineTransform(),
+            Region.getInstanceXYWH(0, 0, W, H), null, false, false, bbox);
+        byte[] coverage = new byte[W * H];
+        if (generator == null) {
+            return coverage;
+        }
+        int tw = generator.getTileWidth();
+        int th = generator.getTileHeight();
+        byte[] tile = new byte[tw * th];
+        for (int y = bbox[1]; y < bbox[3]; y += th) {
+            for (int x = bbox[0]; x < bbox[2]; x += tw) {
+                int alpha = generator.getTypicalAlpha();
+                if (alpha == 0 || alpha == 0xFF) {
+                    Arrays.fill(tile, (byte) alpha);
+                    generator.nextTile();
+                } else {
+                    generator.getAlpha(tile, 0, tw);
+                }
+                for (int j = 0; j < th && y + j < Math.min(bbox[3], H); j++) {
+                    for (int i = 0; i < tw && x + i < Math.min(bbox[2], W); i++) {
+                        coverage[(y + j) * W + x + i] = tile[j * tw + i];
+                    }
+                }
+            }
+        }
+        generator.dispose();
+        return coverage;
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * @test
+ * @summary Checks that Pisces rasterizing a shape in parallel bands gives exactly the coverage
+ *          of a single pass, and that repeated band rendering reuses its arrays
+ * @run main/othervm ParallelBandsTest
+ */
+
+import java.awt.BasicStroke;
+import java.awt.Shape;
+import java.awt.SkinJob;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+import java.util.Random;
+
+import sun.java2d.pipe.AATileGenerator;
+import sun.java2d.pipe.Region;
+import sun.java2d.pisces.PiscesRenderingEngine;
+
+public final class ParallelBandsTest {
+
+    private static final int W = 700;
+    private static final int H = 600;
+
+    private static final PiscesRenderingEngine engine = new PiscesRenderingEngine();
+
+    private ParallelBandsTest() {
+    }
+
+    public static void main(String[] args) {
+        int saved = SkinJob.parallelRasterizeMinEdges;
+        try {
+            Random random = new Random(1);
+            for (int i = 0; i < 6; i++) {
+                int rule = i % 2 == 0 ? Path2D.WIND_NON_ZERO : Path2D.WIND_EVEN_ODD;
+                Shape shape = randomWalks(random, rule);
+                checkSame(shape, null, "fill " + i);
+                checkSame(shape, new BasicStroke(3.5f), "stroke " + i);
+            }
+            checkReuse();
+        } finally {
+            SkinJob.parallelRasterizeMinEdges = saved;
+        }
+    }
+
+    private static void checkSame(Shape shape, BasicStroke stroke, String what) {
+        SkinJob.parallelRasterizeMinEdges = 0;
+        byte[] single = render(shape, stroke);
+        SkinJob.parallelRasterizeMinEdges = 1;
+        byte[] bands = render(shape, stroke);
+        for (int i = 0; i < single.length; i++) {
+            if (single[i] != bands[i]) {
+                throw new RuntimeException(what + ": pixel (" + i % W + ", " + i / W
+                    + ") has coverage " + (bands[i] & 0xFF) + " in bands, "
+                    + (single[i] & 0xFF) + " in a single pass");
+            }
+        }
+    }
+
+    /**
+     * Once the arrays have grown for a shape, drawing it again in bands shouldn't grow any of
+     * them, as it did when each band got a new renderer and its rows were handed over to the
+     * shape's cache.
+     */
+    private static void checkReuse() {
+        Path2D stripes = new Path2D.Float();
+        for (int x = 1; x < W - 4; x += 5) {
+            stripes.append(new Rectangle2D.Float(x + 0.3f, 0.5f, 2.5f, H - 1), false);
+        }
+        SkinJob.parallelRasterizeMinEdges = 1;
+        render(stripes, null);
+        long rows = PiscesRenderingEngine.getRowArrayGrowCount();
+        long edges = PiscesRenderingEngine.getEdgeArrayGrowCount();
+        long crossings = PiscesRenderingEngine.getCrossingArrayGrowCount();
+        for (int i = 0; i < 5; i++) {
+            render(stripes, null);
+        }
+        rows = PiscesRenderingEngine.getRowArrayGrowCount() - rows;
+        edges = PiscesRenderingEngine.getEdgeArrayGrowCount() - edges;
+        crossings = PiscesRenderingEngine.getCrossingArrayGrowCount() - crossings;
+        if (rows != 0 || edges != 0 || crossings != 0) {
+            throw new RuntimeException("Drawing the same shape again grew row arrays " + rows
+                + " times, edge arrays " + edges + " times and crossing arrays " + crossings
+                + " times");
+        }
+    }
+
+    private static Shape randomWalks(Random random, int rule) {
+        Path2D path = new Path2D.Float(rule);
+        for (int i = 0; i < 30; i++) {
+            double x = random.nextDouble() * W;
+            double y = random.nextDouble() * H;
+            path.moveTo(x, y);
+            for (int j = 0; j < 200; j++) {
+                x = Math.max(0, Math.min(W, x + random.nextGaussian() * 30));
+                y = Math.max(0, Math.min(H, y + random.nextGaussian() * 30));
+                if (j % 3 == 0) {
+                    path.quadTo(x + random.nextGaussian() * 10, y + random.nextGaussian() * 10, x,
+                        y);
+                } else {
+                    path.lineTo(x, y);
+                }
+            }
+            path.closePath();
+        }
+        return path;
+    }
+
+    static byte[] render(Shape shape, BasicStroke stroke) {
+        int[] bbox = new int[4];
+        AATileGenerator generator = engine.getAATileGenerator(shape, new AffineTransform(),
+            Region.getInstanceXYWH(0, 0, W, H), stroke, false, false, bbox);
+        byte[] coverage = new byte[W * H];
+        if (generator == null) {
+            return coverage;
+        }
+        int tw = generator.getTileWidth();
+        int th = generator.getTileHeight();
+        byte[] tile = new byte[tw * th];
+        for (int y = bbox[1]; y < bbox[3]; y += th) {
+            for (int x = bbox[0]; x < bbox[2]; x += tw) {
+                int alpha = generator.getTypicalAlpha();
+                if (alpha == 0 || alpha == 0xFF) {
+                    Arrays.fill(tile, (byte) alpha);
+                    generator.nextTile();
+                } else {
+                    generator.getAlpha(tile, 0, tw);
+                }
+                for (int j = 0; j < th && y + j < Math.min(bbox[3], H); j++) {
+                    for (int i = 0; i < tw && x + i < Math.min(bbox[2], W); i++) {
+                        coverage[(y + j) * W + x + i] = tile[j * tw + i];
+                    }
+                }
+            }
+        }
+        generator.dispose();
+        return coverage;
+    }
+}
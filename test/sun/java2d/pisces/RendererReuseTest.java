@@ -0,0 +1,318 @@
+/*
+ * @test
+ * @summary Checks that Pisces reusing its per-thread pipeline stages and arrays across shapes
+ *          gives each shape the coverage it gets from fresh ones, that repeating the same shapes
+ *          grows no arrays, and that undisposed and interleaved tile generators keep their own
+ * @run main/othervm RendererReuseTest
+ */
+
+import java.awt.BasicStroke;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.geom.RoundRectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import sun.java2d.pipe.AATileGenerator;
+import sun.java2d.pipe.Region;
+import sun.java2d.pisces.PiscesRenderingEngine;
+
+public final class RendererReuseTest {
+
+    private static final int W = 400;
+    private static final int H = 300;
+
+    private static final PiscesRenderingEngine engine = new PiscesRenderingEngine();
+
+    private RendererReuseTest() {
+    }
+
+    /**
+     * One shape to render, and how.
+     */
+    private static final class Drawing {
+        final String name;
+        final Shape shape;
+        final AffineTransform at;
+        final Region clip;
+        final BasicStroke stroke;
+        final boolean thin;
+        final boolean normalize;
+        // A parallelogram's x, y, dx1, dy1, dx2, dy2, lw1 and lw2, if shape is null.
+        final double[] pgram;
+
+        Drawing(
+                String name, Shape shape, AffineTransform at, Region clip, BasicStroke stroke,
+                boolean thin, boolean normalize) {
+            this.name = name;
+            this.shape = shape;
+            this.at = at;
+            this.clip = clip;
+            this.stroke = stroke;
+            this.thin = thin;
+            this.normalize = normalize;
+            pgram = null;
+        }
+
+        Drawing(String name, Region clip, double... pgram) {
+            this.name = name;
+            shape = null;
+            at = null;
+            this.clip = clip;
+            stroke = null;
+            thin = false;
+            normalize = false;
+            this.pgram = pgram;
+        }
+
+        TileReader start() {
+            int[] bbox = new int[4];
+            AATileGenerator generator;
+            if (shape == null) {
+                generator = engine.getAATileGenerator(pgram[0], pgram[1], pgram[2], pgram[3],
+                    pgram[4], pgram[5], pgram[6], pgram[7], clip, bbox);
+            } else {
+                generator = engine.getAATileGenerator(shape, at, clip, stroke, thin, normalize,
+                    bbox);
+            }
+            return new TileReader(generator, bbox);
+        }
+
+        TileReader render() {
+            TileReader reader = start();
+            reader.read(Integer.MAX_VALUE);
+            reader.generator.dispose();
+            return reader;
+        }
+
+        /**
+         * Renders on a new thread, which has a new context.
+         */
+        TileReader renderFresh() throws InterruptedException {
+            TileReader[] reader = new TileReader[1];
+            Thread thread = new Thread(() -> reader[0] = render());
+            thread.start();
+            thread.join();
+            return reader[0];
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        List<Drawing> drawings = drawings();
+        List<TileReader> expected = new ArrayList<>();
+        for (Drawing drawing : drawings) {
+            expected.add(drawing.renderFresh());
+        }
+        long rows = 0;
+        long edges = 0;
+        long crossings = 0;
+        for (int pass = 0; pass < 3; pass++) {
+            if (pass == 1) {
+                rows = PiscesRenderingEngine.getRowArrayGrowCount();
+                edges = PiscesRenderingEngine.getEdgeArrayGrowCount();
+                crossings = PiscesRenderingEngine.getCrossingArrayGrowCount();
+            }
+            for (int i = 0; i < drawings.size(); i++) {
+                checkSame(drawings.get(i).render(), expected.get(i),
+                    drawings.get(i).name + " in pass " + pass);
+            }
+        }
+        rows = PiscesRenderingEngine.getRowArrayGrowCount() - rows;
+        edges = PiscesRenderingEngine.getEdgeArrayGrowCount() - edges;
+        crossings = PiscesRenderingEngine.getCrossingArrayGrowCount() - crossings;
+        if (rows != 0 || edges != 0 || crossings != 0) {
+            throw new RuntimeException("Drawing the same shapes again grew row arrays " + rows
+                + " times, edge arrays " + edges + " times and crossing arrays " + crossings
+                + " times");
+        }
+        checkUndisposed(drawings, expected);
+        checkInterleaved(drawings, expected);
+        checkAfterLarge(drawings, expected);
+    }
+
+    /**
+     * A shape with more edges than Pisces keeps an array for, which drops the array after it.
+     */
+    private static void checkAfterLarge(List<Drawing> drawings, List<TileReader> expected)
+            throws InterruptedException {
+        Path2D path = new Path2D.Float();
+        Random random = new Random(2);
+        path.moveTo(W / 2.0, H / 2.0);
+        for (int i = 0; i < 6000; i++) {
+            path.lineTo(random.nextDouble() * W, random.nextDouble() * H);
+        }
+        Drawing large = new Drawing("large polygon", path, new AffineTransform(),
+            Region.getInstanceXYWH(0, 0, W, H), null, false, false);
+        TileReader largeExpected = large.renderFresh();
+        for (int i = 0; i < drawings.size(); i++) {
+            checkSame(large.render(), largeExpected, large.name);
+            checkSame(drawings.get(i).render(), expected.get(i),
+                drawings.get(i).name + " after a " + large.name);
+        }
+    }
+
+    /**
+     * A tile generator that is never disposed keeps its context, and the shapes after it get
+     * another one.
+     */
+    private static void checkUndisposed(List<Drawing> drawings, List<TileReader> expected) {
+        for (int i = 0; i < drawings.size(); i++) {
+            TileReader abandoned = drawings.get(i).start();
+            abandoned.read(3);
+            int next = (i + 1) % drawings.size();
+            checkSame(drawings.get(next).render(), expected.get(next),
+                drawings.get(next).name + " after an undisposed " + drawings.get(i).name);
+            abandoned.read(Integer.MAX_VALUE);
+            checkSame(abandoned, expected.get(i), "undisposed " + drawings.get(i).name);
+        }
+    }
+
+    /**
+     * Two tile generators in use at once, read a few tiles at a time in turn.
+     */
+    private static void checkInterleaved(List<Drawing> drawings, List<TileReader> expected) {
+        for (int i = 0; i < drawings.size(); i++) {
+            int j = (i + 3) % drawings.size();
+            TileReader first = drawings.get(i).start();
+            TileReader second = drawings.get(j).start();
+            boolean more = true;
+            while (more) {
+                more = first.read(2);
+                more = second.read(3) || more;
+            }
+            first.generator.dispose();
+            second.generator.dispose();
+            String what = drawings.get(i).name + " and " + drawings.get(j).name;
+            checkSame(first, expected.get(i), what + ", the first");
+            checkSame(second, expected.get(j), what + ", the second");
+        }
+    }
+
+    private static List<Drawing> drawings() {
+        Region all = Region.getInstanceXYWH(0, 0, W, H);
+        Region part = Region.getInstanceXYWH(150, 60, 120, 90);
+        AffineTransform identity = new AffineTransform();
+        AffineTransform rotation = AffineTransform.getRotateInstance(0.4, W / 2.0, H / 2.0);
+        Random random = new Random(1);
+        Path2D walk = new Path2D.Float(Path2D.WIND_EVEN_ODD);
+        walk.moveTo(W / 2.0, H / 2.0);
+        for (int i = 0; i < 60; i++) {
+            double x = W / 4.0 + random.nextDouble() * W / 2;
+            double y = H / 4.0 + random.nextDouble() * H / 2;
+            if (i % 3 == 0) {
+                walk.quadTo(x + random.nextGaussian() * 20, y + random.nextGaussian() * 20, x, y);
+            } else {
+                walk.lineTo(x, y);
+            }
+        }
+        walk.closePath();
+        Path2D polyline = new Path2D.Float();
+        polyline.moveTo(10, 10);
+        for (int i = 1; i < 40; i++) {
+            polyline.lineTo(10 + i * 9.5, i % 2 == 0 ? 20 + i * 6 : 200 - i * 3);
+        }
+        Shape ellipse = new Ellipse2D.Double(20.3, 15.7, W - 40, H - 30);
+        Shape small = new Rectangle2D.Double(160.25, 70.5, 7.5, 3.25);
+        BasicStroke round = new BasicStroke(7, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+        BasicStroke dashed = new BasicStroke(2.5f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, 10,
+            new float[] {9, 4, 1, 4}, 3);
+        BasicStroke square = new BasicStroke(3, BasicStroke.CAP_SQUARE, BasicStroke.JOIN_BEVEL);
+        List<Drawing> drawings = new ArrayList<>();
+        drawings.add(new Drawing("filled ellipse", ellipse, identity, all, null, false, false));
+        drawings.add(new Drawing("small rectangle", small, identity, part, null, false, false));
+        drawings.add(new Drawing("even-odd walk", walk, identity, all, null, false, false));
+        drawings.add(new Drawing("round polyline", polyline, identity, all, round, false, false));
+        drawings.add(new Drawing("clipped dashed ellipse", ellipse, rotation, part, dashed, false,
+            false));
+        drawings.add(new Drawing("normalized polyline", polyline, rotation, all, square, false,
+            true));
+        drawings.add(new Drawing("dashed polyline", polyline, identity, all, dashed, false,
+            false));
+        drawings.add(new Drawing("thin polyline", polyline, identity, all, new BasicStroke(0.5f),
+            true, false));
+        drawings.add(new Drawing("normalized rounded rectangle",
+            new RoundRectangle2D.Double(50.5, 40.25, 200, 120, 30, 20), identity, all, null,
+            false, true));
+        drawings.add(new Drawing("parallelogram", all, 30.5, 40.25, 200, 30, 40, 150, 0, 0));
+        drawings.add(new Drawing("parallelogram outline", all, 30.5, 40.25, 200, 30, 40, 150,
+            0.05, 0.04));
+        drawings.add(new Drawing("off-clip ellipse", new Ellipse2D.Double(-50, -50, 20, 20),
+            identity, all, null, false, false));
+        return drawings;
+    }
+
+    /**
+     * Compares the coverage, and the typical alpha of each tile, which depends on the sums of
+     * coverage Pisces keeps for its tiles.
+     */
+    private static void checkSame(TileReader actual, TileReader expected, String what) {
+        for (int i = 0; i < actual.coverage.length; i++) {
+            if (actual.coverage[i] != expected.coverage[i]) {
+                throw new RuntimeException(what + ": pixel (" + i % W + ", " + i / W
+                    + ") has coverage " + (actual.coverage[i] & 0xFF) + ", expected "
+                    + (expected.coverage[i] & 0xFF));
+            }
+        }
+        if (!actual.typicalAlphas.equals(expected.typicalAlphas)) {
+            throw new RuntimeException(what + ": typical alphas of the tiles are "
+                + actual.typicalAlphas + ", expected " + expected.typicalAlphas);
+        }
+    }
+
+    /**
+     * Reads a tile generator's tiles into a coverage array, a few at a time.
+     */
+    private static final class TileReader {
+        final AATileGenerator generator;
+        final byte[] coverage = new byte[W * H];
+        final List<Integer> typicalAlphas = new ArrayList<>();
+        private final int[] bbox;
+        private final byte[] tile;
+        private int x;
+        private int y;
+
+        TileReader(AATileGenerator generator, int[] bbox) {
+            this.generator = generator;
+            this.bbox = bbox;
+            tile = new byte[generator.getTileWidth() * generator.getTileHeight()];
+            x = bbox[0];
+            y = bbox[1];
+        }
+
+        /**
+         * Reads up to {@code maxTiles} more tiles.
+         *
+         * @return whether there are tiles left
+         */
+        boolean read(int maxTiles) {
+            int tw = generator.getTileWidth();
+            int th = generator.getTileHeight();
+            for (int n = 0; n < maxTiles && y < bbox[3]; n++) {
+                int alpha = generator.getTypicalAlpha();
+                typicalAlphas.add(alpha);
+                if (alpha == 0 || alpha == 0xFF) {
+                    Arrays.fill(tile, (byte) alpha);
+                    generator.nextTile();
+                } else {
+                    generator.getAlpha(tile, 0, tw);
+                }
+                for (int j = 0; j < th && y + j < Math.min(bbox[3], H); j++) {
+                    for (int i = 0; i < tw && x + i < Math.min(bbox[2], W); i++) {
+                        coverage[(y + j) * W + x + i] = tile[j * tw + i];
+                    }
+                }
+                x += tw;
+                if (x >= bbox[2]) {
+                    x = bbox[0];
+                    y += th;
+                }
+            }
+            return y < bbox[3];
+        }
+    }
+}